@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.composite;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Direct access to the int array of a raster that has four 8-bit samples
+ * packed into each pixel, such as the rasters of TYPE_INT_ARGB and
+ * TYPE_INT_ARGB_PRE images. The samples are unpacked and packed
+ * exactly as Raster.getPixels and WritableRaster.setPixels would do it,
+ * but without the per-pixel virtual calls of the generic raster path.
+ */
+final class PackedIntRaster {
+    private final int[] data;
+    private final int scanlineStride;
+
+    // the array index corresponding to the (0, 0) raster coordinates
+    private final int originIndex;
+
+    private final int[] masks;
+    private final int[] offsets;
+
+    private PackedIntRaster(Raster raster, DataBufferInt buffer, SinglePixelPackedSampleModel sm) {
+        data = buffer.getData();
+        scanlineStride = sm.getScanlineStride();
+        originIndex = buffer.getOffset()
+            - raster.getSampleModelTranslateY() * scanlineStride
+            - raster.getSampleModelTranslateX();
+        masks = sm.getBitMasks();
+        offsets = sm.getBitOffsets();
+    }
+
+    /**
+     * Returns the packed view of the given raster, or null
+     * if the raster doesn't have the supported layout.
+     */
+    static PackedIntRaster of(Raster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        if (!(buffer instanceof DataBufferInt intBuffer) || intBuffer.getNumBanks() != 1) {
+            return null;
+        }
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm)) {
+            return null;
+        }
+        if (sm.getNumBands() != 4) {
+            return null;
+        }
+        for (int size : sm.getSampleSize()) {
+            if (size != 8) {
+                return null;
+            }
+        }
+        return new PackedIntRaster(raster, intBuffer, sm);
+    }
+
+    /**
+     * Unpacks the samples of w pixels starting at (x, y) into
+     * the given array, in the same layout as Raster.getPixels.
+     */
+    void getRow(int x, int y, int w, int[] samples) {
+        int m0 = masks[0], m1 = masks[1], m2 = masks[2], m3 = masks[3];
+        int o0 = offsets[0], o1 = offsets[1], o2 = offsets[2], o3 = offsets[3];
+
+        int index = originIndex + y * scanlineStride + x;
+        for (int i = 0, s = 0; i < w; i++, s += 4) {
+            int pixel = data[index + i];
+            samples[s] = (pixel & m0) >>> o0;
+            samples[s + 1] = (pixel & m1) >>> o1;
+            samples[s + 2] = (pixel & m2) >>> o2;
+            samples[s + 3] = (pixel & m3) >>> o3;
+        }
+    }
+
+    /**
+     * Packs the samples from the given array into w pixels starting
+     * at (x, y), in the same way as WritableRaster.setPixels.
+     */
+    void setRow(int x, int y, int w, int[] samples) {
+        int m0 = masks[0], m1 = masks[1], m2 = masks[2], m3 = masks[3];
+        int o0 = offsets[0], o1 = offsets[1], o2 = offsets[2], o3 = offsets[3];
+
+        int index = originIndex + y * scanlineStride + x;
+        for (int i = 0, s = 0; i < w; i++, s += 4) {
+            data[index + i] = ((samples[s] << o0) & m0)
+                | ((samples[s + 1] << o1) & m1)
+                | ((samples[s + 2] << o2) & m2)
+                | ((samples[s + 3] << o3) & m3);
+        }
+    }
+}
@@ -16,10 +16,14 @@ limitations under the License.
 
 package com.jhlabs.composite;
 
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
 import java.awt.*;
 import java.awt.image.ColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.Future;
 
 public abstract class RGBComposite implements Composite {
     protected float extraAlpha;
@@ -58,6 +62,9 @@ public abstract class RGBComposite implements Composite {
     }
 
     public abstract static class RGBCompositeContext implements CompositeContext {
+        // smaller areas are not split between the threads
+        private static final int MIN_PIXELS_PER_TASK = 128 * 128;
+
         private final float alpha;
 //        private final ColorModel srcColorModel;
 //        private final ColorModel dstColorModel;
@@ -90,8 +97,73 @@ public abstract class RGBComposite implements Composite {
 
         public abstract void composeRGB(int[] src, int[] dst, float alpha);
 
+        /**
+         * Returns true if composeRGB can be called concurrently
+         * for different rows (it doesn't use scratch fields).
+         */
+        protected boolean canComposeRowsInParallel() {
+            return true;
+        }
+
         @Override
         public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            PackedIntRaster packedSrc = PackedIntRaster.of(src);
+            PackedIntRaster packedDstIn = PackedIntRaster.of(dstIn);
+            PackedIntRaster packedDstOut = PackedIntRaster.of(dstOut);
+            if (packedSrc != null && packedDstIn != null && packedDstOut != null) {
+                composePacked(packedSrc, packedDstIn, packedDstOut,
+                    dstOut.getMinX(), dstOut.getMinY(),
+                    dstOut.getWidth(), dstOut.getHeight());
+            } else {
+                composeRasters(src, dstIn, dstOut);
+            }
+        }
+
+        /**
+         * The fast path for the usual int-packed ARGB images:
+         * the rows are read directly from the int arrays, and the
+         * rows of big areas are split between multiple threads.
+         */
+        private void composePacked(PackedIntRaster src, PackedIntRaster dstIn,
+                                   PackedIntRaster dstOut,
+                                   int x, int y, int w, int h) {
+            int numTasks = Math.min(ThreadPool.NUM_CORES,
+                Math.min(h, w * h / MIN_PIXELS_PER_TASK));
+            if (numTasks < 2 || !canComposeRowsInParallel()
+                || ThreadPool.calledOnPoolThread()) {
+                composePackedRows(src, dstIn, dstOut, x, y, w, y + h);
+                return;
+            }
+
+            Future<?>[] futures = new Future<?>[numTasks];
+            for (int i = 0; i < numTasks; i++) {
+                int startY = y + i * h / numTasks;
+                int endY = y + (i + 1) * h / numTasks;
+                futures[i] = ThreadPool.submit(() ->
+                    composePackedRows(src, dstIn, dstOut, x, startY, w, endY));
+            }
+            ThreadPool.waitFor(futures, ProgressTracker.NULL_TRACKER);
+        }
+
+        private void composePackedRows(PackedIntRaster src, PackedIntRaster dstIn,
+                                       PackedIntRaster dstOut,
+                                       int x, int y0, int w, int y1) {
+            float alpha = this.alpha;
+
+            // allocated only once, and reused for every row
+            int[] srcPix = new int[4 * w];
+            int[] dstPix = new int[4 * w];
+
+            for (int y = y0; y < y1; y++) {
+                src.getRow(x, y, w, srcPix);
+                dstIn.getRow(x, y, w, dstPix);
+                composeRGB(srcPix, dstPix, alpha);
+                dstOut.setRow(x, y, w, dstPix);
+            }
+        }
+
+        // the generic path, used for unusual color models
+        private void composeRasters(Raster src, Raster dstIn, WritableRaster dstOut) {
             float alpha = this.alpha;
 
             int[] srcPix = null;
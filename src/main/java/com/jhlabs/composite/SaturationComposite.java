@@ -37,6 +37,11 @@ public final class SaturationComposite extends RGBComposite {
             super(alpha, srcColorModel, dstColorModel);
         }
 
+        @Override
+        protected boolean canComposeRowsInParallel() {
+            return false; // the HSB arrays are shared
+        }
+
         @Override
         public void composeRGB(int[] src, int[] dst, float alpha) {
             int w = src.length;
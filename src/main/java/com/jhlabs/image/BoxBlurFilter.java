@@ -181,7 +181,7 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
             }
             inIndex += width;
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
     }
 
@@ -263,7 +263,7 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
                 int ib = PixelUtils.clamp((int) (b + 0.5));
                 outPixels[index++] = (origAlpha << 24) | (ir << 16) | (ig << 8) | ib;
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
     }
@@ -139,7 +139,7 @@ public class EdgeFilter extends WholeImageFilter {
                 b = PixelUtils.clamp(b);
                 outPixels[index++] = a | (r << 16) | (g << 8) | b;
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
         return outPixels;
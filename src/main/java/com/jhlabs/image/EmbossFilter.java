@@ -131,7 +131,7 @@ public class EmbossFilter extends WholeImageFilter {
                     outPixels[index++] = a | (shade << 16) | (shade << 8) | shade;
                 }
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
 
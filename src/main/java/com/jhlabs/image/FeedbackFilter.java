@@ -311,7 +311,7 @@ public class FeedbackFilter extends AbstractBufferedImageOp {
             g.translate(-cx, -cy);
 
             g.drawImage(src, null, null);
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
 
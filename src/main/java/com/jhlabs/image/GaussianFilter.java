@@ -21,7 +21,7 @@ import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
-import java.util.concurrent.Future;
+import java.util.Arrays;
 
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
@@ -30,11 +30,45 @@ import java.util.concurrent.Future;
  * @author Jerry Huxtable
  */
 public class GaussianFilter extends ConvolveFilter {
+    /**
+     * The ways of calculating the blur.
+     */
+    public enum Mode {
+        /**
+         * Convolution with a Gaussian kernel, O(radius) per pixel.
+         */
+        EXACT("Exact"),
+        /**
+         * Three successive box blurs with sizes chosen to match the
+         * standard deviation of the Gaussian, O(1) per pixel.
+         */
+        FAST("Fast (Box Approximation)");
+
+        private final String guiName;
+
+        Mode(String guiName) {
+            this.guiName = guiName;
+        }
+
+        @Override
+        public String toString() {
+            return guiName;
+        }
+    }
+
+    // below this radius the kernel is small enough,
+    // and the box approximation would be too rough
+    private static final float MIN_FAST_RADIUS = 4.0f;
+
+    private static final int NUM_BOX_PASSES = 3;
+
     /**
      * The blur radius.
      */
     protected float radius;
 
+    private Mode mode = Mode.EXACT;
+
     /**
      * Construct a Gaussian filter.
      */
@@ -75,6 +109,26 @@ public class GaussianFilter extends ConvolveFilter {
         return radius;
     }
 
+    /**
+     * Set the way the blur is calculated.
+     *
+     * @param mode the blur mode
+     * @see #getMode
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Get the way the blur is calculated.
+     *
+     * @return the blur mode
+     * @see #setMode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
         int width = src.getWidth();
@@ -93,9 +147,7 @@ public class GaussianFilter extends ConvolveFilter {
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (radius > 0) {
-            int[] outPixels = new int[width * height];
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, false, premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, width, height, pt);
         }
 
 //        dst.setRGB(0, 0, width, height, inPixels, 0, width);
@@ -106,6 +158,166 @@ public class GaussianFilter extends ConvolveFilter {
         return dst;
     }
 
+    /**
+     * Blurs the given pixels in place, according to the current mode.
+     * The progress tracker receives width + height work units.
+     */
+    protected void blur(int[] pixels, int width, int height, ProgressTracker pt) {
+        int[] tmpPixels = new int[width * height];
+        if (usesBoxBlur(radius, mode)) {
+            boxBlur(pixels, tmpPixels, width, height, radius / 3, premultiplyAlpha, pt);
+        } else {
+            convolveAndTranspose(kernel, pixels, tmpPixels, width, height, premultiplyAlpha, false, CLAMP_EDGES, pt);
+            convolveAndTranspose(kernel, tmpPixels, pixels, height, width, false, premultiplyAlpha, CLAMP_EDGES, pt);
+        }
+    }
+
+    private static boolean usesBoxBlur(float radius, Mode mode) {
+        return mode == Mode.FAST && radius >= MIN_FAST_RADIUS;
+    }
+
+    /**
+     * Returns the maximum distance between an output pixel and the
+     * input pixels it depends on, for the given radius and mode.
+     */
+    public static int calcFootprintRadius(float radius, Mode mode) {
+        if (radius <= 0) {
+            return 0;
+        }
+        if (usesBoxBlur(radius, mode)) {
+            // each box blur pass extends the reach by its radius
+            return sum(calcBoxRadii(radius / 3, NUM_BOX_PASSES));
+        }
+        // the half size of the kernel, see makeKernel
+        return (int) Math.ceil(radius);
+    }
+
+    /**
+     * Approximates a Gaussian blur with the given standard deviation
+     * with three box blurs, in a constant time per pixel. The result
+     * ends up in the pixels array, the other array is used as a buffer.
+     * The progress tracker receives width + height work units.
+     */
+    public static void boxBlur(int[] pixels, int[] tmpPixels, int width, int height,
+                               float sigma, boolean premultiply, ProgressTracker pt) {
+        if (premultiply) {
+            ImageMath.premultiply(pixels, 0, pixels.length);
+        }
+
+        int[] boxRadii = calcBoxRadii(sigma, NUM_BOX_PASSES);
+        boxBlurAndTranspose(pixels, tmpPixels, width, height, boxRadii, pt);
+        boxBlurAndTranspose(tmpPixels, pixels, height, width, boxRadii, pt);
+
+        if (premultiply) {
+            ImageMath.unpremultiply(pixels, 0, pixels.length);
+        }
+    }
+
+    /**
+     * Calculates the radii of the successive box blurs, so that
+     * their combined variance is as close as possible to the
+     * variance of a Gaussian with the given standard deviation.
+     * See "Fast Almost-Gaussian Filtering" by Peter Kovesi.
+     */
+    static int[] calcBoxRadii(float sigma, int numPasses) {
+        double variance = sigma * (double) sigma;
+        double idealWidth = Math.sqrt(12 * variance / numPasses + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if (lowerWidth % 2 == 0) {
+            lowerWidth--;
+        }
+        int upperWidth = lowerWidth + 2;
+
+        // the number of passes that use the lower width
+        double idealNumLower = (12 * variance
+            - numPasses * lowerWidth * lowerWidth
+            - 4 * numPasses * lowerWidth
+            - 3 * numPasses) / (-4 * lowerWidth - 4);
+        long numLower = Math.round(idealNumLower);
+
+        int[] radii = new int[numPasses];
+        for (int i = 0; i < numPasses; i++) {
+            int boxWidth = i < numLower ? lowerWidth : upperWidth;
+            radii[i] = (boxWidth - 1) / 2;
+        }
+        return radii;
+    }
+
+    /**
+     * Applies the successive box blurs to each row of a block of ARGB
+     * pixels, and transposes the block. The rows are padded with their
+     * edge pixels, so that the edges are clamped only once, as in the
+     * case of the kernel convolution.
+     */
+    private static void boxBlurAndTranspose(int[] in, int[] out, int width, int height,
+                                            int[] boxRadii, ProgressTracker pt) {
+        int pad = sum(boxRadii);
+        int paddedWidth = width + 2 * pad;
+        int finalPad = pad;
+
+        ThreadPool.processRows(height, width, (startY, endY) -> {
+            int[] row = new int[paddedWidth];
+            int[] tmp = new int[paddedWidth];
+            for (int y = startY; y < endY; y++) {
+                int inIndex = y * width;
+                System.arraycopy(in, inIndex, row, finalPad, width);
+                Arrays.fill(row, 0, finalPad, in[inIndex]);
+                Arrays.fill(row, finalPad + width, paddedWidth, in[inIndex + width - 1]);
+
+                for (int r : boxRadii) {
+                    boxBlurRow(row, tmp, paddedWidth, r);
+                    int[] swap = row;
+                    row = tmp;
+                    tmp = swap;
+                }
+
+                int outIndex = y;
+                for (int x = 0; x < width; x++) {
+                    out[outIndex] = row[finalPad + x];
+                    outIndex += height;
+                }
+            }
+        }, pt);
+    }
+
+    private static int sum(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static void boxBlurRow(int[] in, int[] out, int length, int r) {
+        int lastIndex = length - 1;
+        int boxWidth = 2 * r + 1;
+        int ta = 0, tr = 0, tg = 0, tb = 0;
+
+        for (int i = -r; i <= r; i++) {
+            int rgb = in[ImageMath.clamp(i, 0, lastIndex)];
+            ta += (rgb >> 24) & 0xff;
+            tr += (rgb >> 16) & 0xff;
+            tg += (rgb >> 8) & 0xff;
+            tb += rgb & 0xff;
+        }
+
+        for (int x = 0; x < length; x++) {
+            // rounded division
+            int a = (ta + r) / boxWidth;
+            int red = (tr + r) / boxWidth;
+            int g = (tg + r) / boxWidth;
+            int b = (tb + r) / boxWidth;
+            out[x] = (a << 24) | (red << 16) | (g << 8) | b;
+
+            int rgb1 = in[Math.min(x + r + 1, lastIndex)];
+            int rgb2 = in[Math.max(x - r, 0)];
+            ta += ((rgb1 >> 24) & 0xff) - ((rgb2 >> 24) & 0xff);
+            tr += ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+            tg += ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+            tb += (rgb1 & 0xff) - (rgb2 & 0xff);
+        }
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      *
@@ -124,14 +336,11 @@ public class GaussianFilter extends ConvolveFilter {
         int cols = kernel.getWidth();
         int cols2 = cols / 2;
 
-        Future<?>[] resultLines = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> convolveAndTransposeLine(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, finalY);
-            resultLines[y] = ThreadPool.submit(lineTask);
-        }
-
-        ThreadPool.waitFor(resultLines, pt);
+        ThreadPool.processRows(height, width, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                convolveAndTransposeLine(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, y);
+            }
+        }, pt);
     }
 
     private static void convolveAndTransposeLine(int[] inPixels, int[] outPixels, int width, int height, boolean premultiply, boolean unpremultiply, int edgeAction, float[] matrix, int cols2, int y) {
@@ -19,7 +19,6 @@ package com.jhlabs.image;
 import pixelitor.ThreadPool;
 
 import java.awt.image.BufferedImage;
-import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
@@ -31,6 +30,7 @@ public class GlintFilter extends AbstractBufferedImageOp {
     private float threshold = 1.0f;
     private int length = 5;
     private float blur = 0.0f;
+    private GaussianFilter.Mode blurMode = GaussianFilter.Mode.EXACT;
     private float amount = 0.1f;
     private boolean glintOnly = false;
     private Colormap colormap = new LinearColormap(0xffffffff, 0xff000000);
@@ -43,6 +43,15 @@ public class GlintFilter extends AbstractBufferedImageOp {
 
     }
 
+    /**
+     * Set the mode of the Gaussian blur applied to the glints.
+     *
+     * @param blurMode the blur mode
+     */
+    public void setBlurMode(GaussianFilter.Mode blurMode) {
+        this.blurMode = blurMode;
+    }
+
     public float getCoverage() {
         return coverage;
     }
@@ -236,6 +245,7 @@ public class GlintFilter extends AbstractBufferedImageOp {
 
         if (blur != 0) {
             GaussianFilter gf = new GaussianFilter(blur, filterName);
+            gf.setMode(blurMode);
             gf.setProgressTracker(pt);
             mask = gf.filter(mask, null);
         }
@@ -250,14 +260,12 @@ public class GlintFilter extends AbstractBufferedImageOp {
             dstPixels = getRGB(src, 0, 0, width, height, null);//FIXME - only need 2*length
         }
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            BufferedImage finalMask = mask;
-            Runnable lineTask = () -> calculateLine(width, height, pixels, length2, colors, colors2, finalMask, dstPixels, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        BufferedImage finalMask = mask;
+        ThreadPool.processRows(height, width, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                calculateLine(width, height, pixels, length2, colors, colors2, finalMask, dstPixels, y);
+            }
+        }, pt);
 
         setRGB(dst, 0, 0, width, height, dstPixels);
 
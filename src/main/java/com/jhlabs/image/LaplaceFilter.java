@@ -99,7 +99,7 @@ public class LaplaceFilter extends AbstractBufferedImageOp {
             row2 = row3;
             row3 = t;
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
 
         row1 = getRGB(dst, 0, 0, width, 1, row1);
@@ -131,7 +131,7 @@ public class LaplaceFilter extends AbstractBufferedImageOp {
             row2 = row3;
             row3 = t;
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
 
         finishProgressTracker();
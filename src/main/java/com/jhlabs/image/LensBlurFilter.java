@@ -373,7 +373,7 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                 dst.setRGB(tx, ty, tw, th, rgb, iradius * w + iradius, w);
                 // setRGB(dst, tx, ty, tw, th, rgb);
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
 
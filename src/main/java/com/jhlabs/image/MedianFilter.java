@@ -105,7 +105,7 @@ public class MedianFilter extends WholeImageFilter {
                 }
                 outPixels[index++] = argb[rgbMedian(r, g, b)];
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
         return outPixels;
@@ -268,7 +268,7 @@ public class MotionBlurOp extends AbstractBufferedImageOp implements MotionBlur
             scale *= 2;
             rotate *= 2;
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
 
         finishProgressTracker();
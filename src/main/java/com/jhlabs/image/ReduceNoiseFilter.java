@@ -98,7 +98,7 @@ public class ReduceNoiseFilter extends WholeImageFilter {
                 outPixels[index] = (inPixels[index] & 0xff000000) | (smooth(r) << 16) | (smooth(g) << 8) | smooth(b);
                 index++;
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
 
         finishProgressTracker();
@@ -129,7 +129,7 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
                 outPixels[outIndex] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
                 outIndex += height;
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
     }
 
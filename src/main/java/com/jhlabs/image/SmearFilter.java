@@ -19,10 +19,7 @@ package com.jhlabs.image;
 import pixelitor.ThreadPool;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Future;
 
 public class SmearFilter extends WholeImageFilter {
     public static final int CROSSES = 0;
@@ -144,7 +141,7 @@ public class SmearFilter extends WholeImageFilter {
                     outPixels[offset] = ImageMath.mixColors(mix, rgb2, rgb);
                 }
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
     }
 
@@ -154,20 +151,12 @@ public class SmearFilter extends WholeImageFilter {
 
         int numShapes = (int) (2 * density * width * height / 2);
 
-        int stride = numShapes / 100 + 1;
-        int estimatedWorkUnits = numShapes / stride;
-        pt = createProgressTracker(estimatedWorkUnits);
-
-        List<Future<?>> futures = new ArrayList<>(estimatedWorkUnits + 1);
-        for (int i = 0; i < numShapes; i = i + stride) {
-            Runnable r = () -> {
-                for (int j = 0; j < stride; j++) {
-                    renderOneLine(width, height, inPixels, outPixels, sin, cos);
-                }
-            };
-            futures.add(ThreadPool.submit(r));
-        }
-        ThreadPool.waitFor(futures, pt);
+        pt = createProgressTracker(numShapes);
+        ThreadPool.processRows(numShapes, distance, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                renderOneLine(width, height, inPixels, outPixels, sin, cos);
+            }
+        }, pt);
     }
 
     private void renderOneLine(int width, int height, int[] inPixels, int[] outPixels, float sin, float cos) {
@@ -254,13 +243,11 @@ public class SmearFilter extends WholeImageFilter {
         int numShapes = (int) (2 * density * width * height / radius);
 
         pt = createProgressTracker(numShapes);
-        Future<?>[] futures = new Future[numShapes];
-
-        for (int i = 0; i < numShapes; i++) {
-            Runnable r = () -> renderOneShape(width, height, inPixels, outPixels, radius, radius2);
-            futures[i] = ThreadPool.submit(r);
-        }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.processRows(numShapes, radius2, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                renderOneShape(width, height, inPixels, outPixels, radius, radius2);
+            }
+        }, pt);
     }
 
     private void renderOneShape(int width, int height, int[] inPixels, int[] outPixels, int radius, int radius2) {
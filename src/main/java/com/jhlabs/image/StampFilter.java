@@ -24,6 +24,7 @@ import java.awt.image.BufferedImage;
 public class StampFilter extends PointFilter {
     public static final int BOX3_BLUR = 2;
     public static final int GAUSSIAN_BLUR = 3;
+    public static final int FAST_GAUSSIAN_BLUR = 4;
     private int blurMethod = BOX3_BLUR;
 
     private float threshold;
@@ -151,6 +152,10 @@ public class StampFilter extends PointFilter {
             dst = new BoxBlurFilter(radius, radius, 3, filterName).filter(src, null);
         } else if (blurMethod == GAUSSIAN_BLUR) {
             dst = new GaussianFilter(radius, filterName).filter(src, null);
+        } else if (blurMethod == FAST_GAUSSIAN_BLUR) {
+            GaussianFilter gaussianFilter = new GaussianFilter(radius, filterName);
+            gaussianFilter.setMode(GaussianFilter.Mode.FAST);
+            dst = gaussianFilter.filter(src, null);
         } else {
             throw new IllegalStateException("blurMethod = " + blurMethod);
         }
@@ -89,12 +89,12 @@ public class UnsharpFilter extends GaussianFilter {
         //        src.getRGB(0, 0, width, height, inPixels, 0, width);
         getRGB(src, 0, 0, width, height, inPixels);
 
-        int[] outPixels = new int[width * height];
         if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, false, premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, width, height, pt);
         }
 
+        int[] outPixels = new int[width * height];
+
         // src.getRGB(0, 0, width, height, outPixels, 0, width);
         // TODO system.arraycopy would be even faster
         getRGB(src, 0, 0, width, height, outPixels);
@@ -173,7 +173,7 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
             }
             inIndex += width;
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
     }
 
@@ -23,6 +23,7 @@
 package org.jdesktop.swingx.painter.effects;
 
 import com.jhlabs.image.ImageMath;
+import pixelitor.ThreadPool;
 import pixelitor.colors.Colors;
 import pixelitor.filters.gui.UserPreset;
 
@@ -31,11 +32,14 @@ import java.awt.geom.Area;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.util.Objects;
 
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
 /**
  * The abstract base class for path effects. It takes care
  * of soft clipping and interpolating brush sizes and colors. Subclasses
@@ -51,6 +55,37 @@ public class AbstractAreaEffect implements AreaEffect {
     @Serial
     private static final long serialVersionUID = -9104855683480422662L;
 
+    /**
+     * The way the effect is rendered.
+     */
+    public enum Renderer {
+        /**
+         * Stroking the shape several times with increasing widths.
+         * The cost grows with the width and with the complexity of the shape.
+         */
+        STROKES("Strokes"),
+
+        /**
+         * Mapping the distances from the outline of the rasterized shape
+         * to colors. The cost depends only on the size of the shape.
+         */
+        DISTANCE_FIELD("Distance Field");
+
+        private final String displayName;
+
+        Renderer(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    // the number of distance field LUT entries per pixel
+    private static final int LUT_SCALE = 8;
+
     /**
      * Creates a new instance of AreaEffect
      */
@@ -66,6 +101,11 @@ public class AbstractAreaEffect implements AreaEffect {
 
     @Override
     public void apply(Graphics2D g, Shape clipShape, int width, int height) {
+        if (usesDistanceField()) {
+            apply(g, clipShape, DistanceField.calc(clipShape, calcDistanceFieldMargin()));
+            return;
+        }
+
         // opacity support added by lbalazscs
         Composite savedComposite = g.getComposite();
         if (opacity < 1.0f) {
@@ -154,6 +194,134 @@ public class AbstractAreaEffect implements AreaEffect {
         g.setComposite(savedComposite);
     }
 
+    /**
+     * Applies the given effects on the given shape. The effects using
+     * the distance field renderer share a single distance field.
+     */
+    public static void applyAll(AreaEffect[] effects, Graphics2D g,
+                                Shape shape, int width, int height) {
+        DistanceField field = null;
+        boolean fieldCalculated = false;
+        for (AreaEffect effect : effects) {
+            if (effect instanceof AbstractAreaEffect areaEffect && areaEffect.usesDistanceField()) {
+                if (!fieldCalculated) {
+                    field = DistanceField.calc(shape, calcMaxDistanceFieldMargin(effects));
+                    fieldCalculated = true;
+                }
+                areaEffect.apply(g, shape, field);
+            } else {
+                effect.apply(g, shape, width, height);
+            }
+        }
+    }
+
+    private static int calcMaxDistanceFieldMargin(AreaEffect[] effects) {
+        int max = 0;
+        for (AreaEffect effect : effects) {
+            if (effect instanceof AbstractAreaEffect areaEffect && areaEffect.usesDistanceField()) {
+                max = Math.max(max, areaEffect.calcDistanceFieldMargin());
+            }
+        }
+        return max;
+    }
+
+    // the effect has to be calculated this far from the shape
+    private int calcDistanceFieldMargin() {
+        double maxOffset = Math.max(Math.abs(offset.getX()), Math.abs(offset.getY()));
+        return (int) Math.ceil(getEffectReach() + maxOffset) + 2;
+    }
+
+    /**
+     * Applies the effect using the given (possibly shared) distance field
+     * of the shape. The field is assumed to extend far enough.
+     */
+    public void apply(Graphics2D g, Shape clipShape, DistanceField field) {
+        if (field == null) {
+            return; // empty shape
+        }
+        Rectangle bounds = field.getBounds();
+        int width = bounds.width;
+        int height = bounds.height;
+
+        int[] lut = createDistanceLut();
+        int lutSize = lut.length;
+
+        int dx = (int) Math.round(offset.getX());
+        int dy = (int) Math.round(offset.getY());
+        boolean inside = isRenderInsideShape();
+        boolean masked = isShapeMasked();
+        boolean fill = isShouldFillShape();
+        int fillRGB = brushColor.getRGB() & 0x00_FF_FF_FF;
+        float fillAlpha = brushColor.getAlpha() / 255.0f;
+
+        // the effect is calculated at the field positions, and it's
+        // shifted by the offset, but the mask isn't shifted
+        var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        ThreadPool.processRows(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    int lutIndex = (int) (field.getDistance(i) * LUT_SCALE);
+                    int argb = lutIndex < lutSize ? lut[lutIndex] : 0;
+                    float alpha = (argb >>> 24) / 255.0f;
+                    if (fill) {
+                        float coverage = field.getCoverage(i);
+                        float core = fillAlpha * (inside ? 1 - coverage : coverage);
+                        alpha = 1 - (1 - core) * (1 - alpha);
+                        argb = fillRGB;
+                    }
+                    if (masked) {
+                        float maskCoverage = field.getCoverage(x + dx, y + dy);
+                        alpha *= inside ? maskCoverage : 1 - maskCoverage;
+                    }
+                    pixels[i] = ((int) (alpha * 255 + 0.5f) << 24) | (argb & 0x00_FF_FF_FF);
+                }
+            }
+        }, NULL_TRACKER);
+
+        Composite savedComposite = g.getComposite();
+        if (opacity < 1.0f) {
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        }
+        g.drawImage(img, bounds.x + dx, bounds.y + dy, null);
+        g.setComposite(savedComposite);
+    }
+
+    private int[] createDistanceLut() {
+        int[] lut = new int[(int) Math.ceil(getEffectReach() * LUT_SCALE) + 1];
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = getDistanceFieldColor((i + 0.5) / LUT_SCALE);
+        }
+        return lut;
+    }
+
+    /**
+     * Returns the maximal distance from the outline
+     * that is affected by the distance field renderer.
+     */
+    protected double getEffectReach() {
+        return effectWidthDouble / 2 + 1;
+    }
+
+    /**
+     * Returns the ARGB color of the distance field renderer at the
+     * given distance from the outline. The default implementation
+     * reproduces the accumulated alpha of the strokes painted by
+     * {@link #paintBorderGlow}: at a given distance only the strokes
+     * wider than twice the distance are painted.
+     */
+    protected int getDistanceFieldColor(double distance) {
+        int steps = Math.max(1, getBrushSteps());
+        double numCoveringSteps = steps * (1 - 2 * distance / effectWidthDouble);
+        if (numCoveringSteps <= 0) {
+            return 0;
+        }
+        double strokesAlpha = 1 - Math.pow(1 - 1.0 / steps, Math.min(numCoveringSteps, steps));
+        double alpha = strokesAlpha * brushColor.getAlpha() / 255.0;
+        return ((int) (alpha * 255 + 0.5) << 24) | (brushColor.getRGB() & 0x00_FF_FF_FF);
+    }
+
     private transient BufferedImage _clipImage = null;
 
     protected BufferedImage getClipImage(final Rectangle effectBounds) {
@@ -484,6 +652,25 @@ public class AbstractAreaEffect implements AreaEffect {
             Boolean.valueOf(shapeMasked));
     }
 
+    /**
+     * Null when deserialized from older pixelitor versions.
+     */
+    private Renderer renderer = Renderer.STROKES;
+
+    public Renderer getRenderer() {
+        return renderer == null ? Renderer.STROKES : renderer;
+    }
+
+    public void setRenderer(Renderer renderer) {
+        Renderer oldRenderer = getRenderer();
+        this.renderer = renderer;
+        propertyChangeSupport.firePropertyChange("renderer", oldRenderer, renderer);
+    }
+
+    public boolean usesDistanceField() {
+        return getRenderer() == Renderer.DISTANCE_FIELD;
+    }
+
     protected float opacity = 1.0f;
 
     // opacity support added by lbalazscs
@@ -509,6 +696,7 @@ public class AbstractAreaEffect implements AreaEffect {
             renderInsideShape == that.renderInsideShape &&
             shouldFillShape == that.shouldFillShape &&
             shapeMasked == that.shapeMasked &&
+            getRenderer() == that.getRenderer() &&
             Float.compare(that.opacity, opacity) == 0 &&
             brushColor.equals(that.brushColor) &&
             Objects.equals(offset, that.offset);
@@ -518,7 +706,7 @@ public class AbstractAreaEffect implements AreaEffect {
     public int hashCode() {
         return Objects.hash(brushColor, brushSteps,
             effectWidthDouble, renderInsideShape, offset,
-            shouldFillShape, shapeMasked, opacity);
+            shouldFillShape, shapeMasked, opacity, getRenderer());
     }
 
     public Color interpolateBrushColor(Color endColor, double progress) {
@@ -537,6 +725,7 @@ public class AbstractAreaEffect implements AreaEffect {
         preset.putColor(keyPrefix + "Color", this.brushColor);
         preset.putFloat(keyPrefix + "Opacity", opacity);
         preset.putFloat(keyPrefix + "Width", (float) this.effectWidthDouble);
+        preset.put(keyPrefix + "Renderer", getRenderer().toString());
 
         if (includeOffset) {
             preset.putFloat(keyPrefix + "OffsetX", (float) offset.getX());
@@ -549,6 +738,7 @@ public class AbstractAreaEffect implements AreaEffect {
         setOpacity(preset.getFloat(keyPrefix + "Opacity", 1.0f));
         setEffectWidth(preset.getFloat(keyPrefix + "Width"));
         setAutoBrushSteps();
+        setRenderer(preset.getEnum(keyPrefix + "Renderer", Renderer.class));
 
         if (checkOffset) {
             double offsetX = preset.getFloat(keyPrefix + "OffsetX");
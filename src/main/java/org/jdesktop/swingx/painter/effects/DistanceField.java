@@ -0,0 +1,249 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.painter.effects;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_STROKE_CONTROL;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_STROKE_PURE;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * The antialiased coverage of a rasterized shape and the distance
+ * of each pixel from the outline of the shape. The distances are
+ * calculated with the linear-time Euclidean distance transform
+ * of Felzenszwalb and Huttenlocher, so the cost doesn't depend on
+ * the complexity of the shape or on the width of the effects.
+ *
+ * A distance field is immutable, and it can be shared by all the
+ * distance-based effects of the same shape.
+ */
+public final class DistanceField {
+    private static final double INF = 1.0e20;
+
+    // the pixel bounds of the field in user space
+    private final Rectangle bounds;
+
+    // the antialiased coverage of the shape (0..255)
+    private final byte[] coverage;
+
+    // the distances from the outline in pixels
+    private final float[] distances;
+
+    private DistanceField(Rectangle bounds, byte[] coverage, float[] distances) {
+        this.bounds = bounds;
+        this.coverage = coverage;
+        this.distances = distances;
+    }
+
+    /**
+     * Calculates the distance field of the given shape, extending
+     * its bounds by the given margin on each side. Returns null
+     * if the shape is empty.
+     */
+    public static DistanceField calc(Shape shape, int margin) {
+        Rectangle2D shapeBounds = shape.getBounds2D();
+        if (shapeBounds.isEmpty()) {
+            return null;
+        }
+        int x = (int) Math.floor(shapeBounds.getMinX()) - margin;
+        int y = (int) Math.floor(shapeBounds.getMinY()) - margin;
+        int width = (int) Math.ceil(shapeBounds.getMaxX()) + margin - x;
+        int height = (int) Math.ceil(shapeBounds.getMaxY()) + margin - y;
+        var bounds = new Rectangle(x, y, width, height);
+
+        byte[] coverage = rasterize(shape, bounds);
+        float[] distances = calcDistances(coverage, width, height);
+        return new DistanceField(bounds, coverage, distances);
+    }
+
+    private static byte[] rasterize(Shape shape, Rectangle bounds) {
+        var img = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(KEY_STROKE_CONTROL, VALUE_STROKE_PURE);
+        g.translate(-bounds.x, -bounds.y);
+        g.setColor(Color.WHITE);
+        g.fill(shape);
+        g.dispose();
+        return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * The outline is represented by the boundary pixels: the partially
+     * covered ones and the ones with a neighbor on the other side.
+     * The distance of a boundary pixel is estimated from its coverage,
+     * the others get the distance to the nearest boundary pixel.
+     */
+    private static float[] calcDistances(byte[] coverage, int width, int height) {
+        float[] grid = new float[width * height];
+        ThreadPool.processRows(height, width, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    grid[i] = isBoundary(coverage, width, height, x, y) ? 0 : (float) INF;
+                }
+            }
+        }, NULL_TRACKER);
+
+        // the 2D squared distance transform is separable into
+        // a transform of the columns followed by the rows
+        ThreadPool.processRows(width, height, (startCol, endCol) -> {
+            double[] f = new double[height];
+            double[] d = new double[height];
+            int[] v = new int[height];
+            double[] z = new double[height + 1];
+            for (int x = startCol; x < endCol; x++) {
+                for (int y = 0; y < height; y++) {
+                    f[y] = grid[y * width + x];
+                }
+                transform1D(f, d, v, z, height);
+                for (int y = 0; y < height; y++) {
+                    grid[y * width + x] = (float) d[y];
+                }
+            }
+        }, NULL_TRACKER);
+
+        ThreadPool.processRows(height, width, (startRow, endRow) -> {
+            double[] f = new double[width];
+            double[] d = new double[width];
+            int[] v = new int[width];
+            double[] z = new double[width + 1];
+            for (int y = startRow; y < endRow; y++) {
+                int rowStart = y * width;
+                for (int x = 0; x < width; x++) {
+                    f[x] = grid[rowStart + x];
+                }
+                transform1D(f, d, v, z, width);
+                for (int x = 0; x < width; x++) {
+                    int i = rowStart + x;
+                    if (d[x] == 0) {
+                        // a boundary pixel: the outline goes through the
+                        // center if it is half covered, and through the
+                        // edge of the pixel if it's fully (un)covered
+                        int c = coverage[i] & 0xFF;
+                        grid[i] = Math.abs(c - 127.5f) / 255.0f;
+                    } else {
+                        // the outline is on average half a
+                        // pixel beyond the nearest boundary pixel
+                        grid[i] = (float) Math.sqrt(d[x]) + 0.5f;
+                    }
+                }
+            }
+        }, NULL_TRACKER);
+        return grid;
+    }
+
+    private static boolean isBoundary(byte[] coverage, int width, int height, int x, int y) {
+        int i = y * width + x;
+        int c = coverage[i] & 0xFF;
+        if (c != 0 && c != 255) {
+            return true;
+        }
+        boolean inside = c >= 128;
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                if (isInside(coverage, ny * width + nx) != inside) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInside(byte[] coverage, int index) {
+        return (coverage[index] & 0xFF) >= 128;
+    }
+
+    /**
+     * The 1D squared distance transform of a sampled function,
+     * calculated as the lower envelope of parabolas.
+     */
+    private static void transform1D(double[] f, double[] d, int[] v, double[] z, int n) {
+        int k = 0; // the index of the rightmost parabola in the envelope
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            // the intersection of the parabolas from q and v[k],
+            // the parabolas hidden by the new one are removed
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INF;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            int vk = v[k];
+            d[q] = (q - vk) * (double) (q - vk) + f[vk];
+        }
+    }
+
+    private static double intersection(double[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+    }
+
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns the distance from the outline at the given field index.
+     */
+    public float getDistance(int index) {
+        return distances[index];
+    }
+
+    /**
+     * Returns the coverage (0..1) of the shape at the given field
+     * index.
+     */
+    public float getCoverage(int index) {
+        return (coverage[index] & 0xFF) / 255.0f;
+    }
+
+    /**
+     * Returns the coverage (0..1) of the shape at the given field
+     * coordinates, which might be outside the field.
+     */
+    public float getCoverage(int x, int y) {
+        if (x < 0 || y < 0 || x >= bounds.width || y >= bounds.height) {
+            return 0;
+        }
+        return getCoverage(y * bounds.width + x);
+    }
+}
@@ -54,6 +54,12 @@ public class InnerGlowPathEffect extends AbstractAreaEffect {
     // copied the entire method from the superclass in order to safely fix issue #63
     @Override
     public void apply(Graphics2D g, Shape clipShape, int width, int height) {
+        if (usesDistanceField()) {
+            // the distance field renderer handles the inner effects
+            super.apply(g, clipShape, width, height);
+            return;
+        }
+
         // opacity support added by lbalazscs
         Composite savedComposite = g.getComposite();
         if (opacity < 1.0f) {
@@ -95,24 +95,11 @@ public class NeonBorderEffect extends AbstractAreaEffect {
         */
         gfx.translate(getOffset().getX(), getOffset().getY());
         gfx.setComposite(AlphaComposite.SrcOver);
-        int steps = getEffectWidthInt();
-        if (borderPosition == BorderPosition.Centered) {
-            steps = steps / 2;
-        }
+        int steps = getNumSteps();
         for (int i = 0; i < steps; i++) {
             // make the brush width smaller each time until there is nothing left
             float brushWidth = steps + 1 - i;
-            float half = steps / 2.0f;
-
-            if (borderPosition == BorderPosition.Centered) {
-                gfx.setPaint(interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor()));
-            } else {
-                if (i < half) {
-                    gfx.setPaint(interpolateColor((half - i) / half, getEdgeColor(), getCenterColor()));
-                } else {
-                    gfx.setPaint(interpolateColor((i - half) / half, getEdgeColor(), getCenterColor()));
-                }
-            }
+            gfx.setPaint(getStepColor(i, steps));
 
             // to make the effect softer use a different stroke
             gfx.setStroke(new BasicStroke(brushWidth,
@@ -124,6 +111,51 @@ public class NeonBorderEffect extends AbstractAreaEffect {
 
     }
 
+    private int getNumSteps() {
+        int steps = getEffectWidthInt();
+        if (borderPosition == BorderPosition.Centered) {
+            steps = steps / 2;
+        }
+        return steps;
+    }
+
+    private Color getStepColor(int i, int steps) {
+        if (borderPosition == BorderPosition.Centered) {
+            return interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor());
+        }
+        float half = steps / 2.0f;
+        if (i < half) {
+            return interpolateColor((half - i) / half, getEdgeColor(), getCenterColor());
+        } else {
+            return interpolateColor((i - half) / half, getEdgeColor(), getCenterColor());
+        }
+    }
+
+    @Override
+    protected double getEffectReach() {
+        return (getNumSteps() + 1) / 2.0 + 1;
+    }
+
+    /**
+     * The color of the narrowest stroke that reaches the given distance,
+     * because the strokes are painted over each other from the widest one.
+     */
+    @Override
+    protected int getDistanceFieldColor(double distance) {
+        int steps = getNumSteps();
+        // a stroke with the index i reaches (steps + 1 - i) / 2
+        int narrowest = Math.min(steps - 1, (int) Math.ceil(steps + 1 - 2 * distance) - 1);
+        if (narrowest < 0) {
+            return 0;
+        }
+        Color color = getStepColor(narrowest, steps);
+
+        // antialiasing at the outer edge of the widest stroke
+        double edgeAlpha = Math.min(1, (steps + 1) / 2.0 - distance + 0.5);
+        int alpha = (int) (color.getAlpha() * edgeAlpha + 0.5);
+        return (alpha << 24) | (color.getRGB() & 0x00_FF_FF_FF);
+    }
+
     private static Color interpolateColor(float t, Color start, Color end) {
         float[] partsS = start.getRGBComponents(null);
         float[] partsE = end.getRGBComponents(null);
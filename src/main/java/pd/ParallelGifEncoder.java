@@ -0,0 +1,527 @@
+/*
+ * Based on AnimatedGifEncoder by Kevin Weiner, FM Software.
+ *
+ * This file is in public domain.
+ */
+
+package pd;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Encodes an animated GIF file like {@link AnimatedGifEncoder}, but the
+ * color quantization and the LZW compression of the frames run in
+ * parallel on the thread pool, while a dedicated writer thread writes
+ * the finished frames in order.
+ * <p>
+ * Only the rectangle that changed since the previous frame is encoded,
+ * and the rest of the previous frame is left in place by the
+ * "do not dispose" disposal method.
+ * <p>
+ * By default each frame has its own palette. Optionally a single global
+ * palette can be computed from a sample of the frames, which makes
+ * the files smaller, but the colors of the later frames are approximated
+ * with it even if they change a lot during the animation.
+ *
+ * <pre>
+ *  Example:
+ *     ParallelGifEncoder e = new ParallelGifEncoder(outputFile);
+ *     e.setDelay(1000);   // 1 frame per sec
+ *     e.addFrame(image1);
+ *     e.addFrame(image2);
+ *     e.finish();
+ * </pre>
+ */
+public class ParallelGifEncoder {
+    private static final int DISPOSE_DO_NOT_DISPOSE = 1;
+    private static final int PAL_SIZE = 7; // color table size (bits-1)
+
+    // a marker which signals the end of the frames to the writer thread
+    private static final Future<EncodedFrame> END = CompletableFuture.completedFuture(null);
+
+    private final File file;
+    private final OutputStream out;
+
+    private int width; // image size, taken from the first frame
+    private int height;
+    private int repeat = 0; // repeat indefinitely
+    private int delay = 0; // frame delay (hundredths)
+    private int sample = 10; // sample interval for the quantizer
+
+    // the number of frames used to calculate the global palette,
+    // or 0 if each frame has its own palette
+    private int numPaletteFrames = 0;
+    private NeuQuant globalQuant;
+    private byte[] globalColorTab;
+    private final List<PendingFrame> paletteFrames = new ArrayList<>();
+
+    // the BGR pixels of the previously added frame
+    private byte[] prevPixels;
+    private boolean firstFrame = true;
+
+    // limits the number of frames that are added, but not yet written
+    private final Semaphore inFlight;
+    private final BlockingQueue<Future<EncodedFrame>> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile Exception writeError;
+    private volatile boolean cancelled = false;
+
+    public ParallelGifEncoder(File file) throws IOException {
+        this(file, ThreadPool.NUM_CORES + 2);
+    }
+
+    public ParallelGifEncoder(File file, int maxFramesInFlight) throws IOException {
+        this.file = file;
+        out = new BufferedOutputStream(new FileOutputStream(file));
+        writeString("GIF89a"); // header
+
+        inFlight = new Semaphore(maxFramesInFlight);
+        writerThread = new Thread(this::writeLoop, "GIF Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Sets the delay time between each frame, or changes it for subsequent frames.
+     *
+     * @param ms int delay time in milliseconds
+     */
+    public void setDelay(int ms) {
+        delay = Math.round(ms / 10.0f);
+    }
+
+    /**
+     * Sets the number of times the set of GIF frames should be played.
+     * Default is 0, which means play indefinitely. Must be invoked
+     * before the first image is added.
+     */
+    public void setRepeat(int iter) {
+        if (iter >= 0) {
+            repeat = iter;
+        }
+    }
+
+    /**
+     * Sets quality of color quantization, see {@link AnimatedGifEncoder#setQuality}.
+     */
+    public void setQuality(int quality) {
+        sample = Math.max(1, quality);
+    }
+
+    /**
+     * Uses a single palette for all frames, calculated from the given
+     * number of first frames. Must be invoked before the first image is added.
+     */
+    public void setGlobalPalette(int numSampleFrames) {
+        if (!firstFrame) {
+            throw new IllegalStateException("frames were already added");
+        }
+        numPaletteFrames = Math.max(0, numSampleFrames);
+    }
+
+    /**
+     * Uses a single palette for all frames, calculated from the given
+     * sample frames, which are processed one at a time, so they don't
+     * have to be in memory together. They must have the size of the
+     * animation. Must be invoked before the first image is added.
+     */
+    public void setGlobalPalette(Iterator<BufferedImage> sampleFrames, int numSampleFrames) {
+        if (!firstFrame) {
+            throw new IllegalStateException("frames were already added");
+        }
+        byte[] samples = null;
+        for (int i = 0; i < numSampleFrames && sampleFrames.hasNext(); i++) {
+            BufferedImage frame = sampleFrames.next();
+            if (samples == null) {
+                width = frame.getWidth();
+                height = frame.getHeight();
+                samples = new byte[width * height * 3];
+            }
+            addToPaletteSample(samples, getImagePixels(frame), i, numSampleFrames);
+        }
+        if (samples != null) {
+            calcGlobalPalette(samples);
+        }
+    }
+
+    /**
+     * Adds the next frame. The frame is encoded asynchronously, but this
+     * method blocks if too many frames are waiting to be written.
+     * The image is not referenced after this method returns.
+     */
+    public void addFrame(BufferedImage im) throws IOException {
+        checkWriteError();
+        if (firstFrame && globalQuant == null) {
+            width = im.getWidth();
+            height = im.getHeight();
+        }
+        byte[] pixels = getImagePixels(im);
+        PendingFrame frame = new PendingFrame(pixels, prevPixels, delay, firstFrame);
+        prevPixels = pixels;
+        firstFrame = false;
+
+        if (numPaletteFrames > 0 && globalQuant == null) {
+            paletteFrames.add(frame);
+            if (paletteFrames.size() == numPaletteFrames) {
+                submitPaletteFrames();
+            }
+        } else {
+            submit(frame);
+        }
+    }
+
+    /**
+     * Waits until all frames are written, and closes the file.
+     */
+    public void finish() throws IOException {
+        if (!paletteFrames.isEmpty()) {
+            // there were fewer frames than the palette sample size
+            submitPaletteFrames();
+        }
+        writeQueue.add(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        checkWriteError();
+    }
+
+    /**
+     * Stops the writing and deletes the file.
+     */
+    public void cancel() {
+        cancelled = true;
+        paletteFrames.clear();
+        writeQueue.add(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.delete();
+    }
+
+    private void submitPaletteFrames() throws IOException {
+        int numFrames = paletteFrames.size();
+        byte[] samples = new byte[width * height * 3];
+        for (int i = 0; i < numFrames; i++) {
+            addToPaletteSample(samples, paletteFrames.get(i).pixels, i, numFrames);
+        }
+        calcGlobalPalette(samples);
+
+        for (PendingFrame frame : paletteFrames) {
+            submit(frame);
+        }
+        paletteFrames.clear();
+    }
+
+    private void calcGlobalPalette(byte[] samples) {
+        globalQuant = new NeuQuant(samples, samples.length, sample);
+        globalColorTab = bgrToRgb(globalQuant.process());
+    }
+
+    /**
+     * Copies every n-th pixel of a frame into the frame-sized sample,
+     * so that in the end it contains pixels from all the n frames.
+     */
+    private static void addToPaletteSample(byte[] samples, byte[] framePixels,
+                                           int frameIndex, int numFrames) {
+        for (int i = frameIndex * 3; i < samples.length; i += numFrames * 3) {
+            System.arraycopy(framePixels, i, samples, i, 3);
+        }
+    }
+
+    private void submit(PendingFrame frame) throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        checkWriteError();
+
+        NeuQuant quant = globalQuant;
+        byte[] colorTab = globalColorTab;
+        writeQueue.add(ThreadPool.submit2(() -> encode(frame, quant, colorTab)));
+    }
+
+    private void checkWriteError() throws IOException {
+        if (writeError instanceof IOException ioe) {
+            throw ioe;
+        } else if (writeError != null) {
+            throw new IOException(writeError);
+        }
+    }
+
+    /**
+     * Run by the writer thread: writes the encoded frames in order.
+     */
+    private void writeLoop() {
+        try {
+            boolean headerWritten = false;
+            while (true) {
+                Future<EncodedFrame> future = writeQueue.take();
+                if (future == END || cancelled) {
+                    break;
+                }
+                EncodedFrame frame = future.get();
+                if (!headerWritten) {
+                    writeLSD(); // logical screen descriptor
+                    writePalette(out, frame.globalColorTab); // global color table
+                    writeNetscapeExt();
+                    headerWritten = true;
+                }
+                out.write(frame.data);
+                inFlight.release();
+            }
+            if (!cancelled) {
+                out.write(0x3b); // gif trailer
+            }
+        } catch (ExecutionException e) {
+            writeError = e.getCause() instanceof Exception cause ? cause : e;
+        } catch (Exception e) {
+            writeError = e;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (writeError == null) {
+                    writeError = e;
+                }
+            }
+            if (writeError != null) {
+                // don't let addFrame wait for a writer that stopped
+                inFlight.release(Integer.MAX_VALUE / 2);
+            }
+        }
+    }
+
+    /**
+     * Quantizes and compresses a frame. Runs on the thread pool.
+     */
+    private EncodedFrame encode(PendingFrame frame, NeuQuant quant, byte[] colorTab) throws IOException {
+        Rectangle rect = frame.first
+            ? new Rectangle(0, 0, width, height)
+            : calcChangedBounds(frame.pixels, frame.prevPixels);
+        byte[] rectPixels = getRectPixels(frame.pixels, rect);
+
+        boolean localPalette = quant == null;
+        if (localPalette) {
+            quant = new NeuQuant(rectPixels, rectPixels.length, sample);
+            colorTab = bgrToRgb(quant.process());
+        }
+
+        int numPixels = rect.width * rect.height;
+        byte[] indexedPixels = new byte[numPixels];
+        int k = 0;
+        for (int i = 0; i < numPixels; i++) {
+            indexedPixels[i] = (byte) quant.map(rectPixels[k++] & 0xff,
+                rectPixels[k++] & 0xff, rectPixels[k++] & 0xff);
+        }
+
+        var data = new ByteArrayOutputStream(numPixels / 2 + 1024);
+        writeGraphicCtrlExt(data, frame.delay);
+        // the first frame uses its palette as the global color table
+        boolean writeLCT = localPalette && !frame.first;
+        writeImageDesc(data, rect, writeLCT);
+        if (writeLCT) {
+            writePalette(data, colorTab);
+        }
+        new LZWEncoder(rect.width, rect.height, indexedPixels, 8).encode(data);
+
+        return new EncodedFrame(frame.first ? colorTab : null, data.toByteArray());
+    }
+
+    /**
+     * Returns the bounds of the pixels that are different in the two
+     * frames, or a 1x1 rectangle if the frames are identical,
+     * because each frame must contain at least one pixel.
+     */
+    private Rectangle calcChangedBounds(byte[] pixels, byte[] prevPixels) {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * width * 3;
+            int x = 0;
+            // find the first changed pixel in the row
+            while (x < width && samePixel(pixels, prevPixels, rowStart + x * 3)) {
+                x++;
+            }
+            if (x == width) {
+                continue;
+            }
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxY = y;
+
+            // find the last changed pixel in the row
+            int lastX = width - 1;
+            while (lastX > maxX && samePixel(pixels, prevPixels, rowStart + lastX * 3)) {
+                lastX--;
+            }
+            maxX = Math.max(maxX, lastX);
+        }
+        if (maxX < 0) {
+            return new Rectangle(0, 0, 1, 1);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private static boolean samePixel(byte[] a, byte[] b, int index) {
+        return a[index] == b[index]
+            && a[index + 1] == b[index + 1]
+            && a[index + 2] == b[index + 2];
+    }
+
+    private byte[] getRectPixels(byte[] pixels, Rectangle rect) {
+        if (rect.width == width && rect.height == height) {
+            return pixels;
+        }
+        int rowBytes = rect.width * 3;
+        byte[] rectPixels = new byte[rowBytes * rect.height];
+        for (int y = 0; y < rect.height; y++) {
+            int srcPos = ((rect.y + y) * width + rect.x) * 3;
+            System.arraycopy(pixels, srcPos, rectPixels, y * rowBytes, rowBytes);
+        }
+        return rectPixels;
+    }
+
+    /**
+     * Returns the image pixels as a new BGR byte array with the size of the first frame.
+     */
+    private byte[] getImagePixels(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (w == width && h == height && image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            return Arrays.copyOf(data, data.length);
+        }
+        BufferedImage temp = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = temp.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return ((DataBufferByte) temp.getRaster().getDataBuffer()).getData();
+    }
+
+    private static byte[] bgrToRgb(byte[] colorTab) {
+        for (int i = 0; i < colorTab.length; i += 3) {
+            byte temp = colorTab[i];
+            colorTab[i] = colorTab[i + 2];
+            colorTab[i + 2] = temp;
+        }
+        return colorTab;
+    }
+
+    /**
+     * Writes Graphic Control Extension
+     */
+    private static void writeGraphicCtrlExt(OutputStream os, int delay) throws IOException {
+        os.write(0x21); // extension introducer
+        os.write(0xf9); // GCE label
+        os.write(4); // data block size
+        os.write(DISPOSE_DO_NOT_DISPOSE << 2); // packed fields: disposal, no transparency
+        writeShort(os, delay); // delay x 1/100 sec
+        os.write(0); // transparent color index
+        os.write(0); // block terminator
+    }
+
+    /**
+     * Writes Image Descriptor
+     */
+    private static void writeImageDesc(OutputStream os, Rectangle rect, boolean localColorTable) throws IOException {
+        os.write(0x2c); // image separator
+        writeShort(os, rect.x); // image position
+        writeShort(os, rect.y);
+        writeShort(os, rect.width); // image size
+        writeShort(os, rect.height);
+        // packed fields
+        os.write(localColorTable ? 0x80 | PAL_SIZE : 0);
+    }
+
+    /**
+     * Writes Logical Screen Descriptor
+     */
+    private void writeLSD() throws IOException {
+        // logical screen size
+        writeShort(out, width);
+        writeShort(out, height);
+        // packed fields
+        out.write((0x80 | // 1 : global color table flag = 1 (gct used)
+            0x70 | // 2-4 : color resolution = 7
+            0x00 | // 5 : gct sort flag = 0
+            PAL_SIZE)); // 6-8 : gct size
+
+        out.write(0); // background color index
+        out.write(0); // pixel aspect ratio - assume 1:1
+    }
+
+    /**
+     * Writes Netscape application extension to define repeat count.
+     */
+    private void writeNetscapeExt() throws IOException {
+        out.write(0x21); // extension introducer
+        out.write(0xff); // app extension label
+        out.write(11); // block size
+        writeString("NETSCAPE" + "2.0"); // app id + auth code
+        out.write(3); // sub-block size
+        out.write(1); // loop sub-block id
+        writeShort(out, repeat); // loop count (extra iterations, 0=repeat forever)
+        out.write(0); // block terminator
+    }
+
+    /**
+     * Writes color table
+     */
+    private static void writePalette(OutputStream os, byte[] colorTab) throws IOException {
+        os.write(colorTab, 0, colorTab.length);
+        int n = (3 * 256) - colorTab.length;
+        for (int i = 0; i < n; i++) {
+            os.write(0);
+        }
+    }
+
+    /**
+     * Write 16-bit value to output stream, LSB first
+     */
+    private static void writeShort(OutputStream os, int value) throws IOException {
+        os.write(value & 0xff);
+        os.write((value >> 8) & 0xff);
+    }
+
+    /**
+     * Writes string to output stream
+     */
+    private void writeString(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            out.write((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * A frame that was added, but not yet encoded.
+     */
+    private record PendingFrame(byte[] pixels, byte[] prevPixels, int delay, boolean first) {
+    }
+
+    /**
+     * An encoded frame with all its blocks, and the
+     * global color table if it's the first frame.
+     */
+    private record EncodedFrame(byte[] globalColorTab, byte[] data) {
+    }
+}
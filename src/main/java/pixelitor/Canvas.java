@@ -85,8 +85,10 @@ public class Canvas implements Serializable, Debuggable {
         height = newHeight;
 
         thumbDimension = null; // invalidate cache
-        recalcCoSize(view, notify); // update the component space values
-        activeCanvasSizeChanged(this);
+        if (view != null) { // null during the command-line batch processing
+            recalcCoSize(view, notify); // update the component space values
+            activeCanvasSizeChanged(this);
+        }
     }
 
     /**
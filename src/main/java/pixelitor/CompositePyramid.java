@@ -0,0 +1,519 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.layers.CachedImage;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.debug.DebugNode;
+
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * A mipmap pyramid of the composite image: each level is half
+ * as wide and high as the previous one, the first level being
+ * the composite image itself. When zoomed out, the views draw
+ * the level closest to the zoom, so that Java2D doesn't have to
+ * resample the whole composite image at each repaint.
+ *
+ * The levels are divided into tiles like the composite image.
+ * The dirty tiles are regenerated on a background thread, and until
+ * they are ready, the corresponding parts of the composite image are
+ * drawn directly. The memory of the levels is managed by the
+ * {@link pixelitor.layers.ImageCacheManager}, and the evicted
+ * levels are rebuilt when they are needed again.
+ *
+ * All the methods must be called on the EDT.
+ */
+class CompositePyramid {
+    private static final int TILE_SIZE = TiledCompositeCache.TILE_SIZE;
+
+    // Regenerating all levels of a 6000x4000 composite takes about
+    // 100-150 ms of background work, while a nearest-neighbor repaint
+    // at 50% zoom is about 9 ms faster from the first level than from
+    // the composite (less at smaller zooms). Therefore, after the whole
+    // composite changed, the levels are built only if the composite is
+    // repainted several times without changing, for example while scrolling.
+    static final int MIN_PAINTS_BEFORE_USE = 10;
+
+    // Not the ThreadPool, because the levels are
+    // regenerated in parallel with ThreadPool.processRows.
+    private static final Executor defaultBuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "composite-pyramid");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // runs the level updates
+    private final Executor builder;
+
+    // runs the completion of the level updates on the EDT
+    private final Executor edt;
+
+    // levels.get(i) is the level i + 1, created when first needed
+    private final List<Level> levels = new ArrayList<>();
+
+    // the composite image the levels were calculated from
+    private BufferedImage base;
+
+    // the number of paints since the whole composite changed
+    private int numPaints;
+
+    // true while the builder is regenerating tiles
+    private boolean updateRunning;
+
+    // set if an update failed, after which the composite is always drawn directly
+    private boolean failed;
+
+    // called after an update made new tiles available
+    private Runnable onLevelsUpdated = () -> {
+    };
+
+    CompositePyramid() {
+        this(defaultBuilder, EventQueue::invokeLater);
+    }
+
+    CompositePyramid(Executor builder, Executor edt) {
+        this.builder = builder;
+        this.edt = edt;
+    }
+
+    /**
+     * Draws the visible part of the given composite image on the given
+     * image-space graphics, which has the given scaling factor.
+     * If some needed tiles are regenerated in the background, then
+     * the given callback is run on the EDT when they are ready.
+     */
+    void paint(Graphics2D g, BufferedImage composite, double scaling, Runnable onLevelsUpdated) {
+        this.onLevelsUpdated = onLevelsUpdated;
+        if (composite != base) {
+            // the composite image was replaced without an invalidation
+            invalidateAll();
+            base = composite;
+        }
+
+        int width = composite.getWidth();
+        int height = composite.getHeight();
+        Rectangle region = new Rectangle(0, 0, width, height);
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            region = region.intersection(clip);
+        }
+        if (region.isEmpty()) {
+            return;
+        }
+
+        int levelIndex = calcLevelIndex(scaling, width, height);
+        if (numPaints < MIN_PAINTS_BEFORE_USE) {
+            numPaints++;
+        }
+        if (levelIndex == 0 || numPaints < MIN_PAINTS_BEFORE_USE || failed) {
+            drawComposite(g, composite, region);
+            return;
+        }
+
+        Level level = getLevel(levelIndex);
+        int factor = 1 << levelIndex;
+        int firstCol = region.x / factor / TILE_SIZE;
+        int lastCol = (ceilDiv(region.x + region.width, factor) - 1) / TILE_SIZE;
+        int firstRow = region.y / factor / TILE_SIZE;
+        int lastRow = (ceilDiv(region.y + region.height, factor) - 1) / TILE_SIZE;
+
+        // consecutive tiles in a tile row with the same state are drawn together:
+        // the clean ones from the level, the dirty ones from the composite
+        boolean needsUpdate = false;
+        BufferedImage levelImage = level.getImageForDrawing();
+        for (int row = firstRow; row <= lastRow; row++) {
+            int col = firstCol;
+            while (col <= lastCol) {
+                boolean dirty = level.dirtyTiles.get(row * level.numCols + col);
+                int runEnd = col + 1;
+                while (runEnd <= lastCol && level.dirtyTiles.get(row * level.numCols + runEnd) == dirty) {
+                    runEnd++;
+                }
+                Rectangle run = new Rectangle(col * TILE_SIZE * factor, row * TILE_SIZE * factor,
+                    (runEnd - col) * TILE_SIZE * factor, TILE_SIZE * factor).intersection(region);
+                if (dirty) {
+                    needsUpdate = true;
+                    drawComposite(g, composite, run);
+                } else {
+                    drawLevel(g, levelImage, factor, run, width, height);
+                }
+                col = runEnd;
+            }
+        }
+
+        if (needsUpdate && !updateRunning) {
+            startUpdate(levelIndex);
+        }
+    }
+
+    private static void drawComposite(Graphics2D g, BufferedImage composite, Rectangle region) {
+        g.drawImage(composite,
+            region.x, region.y, region.x + region.width, region.y + region.height,
+            region.x, region.y, region.x + region.width, region.y + region.height, null);
+    }
+
+    private static void drawLevel(Graphics2D g, BufferedImage levelImage, int factor,
+                                  Rectangle region, int width, int height) {
+        int sx1 = region.x / factor;
+        int sy1 = region.y / factor;
+        int sx2 = Math.min(ceilDiv(region.x + region.width, factor), levelImage.getWidth());
+        int sy2 = Math.min(ceilDiv(region.y + region.height, factor), levelImage.getHeight());
+
+        // the last level pixels can extend beyond the canvas
+        Shape origClip = g.getClip();
+        g.clipRect(0, 0, width, height);
+        g.drawImage(levelImage,
+            sx1 * factor, sy1 * factor, sx2 * factor, sy2 * factor,
+            sx1, sy1, sx2, sy2, null);
+        g.setClip(origClip);
+    }
+
+    /**
+     * Regenerates the dirty tiles of the levels up to the given
+     * index on the builder thread. The tiles invalidated while
+     * the update is running stay dirty.
+     */
+    private void startUpdate(int levelIndex) {
+        List<Level> updated = new ArrayList<>(levels.subList(0, levelIndex));
+        List<BitSet> tiles = new ArrayList<>(levelIndex);
+        for (Level level : updated) {
+            tiles.add((BitSet) level.dirtyTiles.clone());
+            level.invalidatedTiles.clear();
+        }
+        BufferedImage src = base;
+
+        updateRunning = true;
+        builder.execute(() -> {
+            long start = System.nanoTime();
+            Throwable error = null;
+            try {
+                BufferedImage levelSrc = src;
+                for (int i = 0; i < updated.size(); i++) {
+                    Level level = updated.get(i);
+                    level.regenerate(levelSrc, tiles.get(i));
+                    levelSrc = level.image;
+                }
+            } catch (Throwable e) {
+                error = e;
+            }
+            long costNanos = System.nanoTime() - start;
+            Throwable updateError = error;
+            edt.execute(() -> updateFinished(updated, tiles, src, updateError, costNanos));
+        });
+    }
+
+    private void updateFinished(List<Level> updated, List<BitSet> tiles,
+                                BufferedImage src, Throwable error, long costNanos) {
+        updateRunning = false;
+        if (error != null) {
+            failed = true;
+            release();
+            if (!(error instanceof OutOfMemoryError)) {
+                Messages.showException(error);
+            }
+            return;
+        }
+        if (src != base) {
+            return;
+        }
+        for (int i = 0; i < updated.size(); i++) {
+            Level level = updated.get(i);
+            if (i >= levels.size() || levels.get(i) != level || !level.isAlive()) {
+                // replaced or evicted during the update
+                return;
+            }
+            BitSet regenerated = tiles.get(i);
+            regenerated.andNot(level.invalidatedTiles);
+            level.dirtyTiles.andNot(regenerated);
+            level.cache.set(level.image, costNanos);
+        }
+        onLevelsUpdated.run();
+    }
+
+    /**
+     * Returns the index of the smallest level that is still at least
+     * as large as the composite image drawn with the given scaling.
+     */
+    static int calcLevelIndex(double scaling, int width, int height) {
+        int index = 0;
+        while (scaling <= 0.5 && (width > 1 || height > 1)) {
+            scaling *= 2;
+            width = ceilDiv(width, 2);
+            height = ceilDiv(height, 2);
+            index++;
+        }
+        return index;
+    }
+
+    private Level getLevel(int index) {
+        for (int i = 1; i <= index; i++) {
+            int srcWidth = i == 1 ? base.getWidth() : levels.get(i - 2).width;
+            int srcHeight = i == 1 ? base.getHeight() : levels.get(i - 2).height;
+            int width = ceilDiv(srcWidth, 2);
+            int height = ceilDiv(srcHeight, 2);
+            if (levels.size() < i) {
+                levels.add(new Level(i, width, height));
+            } else {
+                Level level = levels.get(i - 1);
+                if (level.width != width || level.height != height || !level.isAlive()) {
+                    level.release();
+                    levels.set(i - 1, new Level(i, width, height));
+                }
+            }
+        }
+        return levels.get(index - 1);
+    }
+
+    /**
+     * Marks all tiles of all levels as needing regeneration.
+     */
+    void invalidateAll() {
+        numPaints = 0;
+        for (Level level : levels) {
+            level.invalidateAll();
+        }
+    }
+
+    /**
+     * Marks the tiles affected by a change in the given
+     * image-space rectangle as needing regeneration.
+     */
+    void invalidateRegion(Rectangle2D imRect) {
+        if (imRect.isEmpty()) {
+            return;
+        }
+        for (Level level : levels) {
+            double factor = 1 << level.index;
+            level.invalidate(
+                (int) Math.floor(imRect.getMinX() / factor),
+                (int) Math.floor(imRect.getMinY() / factor),
+                (int) Math.ceil(imRect.getMaxX() / factor),
+                (int) Math.ceil(imRect.getMaxY() / factor));
+        }
+    }
+
+    /**
+     * Releases the memory used by the levels.
+     */
+    void release() {
+        for (Level level : levels) {
+            level.release();
+        }
+        levels.clear();
+        base = null;
+        numPaints = 0;
+    }
+
+    int getNumLevels() {
+        return levels.size();
+    }
+
+    int getNumDirtyTiles() {
+        int numDirty = 0;
+        for (Level level : levels) {
+            numDirty += level.dirtyTiles.cardinality();
+        }
+        return numDirty;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    DebugNode createDebugNode() {
+        DebugNode node = new DebugNode("composite pyramid", this);
+
+        node.addInt("levels", levels.size());
+        for (Level level : levels) {
+            node.addString("level " + level.index, level.width + "x" + level.height
+                + ", dirty tiles = " + level.dirtyTiles.cardinality()
+                + (level.isAlive() ? "" : ", evicted"));
+        }
+        node.addBoolean("update running", updateRunning);
+
+        return node;
+    }
+
+    /**
+     * A level of the pyramid with its dirty tiles.
+     */
+    private static class Level {
+        private final int index;
+        private final int width;
+        private final int height;
+        private final BufferedImage image;
+        private final int[] pixels;
+        private final int numCols;
+        private final int numRows;
+
+        // accessed only on the EDT
+        private final BitSet dirtyTiles = new BitSet();
+
+        // the tiles invalidated since the start of the last update
+        private final BitSet invalidatedTiles = new BitSet();
+
+        // registers the image with the cache manager, which can evict it
+        private final CachedImage cache = new CachedImage();
+
+        private Level(int index, int width, int height) {
+            this.index = index;
+            this.width = width;
+            this.height = height;
+            image = new BufferedImage(width, height, TYPE_INT_ARGB);
+            pixels = ImageUtils.getPixelArray(image);
+            numCols = ceilDiv(width, TILE_SIZE);
+            numRows = ceilDiv(height, TILE_SIZE);
+            dirtyTiles.set(0, numCols * numRows);
+            cache.set(image, 0);
+        }
+
+        private boolean isAlive() {
+            return cache.peek() == image;
+        }
+
+        private BufferedImage getImageForDrawing() {
+            // counts as a use for the eviction order
+            cache.get();
+            return image;
+        }
+
+        private void invalidateAll() {
+            dirtyTiles.set(0, numCols * numRows);
+            invalidatedTiles.set(0, numCols * numRows);
+        }
+
+        /**
+         * Marks the tiles intersecting the given level-space
+         * rectangle (x2 and y2 exclusive) as dirty.
+         */
+        private void invalidate(int x1, int y1, int x2, int y2) {
+            int firstCol = Math.max(0, x1 / TILE_SIZE);
+            int lastCol = Math.min(numCols - 1, (x2 - 1) / TILE_SIZE);
+            int firstRow = Math.max(0, y1 / TILE_SIZE);
+            int lastRow = Math.min(numRows - 1, (y2 - 1) / TILE_SIZE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                int rowStart = row * numCols;
+                if (firstCol <= lastCol) {
+                    dirtyTiles.set(rowStart + firstCol, rowStart + lastCol + 1);
+                    invalidatedTiles.set(rowStart + firstCol, rowStart + lastCol + 1);
+                }
+            }
+        }
+
+        /**
+         * Regenerates the given tiles from the given source image,
+         * which is either the composite or the previous level.
+         * Called on the builder thread.
+         */
+        private void regenerate(BufferedImage src, BitSet tileIndices) {
+            List<Rectangle> tiles = new ArrayList<>();
+            for (int i = tileIndices.nextSetBit(0); i >= 0; i = tileIndices.nextSetBit(i + 1)) {
+                int x = (i % numCols) * TILE_SIZE;
+                int y = (i / numCols) * TILE_SIZE;
+                tiles.add(new Rectangle(x, y,
+                    Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y)));
+            }
+            ThreadPool.processRows(tiles.size(), TILE_SIZE * TILE_SIZE, (start, end) -> {
+                for (int i = start; i < end; i++) {
+                    downsample(src, tiles.get(i));
+                }
+            }, ProgressTracker.NULL_TRACKER);
+        }
+
+        private void release() {
+            cache.clear();
+            image.flush();
+        }
+
+        /**
+         * Calculates the given level-space rectangle by averaging
+         * 2x2 pixel blocks of the source image, weighted by alpha.
+         */
+        private void downsample(BufferedImage src, Rectangle rect) {
+            int srcWidth = src.getWidth();
+            int srcHeight = src.getHeight();
+            int srcX = rect.x * 2;
+            int srcRowLength = Math.min(rect.width * 2, srcWidth - srcX);
+            int[] row1 = new int[srcRowLength];
+            int[] row2 = new int[srcRowLength];
+            int[] srcPixels = null;
+            if (src.getType() == TYPE_INT_ARGB && !ImageUtils.isSubImage(src)) {
+                srcPixels = ImageUtils.getPixelArray(src);
+            }
+
+            for (int y = rect.y; y < rect.y + rect.height; y++) {
+                int srcY1 = y * 2;
+                // at odd heights the last row is repeated
+                int srcY2 = Math.min(srcY1 + 1, srcHeight - 1);
+                if (srcPixels != null) {
+                    System.arraycopy(srcPixels, srcY1 * srcWidth + srcX, row1, 0, srcRowLength);
+                    System.arraycopy(srcPixels, srcY2 * srcWidth + srcX, row2, 0, srcRowLength);
+                } else {
+                    src.getRGB(srcX, srcY1, srcRowLength, 1, row1, 0, srcRowLength);
+                    src.getRGB(srcX, srcY2, srcRowLength, 1, row2, 0, srcRowLength);
+                }
+
+                int offset = y * width;
+                for (int x = rect.x; x < rect.x + rect.width; x++) {
+                    int i1 = (x - rect.x) * 2;
+                    // at odd widths the last column is repeated
+                    int i2 = Math.min(i1 + 1, srcRowLength - 1);
+                    pixels[offset + x] = average(row1[i1], row1[i2], row2[i1], row2[i2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Averages four non-premultiplied ARGB pixels, so that the
+     * colors of transparent pixels don't bleed into the result.
+     */
+    static int average(int p1, int p2, int p3, int p4) {
+        int a1 = p1 >>> 24;
+        int a2 = p2 >>> 24;
+        int a3 = p3 >>> 24;
+        int a4 = p4 >>> 24;
+        int alphaSum = a1 + a2 + a3 + a4;
+        if (alphaSum == 0) {
+            return 0;
+        }
+        int r = (((p1 >> 16) & 0xFF) * a1 + ((p2 >> 16) & 0xFF) * a2
+            + ((p3 >> 16) & 0xFF) * a3 + ((p4 >> 16) & 0xFF) * a4 + alphaSum / 2) / alphaSum;
+        int g = (((p1 >> 8) & 0xFF) * a1 + ((p2 >> 8) & 0xFF) * a2
+            + ((p3 >> 8) & 0xFF) * a3 + ((p4 >> 8) & 0xFF) * a4 + alphaSum / 2) / alphaSum;
+        int b = ((p1 & 0xFF) * a1 + (p2 & 0xFF) * a2
+            + (p3 & 0xFF) * a3 + (p4 & 0xFF) * a4 + alphaSum / 2) / alphaSum;
+        int a = (alphaSum + 2) / 4;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.layers.Layer;
+import pixelitor.utils.AppPreferences;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static pixelitor.utils.Threads.calledOnEDT;
+
+/**
+ * The configurable ways to calculate the composite image of a layer list.
+ * Both engines produce exactly the same pixels.
+ */
+public enum CompositingEngine {
+    SERIAL("Serial", "serial") {
+        @Override
+        public BufferedImage calcCompositeImage(List<Layer> layers, Canvas canvas) {
+            return ImageUtils.calculateCompositeImage(layers, canvas);
+        }
+
+        @Override
+        public void calcCompositeRegions(List<Layer> layers, BufferedImage compositeImg, List<Rectangle> regions) {
+            for (Rectangle region : regions) {
+                ImageUtils.calculateCompositeRegion(layers, compositeImg, region);
+            }
+        }
+    }, PARALLEL("Parallel (Multi-Core)", "parallel") {
+        @Override
+        public BufferedImage calcCompositeImage(List<Layer> layers, Canvas canvas) {
+            int height = canvas.getHeight();
+            if (height < 2 * MIN_BAND_HEIGHT || !canRunInParallel(layers)) {
+                return SERIAL.calcCompositeImage(layers, canvas);
+            }
+
+            BufferedImage singleLayerImg = ImageUtils.getSingleLayerComposite(layers);
+            if (singleLayerImg != null) {
+                return singleLayerImg;
+            }
+
+            int width = canvas.getWidth();
+            int numBands = Math.min(ThreadPool.NUM_CORES, height / MIN_BAND_HEIGHT);
+            List<Rectangle> bands = new ArrayList<>(numBands);
+            for (int i = 0; i < numBands; i++) {
+                int startY = i * height / numBands;
+                int endY = (i + 1) * height / numBands;
+                bands.add(new Rectangle(0, startY, width, endY - startY));
+            }
+
+            var compositeImg = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+            calcCompositeRegions(layers, compositeImg, bands);
+            return compositeImg;
+        }
+
+        @Override
+        public void calcCompositeRegions(List<Layer> layers, BufferedImage compositeImg, List<Rectangle> regions) {
+            if (regions.size() < 2 || !canRunInParallel(layers)) {
+                SERIAL.calcCompositeRegions(layers, compositeImg, regions);
+                return;
+            }
+
+            // The first region is composited on the calling thread,
+            // because this also initializes the lazily calculated
+            // caches of the layers, which are then only read
+            // by the parallel tasks.
+            ImageUtils.calculateCompositeRegion(layers, compositeImg, regions.get(0));
+
+            int numTasks = regions.size() - 1;
+            Future<?>[] futures = new Future<?>[numTasks];
+            for (int i = 0; i < numTasks; i++) {
+                Rectangle region = regions.get(i + 1);
+                futures[i] = ThreadPool.submit(() ->
+                    ImageUtils.calculateCompositeRegion(layers, compositeImg, region));
+            }
+            // a failed band is rethrown only after all the bands are
+            // finished, so that the caller can leave the regions dirty
+            ThreadPool.waitForAll(futures);
+        }
+
+        // The parallel tasks are started only from the EDT, because
+        // a call from a pool thread could wait for tasks queued behind
+        // it, and a background thread can't rely on the layers not
+        // changing while the tasks are running.
+        private static boolean canRunInParallel(List<Layer> layers) {
+            if (!calledOnEDT()) {
+                return false;
+            }
+            for (Layer layer : layers) {
+                if (layer.isVisible() && !layer.canBePaintedInParallel()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    };
+
+    // bands smaller than this are not worth a separate task
+    private static final int MIN_BAND_HEIGHT = 64;
+
+    public static CompositingEngine CURRENT = SERIAL;
+
+    private final String guiName;
+    private final String saveCode;
+
+    CompositingEngine(String guiName, String saveCode) {
+        this.guiName = guiName;
+        this.saveCode = saveCode;
+    }
+
+    /**
+     * Calculates the canvas-sized composite image of the given layers.
+     * The returned image might be the image of a single layer.
+     */
+    public abstract BufferedImage calcCompositeImage(List<Layer> layers, Canvas canvas);
+
+    /**
+     * Recalculates the given (non-overlapping) regions of an
+     * existing composite image. It should be called only if
+     * {@link ImageUtils#canBeCompositedInRegions(List)} returns true.
+     * If the compositing of a region fails, the exception is rethrown
+     * on the calling thread, and the image content is undefined.
+     */
+    public abstract void calcCompositeRegions(List<Layer> layers, BufferedImage compositeImg, List<Rectangle> regions);
+
+    public static void load() {
+        String loadedCode = AppPreferences.loadCompositingEngine();
+
+        for (CompositingEngine engine : values()) {
+            if (engine.saveCode().equals(loadedCode)) {
+                CURRENT = engine;
+                break;
+            }
+        }
+    }
+
+    public static void changeTo(CompositingEngine newEngine) {
+        CURRENT = newEngine;
+    }
+
+    public String saveCode() {
+        return saveCode;
+    }
+
+    @Override
+    public String toString() {
+        return guiName;
+    }
+}
@@ -115,7 +115,18 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
 
     private transient boolean dirty = false;
 
-    private transient BufferedImage compositeImage;
+    private transient TiledCompositeCache compositeCache = new TiledCompositeCache();
+
+    // the canvas region that has changed since the owners (if this is
+    // the content of smart objects) were last updated, or null if it's
+    // not known which region has changed
+    private transient Rectangle changedRegion;
+
+    // created when the histograms are first shown for this composition
+    private transient CompositeHistograms histograms;
+
+    // the region of the local change that is being updated, if any
+    private transient Rectangle2D localChangeRegion;
 
     private transient View view;
 
@@ -186,7 +197,7 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // init transient variables
-        compositeImage = null; // will be set when needed
+        compositeCache = new TiledCompositeCache();
         file = null; // will be set later
         fileTime = 0;
         debugName = null; // will be set later
@@ -333,9 +344,60 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
             for (SmartObject owner : owners) {
                 owner.propagateContentChanges(this, false);
             }
+            changesPropagated();
+        }
+    }
+
+    /**
+     * Returns the canvas region that has changed since the
+     * last propagation of the changes to the smart objects,
+     * or null if it's not known which region has changed.
+     */
+    public Rectangle getChangedRegion() {
+        return changedRegion == null ? null : new Rectangle(changedRegion);
+    }
+
+    /**
+     * Signals that all smart objects using this
+     * composition were updated after the changes.
+     */
+    public void changesPropagated() {
+        changedRegion = new Rectangle();
+    }
+
+    private void addChangedRegion(Rectangle2D imRegion) {
+        if (changedRegion == null) {
+            return; // everything has to be updated anyway
+        }
+        Rectangle region = imRegion.getBounds().intersection(canvas.getBounds());
+        if (region.isEmpty()) {
+            return;
+        }
+        if (changedRegion.isEmpty()) {
+            changedRegion = region;
+        } else {
+            changedRegion.add(region);
         }
     }
 
+    /**
+     * Runs the given update, which follows a change that is known
+     * to be limited to the given image-space region (such as a brush
+     * stroke), so that the smart objects using this composition
+     * can update only that region.
+     */
+    public void updateAfterLocalChange(Rectangle2D imRegion, Runnable update) {
+        Rectangle regionBefore = getChangedRegion();
+        localChangeRegion = imRegion;
+        try {
+            update.run();
+        } finally {
+            localChangeRegion = null;
+        }
+        changedRegion = regionBefore;
+        addChangedRegion(imRegion);
+    }
+
     public List<SmartObject> getOwners() {
         return owners;
     }
@@ -1157,15 +1219,38 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     }
 
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        invalidateImageCache();
+        Rectangle2D region = calcRepaintRegion(start, end, thickness);
+        compositeCache.invalidateRegion(region);
+        addChangedRegion(region);
+        if (histograms != null) {
+            histograms.invalidateRegion(region);
+        }
+
         if (view != null) { // it might not be opened during image reloading
             view.repaintRegion(start, end, thickness);
             view.repaintNavigator(false);
         }
     }
 
+    /**
+     * Returns the image-space region affected by painting
+     * between the given points with the given thickness.
+     */
+    public static Rectangle2D calcRepaintRegion(PPoint start, PPoint end, double thickness) {
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
     public void repaintRegion(PRectangle area) {
-        invalidateImageCache();
+        compositeCache.invalidateRegion(area.getIm());
+        addChangedRegion(area.getIm());
+        if (histograms != null) {
+            histograms.invalidateRegion(area.getIm());
+        }
+
         if (view != null) { // it might not be opened during image reloading
             view.repaintRegion(area);
             view.repaintNavigator(false);
@@ -1418,7 +1503,9 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
         if (paths != null) {
             paths.imCoordsChanged(at);
         }
-        Tools.imCoordsChanged(at, view);
+        if (view != null) {
+            Tools.imCoordsChanged(at, view);
+        }
     }
 
     /**
@@ -1435,11 +1522,31 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
      * Returns the (canvas-sized) composite image.
      */
     public BufferedImage getCompositeImage() {
-        if (compositeImage == null) {
-            compositeImage = ImageUtils.calculateCompositeImage(layerList, canvas);
-            assert compositeImage != null;
+        return compositeCache.getImage(layerList, canvas);
+    }
+
+    /**
+     * Calculates the histograms of the composite image outside
+     * the EDT, reusing the counts of the unchanged tiles.
+     */
+    public CompletableFuture<int[][]> calcHistograms() {
+        if (histograms == null) {
+            histograms = new CompositeHistograms();
         }
-        return compositeImage;
+        return histograms.calculate(getCompositeImage());
+    }
+
+    /**
+     * Draws the composite image on the given image-space graphics,
+     * which has the given scaling factor. Only the clip region is
+     * drawn, and when zoomed out, a scaled-down version is used.
+     */
+    public void paintCompositeImage(Graphics2D g, double scaling) {
+        compositeCache.paint(g, scaling, layerList, canvas, () -> {
+            if (isOpen()) {
+                view.repaint();
+            }
+        });
     }
 
     @Override
@@ -1459,10 +1566,16 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     @Override
     public void invalidateImageCache() {
 //        Debug.debugCall(getName() + " cache invalidated", 1);
-        if (compositeImage != null) {
-            compositeImage.flush();
+        compositeCache.invalidateAll();
+        changedRegion = null;
+        if (histograms != null) {
+            if (localChangeRegion != null) {
+                // the pixels outside the region are the same
+                histograms.invalidateRegion(localChangeRegion);
+            } else {
+                histograms.invalidateAll();
+            }
         }
-        compositeImage = null;
     }
 
     @Override
@@ -1697,6 +1810,7 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
                     }
                 }
             }
+            changesPropagated();
         }
     }
 
@@ -1877,6 +1991,7 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
         forEachTopLevelLayer(layer -> node.add(layer.createDebugNode()));
 
         node.add(createBufferedImageNode("composite image", getCompositeImage()));
+        node.add(compositeCache.createDebugNode());
 
         if (paths == null) {
             node.addBoolean("has paths", false);
@@ -19,6 +19,7 @@ package pixelitor;
 
 import com.bric.util.JVM;
 import net.jafama.FastMath;
+import pixelitor.automate.BatchCommandLine;
 import pixelitor.colors.FgBgColors;
 import pixelitor.gui.*;
 import pixelitor.gui.utils.Dialogs;
@@ -26,6 +27,7 @@ import pixelitor.gui.utils.Theme;
 import pixelitor.gui.utils.Themes;
 import pixelitor.io.IO;
 import pixelitor.io.IOTasks;
+import pixelitor.layers.ImageCacheManager;
 import pixelitor.tools.util.DragDisplay;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Language;
@@ -39,6 +41,7 @@ import java.awt.Font;
 import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
@@ -59,6 +62,11 @@ public class Pixelitor {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(BatchCommandLine.BATCH_OPTION)) {
+            BatchCommandLine.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // the app can be put into development mode by
         // adding -Dpixelitor.development=true to the command line
         if ("true".equals(System.getProperty("pixelitor.development"))) {
@@ -86,7 +94,8 @@ public class Pixelitor {
             System.setProperty("swing.aatext", "true");
 
             if (GraphicsEnvironment.isHeadless()) {
-                System.err.println("Pixelitor can't be used in headless mode");
+                System.err.println("Pixelitor can't be used in headless mode, "
+                    + "except for batch processing with " + BatchCommandLine.BATCH_OPTION);
                 System.exit(1);
             }
         }
@@ -153,6 +162,8 @@ public class Pixelitor {
 
         MouseZoomMethod.load();
         PanMethod.load();
+        CompositingEngine.load();
+        ImageCacheManager.setBudgetMb(AppPreferences.loadImageCacheMemoryMb());
 
         // The IO-intensive preloading of fonts is scheduled
         // to run after all the files have been opened,
@@ -17,20 +17,45 @@
 
 package pixelitor;
 
-import com.jhlabs.image.AbstractBufferedImageOp;
+import pixelitor.utils.CancellationToken;
 import pixelitor.utils.ProgressTracker;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
  */
 public class ThreadPool {
-    private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
+    public static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
+
+    private static final String THREAD_NAME_PREFIX = "pool-thread-";
+
+    // More chunks than cores, so that the cores that finish early
+    // can take over the work of the slower chunks.
+    private static final int CHUNKS_PER_CORE = 4;
+
+    // chunks with fewer pixels than this aren't worth a separate task
+    private static final int MIN_PIXELS_PER_CHUNK = 32 * 1024;
+
+    // set only in the threads created by this pool
+    private static final ThreadLocal<Boolean> poolThread =
+        ThreadLocal.withInitial(() -> false);
 
     private static final ExecutorService pool =
-        Executors.newFixedThreadPool(NUM_CORES);
+        Executors.newFixedThreadPool(NUM_CORES, new ThreadFactory() {
+            private int threadCount = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                threadCount++;
+                return new Thread(() -> {
+                    poolThread.set(true);
+                    r.run();
+                }, THREAD_NAME_PREFIX + threadCount);
+            }
+        });
 
     private ThreadPool() {
     }
@@ -50,15 +75,144 @@ public class ThreadPool {
         return pool.submit(task);
     }
 
+    /**
+     * Processes the rows of an image in parallel. Instead of one
+     * task per row, the rows are split into a few chunks per core,
+     * and the given task is called once for each chunk. The calling
+     * thread processes the first chunk, and the progress tracker
+     * is updated with the number of finished rows.
+     *
+     * @param numRows   the number of rows (or other work units)
+     * @param rowLength the number of pixels in a row, used to avoid
+     *                  splitting small images into too many chunks
+     */
+    public static void processRows(int numRows, int rowLength, RowRangeTask task, ProgressTracker pt) {
+        assert pt != null;
+
+        int numChunks = calcNumChunks(numRows, rowLength);
+        if (numChunks == 1 || calledOnPoolThread()) {
+            // if this is called from a pool thread, then it's already
+            // running in parallel with something, and waiting here
+            // for other pool tasks could block all the pool threads
+            task.processRows(0, numRows);
+            pt.unitsDone(numRows);
+            return;
+        }
+
+        // canceled if this call fails, so that the chunks
+        // that haven't started yet don't run at all
+        CancellationToken abandoned = new CancellationToken();
+        Future<?>[] futures = new Future<?>[numChunks];
+        for (int i = 1; i < numChunks; i++) {
+            int startRow = chunkStart(i, numRows, numChunks);
+            int endRow = chunkStart(i + 1, numRows, numChunks);
+            futures[i] = pool.submit(() -> {
+                if (!pt.isCanceled() && !abandoned.isCanceled()) {
+                    task.processRows(startRow, endRow);
+                }
+            });
+        }
+        List<Future<?>> remaining = Arrays.asList(futures).subList(1, numChunks);
+
+        int firstChunkEnd = chunkStart(1, numRows, numChunks);
+        try {
+            task.processRows(0, firstChunkEnd);
+        } catch (RuntimeException | Error e) {
+            abandon(abandoned, remaining);
+            throw e;
+        }
+        pt.unitsDone(firstChunkEnd);
+
+        for (int i = 1; i < numChunks; i++) {
+            if (pt.isCanceled()) {
+                cancelAll(remaining);
+                pt.checkCanceled();
+            }
+            try {
+                futures[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                abandon(abandoned, remaining);
+                throw rethrow(e.getCause());
+            }
+            pt.unitsDone(chunkStart(i + 1, numRows, numChunks) - chunkStart(i, numRows, numChunks));
+        }
+    }
+
+    /**
+     * Stops the chunks that haven't started yet, and waits for the
+     * running ones, so that they don't write into the destination
+     * after the caller has given up.
+     */
+    private static void abandon(CancellationToken token, List<Future<?>> futures) {
+        token.cancel();
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int calcNumChunks(int numRows, int rowLength) {
+        long numPixels = (long) numRows * Math.max(rowLength, 1);
+        long maxBySize = Math.max(1, numPixels / MIN_PIXELS_PER_CHUNK);
+        return (int) Math.min(Math.min(maxBySize, numRows), (long) NUM_CORES * CHUNKS_PER_CORE);
+    }
+
+    private static int chunkStart(int chunkIndex, int numRows, int numChunks) {
+        return (int) ((long) chunkIndex * numRows / numChunks);
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException re) {
+            return re;
+        }
+        if (t instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * The work done by {@link #processRows} for a range of rows.
+     */
+    @FunctionalInterface
+    public interface RowRangeTask {
+        /**
+         * Processes the rows from startRow (inclusive) to endRow (exclusive)
+         */
+        void processRows(int startRow, int endRow);
+    }
+
     /**
      * Waits until all the given futures complete their
      * computation, and updates the given
      * {@link ProgressTracker} in the meantime.
+     * If the tracked operation is canceled, then the tasks
+     * that haven't started yet are skipped, and a
+     * {@link java.util.concurrent.CancellationException} is thrown.
      */
     public static void waitFor(Iterable<Future<?>> futures, ProgressTracker pt) {
         assert pt != null;
 
         for (var future : futures) {
+            if (pt.isCanceled()) {
+                cancelAll(futures);
+                pt.checkCanceled();
+            }
             try {
                 future.get();
 
@@ -77,6 +231,10 @@ public class ThreadPool {
         assert pt != null;
 
         for (var future : futures) {
+            if (pt.isCanceled()) {
+                cancelAll(List.of(futures));
+                pt.checkCanceled();
+            }
             try {
                 future.get();
                 pt.unitDone();
@@ -89,27 +247,55 @@ public class ThreadPool {
     }
 
     /**
-     * Similar to waitFor, but works with futures
-     * that return an int array representing a line, and
-     * updates the given destination image with the new pixels.
+     * Waits until all the given futures complete, even if some of them
+     * fail, and then rethrows the unwrapped cause of the first failure.
      */
-    public static void waitFor2(Future<int[]>[] futures, BufferedImage dst, int width, ProgressTracker pt) {
-        assert pt != null;
-
-        try {
-            for (int i = 0; i < futures.length; i++) {
-                var lineFuture = futures[i];
-                int[] linePixels = lineFuture.get();
-                AbstractBufferedImageOp.setRGB(dst, 0, i, width, 1, linePixels);
-
-                pt.unitDone();
+    public static void waitForAll(Future<?>[] futures) {
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (var future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
             }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw rethrow(failure);
+        }
+    }
+
+    /**
+     * Cancels the given futures, so that the tasks that haven't
+     * started yet will not run. The running tasks are not interrupted.
+     */
+    private static void cancelAll(Iterable<? extends Future<?>> futures) {
+        for (var future : futures) {
+            future.cancel(false);
         }
     }
 
     public static Executor getExecutor() {
         return pool;
     }
+
+    /**
+     * Returns true if called from one of the pool's threads. Such
+     * callers shouldn't wait for other tasks submitted to the pool,
+     * because all the threads could end up waiting.
+     */
+    public static boolean calledOnPoolThread() {
+        return poolThread.get();
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.layers.Layer;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.debug.DebugNode;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The cached composite image of a {@link Composition}.
+ * The canvas is divided into square tiles, and after a local
+ * change (such as a brush dab) only the dirty tiles are
+ * recomposited, instead of the whole canvas.
+ */
+class TiledCompositeCache {
+    static final int TILE_SIZE = 256;
+
+    // null if the whole image has to be recalculated
+    private BufferedImage image;
+
+    // false if the image belongs to a layer (single layer
+    // shortcut), and therefore it can't be updated in place
+    private boolean ownsImage;
+
+    private int numCols;
+    private int numRows;
+    private final BitSet dirtyTiles = new BitSet();
+
+    // the scaled-down versions for drawing zoomed-out views
+    private final CompositePyramid pyramid = new CompositePyramid();
+
+    /**
+     * Returns the up-to-date composite image of the given layers.
+     */
+    BufferedImage getImage(List<Layer> layers, Canvas canvas) {
+        if (image == null) {
+            pyramid.invalidateAll();
+            recalculateAll(layers, canvas);
+        } else if (canvas.hasDifferentSizeThan(image)) {
+            pyramid.release();
+            recalculateAll(layers, canvas);
+        } else if (!dirtyTiles.isEmpty()) {
+            if (ownsImage && ImageUtils.canBeCompositedInRegions(layers)) {
+                recalculateDirtyTiles(layers, canvas);
+            } else {
+                recalculateAll(layers, canvas);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Draws the up-to-date composite image on the given image-space
+     * graphics, which has the given scaling factor. The given callback
+     * is run when a more efficient zoomed-out version becomes available.
+     */
+    void paint(Graphics2D g, double scaling, List<Layer> layers, Canvas canvas, Runnable repaint) {
+        pyramid.paint(g, getImage(layers, canvas), scaling, repaint);
+    }
+
+    private void recalculateAll(List<Layer> layers, Canvas canvas) {
+        // the pyramid is invalidated separately, because
+        // here only the dirty tiles might have changed
+        releaseImage();
+
+        image = ImageUtils.getSingleLayerComposite(layers);
+        ownsImage = image == null;
+        if (ownsImage) {
+            image = CompositingEngine.CURRENT.calcCompositeImage(layers, canvas);
+        }
+        assert image != null;
+
+        numCols = ceilDiv(canvas.getWidth(), TILE_SIZE);
+        numRows = ceilDiv(canvas.getHeight(), TILE_SIZE);
+    }
+
+    private void recalculateDirtyTiles(List<Layer> layers, Canvas canvas) {
+        int canvasWidth = canvas.getWidth();
+        int canvasHeight = canvas.getHeight();
+
+        // consecutive dirty tiles in a tile row are recomposited
+        // together, so that the layers are walked once for each run
+        List<Rectangle> runs = new ArrayList<>();
+        for (int row = 0; row < numRows; row++) {
+            int rowStart = row * numCols;
+            int rowEnd = rowStart + numCols;
+            int runStart = dirtyTiles.nextSetBit(rowStart);
+            while (runStart != -1 && runStart < rowEnd) {
+                int runEnd = Math.min(dirtyTiles.nextClearBit(runStart), rowEnd);
+
+                int x = (runStart - rowStart) * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                int width = Math.min((runEnd - rowStart) * TILE_SIZE, canvasWidth) - x;
+                int height = Math.min(TILE_SIZE, canvasHeight - y);
+                runs.add(new Rectangle(x, y, width, height));
+
+                runStart = dirtyTiles.nextSetBit(runEnd);
+            }
+        }
+        // if this throws, the tiles stay dirty, so that
+        // the partially composited pixels are not used later
+        CompositingEngine.CURRENT.calcCompositeRegions(layers, image, runs);
+        dirtyTiles.clear();
+    }
+
+    /**
+     * Forces the recalculation of the whole composite image.
+     */
+    void invalidateAll() {
+        releaseImage();
+        pyramid.invalidateAll();
+    }
+
+    private void releaseImage() {
+        if (image != null && ownsImage) {
+            image.flush();
+        }
+        image = null;
+        dirtyTiles.clear();
+    }
+
+    /**
+     * Marks the tiles intersecting the given image-space
+     * rectangle as needing recomposition.
+     */
+    void invalidateRegion(Rectangle2D imRect) {
+        if (image == null) {
+            return; // everything will be recalculated anyway
+        }
+        if (imRect.isEmpty()) {
+            return;
+        }
+
+        int firstCol = Math.max(0, (int) Math.floor(imRect.getMinX()) / TILE_SIZE);
+        int lastCol = Math.min(numCols - 1, (int) Math.ceil(imRect.getMaxX()) / TILE_SIZE);
+        int firstRow = Math.max(0, (int) Math.floor(imRect.getMinY()) / TILE_SIZE);
+        int lastRow = Math.min(numRows - 1, (int) Math.ceil(imRect.getMaxY()) / TILE_SIZE);
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return; // outside the canvas
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowStart = row * numCols;
+            dirtyTiles.set(rowStart + firstCol, rowStart + lastCol + 1);
+        }
+        pyramid.invalidateRegion(imRect);
+    }
+
+    boolean isValid() {
+        return image != null && dirtyTiles.isEmpty();
+    }
+
+    int getNumDirtyTiles() {
+        return image == null ? numCols * numRows : dirtyTiles.cardinality();
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    DebugNode createDebugNode() {
+        DebugNode node = new DebugNode("composite cache", this);
+
+        node.addBoolean("valid", isValid());
+        node.addBoolean("owns image", ownsImage);
+        node.addInt("tile columns", numCols);
+        node.addInt("tile rows", numRows);
+        node.addInt("dirty tiles", getNumDirtyTiles());
+        node.add(pyramid.createDebugNode());
+
+        return node;
+    }
+}
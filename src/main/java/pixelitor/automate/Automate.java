@@ -17,19 +17,20 @@
 
 package pixelitor.automate;
 
-import pixelitor.Composition;
-import pixelitor.Views;
 import pixelitor.compactions.CompAction;
 import pixelitor.gui.PixelitorWindow;
-import pixelitor.gui.View;
 import pixelitor.gui.utils.GUIUtils;
-import pixelitor.io.*;
+import pixelitor.io.Dirs;
+import pixelitor.io.FileFormat;
+import pixelitor.io.FileUtils;
+import pixelitor.io.SaveSettings;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import static java.lang.String.format;
 import static javax.swing.JOptionPane.WARNING_MESSAGE;
@@ -44,17 +45,17 @@ public class Automate {
     private static final String OVERWRITE_NO = "No (Skip)";
     private static final String OVERWRITE_CANCEL = "Cancel Processing";
 
-    private static volatile boolean overwriteAll = false;
-    private static volatile boolean stopProcessing = false;
-
     private Automate() {
     }
 
     /**
-     * Processes each file in the input directory
-     * with the given {@link CompAction}
+     * Processes each file in the input directory with the
+     * {@link CompAction}s created by the given factory.
+     * The files are loaded, processed and saved concurrently by a
+     * {@link BatchPipeline}, without opening them in the GUI.
      */
-    public static void processFiles(CompAction action, String dialogTitle) {
+    public static void processFiles(Supplier<CompAction> actionFactory,
+                                    int numProcessingThreads, String dialogTitle) {
         assert calledOnEDT() : threadInfo();
 
         File openDir = Dirs.getLastOpen();
@@ -67,101 +68,113 @@ public class Automate {
             return;
         }
 
-        stopProcessing = false;
-        var pm = GUIUtils.createPercentageProgressMonitor(dialogTitle);
-        var worker = new SwingWorker<Void, Void>() {
-            @Override
-            public Void doInBackground() {
-                return processFilesInBackground(inputFiles, action, saveDir, pm);
-            } // end of doInBackground
-        };
-        worker.execute();
-    }
-
-    private static Void processFilesInBackground(List<File> inputFiles,
-                                                 CompAction action,
-                                                 File saveDir,
-                                                 ProgressMonitor monitor) {
-        assert calledOutsideEDT() : "on EDT";
+        var format = FileFormat.getLastSaved();
+        var outputChooser = new OverwriteChecker(saveDir, format);
+        var pipeline = BatchPipeline.create(inputFiles, outputChooser,
+            actionFactory, numProcessingThreads);
+        outputChooser.pipeline = pipeline;
 
-        overwriteAll = false;
+        var monitor = GUIUtils.createPercentageProgressMonitor(dialogTitle);
+        pipeline.setListener(p -> SwingUtilities.invokeLater(() -> updateProgress(p, monitor)));
 
-        for (int i = 0, numFiles = inputFiles.size(); i < numFiles; i++) {
-            if (monitor.isCanceled() || stopProcessing) {
-                break;
+        var worker = new SwingWorker<BatchPipeline.Result, Void>() {
+            @Override
+            public BatchPipeline.Result doInBackground() {
+                assert calledOutsideEDT() : "on EDT";
+                return pipeline.run();
             }
 
-            monitor.setProgress((int) ((float) i * 100 / numFiles));
-            monitor.setNote("Processing " + (i + 1) + " of " + numFiles);
-
-            processFile(inputFiles.get(i), action, saveDir);
-        }
-        monitor.close();
-        return null;
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    get().reportFailures(dialogTitle);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Messages.showException(e.getCause());
+                }
+            }
+        };
+        worker.execute();
     }
 
-    private static void processFile(File file, CompAction action, File saveDir) {
-        assert calledOutsideEDT() : "on EDT";
-        IO.openFileAsync(file, false)
-            .thenComposeAsync(action::process, onEDT)
-            .thenComposeAsync(comp -> saveAndClose(comp, saveDir), onEDT)
-            .exceptionally(Messages::showExceptionOnEDT)
-            .join();
+    /**
+     * Processes the files with as many threads as there are processors.
+     */
+    public static void processFiles(Supplier<CompAction> actionFactory, String dialogTitle) {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        processFiles(actionFactory, numThreads, dialogTitle);
     }
 
-    private static CompletableFuture<Void> saveAndClose(Composition comp, File lastSaveDir) {
+    private static void updateProgress(BatchPipeline pipeline, ProgressMonitor monitor) {
         assert calledOnEDT() : threadInfo();
 
-        var format = FileFormat.getLastSaved();
-        File file = calcOutputFile(comp, lastSaveDir, format);
-
-        // so that it doesn't ask to save again after we just saved it
-        comp.setDirty(false);
+        if (monitor.isCanceled()) {
+            pipeline.cancel();
+            return;
+        }
+        int numFiles = pipeline.getNumInputFiles();
+        int numFinished = pipeline.getNumFinished();
+        monitor.setProgress(numFinished * 100 / numFiles);
+        monitor.setNote(format("Finished %d of %d (%s)",
+            numFinished, numFiles, pipeline.getThroughputInfo()));
+    }
 
-        var saveSettings = new SaveSettings(format, file);
-        CompletableFuture<Void> retVal = null;
+    /**
+     * Calculates the output files, and asks the user
+     * before overwriting an existing file.
+     */
+    private static class OverwriteChecker implements BatchPipeline.OutputChooser {
+        private final File saveDir;
+        private final FileFormat format;
+        private boolean overwriteAll = false;
+        private BatchPipeline pipeline;
+
+        private OverwriteChecker(File saveDir, FileFormat format) {
+            this.saveDir = saveDir;
+            this.format = format;
+        }
 
-        View view = comp.getView();
-        assert view != null : "no view for " + comp.getName();
+        // synchronized, because the decoding threads shouldn't
+        // show several overwrite dialogs at the same time
+        @Override
+        public synchronized SaveSettings chooseOutput(File inputFile) {
+            assert calledOutsideEDT() : "on EDT";
 
-        if (file.exists() && !overwriteAll) {
-            String answer = showOverwriteWarningDialog(file);
+            String outFileName = FileUtils.replaceExt(inputFile.getName(), format.toString());
+            File outputFile = new File(saveDir, outFileName);
+            if (!outputFile.exists() || overwriteAll) {
+                return new SaveSettings(format, outputFile);
+            }
 
+            String answer = askOnEDT(outputFile);
             switch (answer) {
                 case OVERWRITE_YES:
-                    retVal = comp.saveAsync(saveSettings, false);
                     break;
                 case OVERWRITE_YES_ALL:
-                    retVal = comp.saveAsync(saveSettings, false);
                     overwriteAll = true;
                     break;
                 case OVERWRITE_NO:
-                    // do nothing
-                    break;
+                    return null;
                 case OVERWRITE_CANCEL:
-                    Views.warnAndClose(view);
-                    stopProcessing = true;
-                    return CompletableFuture.completedFuture(null);
+                    pipeline.cancel();
+                    return null;
                 default:
                     throw new IllegalStateException("Unexpected value: " + answer);
             }
-        } else { // the file does not exist or overwrite all was pressed previously
-            view.paintImmediately();
-            retVal = comp.saveAsync(saveSettings, false);
-        }
-        Views.warnAndClose(view);
-        stopProcessing = false;
-        if (retVal != null) {
-            return retVal;
-        } else {
-            return CompletableFuture.completedFuture(null);
+            return new SaveSettings(format, outputFile);
         }
-    }
 
-    private static File calcOutputFile(Composition comp, File lastSaveDir, FileFormat format) {
-        String inFileName = comp.getFile().getName();
-        String outFileName = FileUtils.replaceExt(inFileName, format.toString());
-        return new File(lastSaveDir, outFileName);
+        private static String askOnEDT(File outputFile) {
+            String[] answer = new String[1];
+            GUIUtils.invokeAndWait(() ->
+                answer[0] = showOverwriteWarningDialog(outputFile));
+            if (answer[0] == null) { // interrupted or failed
+                return OVERWRITE_CANCEL;
+            }
+            return answer[0];
+        }
     }
 
     private static String showOverwriteWarningDialog(File outputFile) {
@@ -184,4 +197,4 @@ public class Automate {
         }
         return answer;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.Composition;
+import pixelitor.compactions.CompAction;
+import pixelitor.compactions.Flip;
+import pixelitor.compactions.Resize;
+import pixelitor.compactions.Rotate;
+import pixelitor.filters.Filter;
+import pixelitor.filters.gui.UserPreset;
+import pixelitor.filters.util.FilterAction;
+import pixelitor.filters.util.Filters;
+import pixelitor.io.FileFormat;
+import pixelitor.io.FileUtils;
+import pixelitor.utils.ConsoleMessageHandler;
+import pixelitor.utils.Language;
+import pixelitor.utils.Messages;
+import pixelitor.utils.QuadrantAngle;
+import pixelitor.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The command-line interface of the {@link HeadlessBatchProcessor}.
+ * It can be started with "java -cp pixelitor.jar pixelitor.automate.BatchCommandLine"
+ * or with the {@link #BATCH_OPTION} as the first argument of the normal main class.
+ */
+public class BatchCommandLine {
+    public static final String BATCH_OPTION = "--batch";
+
+    private static final int EXIT_FAILED_FILES = 1;
+    private static final int EXIT_USAGE_ERROR = 2;
+
+    // the packages where the filters given by class name are searched
+    private static final String[] FILTER_PACKAGES = {
+        "pixelitor.filters",
+        "pixelitor.filters.jhlabsproxies",
+        "pixelitor.filters.levels",
+        "pixelitor.filters.curves",
+        "pixelitor.filters.lookup",
+        "pixelitor.filters.convolve",
+        "pixelitor.filters.painters",
+    };
+
+    private static final String USAGE = """
+        Usage: pixelitor --batch [options] <input files or directories>
+
+        The steps are applied in the given order to the active layer
+        (filters) or to the whole image (the other steps).
+
+        Steps:
+          --filter <name>                 a filter with its default settings
+          --filter <name>:<key>=<value>;...
+                                          a filter with the given settings
+          --filter <name>@<preset>        a filter with the settings of a preset
+                                          file or of a preset saved in Pixelitor
+          --resize <width>x<height>       resize to fit into the given size
+          --rotate <90|180|270>           rotate clockwise
+          --flip <horizontal|vertical>    flip the image
+
+        Options:
+          --output <dir>                  the output directory (required)
+          --format <ext>                  the output format (default: the input format)
+          --threads <n>                   the number of files processed concurrently
+                                          (plus the threads that read and write them)
+          --overwrite                     overwrite the existing output files
+          --help                          print this message
+
+        The filter names are the class names of the filters or their
+        names in the menus without the spaces, for example GaussianBlur.
+        The settings keys are the same as in the saved preset files.
+        """;
+
+    private final List<Supplier<CompAction>> steps = new ArrayList<>();
+    private final List<File> inputFiles = new ArrayList<>();
+    private File outputDir;
+    private FileFormat outputFormat;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean overwrite = false;
+
+    private BatchCommandLine() {
+    }
+
+    public static void main(String[] args) {
+        // must be set before anything touches AWT
+        System.setProperty("java.awt.headless", "true");
+
+        Language.load();
+        Messages.setMsgHandler(new ConsoleMessageHandler());
+        // needed when text layers are loaded
+        Utils.preloadFontNames();
+
+        var commandLine = new BatchCommandLine();
+        try {
+            if (!commandLine.parse(args)) {
+                System.out.println(USAGE);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            Messages.showError("Invalid Arguments",
+                e.getMessage() + ". Use --help for the usage.");
+            System.exit(EXIT_USAGE_ERROR);
+        }
+
+        var result = commandLine.createProcessor().run();
+        Messages.showInfo("Batch Processing", result.toString());
+        result.reportFailures("Batch Processing Errors");
+
+        System.exit(result.failed() > 0 ? EXIT_FAILED_FILES : 0);
+    }
+
+    /**
+     * Returns false if only the usage should be printed.
+     */
+    private boolean parse(String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help", "-h" -> {
+                    return false;
+                }
+                case "--filter" -> addFilterStep(nextArg(args, ++i, arg));
+                case "--resize" -> addResizeStep(nextArg(args, ++i, arg));
+                case "--rotate" -> addRotateStep(nextArg(args, ++i, arg));
+                case "--flip" -> addFlipStep(nextArg(args, ++i, arg));
+                case "--output" -> outputDir = new File(nextArg(args, ++i, arg));
+                case "--format" -> {
+                    String ext = nextArg(args, ++i, arg);
+                    outputFormat = FileFormat.fromExtension(ext).orElseThrow(() ->
+                        new IllegalArgumentException("Unsupported output format: " + ext));
+                }
+                case "--threads" -> parallelism = parsePositiveInt(nextArg(args, ++i, arg), arg);
+                case "--overwrite" -> overwrite = true;
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    addInput(new File(arg));
+                }
+            }
+        }
+
+        if (outputDir == null) {
+            throw new IllegalArgumentException("The output directory must be given with --output");
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalArgumentException("Could not create the output directory " + outputDir);
+        }
+        if (inputFiles.isEmpty()) {
+            throw new IllegalArgumentException("There are no supported input files");
+        }
+        return true;
+    }
+
+    private HeadlessBatchProcessor createProcessor() {
+        List<Supplier<CompAction>> stepFactories = List.copyOf(steps);
+        Supplier<CompAction> actionFactory = () -> {
+            // new instances for each processing thread, because the files are processed concurrently
+            List<CompAction> actions = stepFactories.stream()
+                .map(Supplier::get)
+                .toList();
+            return comp -> runSteps(comp, actions);
+        };
+        return new HeadlessBatchProcessor(inputFiles, outputDir,
+            outputFormat, actionFactory, parallelism, overwrite);
+    }
+
+    private static CompletableFuture<Composition> runSteps(Composition comp, List<CompAction> actions) {
+        CompletableFuture<Composition> result = CompletableFuture.completedFuture(comp);
+        for (CompAction action : actions) {
+            result = result.thenCompose(action::process);
+        }
+        return result;
+    }
+
+    private static String nextArg(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value after " + option);
+        }
+        return args[index];
+    }
+
+    private static int parsePositiveInt(String s, String option) {
+        try {
+            int value = Integer.parseInt(s);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new IllegalArgumentException("Invalid value for " + option + ": " + s);
+    }
+
+    private void addInput(File file) {
+        if (file.isDirectory()) {
+            inputFiles.addAll(FileUtils.listSupportedInputFilesIn(file));
+        } else if (file.isFile()) {
+            inputFiles.add(file);
+        } else {
+            throw new IllegalArgumentException("Input file not found: " + file);
+        }
+    }
+
+    private void addFilterStep(String spec) {
+        String name = spec;
+        String settings = null;
+        String presetName = null;
+
+        int settingsIndex = spec.indexOf(':');
+        int presetIndex = spec.indexOf('@');
+        if (settingsIndex > 0 && (presetIndex < 0 || settingsIndex < presetIndex)) {
+            name = spec.substring(0, settingsIndex);
+            // the settings are given in the format of the preset files
+            settings = spec.substring(settingsIndex + 1).replace(';', '\n');
+        } else if (presetIndex > 0) {
+            name = spec.substring(0, presetIndex);
+            presetName = spec.substring(presetIndex + 1);
+        }
+
+        String filterName = name.trim();
+        Supplier<Filter> factory = findFilterFactory(filterName);
+
+        // check the settings now, so that an error doesn't come up for each file
+        Filter checked = factory.get();
+        String presetContent = settings;
+        if (presetName != null) {
+            presetContent = loadPreset(checked, presetName);
+        }
+        configure(checked, presetContent);
+
+        String finalPresetContent = presetContent;
+        steps.add(() -> {
+            Filter filter = factory.get();
+            configure(filter, finalPresetContent);
+            return new BatchFilterAction(filter);
+        });
+    }
+
+    /**
+     * Finds a filter by its menu name (if the menus were created)
+     * or by its class name (with or without the "JH" prefix).
+     */
+    private static Supplier<Filter> findFilterFactory(String name) {
+        FilterAction action = Filters.getFilterActionByName(name);
+        if (action != null) {
+            return action::createNewFilterInstance;
+        }
+
+        String className = name.replaceAll("[^A-Za-z0-9]", "");
+        for (String pkg : FILTER_PACKAGES) {
+            for (String candidate : new String[]{className, "JH" + className}) {
+                Class<? extends Filter> filterClass = findFilterClass(pkg + "." + candidate);
+                if (filterClass != null) {
+                    return () -> instantiate(filterClass);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown filter: " + name);
+    }
+
+    private static Class<? extends Filter> findFilterClass(String className) {
+        try {
+            Class<?> c = Class.forName(className);
+            if (Filter.class.isAssignableFrom(c)) {
+                return c.asSubclass(Filter.class);
+            }
+        } catch (ClassNotFoundException e) {
+            // not in this package
+        }
+        return null;
+    }
+
+    private static Filter instantiate(Class<? extends Filter> filterClass) {
+        Filter filter;
+        try {
+            filter = filterClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(filterClass.getSimpleName()
+                + " can't be used in batch processing", e);
+        }
+        try {
+            // the same name as in the menus
+            Field nameField = filterClass.getField("NAME");
+            filter.setName((String) nameField.get(null));
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            // keep the default name
+        }
+        return filter;
+    }
+
+    private static String loadPreset(Filter filter, String presetName) {
+        File presetFile = new File(presetName);
+        if (presetFile.isFile()) {
+            try {
+                return Files.readString(presetFile.toPath(), UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (filter.canHaveUserPresets()) {
+            for (UserPreset preset : UserPreset.loadPresets(filter.getPresetDirName())) {
+                if (preset.getName().equals(presetName)) {
+                    preset.ensureLoaded();
+                    return preset.saveToString();
+                }
+            }
+        }
+        throw new IllegalArgumentException("Preset not found: " + presetName);
+    }
+
+    private static void configure(Filter filter, String presetContent) {
+        if (presetContent == null) {
+            return;
+        }
+        if (!filter.canHaveUserPresets()) {
+            throw new IllegalArgumentException(filter.getName() + " has no settings");
+        }
+        // start from the current settings so that
+        // only the given values have to be specified
+        UserPreset preset = filter.createUserPreset("");
+        preset.loadFromString(presetContent);
+        filter.loadUserPreset(preset);
+    }
+
+    private void addResizeStep(String size) {
+        String[] parts = size.toLowerCase(Locale.ENGLISH).split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        int width = parsePositiveInt(parts[0], "--resize");
+        int height = parsePositiveInt(parts[1], "--resize");
+        // the comp actions are stateless, they can be shared by the files
+        var resize = new Resize(width, height, true);
+        steps.add(() -> resize);
+    }
+
+    private void addRotateStep(String degrees) {
+        QuadrantAngle angle = switch (degrees) {
+            case "90" -> QuadrantAngle.ANGLE_90;
+            case "180" -> QuadrantAngle.ANGLE_180;
+            case "270" -> QuadrantAngle.ANGLE_270;
+            default -> throw new IllegalArgumentException("Invalid angle: " + degrees);
+        };
+        var rotate = new Rotate(angle);
+        steps.add(() -> rotate);
+    }
+
+    private void addFlipStep(String direction) {
+        Flip.Direction dir = switch (direction.toLowerCase(Locale.ENGLISH)) {
+            case "horizontal", "h" -> Flip.Direction.HORIZONTAL;
+            case "vertical", "v" -> Flip.Direction.VERTICAL;
+            default -> throw new IllegalArgumentException("Invalid direction: " + direction);
+        };
+        var flip = new Flip(dir);
+        steps.add(() -> flip);
+    }
+}
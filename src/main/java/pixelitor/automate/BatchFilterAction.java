@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.Composition;
+import pixelitor.compactions.CompAction;
+import pixelitor.filters.Filter;
+import pixelitor.layers.Drawable;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+
+import static pixelitor.FilterContext.BATCH_AUTOMATE;
+
+/**
+ * Runs a filter on the active layer of a composition without a view,
+ * in the calling thread. Each batch processing thread should have
+ * its own instance, because the filters have mutable state.
+ */
+public class BatchFilterAction implements CompAction {
+    private final Filter filter;
+
+    public BatchFilterAction(Filter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public CompletableFuture<Composition> process(Composition comp) {
+        // not Drawable.startFilter, because it needs the GUI
+        // and it only reports the errors
+        Drawable dr = comp.getActiveDrawableOrThrow();
+        BufferedImage dest = filter.transformImage(dr.getFilterSourceImage());
+        dr.filterWithoutDialogFinished(dest, BATCH_AUTOMATE, filter.getName());
+        return CompletableFuture.completedFuture(comp);
+    }
+}
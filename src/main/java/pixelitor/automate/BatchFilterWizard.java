@@ -17,14 +17,10 @@
 
 package pixelitor.automate;
 
-import pixelitor.compactions.CompAction;
 import pixelitor.filters.Filter;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.layers.Drawable;
 
-import java.util.concurrent.CompletableFuture;
-
-import static pixelitor.FilterContext.BATCH_AUTOMATE;
 import static pixelitor.automate.BatchFilterWizardPage.SELECT_FILTER_AND_DIRS;
 
 /**
@@ -50,11 +46,14 @@ public class BatchFilterWizard extends Wizard {
     protected void finalAction() {
         var dialogTitle = "Batch Filter Progress";
 
-        CompAction batchFilterAction = comp -> {
-            comp.getActiveDrawableOrThrow().startFilter(filter, BATCH_AUTOMATE);
-            return CompletableFuture.completedFuture(comp);
-        };
-        Automate.processFiles(batchFilterAction, dialogTitle);
+        Filter configured = filter;
+        if (configured.copy() == configured) {
+            // the filter can't be copied, so it can't run in parallel
+            Automate.processFiles(() -> new BatchFilterAction(configured), 1, dialogTitle);
+        } else {
+            // each processing thread gets its own copy
+            Automate.processFiles(() -> new BatchFilterAction(configured.copy()), dialogTitle);
+        }
     }
 
     @Override
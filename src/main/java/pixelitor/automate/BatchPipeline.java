@@ -0,0 +1,402 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.Composition;
+import pixelitor.compactions.CompAction;
+import pixelitor.io.IO;
+import pixelitor.io.SaveSettings;
+import pixelitor.utils.Messages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Batch processing as a pipeline of three stages (decoding, processing
+ * and encoding), which run concurrently in their own threads, so that
+ * for example the next file is already read while the current one is
+ * filtered. The number of images between the start of the decoding
+ * and the end of the encoding is limited, which bounds the memory usage
+ * and slows down the earlier stages if a later stage can't keep up.
+ * No views are created for the processed compositions.
+ */
+public class BatchPipeline {
+    /**
+     * Decides where the result of an input file is saved.
+     */
+    public interface OutputChooser {
+        /**
+         * Returns the save settings for the given input file, or null
+         * if it should be skipped. Called from the decoding threads.
+         */
+        SaveSettings chooseOutput(File inputFile);
+    }
+
+    /**
+     * Receives the progress of the pipeline from its threads.
+     */
+    public interface Listener {
+        void fileFinished(BatchPipeline pipeline);
+    }
+
+    // the dialogs don't have room for an arbitrary number of lines
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private final List<File> inputFiles;
+    private final OutputChooser outputChooser;
+
+    // the actions can't be shared between the processing threads,
+    // because the filters have mutable state
+    private final Supplier<CompAction> actionFactory;
+
+    private final Stage decoding;
+    private final Stage processing;
+    private final Stage encoding;
+
+    // the maximum number of images in the pipeline
+    private final Semaphore inFlight;
+
+    private final AtomicInteger nextInput = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    // the descriptions of the failures, reported at the end,
+    // so that the processing isn't interrupted by dialogs
+    private final List<String> failures = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled = false;
+
+    private Listener listener;
+
+    public BatchPipeline(List<File> inputFiles, OutputChooser outputChooser,
+                         Supplier<CompAction> actionFactory,
+                         int numDecoders, int numProcessors, int numEncoders,
+                         int maxImagesInFlight) {
+        this.inputFiles = inputFiles;
+        this.outputChooser = outputChooser;
+        this.actionFactory = actionFactory;
+
+        decoding = new Stage("Decoding", numDecoders);
+        processing = new Stage("Processing", numProcessors);
+        encoding = new Stage("Encoding", numEncoders);
+        inFlight = new Semaphore(maxImagesInFlight);
+    }
+
+    /**
+     * Creates a pipeline with the given number of processing
+     * threads, and the number of decoding and encoding threads
+     * and the memory limit derived from it.
+     */
+    public static BatchPipeline create(List<File> inputFiles, OutputChooser outputChooser,
+                                       Supplier<CompAction> actionFactory, int numProcessors) {
+        int numCoders = Math.max(1, numProcessors / 2);
+        return new BatchPipeline(inputFiles, outputChooser, actionFactory,
+            numCoders, numProcessors, numCoders, numProcessors + 2 * numCoders);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Processes all input files, and blocks until all of them are finished.
+     */
+    public Result run() {
+        List<Thread> threads = new ArrayList<>();
+        decoding.start(this::decodeLoop, threads);
+        processing.start(() -> runStage(processing, this::process, encoding), threads);
+        encoding.start(() -> runStage(encoding, this::encode, null), threads);
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return new Result(encoding.getCount(), skipped.get(), failed.get(), List.copyOf(failures));
+    }
+
+    /**
+     * Stops starting new files. The files that are already
+     * in the pipeline are processed until the end.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getNumInputFiles() {
+        return inputFiles.size();
+    }
+
+    /**
+     * Returns the number of input files that were saved,
+     * skipped, or that could not be processed.
+     */
+    public int getNumFinished() {
+        return encoding.getCount() + skipped.get() + failed.get();
+    }
+
+    /**
+     * Returns a short description of the throughput of the stages.
+     */
+    public String getThroughputInfo() {
+        return decoding + ", " + processing + ", " + encoding;
+    }
+
+    /**
+     * Run by the decoding threads: takes the next input file
+     * while there are any, and passes it to the processing stage.
+     */
+    private void decodeLoop() {
+        try {
+            while (!cancelled) {
+                int index = nextInput.getAndIncrement();
+                if (index >= inputFiles.size()) {
+                    break;
+                }
+                File inputFile = inputFiles.get(index);
+                SaveSettings saveSettings = outputChooser.chooseOutput(inputFile);
+                if (saveSettings == null || cancelled) {
+                    skipped.incrementAndGet();
+                    fileFinished();
+                    continue;
+                }
+
+                // back-pressure: wait until an image leaves the pipeline
+                inFlight.acquire();
+                decoding.markStarted();
+                Composition comp;
+                try {
+                    comp = IO.loadCompSync(inputFile);
+                } catch (Throwable e) {
+                    // any error must release the permit of the file,
+                    // otherwise the decoders could wait forever
+                    fileFailed(inputFile, e);
+                    continue;
+                }
+                if (comp == null) {
+                    // the reason was already reported by the reader
+                    fileFailed(inputFile, null);
+                    continue;
+                }
+                decoding.count.incrementAndGet();
+                processing.queue.put(new Job(inputFile, comp, saveSettings));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            decoding.threadFinished(processing);
+        }
+    }
+
+    /**
+     * Run by the threads of the processing and encoding stages.
+     */
+    private void runStage(Stage stage, StageTask task, Stage nextStage) {
+        try {
+            while (true) {
+                Job input = stage.queue.take();
+                if (input == END) {
+                    break;
+                }
+                stage.markStarted();
+
+                Job output;
+                try {
+                    output = task.run(input);
+                } catch (Throwable e) {
+                    // the other files can still be processed, and
+                    // the permit of this file is released
+                    fileFailed(input.inputFile, e);
+                    continue;
+                }
+
+                stage.count.incrementAndGet();
+                if (nextStage != null) {
+                    nextStage.queue.put(output);
+                } else { // the image left the pipeline
+                    inFlight.release();
+                    fileFinished();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stage.threadFinished(nextStage);
+        }
+    }
+
+    private Job process(Job job) {
+        CompAction action = processing.getThreadAction();
+        Composition processed = action.process(job.comp).join();
+        return new Job(job.inputFile, processed, job.saveSettings);
+    }
+
+    private Job encode(Job job) {
+        var format = job.saveSettings.getFormat();
+        format.createSaveTask(job.comp, job.saveSettings).run();
+        return job;
+    }
+
+    private void fileFailed(File inputFile, Throwable e) {
+        if (e != null) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null
+                ? e.getCause() : e;
+            failures.add("Could not process " + inputFile + ": " + cause);
+        } else {
+            failures.add("Could not read " + inputFile);
+        }
+        failed.incrementAndGet();
+        inFlight.release();
+        fileFinished();
+    }
+
+    private void fileFinished() {
+        if (listener != null) {
+            listener.fileFinished(this);
+        }
+    }
+
+    /**
+     * A file in the pipeline.
+     */
+    private record Job(File inputFile, Composition comp, SaveSettings saveSettings) {
+    }
+
+    // a marker which signals the end of the input to the next stage
+    private static final Job END = new Job(null, null, null);
+
+    /**
+     * The work done with a file by a stage.
+     */
+    private interface StageTask {
+        Job run(Job job);
+    }
+
+    /**
+     * A stage of the pipeline with its input queue and throughput statistics.
+     */
+    private class Stage {
+        private final String name;
+        private final int numThreads;
+        private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger runningThreads;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong startTime = new AtomicLong();
+        private final ThreadLocal<CompAction> threadAction = new ThreadLocal<>();
+
+        private Stage(String name, int numThreads) {
+            if (numThreads < 1) {
+                throw new IllegalArgumentException(name + " threads = " + numThreads);
+            }
+            this.name = name;
+            this.numThreads = numThreads;
+            runningThreads = new AtomicInteger(numThreads);
+        }
+
+        private void start(Runnable loop, List<Thread> threads) {
+            for (int i = 1; i <= numThreads; i++) {
+                Thread thread = new Thread(loop, "Batch " + name + " " + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        private void markStarted() {
+            startTime.compareAndSet(0, System.nanoTime());
+        }
+
+        private void threadFinished(Stage nextStage) {
+            if (runningThreads.decrementAndGet() == 0 && nextStage != null) {
+                // the last thread of this stage signals the end to
+                // all threads of the next stage, after all its output
+                for (int i = 0; i < nextStage.numThreads; i++) {
+                    nextStage.queue.add(END);
+                }
+            }
+        }
+
+        private CompAction getThreadAction() {
+            CompAction action = threadAction.get();
+            if (action == null) {
+                action = actionFactory.get();
+                threadAction.set(action);
+            }
+            return action;
+        }
+
+        private int getCount() {
+            return count.get();
+        }
+
+        @Override
+        public String toString() {
+            int done = count.get();
+            long start = startTime.get();
+            if (done == 0 || start == 0) {
+                return name + ": -";
+            }
+            double seconds = (System.nanoTime() - start) / 1.0e9;
+            return String.format("%s: %.1f/s", name, done / seconds);
+        }
+    }
+
+    /**
+     * The number of files in each outcome category,
+     * and the descriptions of the failures.
+     */
+    public record Result(int processed, int skipped, int failed, List<String> failures) {
+        /**
+         * Reports the failures through {@link Messages}, if there were any.
+         */
+        public void reportFailures(String title) {
+            if (failed == 0) {
+                return;
+            }
+            List<String> shown = failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES));
+            String msg = "<html>" + this + ".<br><br>" + String.join("<br>", shown);
+            if (failures.size() > shown.size()) {
+                msg += "<br>...";
+            }
+            Messages.showError(title, msg);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d processed, %d skipped, %d failed",
+                processed, skipped, failed);
+        }
+    }
+}
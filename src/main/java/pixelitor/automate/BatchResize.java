@@ -51,7 +51,8 @@ public class BatchResize {
         int maxHeight = p.getNewHeight();
 
         var resizeAction = new Resize(maxWidth, maxHeight, true);
-        Automate.processFiles(resizeAction, "Batch Resize...");
+        // the resize action has no mutable state, it can be shared
+        Automate.processFiles(() -> resizeAction, "Batch Resize...");
     }
 
     /**
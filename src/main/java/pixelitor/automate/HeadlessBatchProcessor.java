@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.compactions.CompAction;
+import pixelitor.io.FileFormat;
+import pixelitor.io.FileUtils;
+import pixelitor.io.SaveSettings;
+import pixelitor.utils.Messages;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Batch processing without a GUI: each input file is loaded,
+ * processed with a {@link CompAction} and saved into the output
+ * directory by a {@link BatchPipeline}, without touching Swing.
+ */
+public class HeadlessBatchProcessor {
+    private final List<File> inputFiles;
+    private final File outputDir;
+
+    // if null, each file is saved in the format of the input file
+    private final FileFormat outputFormat;
+
+    // the actions can't be shared between the files processed
+    // concurrently, because the filters have mutable state
+    private final Supplier<CompAction> actionFactory;
+
+    private final int parallelism;
+    private final boolean overwrite;
+
+    public HeadlessBatchProcessor(List<File> inputFiles, File outputDir,
+                                  FileFormat outputFormat,
+                                  Supplier<CompAction> actionFactory,
+                                  int parallelism, boolean overwrite) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism = " + parallelism);
+        }
+        this.inputFiles = inputFiles;
+        this.outputDir = outputDir;
+        this.outputFormat = outputFormat;
+        this.actionFactory = actionFactory;
+        this.parallelism = parallelism;
+        this.overwrite = overwrite;
+    }
+
+    /**
+     * Processes all input files, and blocks until all of them are finished.
+     */
+    public BatchPipeline.Result run() {
+        var pipeline = BatchPipeline.create(inputFiles,
+            this::chooseOutput, actionFactory, parallelism);
+        return pipeline.run();
+    }
+
+    private SaveSettings chooseOutput(File inputFile) {
+        FileFormat format = outputFormat;
+        if (format == null) {
+            format = FileFormat.fromFile(inputFile).orElse(FileFormat.PNG);
+        }
+        String outFileName = FileUtils.replaceExt(inputFile.getName(), format.toString());
+        File outputFile = new File(outputDir, outFileName);
+        if (outputFile.exists() && !overwrite) {
+            Messages.showInfo("File Skipped",
+                inputFile + " was skipped, because " + outputFile + " already exists.");
+            return null;
+        }
+        return new SaveSettings(format, outputFile);
+    }
+}
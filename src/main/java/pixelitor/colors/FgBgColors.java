@@ -42,10 +42,16 @@ public class FgBgColors {
     }
 
     public static Color getFGColor() {
+        if (selector == null) { // headless batch processing
+            return Color.BLACK;
+        }
         return selector.getFgColor();
     }
 
     public static Color getBGColor() {
+        if (selector == null) { // headless batch processing
+            return Color.WHITE;
+        }
         return selector.getBgColor();
     }
 
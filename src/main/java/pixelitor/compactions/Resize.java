@@ -86,6 +86,12 @@ public class Resize implements CompAction {
         }
         var targetSize = new Dimension(canvasTargetWidth, canvasTargetHeight);
 
+        if (oldComp.getView() == null) {
+            // processed without a view by the batch processing
+            return resizeLayers(oldComp.copy(CopyType.UNDO, true), targetSize)
+                .thenApply(newComp -> resizeCanvasWithoutView(newComp, targetSize));
+        }
+
         // The resize runs outside the EDT so that the progress bar animation
         // can update and multiple resizing operations can run in parallel
         var progressHandler = Messages.startProgress("Resizing", -1);
@@ -149,6 +155,17 @@ public class Resize implements CompAction {
         return newComp;
     }
 
+    private static Composition resizeCanvasWithoutView(Composition newComp, Dimension newCanvasSize) {
+        Canvas newCanvas = newComp.getCanvas();
+        var canvasTransform = newCanvas.createImTransformToSize(newCanvasSize);
+        newComp.imCoordsChanged(canvasTransform, false, null);
+
+        newCanvas.resize(newCanvasSize.width, newCanvasSize.height, null, false);
+        newComp.invalidateImageCache();
+
+        return newComp;
+    }
+
     private static CompletableFuture<Composition> resizeLayers(Composition comp, Dimension newSize) {
         // this could be called on the EDT or on another thread, the layers
         // themselves are resized in parallel using the thread pool's threads
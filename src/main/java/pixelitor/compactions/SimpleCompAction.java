@@ -75,6 +75,13 @@ public abstract class SimpleCompAction extends OpenViewEnabledAction.Checked imp
             resizeNewCanvas(newCanvas, view);
         }
 
+        if (view == null) {
+            // processed without a GUI by the command-line
+            // batch processing: there is no history to update
+            newComp.invalidateImageCache();
+            return CompletableFuture.completedFuture(newComp);
+        }
+
         History.add(new CompositionReplacedEdit(
             getEditName(), view, oldComp, newComp, canvasAT, false));
         view.replaceComp(newComp);
@@ -139,7 +139,7 @@ public class AbstractLights extends ParametrizedFilter {
                 p.update(width, height);
                 p.draw(g2);
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         pt.finished();
 
@@ -98,7 +98,7 @@ public class AddNoise extends ParametrizedFilter {
             counter++;
             if (counter == workUnit) {
                 counter = 0;
-                pt.unitDone();
+                pt.unitDoneOrStop();
             }
 
             int randomInt = 0;
@@ -191,7 +191,7 @@ public class AddNoise extends ParametrizedFilter {
             counter++;
             if (counter == workUnit) {
                 counter = 0;
-                pt.unitDone();
+                pt.unitDoneOrStop();
             }
 
             byte srcPixel = srcPixels[i];
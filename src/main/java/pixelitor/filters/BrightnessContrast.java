@@ -46,6 +46,8 @@ public class BrightnessContrast extends ParametrizedFilter {
             brightnessParam,
             contrastParam
         );
+
+        setPointOperation();
     }
 
     @Override
@@ -84,6 +84,8 @@ public class ChannelInvert extends ParametrizedFilter {
         super(true);
 
         setParams(invertTypeSelector);
+
+        setPointOperation();
     }
 
     @Override
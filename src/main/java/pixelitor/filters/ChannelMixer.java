@@ -188,6 +188,8 @@ public class ChannelMixer extends ParametrizedFilter {
 
         paramSet.setAfterResetAllAction(this::afterResetAll);
         enablePresets();
+
+        setPointOperation();
     }
 
     @Override
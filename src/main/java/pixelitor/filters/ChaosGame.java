@@ -190,7 +190,7 @@ public class ChaosGame extends ParametrizedFilter {
             counter++;
             if (counter == workUnit) {
                 counter = 0;
-                pt.unitDone();
+                pt.unitDoneOrStop();
             }
         }
 
@@ -58,6 +58,8 @@ public class Colorize extends ParametrizedFilter {
             brightnessParam,
             opacityParam
         );
+
+        setPointOperation();
     }
 
     @Override
@@ -75,7 +75,7 @@ public class DrunkVision extends ParametrizedFilter {
                 transformPoints[i].getY());
             g.setComposite(AlphaComposite.getInstance(SRC_OVER, 1.0f / (i + 2)));
             g.drawImage(src, transform, null);
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         pt.finished();
 
@@ -27,6 +27,7 @@ import pixelitor.utils.debug.Debuggable;
 import java.awt.image.BufferedImage;
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
@@ -38,11 +39,20 @@ public abstract class Filter implements Serializable, PresetOwner, Debuggable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // the footprint radius of the filters whose output pixels can
+    // depend on any input pixel, or on the size of the image
+    public static final int UNBOUNDED_FOOTPRINT = -1;
+
     private transient String name;
 
+    // true if each output pixel depends only on the
+    // input pixel at the same position
+    private transient boolean pointOperation;
+
     // used for making sure that there are no
-    // unnecessary filter executions triggered
-    public static long runCount = 0;
+    // unnecessary filter executions triggered,
+    // atomic because the previews run outside the EDT
+    private static final AtomicLong runCount = new AtomicLong();
 
     protected Filter() {
     }
@@ -81,13 +91,17 @@ public abstract class Filter implements Serializable, PresetOwner, Debuggable {
             dest = ImageUtils.convertToGrayScaleImage(dest);
         }
 
-        runCount++;
+        runCount.incrementAndGet();
 
         assert dest != null : getName() + " returned null dest";
 
         return dest;
     }
 
+    public static long getRunCount() {
+        return runCount.get();
+    }
+
     public void setName(String name) {
         this.name = name;
     }
@@ -114,6 +128,25 @@ public abstract class Filter implements Serializable, PresetOwner, Debuggable {
         return true;
     }
 
+    /**
+     * Returns the maximum distance (in pixels) between an output pixel
+     * and the input pixels it depends on: 0 for point operations, the
+     * kernel radius for convolutions, or UNBOUNDED_FOOTPRINT.
+     * Smart filters with a bounded footprint recalculate only
+     * the changed region of their input.
+     */
+    public int getFootprintRadius() {
+        return pointOperation ? 0 : UNBOUNDED_FOOTPRINT;
+    }
+
+    /**
+     * Declares that this filter is a point operation, which
+     * can be recalculated exactly in any region of its input.
+     */
+    protected void setPointOperation() {
+        pointOperation = true;
+    }
+
     public String paramsAsString() {
         return "";
     }
@@ -492,7 +492,7 @@ public class FlowField extends ParametrizedFilter {
             .addUpdater(colorSource)
             .build();
 
-        Future<?>[] futures = particleSystem.iterate(iterationCount, groupCount);
+        Future<?>[] futures = particleSystem.iterate(iterationCount, groupCount, pt);
         ThreadPool.waitFor(futures, pt);
         particleSystem.flush();
         pt.finished();
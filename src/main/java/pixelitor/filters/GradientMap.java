@@ -36,6 +36,8 @@ public class GradientMap extends ParametrizedFilter {
         super(true);
 
         setParams(gradient);
+
+        setPointOperation();
     }
 
     @Override
@@ -59,6 +59,8 @@ public class HueSat extends ParametrizedFilter {
             saturation,
             brightness
         );
+
+        setPointOperation();
     }
 
     @Override
@@ -35,6 +35,10 @@ public class Invert extends Filter {
 
     public static final String NAME = i18n("invert");
 
+    public Invert() {
+        setPointOperation();
+    }
+
     @Override
     public BufferedImage transform(BufferedImage src, BufferedImage dest) {
         dest = invertImage(src);
@@ -196,7 +196,7 @@ public class PhotoCollage extends ParametrizedFilter {
             g.setPaint(imagePaint);
             g.fill(transformedImageShape);
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         pt.finished();
 
@@ -48,6 +48,8 @@ public class Posterize extends ParametrizedFilter {
             }, true);
 
         setParams(levels);
+
+        setPointOperation();
     }
 
     @Override
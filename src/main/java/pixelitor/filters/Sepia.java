@@ -36,6 +36,8 @@ public class Sepia extends ParametrizedFilter {
         super(true);
 
         setParams(intensity);
+
+        setPointOperation();
     }
 
     @Override
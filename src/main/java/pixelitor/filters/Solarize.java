@@ -54,6 +54,8 @@ public class Solarize extends ParametrizedFilter {
             greenThreshold,
             blueThreshold
         );
+
+        setPointOperation();
     }
 
     @Override
@@ -184,7 +184,7 @@ public class Spheres extends ParametrizedFilter {
             // render the spheres
             g.fill(Shapes.createCircle(x, y, r));
 
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         pt.finished();
 
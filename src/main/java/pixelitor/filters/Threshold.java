@@ -111,4 +111,10 @@ public class Threshold extends ParametrizedFilter {
     public boolean supportsGray() {
         return false;
     }
+
+    @Override
+    public int getFootprintRadius() {
+        // the dithering diffuses the errors over the whole image
+        return dithering.getValue() == 0 ? 0 : UNBOUNDED_FOOTPRINT;
+    }
 }
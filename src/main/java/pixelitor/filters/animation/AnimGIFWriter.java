@@ -16,35 +16,46 @@
  */
 package pixelitor.filters.animation;
 
-import pd.AnimatedGifEncoder;
+import pd.ParallelGifEncoder;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * An {@link AnimationWriter} implementation
  * that writes an animated GIF file
  */
 public class AnimGIFWriter implements AnimationWriter {
-    private final AnimatedGifEncoder encoder;
+    private final ParallelGifEncoder encoder;
 
     public AnimGIFWriter(File file, int delayMillis) {
-        encoder = new AnimatedGifEncoder();
-        encoder.start(file);
+        try {
+            encoder = new ParallelGifEncoder(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         encoder.setDelay(delayMillis);
         encoder.setRepeat(0);
     }
 
     @Override
-    public void addFrame(BufferedImage image) {
+    public void addFrame(BufferedImage image) throws IOException {
+        // the frame is encoded while the next ones are rendered
         encoder.addFrame(image);
     }
 
     @Override
-    public void finish() {
+    public void flush() throws IOException {
         encoder.finish();
     }
 
+    @Override
+    public void finish() {
+        // already written in flush()
+    }
+
     @Override
     public void cancel() {
         encoder.cancel();
@@ -25,6 +25,13 @@ import java.io.IOException;
 public interface AnimationWriter {
     void addFrame(BufferedImage image) throws IOException;
 
+    /**
+     * Waits until all added frames are written out.
+     * Called outside the EDT after adding all the frames.
+     */
+    default void flush() throws IOException {
+    }
+
     /**
      * Called if the animation rendering was cancelled
      */
@@ -17,20 +17,14 @@
 
 package pixelitor.filters.animation;
 
-import pixelitor.filters.Filter;
-import pixelitor.filters.ParametrizedFilter;
-import pixelitor.filters.gui.FilterState;
-import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
-import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 
 import static java.lang.String.format;
-import static pixelitor.FilterContext.TWEEN_PREVIEW;
 import static pixelitor.utils.Threads.calledOutsideEDT;
 
 /**
@@ -38,12 +32,13 @@ import static pixelitor.utils.Threads.calledOutsideEDT;
  */
 class RenderTweenFramesTask extends SwingWorker<Void, Void> {
     private final TweenAnimation animation;
-    private final Drawable dr;
+    private final TweenRenderPipeline pipeline;
     private final ProgressMonitor progressMonitor;
 
     public RenderTweenFramesTask(TweenAnimation animation, Drawable dr) {
         this.animation = animation;
-        this.dr = dr;
+        int numRenderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        pipeline = new TweenRenderPipeline(animation, dr, numRenderThreads);
         progressMonitor = GUIUtils.createPercentageProgressMonitor("Rendering Frames");
         addPropertyChangeListener(this::onPropertyChange);
     }
@@ -58,8 +53,8 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
         progressMonitor.setProgress(progress);
         progressMonitor.setNote(format("Completed %d%%.%n", progress));
         if (progressMonitor.isCanceled()) {
-            // Probably nothing bad happens if the current frame rendering is
-            // interrupted, but to be on the safe side, let the current frame finish
+            // the frames that are already rendering are allowed to finish
+            pipeline.cancel();
             cancel(false);
         }
     }
@@ -78,84 +73,26 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
     private void renderFrames() {
         assert calledOutsideEDT() : "on EDT";
 
-        int numFrames = animation.getNumFrames();
-        ParametrizedFilter filter = animation.getFilter();
         AnimationWriter animationWriter = animation.createWriter();
 
-        dr.startTweening();
-
-        int numTotalFrames = numFrames;
-        boolean pingPong = animation.isPingPong() && numFrames > 2;
-        if (pingPong) {
-            numTotalFrames = 2 * numFrames - 2;
-        }
-
-        boolean canceled = false;
-        for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
-            if (isCancelled()) {
-                canceled = true;
-                break;
-            }
-            int percentProgress = (int) ((100.0 * frameNr) / numTotalFrames);
-            setProgress(percentProgress);
-
-            double time;
-            if (frameNr < numFrames) { // ping: normal animation forwards
-                time = ((double) frameNr) / numFrames;
-            } else { // pong: animating backwards
-                // Here the same frames are calculated again.
-                // They could be cached in an array of soft references
-                // or in the case of the file sequence output,
-                // the output files could be copied.
-                // However, "ping-pong" animations are probably uncommon.
-                int effectiveFrame = 2 * (numFrames - 1) - frameNr;
-                time = ((double) effectiveFrame) / numFrames;
-            }
-
-            try {
-                // first render the frame...
-                BufferedImage image = renderFrame(filter, time);
-
-                // ...then write the file
-                // TODO ideally while writing out the frame,
-                // the rendering of the next frame should be
-                // started on another thread
-                animationWriter.addFrame(image);
-            } catch (Exception e) {
-                canceled = true;
-                Messages.showException(e);
-                break;
+        // while a frame is written out, the next frames are already rendering
+        boolean canceled;
+        try {
+            canceled = !pipeline.run(animationWriter, this::setProgress);
+            if (!canceled) {
+                animationWriter.flush();
             }
+        } catch (Exception e) {
+            pipeline.cancel();
+            canceled = true;
+            Messages.showException(e);
         }
 
-        setProgress(100);
-
         boolean finalCanceled = canceled;
         SwingUtilities.invokeLater(() -> finishOnEDT(animationWriter, finalCanceled));
     }
 
-    private BufferedImage renderFrame(ParametrizedFilter filter, double time) {
-        long runCountBefore = Filter.runCount;
-
-        // all sorts of problems can happen
-        // if filters run outside of EDT
-        Runnable filterRunTask = () -> {
-            FilterState intermediateState = animation.tween(time);
-            filter.getParamSet().setState(intermediateState, true);
-            dr.startFilter(filter, TWEEN_PREVIEW);
-        };
-        GUIUtils.invokeAndWait(filterRunTask);
-
-        assert Filter.runCount == runCountBefore + 1;
-
-        var comp = dr.getComp();
-        comp.repaint();
-
-        return comp.getCompositeImage();
-    }
-
-    private void finishOnEDT(AnimationWriter animationWriter, boolean canceled) {
-        dr.endTweening();
+    private static void finishOnEDT(AnimationWriter animationWriter, boolean canceled) {
         if (canceled) {
             animationWriter.cancel();
         } else {
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pixelitor.filters.animation;
+
+import pixelitor.Composition;
+import pixelitor.CopyType;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.layers.Drawable;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.layers.LayerMask;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static pixelitor.FilterContext.TWEEN_PREVIEW;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Renders the frames of a tween animation outside the EDT, and passes
+ * them in the right order to an {@link AnimationWriter}. Several frames
+ * are rendered concurrently, each render thread using its own copy of the
+ * filter and of the composition, while the thread calling {@link #run}
+ * writes out the finished frames. The number of frames that are rendered
+ * but not yet written is limited.
+ * In ping-pong animations the backwards frames are not rendered again,
+ * but taken from the forward part, if they are still in memory.
+ */
+class TweenRenderPipeline {
+    private final TweenAnimation animation;
+    private final int numFrames;
+    private final boolean pingPong;
+
+    private final List<FrameRenderer> renderers = new ArrayList<>();
+    private final List<Thread> renderThreads = new ArrayList<>();
+
+    // the indexes of the rendered frames are taken in order
+    private final AtomicInteger nextFrame = new AtomicInteger();
+
+    // the maximum number of rendered, but not yet written frames
+    private final Semaphore renderPermits;
+
+    private final List<CompletableFuture<BufferedImage>> frames;
+
+    // the forward frames that are written again backwards
+    private final List<SoftReference<BufferedImage>> pongFrames;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Must be called on the EDT, because the composition
+     * of the given drawable is copied for each render thread.
+     */
+    TweenRenderPipeline(TweenAnimation animation, Drawable dr, int numRenderThreads) {
+        assert calledOnEDT() : threadInfo();
+
+        this.animation = animation;
+        numFrames = animation.getNumFrames();
+        pingPong = animation.isPingPong() && numFrames > 2;
+
+        ParametrizedFilter filter = animation.getFilter();
+        int maxRenderers = filter.copy() == filter ? 1 : numRenderThreads;
+        int numRenderers = Math.max(1, Math.min(maxRenderers, numFrames));
+        for (int i = 0; i < numRenderers; i++) {
+            // the filter can't be shared, because the
+            // frames are rendered with different settings
+            var filterCopy = numRenderers == 1 ? filter : (ParametrizedFilter) filter.copy();
+            renderers.add(new FrameRenderer(filterCopy, dr));
+        }
+
+        renderPermits = new Semaphore(numRenderers + 2);
+        frames = Collections.synchronizedList(new ArrayList<>(numFrames));
+        pongFrames = new ArrayList<>(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            frames.add(new CompletableFuture<>());
+            pongFrames.add(null);
+        }
+    }
+
+    public int getNumTotalFrames() {
+        return pingPong ? 2 * numFrames - 2 : numFrames;
+    }
+
+    /**
+     * Renders all frames, and writes them with the given writer.
+     * Blocks until the last frame is written or the rendering is cancelled.
+     *
+     * @return true if all frames were written
+     */
+    public boolean run(AnimationWriter writer, IntConsumer progressListener) throws IOException {
+        for (int i = 0; i < renderers.size(); i++) {
+            FrameRenderer renderer = renderers.get(i);
+            Thread thread = new Thread(() -> renderLoop(renderer),
+                "Tween Renderer " + (i + 1));
+            thread.setDaemon(true);
+            renderThreads.add(thread);
+            thread.start();
+        }
+
+        try {
+            int numTotalFrames = getNumTotalFrames();
+            for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
+                if (cancelled) {
+                    return false;
+                }
+                progressListener.accept((int) ((100.0 * frameNr) / numTotalFrames));
+
+                if (frameNr < numFrames) { // ping: normal animation forwards
+                    writeForwardFrame(frameNr, writer);
+                } else { // pong: animating backwards
+                    writeBackwardFrame(2 * (numFrames - 1) - frameNr, writer);
+                }
+            }
+        } catch (CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            return false;
+        }
+        progressListener.accept(100);
+        return true;
+    }
+
+    /**
+     * Stops the rendering of new frames. The frames
+     * that are already rendering are allowed to finish.
+     */
+    public void cancel() {
+        cancelled = true;
+
+        // the frames that weren't rendered yet won't be rendered at all
+        synchronized (frames) {
+            for (CompletableFuture<BufferedImage> frame : frames) {
+                if (frame != null) {
+                    frame.cancel(false);
+                }
+            }
+        }
+
+        // wake up the render threads waiting for a permit
+        renderPermits.release(renderers.size());
+    }
+
+    private void writeForwardFrame(int frame, AnimationWriter writer) throws IOException {
+        BufferedImage image = frames.get(frame).join();
+        frames.set(frame, null);
+
+        writer.addFrame(image);
+        renderPermits.release();
+
+        if (pingPong && frame > 0 && frame < numFrames - 1) {
+            pongFrames.set(frame, new SoftReference<>(image));
+        }
+    }
+
+    private void writeBackwardFrame(int frame, AnimationWriter writer)
+        throws IOException, InterruptedException {
+        BufferedImage image = pongFrames.get(frame).get();
+        pongFrames.set(frame, null);
+
+        if (image == null) {
+            // the frame was dropped in order to free memory.
+            // All forward frames are written at this point, so the
+            // render threads are finishing, and their state can be reused.
+            for (Thread thread : renderThreads) {
+                thread.join();
+            }
+            image = renderers.get(0).render(frame);
+        }
+        writer.addFrame(image);
+    }
+
+    private void renderLoop(FrameRenderer renderer) {
+        try {
+            while (!cancelled) {
+                renderPermits.acquire();
+                int frame = nextFrame.getAndIncrement();
+                if (frame >= numFrames) {
+                    break;
+                }
+                if (cancelled) {
+                    break;
+                }
+                try {
+                    frames.get(frame).complete(renderer.render(frame));
+                } catch (Throwable e) {
+                    // the exception is reported by the writing thread
+                    frames.get(frame).completeExceptionally(e);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Renders frames using private copies of the filter and the composition.
+     * The filter runs as a preview on the copy of the drawable, which
+     * is never shown in a view, so the original composition can be
+     * used normally while the frames are rendering.
+     */
+    private class FrameRenderer {
+        private final ParametrizedFilter filter;
+        private final Composition comp;
+        private final ImageLayer layer;
+
+        private FrameRenderer(ParametrizedFilter filter, Drawable dr) {
+            this.filter = filter;
+
+            // the copies of the layer images share the pixels with the
+            // originals, and the filter source is only read, so the pixels
+            // are copied only for the preview image of a selection
+            comp = dr.getComp().copy(CopyType.UNDO, true);
+            Layer activeLayer = comp.getActiveLayer();
+            layer = dr instanceof LayerMask ? activeLayer.getMask() : (ImageLayer) activeLayer;
+            layer.startTweening();
+        }
+
+        private BufferedImage render(int frame) {
+            double time = ((double) frame) / numFrames;
+            filter.getParamSet().setState(animation.tween(time), true);
+
+            BufferedImage src = layer.getFilterSourceImage();
+            BufferedImage dest = filter.transformImage(src);
+            layer.changePreviewImage(dest, filter.getName(), TWEEN_PREVIEW);
+
+            // changing the preview invalidates the whole composite cache, therefore
+            // the returned image isn't modified while waiting to be written
+            return comp.getCompositeImage();
+        }
+    }
+}
@@ -50,6 +50,8 @@ public class ToneCurvesFilter extends FilterWithGUI {
         helpURL = "https://en.wikipedia.org/wiki/Curve_(tonality)";
 
         curves = new ToneCurves();
+
+        setPointOperation();
     }
 
     @Override
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.gui;
+
+import pixelitor.filters.Filter;
+import pixelitor.filters.util.Filters;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.CancellationToken;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
+import pixelitor.utils.test.RandomGUITest;
+
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static pixelitor.FilterContext.PREVIEWING;
+import static pixelitor.utils.Cursors.BUSY;
+import static pixelitor.utils.Cursors.DEFAULT;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Renders the filter previews of a {@link Drawable} outside the EDT,
+ * so that the filter dialogs stay responsive while the user adjusts
+ * the parameters.
+ *
+ * When the settings change, the previous render is abandoned, and
+ * a snapshot of the filter is rendered on a background thread. If the
+ * previous full-resolution render was slow, then a downscaled preview
+ * is shown first, and it's refined to full resolution afterwards.
+ *
+ * All the methods must be called on the EDT. Only one previewing
+ * session can be active at a time, because the filter dialogs are modal.
+ */
+public final class AsyncPreviewRenderer {
+    // previews that took less than this aren't worth a coarse pass
+    private static final long COARSE_PASS_THRESHOLD_MILLIS = 100;
+
+    // the approximate number of pixels rendered in the coarse pass
+    private static final int COARSE_PASS_PIXELS = 512 * 512;
+
+    // Not the ThreadPool, because the filters themselves can submit
+    // tasks to the pool and wait for them.
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "filter-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // incremented whenever the results of the earlier renders become stale
+    private static volatile long generation = 0;
+
+    // the state of the current session, accessed only on the EDT
+    private static Drawable drawable;
+    private static Filter filter;
+    private static Component busyCursorParent;
+    private static Future<?> pendingRender;
+    private static CancellationToken pendingToken;
+    private static boolean upToDate = true;
+    private static long lastRenderMillis = 0;
+
+    private AsyncPreviewRenderer() {
+        // should not be instantiated
+    }
+
+    /**
+     * Updates the preview of the given {@link Drawable} after the settings
+     * of the given filter changed. The filter runs in the background if
+     * a consistent snapshot of its settings can be made, otherwise it
+     * runs synchronously.
+     */
+    public static void settingsChanged(Drawable dr, Filter filter, boolean first, Component busyCursorParent) {
+        if (first || !canRenderAsync(filter)) {
+            renderNow(dr, filter, busyCursorParent);
+            return;
+        }
+        assert calledOnEDT() : threadInfo();
+
+        startSession(dr, filter, busyCursorParent);
+
+        // the background thread works on a copy, so that
+        // further adjustments can't affect a running render
+        Filter snapshot = filter.copy();
+        BufferedImage src = dr.getFilterSourceImage();
+        boolean coarseFirst = lastRenderMillis > COARSE_PASS_THRESHOLD_MILLIS
+            && (long) src.getWidth() * src.getHeight() > 4L * COARSE_PASS_PIXELS;
+
+        long renderGeneration = generation;
+        upToDate = false;
+        busyCursorParent.setCursor(BUSY);
+        CancellationToken token = new CancellationToken();
+        pendingToken = token;
+        pendingRender = executor.submit(() -> CancellationToken.runWith(token, () ->
+            render(snapshot, src, coarseFirst, renderGeneration)));
+    }
+
+    private static boolean canRenderAsync(Filter filter) {
+        // filters without presets can't be copied,
+        // they are shared with the filter dialog
+        return filter.canHaveUserPresets()
+            && calledOnEDT()
+            && !RandomGUITest.isRunning();
+    }
+
+    /**
+     * Runs the filter synchronously, as if previews were never rendered in the background.
+     */
+    private static void renderNow(Drawable dr, Filter filter, Component busyCursorParent) {
+        if (!calledOnEDT()) {
+            dr.startFilter(filter, PREVIEWING, busyCursorParent);
+            return;
+        }
+        startSession(dr, filter, busyCursorParent);
+
+        long startTime = System.nanoTime();
+        dr.startFilter(filter, PREVIEWING, busyCursorParent);
+        lastRenderMillis = (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    private static void startSession(Drawable dr, Filter filter, Component busyCursorParent) {
+        if (drawable != dr) {
+            lastRenderMillis = 0;
+        }
+        abandonPendingRender();
+
+        drawable = dr;
+        AsyncPreviewRenderer.filter = filter;
+        AsyncPreviewRenderer.busyCursorParent = busyCursorParent;
+    }
+
+    // runs on the background thread
+    private static void render(Filter snapshot, BufferedImage src, boolean coarseFirst, long renderGeneration) {
+        try {
+            if (coarseFirst) {
+                BufferedImage coarse = renderCoarse(snapshot, src);
+                if (coarse != null) {
+                    EventQueue.invokeLater(() -> showResult(coarse, false, 0, renderGeneration));
+                }
+            }
+            if (renderGeneration != generation) {
+                return; // don't start the expensive pass for stale settings
+            }
+
+            long startTime = System.nanoTime();
+            BufferedImage dest = snapshot.transformImage(src);
+            long millis = (System.nanoTime() - startTime) / 1_000_000;
+
+            EventQueue.invokeLater(() -> showResult(dest, true, millis, renderGeneration));
+        } catch (CancellationException e) {
+            // the settings changed or the session ended in the meantime
+        } catch (Throwable e) {
+            EventQueue.invokeLater(() -> renderFailed(renderGeneration));
+        }
+    }
+
+    // runs on the background thread
+    private static BufferedImage renderCoarse(Filter snapshot, BufferedImage src) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        double scale = Math.sqrt(COARSE_PASS_PIXELS / ((double) width * height));
+        int coarseWidth = Math.max(1, (int) (width * scale));
+        int coarseHeight = Math.max(1, (int) (height * scale));
+
+        BufferedImage smallSrc = ImageUtils.resize(src, coarseWidth, coarseHeight);
+        BufferedImage smallDest = snapshot.transformImage(smallSrc);
+        if (smallDest == smallSrc) {
+            return null; // the filter didn't change anything
+        }
+        return ImageUtils.getFasterScaledInstance(smallDest,
+            width, height, VALUE_INTERPOLATION_BILINEAR, false);
+    }
+
+    private static void showResult(BufferedImage result, boolean fullResolution, long millis, long renderGeneration) {
+        if (renderGeneration != generation) {
+            return; // the settings changed or the session ended in the meantime
+        }
+
+        drawable.changePreviewImage(result, filter.getName(), PREVIEWING);
+
+        if (fullResolution) {
+            upToDate = true;
+            pendingRender = null;
+            pendingToken = null;
+            lastRenderMillis = millis;
+            busyCursorParent.setCursor(DEFAULT);
+
+            Messages.showPerformanceMessage(filter.getName(), millis);
+            Filters.setLastFilter(filter);
+        }
+    }
+
+    private static void renderFailed(long renderGeneration) {
+        if (renderGeneration != generation) {
+            return;
+        }
+
+        // run it again on the EDT, where the error
+        // is reported in the usual way
+        Drawable dr = drawable;
+        abandonPendingRender();
+        renderNow(dr, filter, busyCursorParent);
+    }
+
+    /**
+     * Called when the preview of the given {@link Drawable} is accepted:
+     * if the last settings haven't been rendered at full resolution
+     * yet, then they are rendered synchronously.
+     */
+    public static void finishPreview(Drawable dr) {
+        if (drawable != dr) {
+            return;
+        }
+        if (!upToDate) {
+            abandonPendingRender();
+            renderNow(dr, filter, busyCursorParent);
+        }
+        endSession();
+    }
+
+    /**
+     * Called when the previewing of the given {@link Drawable} stops
+     * without accepting the result: any pending render is discarded.
+     */
+    public static void cancelPreview(Drawable dr) {
+        if (drawable != dr) {
+            return;
+        }
+        abandonPendingRender();
+        endSession();
+    }
+
+    private static void abandonPendingRender() {
+        generation++;
+        if (pendingRender != null) {
+            // a render that hasn't started yet is dropped,
+            // and a running one stops at the next row or
+            // iteration (or at least its result is ignored)
+            pendingRender.cancel(false);
+            pendingRender = null;
+            pendingToken.cancel();
+            pendingToken = null;
+        }
+        if (!upToDate) {
+            busyCursorParent.setCursor(DEFAULT);
+        }
+        upToDate = true;
+    }
+
+    private static void endSession() {
+        drawable = null;
+        filter = null;
+        busyCursorParent = null;
+        lastRenderMillis = 0;
+    }
+}
@@ -144,12 +144,12 @@ public class ParamSet implements Debuggable {
     }
 
     public void randomize() {
-        long before = Filter.runCount;
+        long before = Filter.getRunCount();
 
         paramList.forEach(FilterParam::randomize);
 
         // the filter is not supposed to be triggered
-        long after = Filter.runCount;
+        long after = Filter.getRunCount();
         assert before == after : "before = " + before + ", after = " + after;
     }
 
@@ -245,7 +245,7 @@ public class ParamSet implements Debuggable {
     }
 
     public void loadUserPreset(UserPreset preset) {
-        long runCountBefore = Filter.runCount;
+        long runCountBefore = Filter.getRunCount();
         for (FilterParam param : paramList) {
             param.loadStateFrom(preset);
         }
@@ -258,8 +258,8 @@ public class ParamSet implements Debuggable {
         }
 
         // check that the loading didn't trigger the filter
-        assert Filter.runCount == runCountBefore :
-            "runCountBefore = " + runCountBefore + ", runCount = " + Filter.runCount;
+        assert Filter.getRunCount() == runCountBefore :
+            "runCountBefore = " + runCountBefore + ", runCount = " + Filter.getRunCount();
 
         runFilter();
     }
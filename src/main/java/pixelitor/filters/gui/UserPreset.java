@@ -280,17 +280,24 @@ public class UserPreset implements Preset {
     @Override
     public Action asAction(PresetOwner owner) {
         return new PAction(name, () -> {
-            if (!loaded) {
-                try {
-                    loadFromFile();
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
-            }
+            ensureLoaded();
             owner.loadUserPreset(this);
         });
     }
 
+    /**
+     * Makes sure that the content of the preset file is in the memory.
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            try {
+                loadFromFile();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
     public static List<UserPreset> loadPresets(String presetDirName) {
         File presetsDir = getSaveDir(presetDirName);
         if (!presetsDir.exists()) {
@@ -124,7 +124,7 @@ public class MorphologyFilter extends WholeImageFilter {
                     outPixels[index++] = a << 24 | r << 16 | g << 8 | b;
                 }
             }
-            pt.unitDone();
+            pt.unitDoneOrStop();
         }
         finishProgressTracker();
         return outPixels;
@@ -87,4 +87,10 @@ public class JHBoxBlur extends ParametrizedFilter {
     public boolean supportsGray() {
         return !hpSharpening.isChecked();
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFootprintRadius() {
+        double maxRadius = Math.max(radius.getValueAsDouble(0), radius.getValueAsDouble(1));
+        return (int) Math.ceil(maxRadius) * numIterations.getValue();
+    }
+}
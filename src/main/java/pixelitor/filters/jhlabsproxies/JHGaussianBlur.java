@@ -21,6 +21,7 @@ package pixelitor.filters.jhlabsproxies;
 import com.jhlabs.image.GaussianFilter;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.EnumParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.GUIText;
 import pixelitor.utils.ImageUtils;
@@ -39,6 +40,7 @@ public class JHGaussianBlur extends ParametrizedFilter {
 
     private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 2, 101);
     private final BooleanParam hpSharpening = BooleanParam.forHPSharpening();
+    private final EnumParam<GaussianFilter.Mode> mode = new EnumParam<>("Mode", GaussianFilter.Mode.class);
 
     private GaussianFilter filter;
 
@@ -47,7 +49,8 @@ public class JHGaussianBlur extends ParametrizedFilter {
 
         setParams(
             radius.withDecimalPlaces(1),
-            hpSharpening
+            hpSharpening,
+            mode
         );
 
         helpURL = "https://en.wikipedia.org/wiki/Gaussian_blur";
@@ -60,6 +63,7 @@ public class JHGaussianBlur extends ParametrizedFilter {
         }
 
         filter.setRadius(radius.getValueAsFloat());
+        filter.setMode(mode.getSelected());
         filter.setPremultiplyAlpha(false);
 
         dest = ImageUtils.filterPremultiplied(src, dest, filter);
@@ -80,4 +84,9 @@ public class JHGaussianBlur extends ParametrizedFilter {
     protected boolean createDefaultDestImg() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFootprintRadius() {
+        return GaussianFilter.calcFootprintRadius(radius.getValueAsFloat(), mode.getSelected());
+    }
+}
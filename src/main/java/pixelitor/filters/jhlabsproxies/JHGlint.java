@@ -17,8 +17,10 @@
 
 package pixelitor.filters.jhlabsproxies;
 
+import com.jhlabs.image.GaussianFilter;
 import com.jhlabs.image.GlintFilter;
 import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.EnumParam;
 import pixelitor.filters.gui.GradientParam;
 import pixelitor.filters.gui.RangeParam;
 
@@ -39,6 +41,7 @@ public class JHGlint extends ParametrizedFilter {
 
     private final RangeParam lengthParam = new RangeParam("Length", 0, 20, 100);
     private final RangeParam blur = new RangeParam("Blur", 0, 1, 20);
+    private final EnumParam<GaussianFilter.Mode> blurMode = new EnumParam<>("Blur Mode", GaussianFilter.Mode.class);
 //    private BooleanParam glintOnly = new BooleanParam("Glint Only", false);
 
     private final GradientParam colors = new GradientParam("Colors",
@@ -56,6 +59,7 @@ public class JHGlint extends ParametrizedFilter {
             intensity,
             lengthParam, // slow for large images if it's adjusted to the image size
             blur,
+            blurMode,
             colors
 //                glintOnly
         );
@@ -78,6 +82,7 @@ public class JHGlint extends ParametrizedFilter {
         filter.setAmount((float) intensity.getPercentage());
         filter.setLength(length);
         filter.setBlur(blur.getValueAsFloat());
+        filter.setBlurMode(blurMode.getSelected());
         filter.setColormap(colors.getValue());
 
         return filter.filter(src, dest);
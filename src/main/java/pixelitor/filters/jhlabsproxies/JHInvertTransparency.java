@@ -33,6 +33,8 @@ public class JHInvertTransparency extends Filter {
 
     public JHInvertTransparency() {
         filter = new InvertAlphaFilter(NAME);
+
+        setPointOperation();
     }
 
     @Override
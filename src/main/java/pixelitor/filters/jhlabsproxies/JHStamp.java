@@ -47,7 +47,8 @@ public class JHStamp extends ParametrizedFilter {
         new Item[]{
             // this is calculated with floats, but the animation is still not smooth
             new Item("Fast", StampFilter.BOX3_BLUR),
-            new Item("Gaussian (slow for large images!)", StampFilter.GAUSSIAN_BLUR)
+            new Item("Gaussian (slow for large images!)", StampFilter.GAUSSIAN_BLUR),
+            new Item("Gaussian, Fast Approximation", StampFilter.FAST_GAUSSIAN_BLUR)
         }, IGNORE_RANDOMIZE);
 
     private StampFilter filter;
@@ -42,6 +42,8 @@ public class JHTriTone extends ParametrizedFilter {
         super(true);
 
         setParams(shadowColor, midtonesColor, highlightsColor);
+
+        setPointOperation();
     }
 
     @Override
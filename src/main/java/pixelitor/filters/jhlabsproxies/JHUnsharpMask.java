@@ -17,8 +17,10 @@
 
 package pixelitor.filters.jhlabsproxies;
 
+import com.jhlabs.image.GaussianFilter;
 import com.jhlabs.image.UnsharpFilter;
 import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.EnumParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.GUIText;
 
@@ -33,6 +35,7 @@ public class JHUnsharpMask extends ParametrizedFilter {
     private final RangeParam amount = new RangeParam("Amount", 0, 50, 100);
     private final RangeParam radius = new RangeParam(GUIText.RADIUS, 0, 2, 100);
     private final RangeParam threshold = new RangeParam("Threshold", 0, 0, 100);
+    private final EnumParam<GaussianFilter.Mode> mode = new EnumParam<>("Blur Mode", GaussianFilter.Mode.class);
 
     private UnsharpFilter filter;
 
@@ -42,7 +45,8 @@ public class JHUnsharpMask extends ParametrizedFilter {
         setParams(
             amount,
             radius,
-            threshold
+            threshold,
+            mode
         );
 
         helpURL = "https://en.wikipedia.org/wiki/Unsharp_masking";
@@ -61,7 +65,13 @@ public class JHUnsharpMask extends ParametrizedFilter {
         filter.setAmount((float) amount.getPercentage());
         filter.setThreshold(threshold.getValue());
         filter.setRadius(radius.getValueAsFloat());
+        filter.setMode(mode.getSelected());
 
         return filter.filter(src, dest);
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getFootprintRadius() {
+        return GaussianFilter.calcFootprintRadius(radius.getValueAsFloat(), mode.getSelected());
+    }
+}
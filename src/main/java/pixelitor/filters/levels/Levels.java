@@ -47,6 +47,8 @@ public class Levels extends FilterWithGUI {
 
     public Levels() {
         levelsModel = new LevelsModel(this);
+
+        setPointOperation();
     }
 
     @Override
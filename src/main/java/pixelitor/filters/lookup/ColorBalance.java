@@ -69,6 +69,8 @@ public class ColorBalance extends ParametrizedFilter {
             magentaGreen,
             yellowBlue
         );
+
+        setPointOperation();
     }
 
     @Override
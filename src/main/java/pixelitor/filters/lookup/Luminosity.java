@@ -28,6 +28,10 @@ import java.awt.image.BufferedImage;
 public class Luminosity extends Filter {
     public static final String NAME = "Luminosity";
 
+    public Luminosity() {
+        setPointOperation();
+    }
+
     @Override
     public BufferedImage transform(BufferedImage src, BufferedImage dest) {
         int[] srcData = ImageUtils.getPixelArray(src);
@@ -88,10 +88,7 @@ public class AreaEffects implements ParamState<AreaEffects>, Debuggable {
     }
 
     public void drawOn(Graphics2D g2, Shape shape) {
-        AreaEffect[] areaEffects = asArray();
-        for (AreaEffect effect : areaEffects) {
-            effect.apply(g2, shape, 0, 0);
-        }
+        AbstractAreaEffect.applyAll(asArray(), g2, shape, 0, 0);
     }
 
     /**
@@ -170,6 +167,7 @@ public class AreaEffects implements ParamState<AreaEffects>, Debuggable {
             Color newBrushColor = dropShadowEffect.interpolateBrushColor(
                 endEffect.getBrushColor(), progress);
             newDropShadow.setBrushColor(newBrushColor);
+            newDropShadow.setRenderer(dropShadowEffect.getRenderer());
             retVal.setDropShadow(newDropShadow);
         }
         if (glowEffect != null) {
@@ -180,6 +178,7 @@ public class AreaEffects implements ParamState<AreaEffects>, Debuggable {
             Color newBrushColor = glowEffect.interpolateBrushColor(
                 endEffect.getBrushColor(), progress);
             glowEffect.setBrushColor(newBrushColor);
+            newGlowEffect.setRenderer(glowEffect.getRenderer());
 
             retVal.setGlow(newGlowEffect);
         }
@@ -191,6 +190,7 @@ public class AreaEffects implements ParamState<AreaEffects>, Debuggable {
             Color newBrushColor = innerGlowEffect.interpolateBrushColor(
                 endEffect.getBrushColor(), progress);
             newInnerGlow.setBrushColor(newBrushColor);
+            newInnerGlow.setRenderer(innerGlowEffect.getRenderer());
             retVal.setInnerGlow(newInnerGlow);
         }
         if (neonBorderEffect != null) {
@@ -205,6 +205,7 @@ public class AreaEffects implements ParamState<AreaEffects>, Debuggable {
                 endEffect.getEffectWidth(), progress);
             var newNeonBorder = new NeonBorderEffect(newEdgeColor, newCenterColor,
                 newWidth, newOpacity);
+            newNeonBorder.setRenderer(neonBorderEffect.getRenderer());
             retVal.setNeonBorder(newNeonBorder);
         }
         return retVal;
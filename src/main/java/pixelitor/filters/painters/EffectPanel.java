@@ -19,6 +19,7 @@ package pixelitor.filters.painters;
 
 import com.bric.swing.ColorSwatch;
 import org.jdesktop.swingx.painter.effects.AbstractAreaEffect;
+import org.jdesktop.swingx.painter.effects.AbstractAreaEffect.Renderer;
 import pixelitor.colors.ColorHistory;
 import pixelitor.colors.Colors;
 import pixelitor.filters.gui.ParamAdjustmentListener;
@@ -59,6 +60,7 @@ public abstract class EffectPanel extends JPanel implements Resettable {
     private ResetButton resetButton;
 
     private final RangeParam opacityRange;
+    private final JComboBox<Renderer> rendererCB;
 
     protected final GridBagHelper gbh;
 
@@ -92,6 +94,20 @@ public abstract class EffectPanel extends JPanel implements Resettable {
         gbh.addLabelAndControl("Enabled:", enabledCB);
         gbh.addLabelAndControlNoStretch("Color:", colorSwatch);
         gbh.addLabelAndControl(opacityRange.getName() + ":", opacitySlider);
+
+        rendererCB = new JComboBox<>(Renderer.values());
+        rendererCB.setName("rendererCB");
+        rendererCB.setToolTipText("<html>The distance field renderer is faster " +
+            "for wide effects<br>on complex shapes, such as long texts");
+        rendererCB.addActionListener(e -> rendererChanged());
+        gbh.addLabelAndControlNoStretch("Renderer:", rendererCB);
+    }
+
+    private void rendererChanged() {
+        updateResetButtonIcon();
+        if (adjustmentListener != null) {
+            adjustmentListener.paramAdjusted();
+        }
     }
 
     public void setTabEnabled(boolean enabled) {
@@ -144,6 +160,20 @@ public abstract class EffectPanel extends JPanel implements Resettable {
         opacityRange.setValueNoTrigger(opacity);
     }
 
+    public Renderer getRenderer() {
+        return (Renderer) rendererCB.getSelectedItem();
+    }
+
+    /**
+     * Sets the renderer without triggering a filter update
+     */
+    public void setRenderer(Renderer renderer) {
+        ParamAdjustmentListener savedListener = adjustmentListener;
+        adjustmentListener = null;
+        rendererCB.setSelectedItem(renderer);
+        adjustmentListener = savedListener;
+    }
+
     public abstract double getBrushWidth();
 
     public abstract void setBrushWidth(double value);
@@ -168,13 +198,15 @@ public abstract class EffectPanel extends JPanel implements Resettable {
         effect.setEffectWidth(brushWidth);
 
         effect.setAutoBrushSteps();
+        effect.setRenderer(getRenderer());
     }
 
     @Override
     public boolean hasDefault() {
         return enabledCB.isSelected() == defaultEnabled
             && Objects.equals(color, defaultColor)
-            && opacityRange.hasDefault();
+            && opacityRange.hasDefault()
+            && getRenderer() == Renderer.STROKES;
     }
 
     @Override
@@ -182,6 +214,7 @@ public abstract class EffectPanel extends JPanel implements Resettable {
         setTabEnabled(defaultEnabled);
         setColor(defaultColor, trigger);
         setOpacityAsInt(defaultOpacityInt);
+        setRenderer(Renderer.STROKES);
     }
 
     public boolean randomize() {
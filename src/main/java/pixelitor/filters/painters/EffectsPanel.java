@@ -18,6 +18,7 @@
 package pixelitor.filters.painters;
 
 import org.jdesktop.swingx.painter.effects.*;
+import org.jdesktop.swingx.painter.effects.AbstractAreaEffect.Renderer;
 import pixelitor.filters.gui.*;
 
 import javax.swing.*;
@@ -104,6 +105,7 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
         Color color = WHITE;
         double width = 10;
         float opacity = 1.0f;
+        Renderer renderer = Renderer.STROKES;
         if (effects != null) {
             var effect = effects.getGlow();
             if (effect != null) {
@@ -111,16 +113,19 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
                 color = effect.getBrushColor();
                 width = effect.getEffectWidth();
                 opacity = effect.getOpacity();
+                renderer = effect.getRenderer();
             }
         }
         if (glowPanel == null) { // first initialization
             glowPanel = new EffectWithWidthPanel(
                 "Glow", enable, color, width, opacity);
+            glowPanel.setRenderer(renderer);
         } else {
             glowPanel.setTabEnabled(enable);
             glowPanel.setBrushWidth(width);
             glowPanel.setColor(color, false);
             glowPanel.setOpacity(opacity);
+            glowPanel.setRenderer(renderer);
         }
     }
 
@@ -129,6 +134,7 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
         Color color = RED;
         double width = 10;
         float opacity = 1.0f;
+        Renderer renderer = Renderer.STROKES;
         if (effects != null) {
             var effect = effects.getInnerGlow();
             if (effect != null) {
@@ -136,16 +142,19 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
                 color = effect.getBrushColor();
                 width = effect.getEffectWidth();
                 opacity = effect.getOpacity();
+                renderer = effect.getRenderer();
             }
         }
         if (innerGlowPanel == null) { // first initialization
             innerGlowPanel = new EffectWithWidthPanel(
                 "Inner Glow", enable, color, width, opacity);
+            innerGlowPanel.setRenderer(renderer);
         } else {
             innerGlowPanel.setTabEnabled(enable);
             innerGlowPanel.setBrushWidth(width);
             innerGlowPanel.setColor(color, false);
             innerGlowPanel.setOpacity(opacity);
+            innerGlowPanel.setRenderer(renderer);
         }
     }
 
@@ -155,6 +164,7 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
         Color innerColor = WHITE;
         double width = 10;
         float opacity = 1.0f;
+        Renderer renderer = Renderer.STROKES;
         if (effects != null) {
             var effect = effects.getNeonBorder();
             if (effect != null) {
@@ -163,16 +173,19 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
                 innerColor = effect.getCenterColor();
                 width = effect.getEffectWidth();
                 opacity = effect.getOpacity();
+                renderer = effect.getRenderer();
             }
         }
         if (neonBorderPanel == null) { // first initialization
             neonBorderPanel = new NeonBorderPanel(
                 enable, color, innerColor, width, opacity);
+            neonBorderPanel.setRenderer(renderer);
         } else {
             neonBorderPanel.setTabEnabled(enable);
             neonBorderPanel.setBrushWidth(width);
             neonBorderPanel.setColor(color, false);
             neonBorderPanel.setOpacity(opacity);
+            neonBorderPanel.setRenderer(renderer);
             neonBorderPanel.setInnerColor(innerColor, false);
         }
     }
@@ -184,12 +197,14 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
         double angle = 0.7;
         double spread = 10;
         float opacity = 1.0f;
+        Renderer renderer = Renderer.STROKES;
         if (effects != null) {
             var effect = effects.getDropShadow();
             if (effect != null) {
                 enable = true;
                 color = effect.getBrushColor();
                 opacity = effect.getOpacity();
+                renderer = effect.getRenderer();
 
                 Point2D offset = effect.getOffset();
                 double x = offset.getX();
@@ -203,11 +218,13 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
         if (dropShadowPanel == null) { // first initialization
             dropShadowPanel = new DropShadowPanel(
                 enable, color, distance, angle, spread, opacity);
+            dropShadowPanel.setRenderer(renderer);
         } else {
             dropShadowPanel.setTabEnabled(enable);
             dropShadowPanel.setBrushWidth(spread);
             dropShadowPanel.setColor(color, false);
             dropShadowPanel.setOpacity(opacity);
+            dropShadowPanel.setRenderer(renderer);
             dropShadowPanel.setAngle(angle);
             dropShadowPanel.setDistance(distance);
         }
@@ -247,6 +264,7 @@ public class EffectsPanel extends JPanel implements Resettable, ParamGUI {
 
             neonBorderEffect = new NeonBorderEffect(edgeColor, centerColor, effectWidth,
                 neonBorderPanel.getOpacity());
+            neonBorderEffect.setRenderer(neonBorderPanel.getRenderer());
         }
         effects.setNeonBorder(neonBorderEffect);
     }
@@ -18,10 +18,13 @@
 package pixelitor.filters.painters;
 
 import org.jdesktop.swingx.painter.TextPainter;
+import org.jdesktop.swingx.painter.effects.AbstractAreaEffect;
 import org.jdesktop.swingx.painter.effects.AreaEffect;
 import pixelitor.Canvas;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.BufferedImage;
 import java.io.Serial;
 
@@ -122,11 +125,24 @@ public class TransformedTextPainter extends TextPainter {
             if (updateLayout) {
                 //provideShape must be called with untransformed Graphics
                 Shape shape = provideShape(g, component, width, height);
-                transformedShape = tx.createTransformedShape(shape);
-            }
-            for (AreaEffect ef : effects) {
-                ef.apply(g, transformedShape, width, height);
+                // the original transform isn't necessarily the identity
+                // (for example when painting into a translated image)
+                transformedShape = calcRelativeTransform(origTransform, tx)
+                    .createTransformedShape(shape);
             }
+            AbstractAreaEffect.applyAll(effects, g, transformedShape, width, height);
+        }
+    }
+
+    // returns the transform that has to be applied
+    // after the original one to get the text transform
+    private static AffineTransform calcRelativeTransform(AffineTransform orig, AffineTransform text) {
+        try {
+            AffineTransform relative = orig.createInverse();
+            relative.concatenate(text);
+            return relative;
+        } catch (NoninvertibleTransformException e) {
+            return text;
         }
     }
 
@@ -167,6 +183,21 @@ public class TransformedTextPainter extends TextPainter {
         }
     }
 
+    /**
+     * Recalculates the layout for the given canvas size without painting.
+     */
+    public void updateLayout(int canvasWidth, int canvasHeight) {
+        // This image is created just to get a Graphics2D somehow...
+        BufferedImage tmp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = tmp.createGraphics();
+        configureGraphics(g2); // the font metrics can depend on the hints
+
+        updateLayout(canvasWidth, canvasHeight, getText(), g2.getFontMetrics(font));
+
+        g2.dispose();
+        tmp.flush();
+    }
+
     private void updateLayout(int width, int height, String text, FontMetrics metrics) {
         int textWidth = metrics.stringWidth(text);
         int textHeight = metrics.getHeight();
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static pixelitor.gui.HistogramsPanel.HISTOGRAM_RESOLUTION;
+import static pixelitor.utils.Threads.*;
+
+/**
+ * The cached histograms of a composite image. The image is divided
+ * into tiles, the histograms of the tiles are calculated in parallel
+ * outside the EDT, and after a local change only the histograms
+ * of the changed tiles are recalculated.
+ */
+public class CompositeHistograms {
+    private static final int TILE_SIZE = 256;
+
+    // the red, green and blue counts are stored one after the other
+    private static final int NUM_COUNTS = 3 * HISTOGRAM_RESOLUTION;
+
+    private int width = -1;
+    private int height = -1;
+    private int numCols;
+    private int numRows;
+
+    // the counts of each tile, or null if not calculated yet
+    private int[][] tileCounts;
+
+    // the sum of the calculated tile counts
+    private final int[] totalCounts = new int[NUM_COUNTS];
+
+    // incremented each time a tile is invalidated, so that the
+    // results calculated from its old pixels can be ignored
+    private int[] tileVersions;
+
+    private final BitSet dirtyTiles = new BitSet();
+
+    /**
+     * Marks all tiles as changed.
+     */
+    public void invalidateAll() {
+        assert calledOnEDT() : threadInfo();
+        if (tileCounts == null) {
+            return;
+        }
+        int numTiles = numCols * numRows;
+        dirtyTiles.set(0, numTiles);
+        for (int i = 0; i < numTiles; i++) {
+            tileVersions[i]++;
+        }
+    }
+
+    /**
+     * Marks the tiles intersecting the given image-space rectangle as changed.
+     */
+    public void invalidateRegion(Rectangle2D imRect) {
+        assert calledOnEDT() : threadInfo();
+        if (tileCounts == null || imRect.isEmpty()) {
+            return;
+        }
+        int firstCol = Math.max(0, (int) Math.floor(imRect.getMinX()) / TILE_SIZE);
+        int lastCol = Math.min(numCols - 1, (int) Math.ceil(imRect.getMaxX()) / TILE_SIZE);
+        int firstRow = Math.max(0, (int) Math.floor(imRect.getMinY()) / TILE_SIZE);
+        int lastRow = Math.min(numRows - 1, (int) Math.ceil(imRect.getMaxY()) / TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int index = row * numCols + col;
+                dirtyTiles.set(index);
+                tileVersions[index]++;
+            }
+        }
+    }
+
+    /**
+     * Recalculates the histograms of the changed tiles of the given
+     * up-to-date composite image outside the EDT. The returned future
+     * completes on the EDT with the red, green and blue counts.
+     */
+    public CompletableFuture<int[][]> calculate(BufferedImage composite) {
+        assert calledOnEDT() : threadInfo();
+
+        if (composite.getWidth() != width || composite.getHeight() != height) {
+            reset(composite.getWidth(), composite.getHeight());
+        }
+        if (dirtyTiles.isEmpty()) {
+            return CompletableFuture.completedFuture(splitTotals());
+        }
+
+        int[] tiles = dirtyTiles.stream().toArray();
+        int[] versions = new int[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            versions[i] = tileVersions[tiles[i]];
+        }
+        // the tiles are taken, a new invalidation will mark them again
+        dirtyTiles.clear();
+
+        // the tiles are split into a few chunks per core, and each chunk
+        // is calculated by a pool task into its own count arrays
+        int numChunks = Math.min(tiles.length, ThreadPool.NUM_CORES * 2);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>(numChunks);
+        int[][] newCounts = new int[tiles.length][];
+        for (int c = 0; c < numChunks; c++) {
+            int start = (int) ((long) c * tiles.length / numChunks);
+            int end = (int) ((long) (c + 1) * tiles.length / numChunks);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    newCounts[i] = countTile(composite, tiles[i]);
+                }
+            }, onPool));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+            .thenApplyAsync(v -> {
+                applyNewCounts(tiles, versions, newCounts);
+                return splitTotals();
+            }, onEDT);
+    }
+
+    private void reset(int newWidth, int newHeight) {
+        width = newWidth;
+        height = newHeight;
+        numCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+        numRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int numTiles = numCols * numRows;
+        tileCounts = new int[numTiles][];
+        // new versions, so that all running calculations are ignored
+        int[] oldVersions = tileVersions;
+        tileVersions = new int[numTiles];
+        if (oldVersions != null) {
+            int nextVersion = 1 + maxOf(oldVersions);
+            Arrays.fill(tileVersions, nextVersion);
+        }
+        Arrays.fill(totalCounts, 0);
+        dirtyTiles.clear();
+        dirtyTiles.set(0, numTiles);
+    }
+
+    private void applyNewCounts(int[] tiles, int[] versions, int[][] newCounts) {
+        assert calledOnEDT() : threadInfo();
+
+        for (int i = 0; i < tiles.length; i++) {
+            int tile = tiles[i];
+            if (tile >= tileVersions.length || versions[i] != tileVersions[tile]) {
+                // changed (or resized) while it was calculated
+                continue;
+            }
+            int[] oldCounts = tileCounts[tile];
+            int[] counts = newCounts[i];
+            for (int j = 0; j < NUM_COUNTS; j++) {
+                totalCounts[j] += counts[j];
+            }
+            if (oldCounts != null) {
+                for (int j = 0; j < NUM_COUNTS; j++) {
+                    totalCounts[j] -= oldCounts[j];
+                }
+            }
+            tileCounts[tile] = counts;
+        }
+    }
+
+    private int[] countTile(BufferedImage image, int tile) {
+        int x = (tile % numCols) * TILE_SIZE;
+        int y = (tile / numCols) * TILE_SIZE;
+        int tileWidth = Math.min(TILE_SIZE, width - x);
+        int tileHeight = Math.min(TILE_SIZE, height - y);
+
+        int[] pixels;
+        int offset;
+        int scanSize;
+        if (image.getType() == TYPE_INT_ARGB && !ImageUtils.isSubImage(image)) {
+            pixels = ImageUtils.getPixelArray(image);
+            offset = y * width + x;
+            scanSize = width;
+        } else {
+            pixels = image.getRGB(x, y, tileWidth, tileHeight, null, 0, tileWidth);
+            offset = 0;
+            scanSize = tileWidth;
+        }
+
+        int[] counts = new int[NUM_COUNTS];
+        for (int row = 0; row < tileHeight; row++) {
+            int rowStart = offset + row * scanSize;
+            for (int i = rowStart, rowEnd = rowStart + tileWidth; i < rowEnd; i++) {
+                int rgb = pixels[i];
+                if ((rgb >>> 24) > 0) {
+                    counts[(rgb >>> 16) & 0xFF]++;
+                    counts[HISTOGRAM_RESOLUTION + ((rgb >>> 8) & 0xFF)]++;
+                    counts[2 * HISTOGRAM_RESOLUTION + (rgb & 0xFF)]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private int[][] splitTotals() {
+        int[][] split = new int[3][HISTOGRAM_RESOLUTION];
+        for (int channel = 0; channel < 3; channel++) {
+            System.arraycopy(totalCounts, channel * HISTOGRAM_RESOLUTION,
+                split[channel], 0, HISTOGRAM_RESOLUTION);
+        }
+        return split;
+    }
+
+    int getNumDirtyTiles() {
+        return dirtyTiles.cardinality();
+    }
+
+    private static int maxOf(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
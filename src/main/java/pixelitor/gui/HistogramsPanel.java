@@ -19,7 +19,7 @@ package pixelitor.gui;
 
 import pixelitor.Composition;
 import pixelitor.Views;
-import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
 import pixelitor.utils.ViewActivationListener;
 
 import javax.swing.*;
@@ -27,7 +27,6 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
-import java.awt.image.BufferedImage;
 import java.util.Objects;
 
 import static java.awt.BorderLayout.CENTER;
@@ -35,6 +34,8 @@ import static java.awt.BorderLayout.NORTH;
 import static java.awt.Color.*;
 import static java.awt.FlowLayout.LEFT;
 import static javax.swing.BorderFactory.createTitledBorder;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
 import static pixelitor.utils.Texts.i18n;
 
 /**
@@ -120,28 +121,20 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
 
     private void update(Composition comp) {
         Objects.requireNonNull(comp);
-        if (!isShown()) {
+        if (!isShown() || Views.getActiveComp() != comp) {
             return;
         }
-        BufferedImage image = comp.getCompositeImage();
-
-        int[] reds = new int[HISTOGRAM_RESOLUTION];
-        int[] blues = new int[HISTOGRAM_RESOLUTION];
-        int[] greens = new int[HISTOGRAM_RESOLUTION];
-
-        int[] data = ImageUtils.getPixelArray(image);
-        for (int rgb : data) {
-            int a = (rgb >>> 24) & 0xFF;
-            if (a > 0) {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                reds[r]++;
-                greens[g]++;
-                blues[b]++;
+        // only the changed tiles are counted again, outside the EDT
+        comp.calcHistograms().thenAccept(counts -> {
+            // another composition could have been activated in the meantime
+            if (Views.getActiveComp() == comp) {
+                showCounts(counts[0], counts[1], counts[2]);
             }
-        }
+        }).exceptionally(Messages::showExceptionOnEDT);
+    }
+
+    private void showCounts(int[] reds, int[] greens, int[] blues) {
+        assert calledOnEDT() : threadInfo();
 
         if (logarithmic) {
             for (int i = 0; i < HISTOGRAM_RESOLUTION; i++) {
@@ -19,6 +19,7 @@ package pixelitor.gui;
 
 import com.bric.swing.ColorSwatch;
 import org.jdesktop.swingx.combobox.EnumComboBoxModel;
+import pixelitor.CompositingEngine;
 import pixelitor.GUIMode;
 import pixelitor.Views;
 import pixelitor.colors.ColorPickerDialog;
@@ -30,7 +31,9 @@ import pixelitor.gui.utils.SliderSpinner.TextPosition;
 import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
+import pixelitor.history.HistoryMemory;
 import pixelitor.io.FileChoosers;
+import pixelitor.layers.ImageCacheManager;
 import pixelitor.layers.LayerGUILayout;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Cursors;
@@ -58,12 +61,18 @@ public class PreferencesPanel extends JTabbedPane {
     private static final Border EMPTY_BORDER =
         BorderFactory.createEmptyBorder(5, 10, 5, 0);
     private static final String UNDO_LEVELS_LABEL = "Minimum Undo/Redo Levels";
+    private static final String UNDO_MEMORY_LABEL = "Undo/Redo Memory (MB)";
+    private static final String IMAGE_CACHE_MEMORY_LABEL = "Image Cache Memory (MB)";
     private static final String IMAGEMAGICK_FOLDER_LABEL = "ImageMagick 7 Folder";
 
     private JTextField undoLevelsTF;
+    private JTextField undoMemoryTF;
+    private JCheckBox undoSpillCB;
+    private JTextField imageCacheMemoryTF;
     private JComboBox<Item> thumbSizeCB;
     private JComboBox<MouseZoomMethod> zoomMethodCB;
     private JComboBox<PanMethod> panMethodCB;
+    private JComboBox<CompositingEngine> compositingCB;
     private JCheckBox snapCB;
     private JTextField magickDirTF;
     private JCheckBox nativeChoosersCB;
@@ -318,6 +327,9 @@ public class PreferencesPanel extends JTabbedPane {
 
         addNativeChoosersCB(gbh);
         addUndoLevelsChooser(gbh);
+        addUndoMemoryChooser(gbh);
+        addImageCacheMemoryChooser(gbh);
+        addCompositingChooser(gbh);
         addMagickDirField(gbh);
         addExperimentalCB(gbh);
 
@@ -340,6 +352,38 @@ public class PreferencesPanel extends JTabbedPane {
                 undoLevelsTF, true));
     }
 
+    private void addUndoMemoryChooser(GridBagHelper gbh) {
+        undoMemoryTF = new JTextField(4);
+        undoMemoryTF.setName("undoMemoryTF");
+        undoMemoryTF.setText(String.valueOf(HistoryMemory.getBudgetMb()));
+        gbh.addLabelAndControl(UNDO_MEMORY_LABEL + ": ",
+            TextFieldValidator.createPositiveIntLayer(UNDO_MEMORY_LABEL,
+                undoMemoryTF, false));
+
+        undoSpillCB = new JCheckBox("", HistoryMemory.isSpillingToDisk());
+        undoSpillCB.setToolTipText("<html>If checked, the old undo/redo data is moved to temporary files" +
+            "<br>instead of discarding it when the memory limit is reached.");
+        gbh.addLabelAndControl("Move Old Undo/Redo Data to Disk:", undoSpillCB);
+    }
+
+    private void addImageCacheMemoryChooser(GridBagHelper gbh) {
+        imageCacheMemoryTF = new JTextField(4);
+        imageCacheMemoryTF.setName("imageCacheMemoryTF");
+        imageCacheMemoryTF.setText(String.valueOf(ImageCacheManager.getBudgetMb()));
+        imageCacheMemoryTF.setToolTipText("<html>The memory used for the cached images of smart objects," +
+            "<br>smart filters, layer groups, masked and vector layers.");
+        gbh.addLabelAndControl(IMAGE_CACHE_MEMORY_LABEL + ": ",
+            TextFieldValidator.createPositiveIntLayer(IMAGE_CACHE_MEMORY_LABEL,
+                imageCacheMemoryTF, false));
+    }
+
+    private void addCompositingChooser(GridBagHelper gbh) {
+        compositingCB = new JComboBox<>(CompositingEngine.values());
+        compositingCB.setSelectedItem(CompositingEngine.CURRENT);
+        compositingCB.setName("compositingCB");
+        gbh.addLabelAndControlNoStretch("Layer Compositing: ", compositingCB);
+    }
+
     private void addMagickDirField(GridBagHelper gbh) {
         magickDirTF = new JTextField(AppPreferences.magickDirName);
         magickDirTF.setColumns(10);
@@ -374,6 +418,30 @@ public class PreferencesPanel extends JTabbedPane {
             return false;
         }
 
+        int undoMemory;
+        try {
+            undoMemory = parseInt(undoMemoryTF.getText().trim());
+        } catch (NumberFormatException ex) {
+            undoMemory = 0;
+        }
+        if (undoMemory <= 0) {
+            Dialogs.showErrorDialog(d, "Error",
+                "<html><b>" + UNDO_MEMORY_LABEL + "</b> must be a positive integer.");
+            return false;
+        }
+
+        int imageCacheMemory;
+        try {
+            imageCacheMemory = parseInt(imageCacheMemoryTF.getText().trim());
+        } catch (NumberFormatException ex) {
+            imageCacheMemory = 0;
+        }
+        if (imageCacheMemory <= 0) {
+            Dialogs.showErrorDialog(d, "Error",
+                "<html><b>" + IMAGE_CACHE_MEMORY_LABEL + "</b> must be a positive integer.");
+            return false;
+        }
+
         // validate the given ImageMagick directory
         String magickDirName = magickDirTF.getText().trim();
         if (!magickDirName.isEmpty()) {
@@ -395,9 +463,13 @@ public class PreferencesPanel extends JTabbedPane {
         // these can't be set interactively => set it here
         MouseZoomMethod.changeTo((MouseZoomMethod) zoomMethodCB.getSelectedItem());
         PanMethod.changeTo((PanMethod) panMethodCB.getSelectedItem());
+        CompositingEngine.changeTo((CompositingEngine) compositingCB.getSelectedItem());
         View.snappingSettingChanged(snapCB.isSelected());
         AppPreferences.magickDirName = magickDirName;
         FileChoosers.setUseNativeDialogs(nativeChoosersCB.isSelected());
+        HistoryMemory.setBudgetMb(undoMemory);
+        HistoryMemory.setSpillToDisk(undoSpillCB.isSelected());
+        ImageCacheManager.setBudgetMb(imageCacheMemory);
         GUIMode.enableExperimental(experimentalCB.isSelected());
 
         return true;
@@ -230,6 +230,7 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
             for (SmartObject owner : newComp.getOwners()) {
                 owner.propagateContentChanges(newComp, true);
             }
+            newComp.changesPropagated();
         }
 
         revalidate(); // update the scrollbars if the new comp has a different size
@@ -394,7 +395,7 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
             assert mask != null : "no mask in " + maskViewMode;
             mask.paintLayerOnGraphics(g2, true);
         } else {
-            g2.drawImage(comp.getCompositeImage(), 0, 0, null);
+            comp.paintCompositeImage(g2, scaling);
 
             if (maskViewMode.showRuby()) {
                 //LayerMask mask = comp.getActiveLayer().getActiveMask();
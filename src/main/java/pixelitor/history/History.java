@@ -48,6 +48,8 @@ public class History {
 
     static {
         setUndoLevels(AppPreferences.loadUndoLevels());
+        HistoryMemory.setBudgetMb(AppPreferences.loadUndoMemoryMb());
+        HistoryMemory.setSpillToDisk(AppPreferences.loadUndoSpill());
     }
 
     private History() {
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import pixelitor.utils.Utils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the memory used by the image backups of the history within
+ * a budget. Half of the budget can be used by uncompressed backups,
+ * the older ones are compressed in the background. If the compressed
+ * backups also exceed the other half, then they are moved to temporary
+ * files (if enabled). When a new edit is added while the raw and
+ * compressed backups together exceed the budget, the pending work
+ * is done immediately, and then the oldest edits are trimmed
+ * from the history until the backups fit.
+ */
+public final class HistoryMemory {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // the registered backups, the oldest first
+    private static final List<WeakReference<ImageBackup>> backups = new ArrayList<>();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "history-compression");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private static long budgetBytes = calcDefaultBudgetMb() * MEGABYTE;
+    private static boolean spillToDisk = false;
+
+    private HistoryMemory() {
+        // should not be instantiated
+    }
+
+    public static int calcDefaultBudgetMb() {
+        return Utils.calcDefaultCacheBudgetMb();
+    }
+
+    public static synchronized int getBudgetMb() {
+        return (int) (budgetBytes / MEGABYTE);
+    }
+
+    public static synchronized void setBudgetMb(int budgetMb) {
+        budgetBytes = budgetMb * MEGABYTE;
+        rebalance();
+    }
+
+    public static synchronized boolean isSpillingToDisk() {
+        return spillToDisk;
+    }
+
+    public static synchronized void setSpillToDisk(boolean spillToDisk) {
+        HistoryMemory.spillToDisk = spillToDisk;
+        rebalance();
+    }
+
+    static synchronized void register(ImageBackup backup) {
+        backups.add(new WeakReference<>(backup));
+        rebalance();
+    }
+
+    static synchronized void unregister(ImageBackup backup) {
+        // the backups of the edits that were never added to
+        // the history are garbage collected without unregistering
+        backups.removeIf(ref -> ref.get() == backup || ref.get() == null);
+    }
+
+    /**
+     * Returns true if the backups kept in memory, raw and compressed
+     * together, exceed the budget. If they do, then the backups that are
+     * waiting to be compressed or spilled are processed first on the
+     * calling thread, so that the history is trimmed only if that's not enough.
+     */
+    static boolean isOverBudget() {
+        if (getUsedBytes() <= getBudgetBytes()) {
+            return false;
+        }
+        List<ImageBackup> toCompress = new ArrayList<>();
+        selectWork(toCompress, new ArrayList<>());
+        for (ImageBackup backup : toCompress) {
+            backup.compress();
+        }
+
+        // the selection of the spilled backups depends on the compressed sizes
+        List<ImageBackup> toSpill = new ArrayList<>();
+        selectWork(new ArrayList<>(), toSpill);
+        for (ImageBackup backup : toSpill) {
+            backup.spill();
+        }
+
+        return getUsedBytes() > getBudgetBytes();
+    }
+
+    private static synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns the number of heap bytes used by the backups.
+     */
+    public static synchronized long getUsedBytes() {
+        long sum = 0;
+        for (WeakReference<ImageBackup> ref : backups) {
+            ImageBackup backup = ref.get();
+            if (backup != null) {
+                sum += backup.isRaw() ? backup.getRawBytes() : backup.getCompressedBytes();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Schedules the compression of the backups that don't fit
+     * uncompressed into the budget, and the spilling of the
+     * compressed ones that don't fit into the memory.
+     */
+    private static void rebalance() {
+        List<ImageBackup> toCompress = new ArrayList<>();
+        List<ImageBackup> toSpill = new ArrayList<>();
+        selectWork(toCompress, toSpill);
+
+        for (ImageBackup backup : toCompress) {
+            if (backup.markScheduled()) {
+                executor.execute(() -> {
+                    backup.compress();
+                    compressionFinished();
+                });
+            }
+        }
+        for (ImageBackup backup : toSpill) {
+            if (backup.markScheduled()) {
+                executor.execute(backup::spill);
+            }
+        }
+    }
+
+    /**
+     * Collects the raw backups that don't fit into the first half of
+     * the budget, and (if spilling is enabled) the compressed ones
+     * that don't fit into the second half.
+     */
+    private static synchronized void selectWork(List<ImageBackup> toCompress, List<ImageBackup> toSpill) {
+        long halfBudget = budgetBytes / 2;
+        long rawSum = 0;
+        long compressedSum = 0;
+        boolean newest = true;
+
+        // go backwards, so that the newest backups stay uncompressed
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            ImageBackup backup = backups.get(i).get();
+            if (backup == null) {
+                backups.remove(i);
+                continue;
+            }
+            if (backup.isRaw()) {
+                rawSum += backup.getRawBytes();
+                // the newest one is always kept for a fast undo or fade
+                if (rawSum > halfBudget && !newest) {
+                    toCompress.add(backup);
+                }
+            } else if (backup.isCompressed()) {
+                compressedSum += backup.getCompressedBytes();
+                if (compressedSum > halfBudget && spillToDisk) {
+                    toSpill.add(backup);
+                }
+            }
+            newest = false;
+        }
+    }
+
+    private static synchronized void compressionFinished() {
+        // the freed memory might allow further steps
+        rebalance();
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import pixelitor.ThreadPool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * The pixels of an image saved for undo/redo.
+ *
+ * A backup starts out as an uncompressed image, and when the
+ * {@link HistoryMemory} decides that it's too old to stay uncompressed,
+ * it's compressed into independently deflated tiles. Compressed backups
+ * can be moved to a temporary file.
+ *
+ * Unlike a soft reference, a backup is never discarded behind the
+ * back of its edit: it lives until it's disposed, and the memory
+ * budget is enforced by spilling to disk or by trimming the history.
+ */
+final class ImageBackup {
+    private static final int TILE_SIZE = 64;
+
+    private final ColorModel cm;
+    private final int width;
+    private final int height;
+    private final int transferType;
+    private final int numDataElements;
+    private final long rawBytes;
+
+    // the current form of the data, at most one of them is set
+    private BufferedImage image;
+    private byte[][] tiles;
+    private File spillFile;
+
+    private long compressedBytes;
+    private int[] tileLengths;
+    private boolean scheduled;
+
+    ImageBackup(BufferedImage image) {
+        this.image = image;
+
+        cm = image.getColorModel();
+        width = image.getWidth();
+        height = image.getHeight();
+
+        Raster raster = image.getRaster();
+        transferType = raster.getTransferType();
+        numDataElements = raster.getNumDataElements();
+        rawBytes = (long) width * height * numDataElements
+            * DataBuffer.getDataTypeSize(transferType) / 8;
+
+        HistoryMemory.register(this);
+    }
+
+    /**
+     * Returns the saved image. The returned image must not be modified,
+     * because it can be the backup itself.
+     */
+    synchronized BufferedImage getImage() {
+        if (image != null) {
+            return image;
+        }
+        byte[][] data = tiles;
+        if (data == null && spillFile != null) {
+            data = readSpillFile();
+        }
+        if (data == null) {
+            return null; // disposed or the temporary file couldn't be read
+        }
+        return decompress(data);
+    }
+
+    /**
+     * Returns the saved image for reuse as the image of a layer, and
+     * disposes this backup. Returns null if the data isn't available.
+     */
+    BufferedImage take() {
+        BufferedImage retVal;
+        synchronized (this) {
+            retVal = getImage();
+            image = null; // don't flush the returned image
+        }
+        dispose();
+        return retVal;
+    }
+
+    void dispose() {
+        synchronized (this) {
+            if (image != null) {
+                image.flush();
+                image = null;
+            }
+            tiles = null;
+            if (spillFile != null) {
+                spillFile.delete();
+                spillFile = null;
+            }
+        }
+        // not while holding the lock of this object,
+        // because the HistoryMemory locks in the opposite order
+        HistoryMemory.unregister(this);
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    synchronized boolean isRaw() {
+        return image != null;
+    }
+
+    synchronized boolean isCompressed() {
+        return tiles != null;
+    }
+
+    synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Returns the number of heap bytes used by the compressed tiles.
+     */
+    synchronized long getCompressedBytes() {
+        return tiles != null ? compressedBytes : 0;
+    }
+
+    /**
+     * Returns true if the background task isn't yet scheduled, and
+     * marks it as scheduled, so that it's submitted only once.
+     */
+    synchronized boolean markScheduled() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Replaces the uncompressed image with compressed tiles.
+     * Called on a background thread.
+     */
+    void compress() {
+        BufferedImage src;
+        synchronized (this) {
+            scheduled = false;
+            src = image;
+        }
+        if (src == null) {
+            return;
+        }
+
+        // the image isn't modified while it's a backup,
+        // therefore it can be read without holding the lock
+        byte[][] compressed = compressTiles(src.getRaster());
+
+        long sum = 0;
+        for (byte[] tile : compressed) {
+            sum += tile.length;
+        }
+        synchronized (this) {
+            // it's possible that the image was taken in the meantime
+            if (image == src) {
+                tiles = compressed;
+                compressedBytes = sum;
+                image = null;
+            }
+        }
+    }
+
+    /**
+     * Moves the compressed tiles into a temporary file.
+     * Called on a background thread.
+     */
+    void spill() {
+        byte[][] data;
+        synchronized (this) {
+            scheduled = false;
+            data = tiles;
+        }
+        if (data == null) {
+            return;
+        }
+
+        File file;
+        try {
+            file = File.createTempFile("pixelitor-undo-", ".tmp");
+            file.deleteOnExit();
+            try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+                for (byte[] tile : data) {
+                    out.write(tile);
+                }
+            }
+        } catch (IOException e) {
+            // the data simply stays in memory
+            return;
+        }
+
+        int[] lengths = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            lengths[i] = data[i].length;
+        }
+        synchronized (this) {
+            if (tiles == data) {
+                spillFile = file;
+                tileLengths = lengths;
+                tiles = null;
+            } else {
+                file.delete();
+            }
+        }
+    }
+
+    private byte[][] readSpillFile() {
+        byte[][] data = new byte[tileLengths.length][];
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)))) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new byte[tileLengths[i]];
+                in.readFully(data[i]);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return data;
+    }
+
+    private int numTilesX() {
+        return (width + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private int numTilesY() {
+        return (height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private byte[][] compressTiles(Raster raster) {
+        int numTilesX = numTilesX();
+        byte[][] compressed = new byte[numTilesX * numTilesY()][];
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+
+        ThreadPool.processRows(numTilesY(), width * TILE_SIZE, (startRow, endRow) -> {
+            var deflater = new Deflater(Deflater.BEST_SPEED);
+            byte[] buffer = new byte[8192];
+            for (int ty = startRow; ty < endRow; ty++) {
+                int y = ty * TILE_SIZE;
+                int tileHeight = Math.min(TILE_SIZE, height - y);
+                for (int tx = 0; tx < numTilesX; tx++) {
+                    int x = tx * TILE_SIZE;
+                    int tileWidth = Math.min(TILE_SIZE, width - x);
+                    Object elements = raster.getDataElements(minX + x, minY + y,
+                        tileWidth, tileHeight, null);
+                    compressed[ty * numTilesX + tx] = deflate(deflater, toBytes(elements), buffer);
+                }
+            }
+            deflater.end();
+        }, NULL_TRACKER);
+
+        return compressed;
+    }
+
+    private BufferedImage decompress(byte[][] data) {
+        WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
+        int numTilesX = numTilesX();
+        int bytesPerElement = DataBuffer.getDataTypeSize(transferType) / 8;
+
+        ThreadPool.processRows(numTilesY(), width * TILE_SIZE, (startRow, endRow) -> {
+            var inflater = new Inflater();
+            for (int ty = startRow; ty < endRow; ty++) {
+                int y = ty * TILE_SIZE;
+                int tileHeight = Math.min(TILE_SIZE, height - y);
+                for (int tx = 0; tx < numTilesX; tx++) {
+                    int x = tx * TILE_SIZE;
+                    int tileWidth = Math.min(TILE_SIZE, width - x);
+                    int numBytes = tileWidth * tileHeight * numDataElements * bytesPerElement;
+                    byte[] bytes = inflate(inflater, data[ty * numTilesX + tx], numBytes);
+                    raster.setDataElements(x, y, tileWidth, tileHeight, fromBytes(bytes));
+                }
+            }
+            inflater.end();
+        }, NULL_TRACKER);
+
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] input, byte[] buffer) {
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        var out = new ByteArrayOutputStream(input.length / 4);
+        while (!deflater.finished()) {
+            int numBytes = deflater.deflate(buffer);
+            out.write(buffer, 0, numBytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] input, int numBytes) {
+        inflater.reset();
+        inflater.setInput(input);
+
+        byte[] output = new byte[numBytes];
+        try {
+            int offset = 0;
+            while (offset < numBytes) {
+                int read = inflater.inflate(output, offset, numBytes - offset);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("truncated tile");
+                }
+                offset += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+        return output;
+    }
+
+    private static byte[] toBytes(Object elements) {
+        if (elements instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (elements instanceof int[] ints) {
+            var buffer = ByteBuffer.allocate(ints.length * 4);
+            buffer.asIntBuffer().put(ints);
+            return buffer.array();
+        }
+        if (elements instanceof short[] shorts) {
+            var buffer = ByteBuffer.allocate(shorts.length * 2);
+            buffer.asShortBuffer().put(shorts);
+            return buffer.array();
+        }
+        throw new IllegalStateException("unexpected elements: " + elements.getClass().getName());
+    }
+
+    private Object fromBytes(byte[] bytes) {
+        return switch (transferType) {
+            case DataBuffer.TYPE_BYTE -> bytes;
+            case DataBuffer.TYPE_INT -> {
+                int[] ints = new int[bytes.length / 4];
+                ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+                yield ints;
+            }
+            case DataBuffer.TYPE_USHORT, DataBuffer.TYPE_SHORT -> {
+                short[] shorts = new short[bytes.length / 2];
+                ByteBuffer.wrap(bytes).asShortBuffer().get(shorts);
+                yield shorts;
+            }
+            default -> throw new IllegalStateException("transferType = " + transferType);
+        };
+    }
+}
@@ -24,7 +24,6 @@ import pixelitor.utils.debug.DebugNode;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import java.awt.image.BufferedImage;
-import java.lang.ref.SoftReference;
 
 /**
  * A PixelitorEdit that represents the changes made to an image.
@@ -33,7 +32,7 @@ public class ImageEdit extends FadeableEdit {
     // selections are ignored for example when the image is enlarged by the move tool
     private final boolean ignoreSelection;
 
-    private SoftReference<BufferedImage> imgRef;
+    private ImageBackup backup;
     protected Drawable dr;
 
     public ImageEdit(String name, Composition comp, Drawable dr,
@@ -47,18 +46,17 @@ public class ImageEdit extends FadeableEdit {
 
 //        Utils.debugImage(backupImage, "Backup for " + name);
 
-        // the backup image is stored in an SoftReference
-        imgRef = new SoftReference<>(backupImage);
         this.dr = dr;
 
-        checkBackupDifferentFromActive();
+        checkBackupDifferentFromActive(backupImage);
+        backup = new ImageBackup(backupImage);
     }
 
     // the backup should never be identical to the active image
     // otherwise the backup might be also edited
-    private void checkBackupDifferentFromActive() {
+    private void checkBackupDifferentFromActive(BufferedImage backupImage) {
         BufferedImage layerImage = dr.getImage();
-        if (layerImage == imgRef.get()) {
+        if (layerImage == backupImage) {
             throw new IllegalStateException("backup image is identical to the active one");
         }
     }
@@ -97,7 +95,7 @@ public class ImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapImages() {
-        BufferedImage backupImage = imgRef.get();
+        BufferedImage backupImage = backup.take();
         if (backupImage == null) {
             return false;
         }
@@ -110,15 +108,16 @@ public class ImageEdit extends FadeableEdit {
         }
         dr.changeImageForUndoRedo(backupImage, ignoreSelection);
 
+        checkBackupDifferentFromActive(tmp);
+
         // create new backup image from tmp
-        imgRef = new SoftReference<>(tmp);
+        backup = new ImageBackup(tmp);
 
         if (!embedded) {
             comp.update();
             dr.updateIconImage();
         }
 
-        checkBackupDifferentFromActive();
         return true;
     }
 
@@ -126,20 +125,16 @@ public class ImageEdit extends FadeableEdit {
     public void die() {
         super.die();
 
-        BufferedImage backupImage = imgRef.get();
-        if (backupImage != null) {
-            backupImage.flush();
-        }
-
-        imgRef = null;
+        backup.dispose();
+        backup = null;
         dr = null;
     }
 
     @Override
     public BufferedImage getBackupImage() {
-        if (imgRef != null) {
-            // this still could be null
-            return imgRef.get();
+        if (backup != null) {
+            // this still could be null if the temporary file was lost
+            return backup.getImage();
         }
         return null;
     }
@@ -148,10 +143,9 @@ public class ImageEdit extends FadeableEdit {
     public DebugNode createDebugNode(String key) {
         var node = super.createDebugNode(key);
 
-        BufferedImage img = imgRef.get();
-        if (img != null) {
-            node.addInt("backup image width", img.getWidth());
-            node.addInt("backup image height", img.getHeight());
+        if (backup != null) {
+            node.addInt("backup image width", backup.getWidth());
+            node.addInt("backup image height", backup.getHeight());
         }
 
         node.addBoolean("ignoreSelection", ignoreSelection);
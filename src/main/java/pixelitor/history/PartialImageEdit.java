@@ -30,7 +30,10 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
-import java.lang.ref.SoftReference;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static java.lang.String.format;
 
@@ -39,20 +42,64 @@ import static java.lang.String.format;
  * Only the affected pixels are saved in order to reduce the memory usage
  */
 public class PartialImageEdit extends FadeableEdit {
-    private final Rectangle saveRect;
-    private SoftReference<Raster> backupRasterRef;
+    // the saved areas, relative to the image
+    private final Rectangle[] saveRects;
+
+    // the saved areas, stacked vertically in a single image
+    private ImageBackup backup;
 
     private final Drawable dr;
 
     private PartialImageEdit(String name, Composition comp, Drawable dr,
-                             BufferedImage image, Rectangle saveRect) {
+                             BufferedImage image, Rectangle[] saveRects) {
         super(name, comp, dr);
 
         this.dr = dr;
-        this.saveRect = saveRect;
+        this.saveRects = saveRects;
+
+        backup = new ImageBackup(copyRects(image));
+    }
+
+    /**
+     * Copies the saved areas of the given image into a new image.
+     */
+    private BufferedImage copyRects(BufferedImage image) {
+        if (saveRects.length == 1) {
+            return ImageUtils.copySubImage(image, saveRects[0]);
+        }
 
-        Raster backupRaster = image.getData(this.saveRect);
-        backupRasterRef = new SoftReference<>(backupRaster);
+        int width = 0;
+        int height = 0;
+        for (Rectangle rect : saveRects) {
+            width = Math.max(width, rect.width);
+            height += rect.height;
+        }
+        BufferedImage packed = ImageUtils.createImageWithSameCM(image, width, height);
+        WritableRaster packedRaster = packed.getRaster();
+        Raster imageRaster = image.getRaster();
+        int packedY = 0;
+        for (Rectangle rect : saveRects) {
+            Raster area = imageRaster.createChild(rect.x, rect.y,
+                rect.width, rect.height, rect.x, rect.y, null);
+            packedRaster.setRect(-rect.x, packedY - rect.y, area);
+            packedY += rect.height;
+        }
+        return packed;
+    }
+
+    /**
+     * Copies the saved areas from the given stacked image back into the given image.
+     */
+    private void restoreRects(BufferedImage packed, BufferedImage image) {
+        WritableRaster imageRaster = image.getRaster();
+        Raster packedRaster = packed.getRaster();
+        int packedY = 0;
+        for (Rectangle rect : saveRects) {
+            Raster area = packedRaster.createChild(0, packedY,
+                rect.width, rect.height, 0, packedY, null);
+            imageRaster.setRect(rect.x, rect.y - packedY, area);
+            packedY += rect.height;
+        }
     }
 
     /**
@@ -89,7 +136,41 @@ public class PartialImageEdit extends FadeableEdit {
         // but typically the extra savings would be minimal
 
         return new PartialImageEdit(editName, dr.getComp(),
-            dr, origImage, affectedArea);
+            dr, origImage, new Rectangle[]{affectedArea});
+    }
+
+    /**
+     * Returns a new {@link PartialImageEdit} that saves only the given
+     * (typically small, tile-sized) areas, or null if all of them are
+     * outside the image. Unlike {@link #create}, this doesn't modify
+     * the given rectangles.
+     */
+    public static PartialImageEdit createForTiles(List<Rectangle> tiles,
+                                                  BufferedImage origImage,
+                                                  Drawable dr,
+                                                  boolean relativeToImage,
+                                                  String editName) {
+        assert origImage != null;
+
+        int dx = relativeToImage ? 0 : -dr.getTx();
+        int dy = relativeToImage ? 0 : -dr.getTy();
+
+        List<Rectangle> clippedTiles = new ArrayList<>(tiles.size());
+        for (Rectangle tile : tiles) {
+            Rectangle clipped = SwingUtilities.computeIntersection(0, 0,
+                origImage.getWidth(), origImage.getHeight(),
+                new Rectangle(tile.x + dx, tile.y + dy, tile.width, tile.height));
+            if (!clipped.isEmpty()) {
+                clippedTiles.add(clipped);
+            }
+        }
+
+        if (clippedTiles.isEmpty()) {
+            return null;
+        }
+
+        return new PartialImageEdit(editName, dr.getComp(),
+            dr, origImage, clippedTiles.toArray(new Rectangle[0]));
     }
 
     @Override
@@ -114,29 +195,29 @@ public class PartialImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapRasters() {
-        Raster backupRaster = backupRasterRef.get();
-        if (backupRaster == null) {
+        BufferedImage backupImage = backup.take();
+        if (backupImage == null) {
             return false;
         }
 
-        BufferedImage image = dr.getImage();
+        BufferedImage image = dr.getImageForWriting();
 
         Raster tmpRaster = null;
+        Raster backupRaster = backupImage.getRaster();
         try {
-            tmpRaster = image.getData(saveRect);
-            image.setData(backupRaster);
+            BufferedImage tmp = copyRects(image);
+            tmpRaster = tmp.getRaster();
+            restoreRects(backupImage, image);
+            backup = new ImageBackup(tmp);
         } catch (ArrayIndexOutOfBoundsException e) {
-            System.out.printf("PartialImageEdit.swapRasters saveRect = %s, width = %d, height = %d%n",
-                saveRect, image.getWidth(), image.getHeight());
+            System.out.printf("PartialImageEdit.swapRasters saveRects = %s, width = %d, height = %d%n",
+                Arrays.toString(saveRects), image.getWidth(), image.getHeight());
 
             debugRaster("tmpRaster", tmpRaster);
             debugRaster("backupRaster", backupRaster);
-
             throw e;
         }
 
-        backupRasterRef = new SoftReference<>(tmpRaster);
-
         dr.update();
         dr.updateIconImage();
 
@@ -169,16 +250,17 @@ public class PartialImageEdit extends FadeableEdit {
     public void die() {
         super.die();
 
-        backupRasterRef = null;
+        backup.dispose();
+        backup = null;
     }
 
     @Override
     public BufferedImage getBackupImage() {
-        if (backupRasterRef == null) { // died
+        if (backup == null) { // died
             return null;
         }
-        Raster backupRaster = backupRasterRef.get();
-        if (backupRaster == null) { // soft reference lost
+        BufferedImage backupImage = backup.getImage();
+        if (backupImage == null) { // the temporary file was lost
             return null;
         }
 
@@ -187,7 +269,7 @@ public class PartialImageEdit extends FadeableEdit {
         // TODO this is not the optimal solution  - Fade should fade only the changed area
         BufferedImage fullImage = dr.getImage();
         BufferedImage previousImage = ImageUtils.copyImage(fullImage);
-        previousImage.setData(backupRaster);
+        restoreRects(backupImage, previousImage);
 
         var selection = dr.getComp().getSelection();
         if (selection != null) {
@@ -205,14 +287,14 @@ public class PartialImageEdit extends FadeableEdit {
 
         int width = -1;
         int height = -1;
-        Raster backupRaster = backupRasterRef.get();
-        if (backupRaster != null) {
-            width = backupRaster.getWidth();
-            height = backupRaster.getHeight();
+        if (backup != null) {
+            width = backup.getWidth();
+            height = backup.getHeight();
         }
 
         node.addInt("backup image width", width);
         node.addInt("backup image height", height);
+        node.addInt("saved areas", saveRects.length);
 
         return node;
     }
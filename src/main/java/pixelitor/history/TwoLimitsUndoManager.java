@@ -93,6 +93,24 @@ public class TwoLimitsUndoManager extends UndoManager {
                 }
             }
         }
+
+        trimForMemoryBudget();
+    }
+
+    /**
+     * Removes the oldest edits until the image backups fit into the
+     * memory budget, but the last heavy edit is always kept.
+     */
+    private void trimForMemoryBudget() {
+        while (HistoryMemory.isOverBudget() && getHeavyEditsCount() > 1) {
+            for (int i = 0; i < edits.size(); i++) {
+                PixelitorEdit edit = (PixelitorEdit) edits.get(i);
+                if (edit.isHeavy()) {
+                    trimEdits(0, i);
+                    break;
+                }
+            }
+        }
     }
 
     public int getHeavyEditsCount() {
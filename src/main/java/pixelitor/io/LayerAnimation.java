@@ -17,53 +17,92 @@
 
 package pixelitor.io;
 
-import pd.AnimatedGifEncoder;
+import pd.ParallelGifEncoder;
 import pixelitor.Composition;
 import pixelitor.gui.utils.GUIUtils;
-import pixelitor.layers.Layer;
+import pixelitor.layers.AdjustmentLayer;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.IntStream;
 
 /**
- * A layer animation (an animation based on the layers of a composition)
+ * A layer animation (an animation based on the layers of a composition).
+ * The frames are rendered one at a time while they are encoded,
+ * so only a few of them are in memory at the same time.
  */
 public class LayerAnimation {
+    private final Composition comp;
     private final int delayMillis;
-    private final List<BufferedImage> images = new ArrayList<>();
+    private final boolean globalPalette;
 
-    public LayerAnimation(Composition comp, int delayMillis, boolean pingPong) {
+    // the indexes of the layers that have an image
+    private final int[] imageLayers;
+
+    // the layer index of each frame, the middle
+    // layers are repeated in ping-pong animations
+    private final int[] frameLayers;
+
+    public LayerAnimation(Composition comp, int delayMillis,
+                          boolean pingPong, boolean globalPalette) {
+        this.comp = comp;
         this.delayMillis = delayMillis;
+        this.globalPalette = globalPalette;
 
-        int numLayers = comp.getNumLayers();
-        for (int i = 0; i < numLayers; i++) {
-            addLayer(comp, i);
-        }
-        if (pingPong && numLayers > 2) {
-            for (int i = numLayers - 2; i > 0; i--) {
-                addLayer(comp, i);
-            }
+        // adjustment layers have no image, so they are not frames
+        imageLayers = IntStream.range(0, comp.getNumLayers())
+            .filter(i -> !(comp.getLayer(i) instanceof AdjustmentLayer))
+            .toArray();
+
+        int numImages = imageLayers.length;
+        IntStream layerIndexes = Arrays.stream(imageLayers);
+        if (pingPong && numImages > 2) {
+            layerIndexes = IntStream.concat(layerIndexes,
+                IntStream.iterate(numImages - 2, i -> i > 0, i -> i - 1)
+                    .map(i -> imageLayers[i]));
         }
+        frameLayers = layerIndexes.toArray();
     }
 
-    private void addLayer(Composition comp, int layerIndex) {
-        Layer layer = comp.getLayer(layerIndex);
-        BufferedImage image = layer.asImage(true, true);
-        if (image == null) {
-            return;
-        }
-        images.add(image);
+    public int getNumFrames() {
+        return frameLayers.length;
     }
 
-    private void export(File f) {
-        AnimatedGifEncoder e = new AnimatedGifEncoder();
-        e.start(f);
-        e.setDelay(delayMillis);
-        e.setRepeat(0);
-        images.forEach(e::addFrame);
-        e.finish();
+    /**
+     * Returns the frames in order, each of them rendered only when it's requested.
+     */
+    public Iterator<BufferedImage> frames() {
+        return Arrays.stream(frameLayers)
+            .mapToObj(this::renderLayer)
+            .iterator();
+    }
+
+    private BufferedImage renderLayer(int layerIndex) {
+        return comp.getLayer(layerIndex).asImage(true, true);
+    }
+
+    void export(File f) {
+        try {
+            ParallelGifEncoder e = new ParallelGifEncoder(f);
+            e.setDelay(delayMillis);
+            e.setRepeat(0);
+            if (globalPalette) {
+                // each layer is sampled once, even if it appears twice
+                e.setGlobalPalette(Arrays.stream(imageLayers)
+                    .mapToObj(this::renderLayer)
+                    .iterator(), imageLayers.length);
+            }
+            for (Iterator<BufferedImage> it = frames(); it.hasNext(); ) {
+                e.addFrame(it.next());
+            }
+            e.finish();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 
     public void saveToFile(File selectedFile) {
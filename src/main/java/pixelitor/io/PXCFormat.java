@@ -18,70 +18,91 @@
 package pixelitor.io;
 
 import pixelitor.Composition;
+import pixelitor.ThreadPool;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
-import pixelitor.utils.SubtaskProgressTracker;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static pixelitor.utils.ImageUtils.getPixelArray;
 
 /**
  * PXC file format support.
+ *
+ * Since version 4, the layer metadata is still serialized with Java
+ * serialization, but the pixels are stored outside the object stream,
+ * in independently compressed chunks of rows, which are compressed
+ * and decompressed in parallel. The layout of a version 4 file:
+ * <ul>
+ * <li>the identification bytes and the version byte
+ * <li>the position of the image table (a long)
+ * <li>the compressed pixel chunks of all the images
+ * <li>the image table: for each image its size, type, rows per chunk,
+ * number of chunks and the compressed length of each chunk
+ * <li>the gzipped object stream, which refers to the images by index
+ * </ul>
  */
 public class PXCFormat {
-    private static final int CURRENT_PXC_VERSION_NUMBER = 0x03;
+    private static final int CURRENT_PXC_VERSION_NUMBER = 0x04;
+
+    private static final int HEADER_SIZE = 3 + 8;
 
-    // tracks the writing of the whole file
-    private static ProgressTracker mainPT;
+    // the approximate number of pixels in a compressed chunk
+    private static final int CHUNK_PIXELS = 1 << 20;
 
-    private static double workRatioForOneImage;
+    // the images of the version 4 file that is currently written or
+    // read on this thread, the object stream refers to them by index
+    private static final ThreadLocal<List<BufferedImage>> currentImages = new ThreadLocal<>();
 
     private PXCFormat() {
     }
 
     public static Composition read(File file) throws BadPxcFormatException {
+        int versionByte;
+        try (InputStream is = new FileInputStream(file)) {
+            versionByte = readVersion(is, file);
+        } catch (IOException e) {
+            Messages.showException(e);
+            return null;
+        }
+        if (versionByte == CURRENT_PXC_VERSION_NUMBER) {
+            try {
+                return readChunked(file);
+            } catch (IOException | ClassNotFoundException e) {
+                Messages.showException(e);
+                return null;
+            }
+        }
+
         long fileSize = file.length();
         ProgressTracker pt = new StatusBarProgressTracker(
             "Reading " + file.getName(), (int) fileSize);
         Composition comp = null;
         try (InputStream is = new ProgressTrackingInputStream(
             new FileInputStream(file), pt)) {
-
-            int firstByte = is.read();
-            int secondByte = is.read();
-            if (firstByte == 0xAB && secondByte == 0xC4) {
-                // identification bytes OK
-            } else {
-                throw new BadPxcFormatException(file.getName()
-                    + " is not in the pxc format.");
-            }
-            int versionByte = is.read();
-            if (versionByte == 0) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old beta Pixelitor versions 0.9.2-0.9.7");
-            }
-            if (versionByte == 1) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old beta Pixelitor version 0.9.8");
-            }
-            if (versionByte == 2) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old Pixelitor versions 0.9.9-1.1.2");
-            }
-            if (versionByte > CURRENT_PXC_VERSION_NUMBER) {
-                throw new BadPxcFormatException(file.getName()
-                    + " has unknown version byte " + versionByte);
-            }
+            is.skipNBytes(3); // the already checked header
 
             try (GZIPInputStream gs = new GZIPInputStream(is)) {
                 try (ObjectInput ois = new ObjectInputStream(gs)) {
@@ -99,34 +120,415 @@ public class PXCFormat {
         return comp;
     }
 
-    public static void write(Composition comp, File file) {
-        mainPT = new StatusBarProgressTracker(
-            "Writing " + file.getName(), 100);
-        int numImages = comp.calcNumImages();
-        if (numImages > 0) {
-            workRatioForOneImage = 1.0 / numImages;
+    private static int readVersion(InputStream is, File file) throws IOException, BadPxcFormatException {
+        int firstByte = is.read();
+        int secondByte = is.read();
+        if (firstByte == 0xAB && secondByte == 0xC4) {
+            // identification bytes OK
         } else {
-            workRatioForOneImage = -1;
+            throw new BadPxcFormatException(file.getName()
+                + " is not in the pxc format.");
         }
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(new byte[]{(byte) 0xAB, (byte) 0xC4, CURRENT_PXC_VERSION_NUMBER});
+        int versionByte = is.read();
+        if (versionByte == 0) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old beta Pixelitor versions 0.9.2-0.9.7");
+        }
+        if (versionByte == 1) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old beta Pixelitor version 0.9.8");
+        }
+        if (versionByte == 2) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old Pixelitor versions 0.9.9-1.1.2");
+        }
+        if (versionByte > CURRENT_PXC_VERSION_NUMBER) {
+            throw new BadPxcFormatException(file.getName()
+                + " has unknown version byte " + versionByte);
+        }
+        return versionByte;
+    }
+
+    private static Composition readChunked(File file) throws IOException, ClassNotFoundException, BadPxcFormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            long tableOffset = header.getLong(3);
+            long fileSize = channel.size();
+            if (tableOffset < HEADER_SIZE || tableOffset >= fileSize) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
+            }
+
+            // the image table and the object stream after it
+            ByteBuffer rest = readFully(channel, tableOffset, (int) (fileSize - tableOffset));
+            List<ChunkedImage> images = new ArrayList<>();
+            List<Chunk> chunks = new ArrayList<>();
+            try {
+                readImageTable(rest, images, chunks, file);
+            } catch (BufferUnderflowException e) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
+            }
+            long chunkOffset = chunks.isEmpty() ? HEADER_SIZE : chunks.get(chunks.size() - 1).end();
+            if (chunkOffset != tableOffset) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
+            }
+            int numImages = images.size();
 
-            try (GZIPOutputStream gz = new GZIPOutputStream(fos)) {
-                try (ObjectOutput oos = new ObjectOutputStream(gz)) {
-                    oos.writeObject(comp);
-                    oos.flush();
+            ProgressTracker pt = new StatusBarProgressTracker(
+                "Reading " + file.getName(), chunks.size() + 1);
+            processInParallel(chunks.size(), i -> {
+                Chunk chunk = chunks.get(i);
+                try {
+                    byte[] compressed = readFully(channel, chunk.offset, chunk.length).array();
+                    chunk.image.decompressChunk(chunk.index, compressed);
+                } catch (IOException | DataFormatException e) {
+                    throw new CompletionException(e);
                 }
+                return null;
+            }, result -> pt.unitDone());
+
+            List<BufferedImage> readImages = new ArrayList<>(numImages);
+            for (ChunkedImage image : images) {
+                readImages.add(image.image);
+            }
+
+            Composition comp;
+            currentImages.set(readImages);
+            try (var ois = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(
+                rest.array(), rest.position(), rest.remaining())))) {
+                comp = (Composition) ois.readObject();
+            } finally {
+                currentImages.remove();
+            }
+            pt.finished();
+
+            // file is transient in Composition because the pxc file can be renamed
+            comp.setFile(file);
+            return comp;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DataFormatException) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
             }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the image table, checking the values that
+     * could otherwise cause unchecked exceptions later.
+     */
+    private static void readImageTable(ByteBuffer table, List<ChunkedImage> images,
+                                       List<Chunk> chunks, File file) throws BadPxcFormatException {
+        int numImages = table.getInt();
+        if (numImages < 0) {
+            throw new BadPxcFormatException(file.getName() + " is corrupt.");
+        }
+        long chunkOffset = HEADER_SIZE;
+        for (int i = 0; i < numImages; i++) {
+            int width = table.getInt();
+            int height = table.getInt();
+            int type = table.getInt();
+            int rowsPerChunk = table.getInt();
+            int numChunks = table.getInt();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE
+                || !isSupportedType(type) || rowsPerChunk <= 0) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
+            }
+            var image = new ChunkedImage(new BufferedImage(width, height, type), rowsPerChunk);
+            if (numChunks != image.numChunks()) {
+                throw new BadPxcFormatException(file.getName() + " is corrupt.");
+            }
+            for (int c = 0; c < numChunks; c++) {
+                int length = table.getInt();
+                if (length < 0) {
+                    throw new BadPxcFormatException(file.getName() + " is corrupt.");
+                }
+                chunks.add(new Chunk(image, c, chunkOffset, length));
+                chunkOffset += length;
+            }
+            images.add(image);
+        }
+    }
+
+    // the image types whose data elements are bytes or ints
+    private static boolean isSupportedType(int type) {
+        return switch (type) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+                 BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_INT_BGR,
+                 BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+                 BufferedImage.TYPE_4BYTE_ABGR_PRE, TYPE_BYTE_GRAY,
+                 BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED -> true;
+            default -> false;
+        };
+    }
+
+    public static void write(Composition comp, File file) {
+        // serialize the metadata first, while collecting the images
+        List<BufferedImage> images = new ArrayList<>();
+        var metadata = new ByteArrayOutputStream();
+        currentImages.set(images);
+        try (ObjectOutput oos = new ObjectOutputStream(new GZIPOutputStream(metadata))) {
+            oos.writeObject(comp);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
+        } finally {
+            currentImages.remove();
+        }
+
+        List<Chunk> chunks = new ArrayList<>();
+        List<ChunkedImage> chunkedImages = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            var chunkedImage = new ChunkedImage(image);
+            for (int c = 0; c < chunkedImage.numChunks(); c++) {
+                chunks.add(new Chunk(chunkedImage, c, 0, 0));
+            }
+            chunkedImages.add(chunkedImage);
+        }
+
+        ProgressTracker pt = new StatusBarProgressTracker(
+            "Writing " + file.getName(), chunks.size() + 1);
+        int[] lengths = new int[chunks.size()];
+        try (FileChannel channel = FileChannel.open(file.toPath(), WRITE, CREATE, TRUNCATE_EXISTING)) {
+            // the chunks are written in order as soon as they are compressed
+            channel.position(HEADER_SIZE);
+            AtomicInteger chunkIndex = new AtomicInteger();
+            processInParallel(chunks.size(), i -> {
+                Chunk chunk = chunks.get(i);
+                return chunk.image.compressChunk(chunk.index);
+            }, compressed -> {
+                lengths[chunkIndex.getAndIncrement()] = compressed.length;
+                writeFully(channel, ByteBuffer.wrap(compressed));
+                pt.unitDone();
+            });
+
+            long tableOffset = channel.position();
+            ByteBuffer table = ByteBuffer.allocate(4 + 20 * images.size() + 4 * lengths.length);
+            table.putInt(images.size());
+            int lengthIndex = 0;
+            for (ChunkedImage image : chunkedImages) {
+                table.putInt(image.image.getWidth());
+                table.putInt(image.image.getHeight());
+                table.putInt(image.image.getType());
+                table.putInt(image.rowsPerChunk);
+                table.putInt(image.numChunks());
+                for (int c = 0; c < image.numChunks(); c++) {
+                    table.putInt(lengths[lengthIndex++]);
+                }
+            }
+            writeFully(channel, table.flip());
+            writeFully(channel, ByteBuffer.wrap(metadata.toByteArray()));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put((byte) 0xAB).put((byte) 0xC4).put((byte) CURRENT_PXC_VERSION_NUMBER);
+            header.putLong(tableOffset);
+            channel.position(0);
+            writeFully(channel, header.flip());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            throw new UncheckedIOException(new IOException(e.getCause()));
+        }
+        pt.finished();
+    }
+
+    /**
+     * Calls the given task for each index in parallel, and passes the
+     * results to the given consumer on the calling thread, in index order.
+     * The calling thread also runs the tasks, therefore this doesn't
+     * deadlock even if it's called on a pool thread (such as an IO task).
+     */
+    private static <T> void processInParallel(int numTasks, IntFunction<T> task,
+                                              IOConsumer<T> consumer) throws IOException {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<T>[] results = new CompletableFuture[numTasks];
+        for (int i = 0; i < numTasks; i++) {
+            results[i] = new CompletableFuture<>();
+        }
+        AtomicInteger nextTask = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextTask.getAndIncrement()) < numTasks) {
+                runTask(task, i, results[i]);
+            }
+        };
+        int numHelpers = Math.min(ThreadPool.NUM_CORES, numTasks) - 1;
+        for (int i = 0; i < numHelpers; i++) {
+            ThreadPool.submit(worker);
+        }
+
+        try {
+            for (int i = 0; i < numTasks; i++) {
+                // help until the next result is ready: all the tasks
+                // that are not finished yet are already running somewhere
+                while (!results[i].isDone()) {
+                    int next = nextTask.getAndIncrement();
+                    if (next >= numTasks) {
+                        break;
+                    }
+                    runTask(task, next, results[next]);
+                }
+                consumer.accept(results[i].join());
+            }
+        } finally {
+            // the helpers stop after their current task if something failed
+            nextTask.set(numTasks);
+        }
+    }
+
+    private static <T> void runTask(IntFunction<T> task, int index, CompletableFuture<T> result) {
+        try {
+            result.complete(task.apply(index));
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOConsumer<T> {
+        void accept(T t) throws IOException;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A compressed chunk of rows of an image in a version 4 file.
+     */
+    private record Chunk(ChunkedImage image, int index, long offset, int length) {
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * An image that is stored as independently compressed chunks of rows.
+     */
+    private static class ChunkedImage {
+        private final BufferedImage image;
+        private final int rowsPerChunk;
+
+        ChunkedImage(BufferedImage image) {
+            this(image, Math.max(1, CHUNK_PIXELS / image.getWidth()));
+        }
+
+        ChunkedImage(BufferedImage image, int rowsPerChunk) {
+            this.image = image;
+            this.rowsPerChunk = rowsPerChunk;
+        }
+
+        int numChunks() {
+            return (image.getHeight() + rowsPerChunk - 1) / rowsPerChunk;
+        }
+
+        private int numRows(int chunkIndex) {
+            return Math.min(rowsPerChunk, image.getHeight() - chunkIndex * rowsPerChunk);
+        }
+
+        byte[] compressChunk(int chunkIndex) {
+            Object elements = image.getRaster().getDataElements(0, chunkIndex * rowsPerChunk,
+                image.getWidth(), numRows(chunkIndex), null);
+            byte[] bytes = toBytes(elements);
+
+            var deflater = new Deflater();
+            deflater.setInput(bytes);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(bytes.length / 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int numBytes = deflater.deflate(buffer);
+                out.write(buffer, 0, numBytes);
+            }
+            deflater.end();
+            return out.toByteArray();
+        }
+
+        void decompressChunk(int chunkIndex, byte[] compressed) throws DataFormatException {
+            int numRows = numRows(chunkIndex);
+            var raster = image.getRaster();
+            Object elements = raster.getDataElements(0, 0, image.getWidth(), numRows, null);
+            byte[] bytes = new byte[byteLength(elements)];
+
+            var inflater = new Inflater();
+            inflater.setInput(compressed);
+            try {
+                int offset = 0;
+                while (offset < bytes.length) {
+                    int read = inflater.inflate(bytes, offset, bytes.length - offset);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new DataFormatException("truncated chunk");
+                    }
+                    offset += read;
+                }
+            } finally {
+                inflater.end();
+            }
+
+            fromBytes(bytes, elements);
+            raster.setDataElements(0, chunkIndex * rowsPerChunk, image.getWidth(), numRows, elements);
+        }
+
+        private static int byteLength(Object elements) {
+            if (elements instanceof byte[] bytes) {
+                return bytes.length;
+            }
+            if (elements instanceof int[] ints) {
+                return ints.length * 4;
+            }
+            throw new IllegalStateException("unexpected elements: " + elements.getClass().getName());
+        }
+
+        private static byte[] toBytes(Object elements) {
+            if (elements instanceof byte[] bytes) {
+                return bytes;
+            }
+            if (elements instanceof int[] ints) {
+                var buffer = ByteBuffer.allocate(ints.length * 4);
+                buffer.asIntBuffer().put(ints);
+                return buffer.array();
+            }
+            throw new IllegalStateException("unexpected elements: " + elements.getClass().getName());
+        }
+
+        private static void fromBytes(byte[] bytes, Object elements) {
+            if (elements instanceof byte[] byteElements) {
+                System.arraycopy(bytes, 0, byteElements, 0, bytes.length);
+            } else if (elements instanceof int[] ints) {
+                ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+            } else {
+                throw new IllegalStateException("unexpected elements: " + elements.getClass().getName());
+            }
         }
-        mainPT.finished();
-        mainPT = null;
     }
 
     public static void serializeImage(ObjectOutputStream out,
                                       BufferedImage img) throws IOException {
         assert img != null;
+
+        List<BufferedImage> images = currentImages.get();
+        if (images != null) {
+            // the pixels are written separately, after the object stream
+            out.writeInt(images.size());
+            images.add(img);
+            return;
+        }
+
+        // the version 3 way: the pixels are in the object stream
         int imgType = img.getType();
         int imgWidth = img.getWidth();
         int imgHeight = img.getHeight();
@@ -135,22 +537,12 @@ public class PXCFormat {
         out.writeInt(imgHeight);
         out.writeInt(imgType);
 
-        ProgressTracker pt = getImageTracker();
-
         if (imgType == TYPE_BYTE_GRAY) {
             ImageIO.write(img, "PNG", out);
         } else {
             int[] pixels = getPixelArray(img);
-            int length = pixels.length;
-            int progress = 0;
-            int fiveUnits = length / 20;
             for (int pixel : pixels) {
                 out.writeInt(pixel);
-                progress++;
-                if (progress > fiveUnits) {
-                    pt.unitsDone(5);
-                    progress = 0;
-                }
             }
         }
     }
@@ -158,6 +550,15 @@ public class PXCFormat {
     // when deserializing, the progress tracking
     // is done at the InputStream level, not here
     public static BufferedImage deserializeImage(ObjectInputStream in) throws IOException {
+        List<BufferedImage> images = currentImages.get();
+        if (images != null) {
+            int index = in.readInt();
+            if (index < 0 || index >= images.size()) {
+                throw new InvalidObjectException("invalid image index " + index);
+            }
+            return images.get(index);
+        }
+
         int width = in.readInt();
         int height = in.readInt();
         int type = in.readInt();
@@ -175,13 +576,4 @@ public class PXCFormat {
             return img;
         }
     }
-
-    private static ProgressTracker getImageTracker() {
-        if (workRatioForOneImage == -1) {
-            // a pxc without images
-            return ProgressTracker.NULL_TRACKER;
-        } else {
-            return new SubtaskProgressTracker(workRatioForOneImage, mainPT);
-        }
-    }
 }
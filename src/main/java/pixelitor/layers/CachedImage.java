@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+/**
+ * A cached image whose memory is managed by the {@link ImageCacheManager}.
+ * The manager can evict the image at any time if the cached images
+ * exceed the memory budget, therefore the owner must always be
+ * able to recalculate it.
+ */
+public final class CachedImage {
+    private BufferedImage image;
+
+    // the time it took to calculate the image
+    private long costNanos;
+
+    // the eviction priority, managed by the ImageCacheManager
+    double priority;
+
+    /**
+     * Returns the cached image, or null if it was never calculated,
+     * or if it was cleared or evicted. Counts as a cache hit or miss.
+     */
+    public BufferedImage get() {
+        BufferedImage retVal;
+        synchronized (this) {
+            retVal = image;
+        }
+        if (retVal == null) {
+            ImageCacheManager.missed();
+        } else {
+            ImageCacheManager.used(this);
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the cached image, calculating it
+     * with the given calculator if necessary.
+     */
+    public BufferedImage get(Supplier<BufferedImage> calculator) {
+        BufferedImage cached = get();
+        if (cached != null) {
+            return cached;
+        }
+        // not calculated while holding the lock, because the
+        // calculation can use other (for example nested) caches
+        long start = System.nanoTime();
+        BufferedImage calculated = calculator.get();
+        set(calculated, System.nanoTime() - start);
+        return calculated;
+    }
+
+    /**
+     * Returns the cached image without affecting the statistics
+     * or the eviction order, or null if there is no cached image.
+     */
+    public synchronized BufferedImage peek() {
+        return image;
+    }
+
+    /**
+     * Caches the given image, which took the given time to calculate.
+     */
+    public void set(BufferedImage newImage, long costNanos) {
+        synchronized (this) {
+            image = newImage;
+            this.costNanos = costNanos;
+        }
+        if (newImage != null) {
+            // not while holding the lock of this object,
+            // because the other caches might be evicted
+            ImageCacheManager.added(this);
+        }
+    }
+
+    /**
+     * Makes this cache share the image of the given cache.
+     */
+    public void shareFrom(CachedImage other) {
+        BufferedImage otherImage;
+        long otherCost;
+        synchronized (other) {
+            otherImage = other.image;
+            otherCost = other.costNanos;
+        }
+        set(otherImage, otherCost);
+    }
+
+    /**
+     * Forgets the cached image because it's no longer up-to-date.
+     */
+    public synchronized void clear() {
+        image = null;
+    }
+
+    /**
+     * Forgets the given cached image in order to free memory.
+     * Returns false if the image was already replaced or cleared.
+     */
+    synchronized boolean evict(BufferedImage expected) {
+        if (image == null || image != expected) {
+            return false;
+        }
+        image = null;
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return image == null;
+    }
+
+    synchronized long getCostNanos() {
+        return costNanos;
+    }
+}
@@ -101,6 +101,7 @@ public class ColorFillLayer extends Layer {
     public void changeColor(Color color, boolean addHistory) {
         Color oldColor = this.color;
         this.color = color;
+        invalidateMaskedImage();
         holder.update();
         updateIconImage();
         if (addHistory) {
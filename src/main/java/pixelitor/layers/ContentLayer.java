@@ -97,6 +97,7 @@ public abstract class ContentLayer extends Layer {
     public void moveWhileDragging(double relImX, double relImY) {
         tmpTx = (int) relImX;
         tmpTy = (int) relImY;
+        contentChanged();
         super.moveWhileDragging(relImX, relImY);
     }
 
@@ -131,6 +132,15 @@ public abstract class ContentLayer extends Layer {
     public void setTranslation(int x, int y) {
         translationX = x;
         translationY = y;
+        contentChanged();
+    }
+
+    /**
+     * Called when the content was moved or replaced,
+     * or before it's modified in place.
+     */
+    protected void contentChanged() {
+        invalidateMaskedImage();
     }
 
     @Override
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.Canvas;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * The rasterized content of a vector layer (text or shapes layer),
+ * so that an unchanged layer can be composited with a single drawImage.
+ *
+ * The cached image covers only the painted area of the layer (clipped
+ * to the canvas), and it's recalculated if the content key (which
+ * describes the settings and the transform of the layer) or the canvas
+ * size changes, if the cache is explicitly invalidated, or if the image
+ * was evicted by the {@link ImageCacheManager}.
+ */
+final class ContentRasterCache {
+    private final CachedImage cachedImage = new CachedImage();
+    private int imageX;
+    private int imageY;
+
+    private Object contentKey;
+    private int canvasWidth;
+    private int canvasHeight;
+    private boolean valid;
+
+    // false if nothing is painted, so that a missing
+    // image doesn't have to be recalculated each time
+    private boolean hasContent;
+
+    /**
+     * Paints the cached image on the given Graphics2D,
+     * recalculating it first if necessary.
+     *
+     * @param boundsCalculator returns the canvas-relative bounds of the
+     *                         painted area, or null if nothing is painted
+     * @param contentPainter   paints the content in canvas coordinates
+     */
+    void paint(Graphics2D g, Canvas canvas, Object contentKey,
+               Supplier<Rectangle> boundsCalculator,
+               Consumer<Graphics2D> contentPainter) {
+        BufferedImage img;
+        int x;
+        int y;
+        synchronized (this) {
+            img = null;
+            if (valid && Objects.equals(this.contentKey, contentKey)
+                && canvasWidth == canvas.getWidth() && canvasHeight == canvas.getHeight()) {
+                if (hasContent) {
+                    img = cachedImage.get();
+                    if (img == null) { // evicted
+                        img = recalculate(canvas, contentKey, boundsCalculator, contentPainter);
+                    }
+                }
+            } else {
+                img = recalculate(canvas, contentKey, boundsCalculator, contentPainter);
+            }
+            x = imageX;
+            y = imageY;
+        }
+        // the cached image is never modified, it's replaced
+        // after a change, therefore it can be painted outside the lock
+        if (img != null) {
+            g.drawImage(img, x, y, null);
+        }
+    }
+
+    private BufferedImage recalculate(Canvas canvas, Object contentKey,
+                                      Supplier<Rectangle> boundsCalculator,
+                                      Consumer<Graphics2D> contentPainter) {
+        long start = System.nanoTime();
+        this.contentKey = contentKey;
+        canvasWidth = canvas.getWidth();
+        canvasHeight = canvas.getHeight();
+        valid = true;
+        hasContent = false;
+        cachedImage.clear();
+
+        Rectangle bounds = boundsCalculator.get();
+        if (bounds == null) {
+            return null;
+        }
+        // only the part on the canvas is needed for compositing
+        bounds = bounds.intersection(canvas.getBounds());
+        if (bounds.isEmpty()) {
+            return null;
+        }
+
+        // not premultiplied, because the custom blending
+        // composites expect non-premultiplied source pixels
+        var image = new BufferedImage(bounds.width, bounds.height, TYPE_INT_ARGB);
+        imageX = bounds.x;
+        imageY = bounds.y;
+
+        Graphics2D imgG = image.createGraphics();
+        imgG.translate(-bounds.x, -bounds.y);
+        contentPainter.accept(imgG);
+        imgG.dispose();
+
+        hasContent = true;
+        cachedImage.set(image, System.nanoTime() - start);
+        return image;
+    }
+
+    /**
+     * Forces the recalculation of the cached image.
+     */
+    synchronized void invalidate() {
+        valid = false;
+        cachedImage.clear();
+    }
+
+    synchronized boolean isValid() {
+        return valid;
+    }
+}
@@ -19,6 +19,7 @@ package pixelitor.layers;
 
 import pixelitor.FilterContext;
 import pixelitor.filters.Filter;
+import pixelitor.filters.gui.AsyncPreviewRenderer;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.tools.util.PPoint;
 import pixelitor.tools.util.PRectangle;
@@ -28,6 +29,7 @@ import pixelitor.utils.test.RandomGUITest;
 import java.awt.Component;
 import java.awt.Composite;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
 
 /**
  * Something that (unlike text and adjustment layers)
@@ -35,8 +37,17 @@ import java.awt.image.BufferedImage;
  * Can be used with brush tools and filters.
  */
 public interface Drawable extends Filterable {
+    /**
+     * Returns the image for reading. Use
+     * {@link #getImageForWriting()} for modifying its pixels.
+     */
     BufferedImage getImage();
 
+    /**
+     * Returns the image so that its pixels can be modified in place.
+     */
+    BufferedImage getImageForWriting();
+
     /**
      * Sets the image ignoring the selection
      */
@@ -54,6 +65,8 @@ public interface Drawable extends Filterable {
 
     BufferedImage getCanvasSizedSubImage();
 
+    BufferedImage getCanvasSizedSubImageForWriting();
+
     BufferedImage getFilterSourceImage();
 
     /**
@@ -84,8 +97,7 @@ public interface Drawable extends Filterable {
 
     @Override
     default void previewingFilterSettingsChanged(Filter filter, boolean first, Component busyCursorParent) {
-        startFilter(filter, FilterContext.PREVIEWING, busyCursorParent);
-//        runFilter(filter, FilterContext.PREVIEWING);
+        AsyncPreviewRenderer.settingsChanged(this, filter, first, busyCursorParent);
     }
 
     @Override
@@ -102,6 +114,8 @@ public interface Drawable extends Filterable {
             } else {
                 filterWithoutDialogFinished(dest, context, filter.getName());
             }
+        } catch (CancellationException e) {
+            // the result isn't needed anymore
         } catch (OutOfMemoryError e) {
             Dialogs.showOutOfMemoryDialog(e);
         } catch (Throwable e) {
@@ -187,6 +187,7 @@ public class GradientFillLayer extends ContentLayer {
 
         this.gradient = gradient;
         cachedImage = null;
+        invalidateMaskedImage();
         holder.update();
         updateIconImage();
 
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.utils.Utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the memory used by the {@link CachedImage}s of the layers
+ * (smart objects, smart filters, groups, masked and vector layers)
+ * and of the composite pyramids within a budget. If the budget is exceeded, then images are evicted
+ * with the cost-aware GreedyDual-Size policy: an image is more likely
+ * to be kept if it was used recently, if it's small, or if it was
+ * expensive to calculate. Evicted images are recalculated when they
+ * are needed again, so heavy documents become slower instead of
+ * running out of memory.
+ */
+public final class ImageCacheManager {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // the caches that might have an image, weakly referenced,
+    // so that the caches of deleted layers can be garbage collected
+    private static final Set<CachedImage> caches = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static long budgetBytes = calcDefaultBudgetMb() * MEGABYTE;
+
+    // the priority of the last evicted image, which is the base
+    // priority of the new images, so that the old images age
+    private static double inflation = 0;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private ImageCacheManager() {
+        // should not be instantiated
+    }
+
+    public static int calcDefaultBudgetMb() {
+        return Utils.calcDefaultCacheBudgetMb();
+    }
+
+    public static synchronized int getBudgetMb() {
+        return (int) (budgetBytes / MEGABYTE);
+    }
+
+    public static synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public static void setBudgetMb(int budgetMb) {
+        synchronized (ImageCacheManager.class) {
+            budgetBytes = budgetMb * MEGABYTE;
+        }
+        enforceBudget(null);
+    }
+
+    static void missed() {
+        misses.incrementAndGet();
+    }
+
+    static synchronized void used(CachedImage cache) {
+        hits.incrementAndGet();
+        updatePriority(cache);
+    }
+
+    static void added(CachedImage cache) {
+        synchronized (ImageCacheManager.class) {
+            caches.add(cache);
+            updatePriority(cache);
+        }
+        enforceBudget(cache);
+    }
+
+    private static void updatePriority(CachedImage cache) {
+        BufferedImage image = cache.peek();
+        if (image != null) {
+            // the cost of recalculation per byte of freed memory
+            cache.priority = inflation + (double) cache.getCostNanos() / calcBytes(image);
+        }
+    }
+
+    /**
+     * Evicts the lowest-priority images (but not the image of the
+     * given cache) until the cached images fit into the budget.
+     */
+    private static void enforceBudget(CachedImage current) {
+        Map<CachedImage, BufferedImage> toEvict = new IdentityHashMap<>();
+        synchronized (ImageCacheManager.class) {
+            // the same image can be cached by several caches (for example
+            // the last smart filter and its smart object), and it's freed
+            // only if all of them evict it
+            Map<BufferedImage, List<CachedImage>> holders = new IdentityHashMap<>();
+            caches.removeIf(cache -> {
+                BufferedImage image = cache.peek();
+                if (image == null) {
+                    return true;
+                }
+                holders.computeIfAbsent(image, k -> new ArrayList<>()).add(cache);
+                return false;
+            });
+
+            long usedBytes = 0;
+            for (BufferedImage image : holders.keySet()) {
+                usedBytes += calcBytes(image);
+            }
+            if (usedBytes <= budgetBytes) {
+                return;
+            }
+
+            // the images are evicted together with all their caches
+            List<Map.Entry<BufferedImage, List<CachedImage>>> groups = new ArrayList<>(holders.entrySet());
+            groups.removeIf(group -> group.getValue().contains(current));
+            groups.sort(Comparator.comparingDouble(group -> calcGroupPriority(group.getValue())));
+            for (var group : groups) {
+                if (usedBytes <= budgetBytes) {
+                    break;
+                }
+                usedBytes -= calcBytes(group.getKey());
+                inflation = Math.max(inflation, calcGroupPriority(group.getValue()));
+                for (CachedImage cache : group.getValue()) {
+                    toEvict.put(cache, group.getKey());
+                    caches.remove(cache);
+                }
+            }
+        }
+        // the images are evicted without holding the lock of the manager
+        for (var entry : toEvict.entrySet()) {
+            if (entry.getKey().evict(entry.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static double calcGroupPriority(List<CachedImage> group) {
+        double max = 0;
+        for (CachedImage cache : group) {
+            max = Math.max(max, cache.priority);
+        }
+        return max;
+    }
+
+    static long calcBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bytesPerElement = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return Math.max(1, (long) buffer.getSize() * buffer.getNumBanks() * bytesPerElement);
+    }
+
+    /**
+     * Returns the number of bytes used by the cached images.
+     */
+    public static synchronized long getUsedBytes() {
+        Set<BufferedImage> images = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CachedImage cache : caches) {
+            BufferedImage image = cache.peek();
+            if (image != null) {
+                images.add(image);
+            }
+        }
+        long sum = 0;
+        for (BufferedImage image : images) {
+            sum += calcBytes(image);
+        }
+        return sum;
+    }
+
+    public static Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(),
+            getUsedBytes(), getBudgetBytes());
+    }
+
+    /**
+     * The statistics of all image caches since the start of the program.
+     */
+    public record Stats(long hits, long misses, long evictions,
+                        long usedBytes, long budgetBytes) {
+        @Override
+        public String toString() {
+            return String.format("%d of %d MB used, %d hits, %d misses, %d evictions",
+                usedBytes / MEGABYTE, budgetBytes / MEGABYTE, hits, misses, evictions);
+        }
+    }
+}
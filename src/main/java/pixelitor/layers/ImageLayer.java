@@ -21,6 +21,7 @@ import pixelitor.Canvas;
 import pixelitor.*;
 import pixelitor.colors.Colors;
 import pixelitor.compactions.Flip;
+import pixelitor.filters.gui.AsyncPreviewRenderer;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.*;
 import pixelitor.io.PXCFormat;
@@ -39,10 +40,14 @@ import pixelitor.utils.test.Assertions;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serial;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CompletableFuture;
 
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
@@ -96,6 +101,17 @@ public class ImageLayer extends ContentLayer implements Drawable {
      */
     private transient BufferedImage filterSourceImage;
 
+    /**
+     * The number of layers using an image, for the images that are used
+     * by more than one layer, because the copies of a layer share the
+     * image with the original until one of them modifies it. A shared
+     * image is never modified in place, because the other layers still
+     * show it, and therefore each layer copies it before its first write.
+     * Images that are not in the map are used by a single layer.
+     */
+    private static final Map<BufferedImage, Integer> shareCounts =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
     /**
      * Whether the preview image is different from the normal image
      * It makes sense only in PREVIEW mode
@@ -272,21 +288,66 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     protected ImageLayer createTypeSpecificCopy(CopyType copyType, Composition newComp) {
-        BufferedImage imageCopy = copyImage(image);
-        if (imageCopy == null) {
-            // there was an out of memory error
-            return null;
+        String copyName = copyType.createLayerCopyName(name);
+        return new ImageLayer(comp, shareImage(), copyName, getTx(), getTy());
+    }
+
+    /**
+     * Returns the image so that it can be used by a copy of this layer,
+     * without copying the pixels. It will be copied only if one of
+     * the layers tries to modify it.
+     */
+    protected BufferedImage shareImage() {
+        shareCounts.merge(image, 2, (count, two) -> count + 1);
+        return image;
+    }
+
+    /**
+     * If the image is shared with other layers, replaces it with a copy,
+     * so that its pixels can be modified in place. An OutOfMemoryError
+     * is not caught here, because the write must not continue without
+     * the copy, and the default exception handler shows the dialog.
+     */
+    private void unshareImage() {
+        if (image == null || !isImageShared()) {
+            return;
         }
+        BufferedImage sharedImage = image;
+        WritableRaster raster = sharedImage.copyData(null);
+        image = new BufferedImage(sharedImage.getColorModel(), raster,
+            sharedImage.isAlphaPremultiplied(), null);
 
-        String copyName = copyType.createLayerCopyName(name);
-        return new ImageLayer(comp, imageCopy, copyName, getTx(), getTy());
+        // this layer no longer uses the shared image
+        shareCounts.computeIfPresent(sharedImage,
+            (img, count) -> count > 2 ? count - 1 : null);
+
+        filterSourceImage = null;
+        imageRefChanged();
     }
 
+    boolean isImageShared() {
+        return shareCounts.containsKey(image);
+    }
+
+    /**
+     * Returns the image for reading. Its pixels must not be modified
+     * in place, because it might be shared with other layers.
+     */
     @Override
     public BufferedImage getImage() {
         return image;
     }
 
+    /**
+     * Returns the image so that its pixels can be modified in place.
+     */
+    @Override
+    public BufferedImage getImageForWriting() {
+        unshareImage();
+        contentChanged();
+        return image;
+    }
+
     @Override
     public BufferedImage getFilterSourceImage() {
         if (filterSourceImage == null) {
@@ -338,6 +399,13 @@ public class ImageLayer extends ContentLayer implements Drawable {
             comp.getCanvasWidth(), comp.getCanvasHeight());
     }
 
+    @Override
+    public BufferedImage getCanvasSizedSubImageForWriting() {
+        unshareImage();
+        contentChanged();
+        return getCanvasSizedSubImage();
+    }
+
     public BufferedImage getCanvasSizedVisibleImage() {
         if (!isBigLayer()) {
             return getVisibleImage();
@@ -396,6 +464,10 @@ public class ImageLayer extends ContentLayer implements Drawable {
     }
 
     private void setImageWithSelection(BufferedImage newImage, boolean isUndoRedo) {
+        if (comp.hasSelection()) {
+            // the new image is drawn into the current one
+            unshareImage();
+        }
         image = replaceSelectedRegion(image, newImage, isUndoRedo);
         imageRefChanged();
 
@@ -507,6 +579,8 @@ public class ImageLayer extends ContentLayer implements Drawable {
         assert state == PREVIEW || state == SHOW_ORIGINAL;
         assert previewImage != null;
 
+        AsyncPreviewRenderer.cancelPreview(this);
+
         setState(NORMAL);
 
         // so that layer mask transparency image is regenerated
@@ -521,6 +595,9 @@ public class ImageLayer extends ContentLayer implements Drawable {
         assert state == PREVIEW || state == SHOW_ORIGINAL;
         assert previewImage != null;
 
+        // the preview image must reflect the last settings
+        AsyncPreviewRenderer.finishPreview(this);
+
         if (imageContentChanged) {
             History.add(new ImageEdit(filterName, comp, this,
                 getSelectedSubImage(true), false));
@@ -961,6 +1038,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             return;
         }
 
+        unshareImage();
         Graphics2D g = image.createGraphics();
         tmpDrawingLayer.paintOn(g, -getTx(), -getTy());
         g.dispose();
@@ -1061,21 +1139,51 @@ public class ImageLayer extends ContentLayer implements Drawable {
             } else { // layer is not in normal mode
                 // the composite of the graphics is already set up, but
                 // the drawing layer still has to be considered
+                paintMergedWithTmpLayer(g, visibleImage);
+            }
+        }
+    }
+
+    /**
+     * Paints the layer image merged with the temporary drawing layer.
+     * Only the clip region is merged, which is usually small,
+     * because during a brush stroke only the tiles around the
+     * last brush dab are recomposited.
+     */
+    private void paintMergedWithTmpLayer(Graphics2D g, BufferedImage visibleImage) {
+        int tx = getTx();
+        int ty = getTy();
+        Rectangle region = new Rectangle(tx, ty,
+            visibleImage.getWidth(), visibleImage.getHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            region = region.intersection(clip);
+        }
+        if (region.isEmpty()) {
+            return;
+        }
 
-                // first create a merged layer-brush image
-                BufferedImage mergedLayerBrushImg = copyImage(visibleImage);
-                // TODO a canvas-sized image would be enough?
-                Graphics2D mergedLayerBrushG = mergedLayerBrushImg.createGraphics();
+        // first create a merged layer-brush image for the region
+        region.translate(-tx, -ty);
+        BufferedImage mergedLayerBrushImg = ImageUtils.copySubImage(visibleImage, region);
+        Graphics2D mergedLayerBrushG = mergedLayerBrushImg.createGraphics();
 
-                // draw the drawing layer on the layer
-                tmpDrawingLayer.paintOn(mergedLayerBrushG, -getTx(), -getTy());
-                mergedLayerBrushG.dispose();
+        // draw the drawing layer on the layer
+        tmpDrawingLayer.paintOn(mergedLayerBrushG, -tx - region.x, -ty - region.y);
+        mergedLayerBrushG.dispose();
 
-                // now draw the merged layer-brush on the target Graphics
-                // with the layer composite
-                g.drawImage(mergedLayerBrushImg, getTx(), getTy(), null);
-            }
+        // now draw the merged layer-brush on the target Graphics
+        // with the layer composite
+        g.drawImage(mergedLayerBrushImg, tx + region.x, ty + region.y, null);
+    }
+
+    @Override
+    public boolean canBePaintedInParallel() {
+        if (Tools.isShapesDrawing() && isActive()) {
+            // the dragged shapes are mixed into a canvas-sized image
+            return false;
         }
+        return super.canBePaintedInParallel();
     }
 
     protected void paintLayerOnGraphicsWOTmpLayer(Graphics2D g,
@@ -1133,8 +1241,8 @@ public class ImageLayer extends ContentLayer implements Drawable {
     // called when the visible image's variable
     // points to a new reference
     protected void imageRefChanged() {
-        // empty here, but overridden in LayerMask
-        // to update the transparency image
+        // overridden in LayerMask to also update the transparency image
+        contentChanged();
     }
 
     @Override
@@ -1148,6 +1256,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
      * to the transparency of the layer
      */
     public BufferedImage applyLayerMask(boolean addToHistory) {
+        unshareImage();
         BufferedImage previousLayerImage = copyImage(image);
         LayerMask previousMask = mask;
         MaskViewMode previousMaskViewMode = comp.getView().getMaskViewMode();
@@ -1184,14 +1293,23 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
+        regionChanged(Composition.calcRepaintRegion(start, end, thickness));
         comp.repaintRegion(start, end, thickness);
     }
 
     @Override
     public void repaintRegion(PRectangle area) {
+        regionChanged(area.getIm());
         comp.repaintRegion(area);
     }
 
+    private void regionChanged(Rectangle2D imRegion) {
+        invalidateMaskedImage(imRegion);
+        if (tmpDrawingLayer != null) {
+            tmpDrawingLayer.regionChanged(imRegion);
+        }
+    }
+
     @Override
     public DebugNode createDebugNode(String key) {
         DebugNode node = super.createDebugNode(key);
@@ -19,11 +19,16 @@ package pixelitor.layers;
 
 import pixelitor.Composition;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Resampler;
 import pixelitor.utils.debug.DebugNode;
 import pixelitor.utils.debug.DebugNodes;
 
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.io.Serializable;
 
@@ -40,7 +45,11 @@ public class ImageTransformer implements ImageSource, Serializable {
     private int targetWidth;
     private int targetHeight;
 
-    private transient BufferedImage cachedImage;
+    private transient CachedImage cachedImage = new CachedImage();
+
+    // the region of the cached image that has to be recalculated,
+    // null if the cached image (if there is one) is up-to-date
+    private transient Rectangle dirtyRegion;
 
     public ImageTransformer(Composition content, AffineTransform transform,
                             int targetWidth, int targetHeight) {
@@ -56,11 +65,22 @@ public class ImageTransformer implements ImageSource, Serializable {
 
         // should be safe to share because the new content
         // is either identical to the old one or a copy of it
-        copy.cachedImage = cachedImage;
+        copy.cachedImage.shareFrom(cachedImage);
+        synchronized (this) {
+            if (dirtyRegion != null) {
+                copy.dirtyRegion = new Rectangle(dirtyRegion);
+            }
+        }
 
         return copy;
     }
 
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        cachedImage = new CachedImage();
+    }
+
     public void setContent(Composition content) {
         this.content = content;
         invalidateCache();
@@ -73,12 +93,60 @@ public class ImageTransformer implements ImageSource, Serializable {
 
     @Override
     public BufferedImage getImage() {
-        if (cachedImage != null) {
-            return cachedImage;
+        Rectangle region = takeDirtyRegion();
+        if (region != null) {
+            BufferedImage oldImage = cachedImage.peek();
+            if (oldImage != null) {
+                long start = System.nanoTime();
+                // the old image might be shared, therefore it's not modified
+                BufferedImage newImage = ImageUtils.copyImage(oldImage);
+                ImageUtils.applyTransform(content.getCompositeImage(), transform, newImage, region);
+                cachedImage.set(newImage, Math.max(cachedImage.getCostNanos(), System.nanoTime() - start));
+                return newImage;
+            }
         }
-        cachedImage = ImageUtils.applyTransform(content.getCompositeImage(),
-            transform, targetWidth, targetHeight);
-        return cachedImage;
+        return cachedImage.get(() -> ImageUtils.applyTransform(
+            content.getCompositeImage(), transform, targetWidth, targetHeight));
+    }
+
+    /**
+     * Invalidates the part of the cached image that depends on the given
+     * region of the content, and returns that part (in the coordinates of
+     * the transformed image). A null region means the whole content.
+     */
+    public Rectangle invalidateRegion(Rectangle contentRegion) {
+        if (contentRegion == null) {
+            invalidateCache();
+            return null;
+        }
+
+        // the interpolation also reads pixels beyond the changed region
+        int margin = 2; // the bicubic interpolation of Java2D
+        if (Resampler.canTransform(transform)) {
+            double scaling = Math.min(transform.getScaleX(), transform.getScaleY());
+            margin = Resampler.DEFAULT_KERNEL.calcSourceMargin(scaling);
+        }
+        var grown = new Rectangle2D.Double(contentRegion.x - margin, contentRegion.y - margin,
+            contentRegion.width + 2 * margin, contentRegion.height + 2 * margin);
+        Rectangle region = transform.createTransformedShape(grown).getBounds()
+            .intersection(new Rectangle(0, 0, targetWidth, targetHeight));
+        if (region.isEmpty()) {
+            return region;
+        }
+        synchronized (this) {
+            if (dirtyRegion == null) {
+                dirtyRegion = new Rectangle(region);
+            } else {
+                dirtyRegion.add(region);
+            }
+        }
+        return region;
+    }
+
+    private synchronized Rectangle takeDirtyRegion() {
+        Rectangle region = dirtyRegion;
+        dirtyRegion = null;
+        return region;
     }
 
     public void concatenate(AffineTransform newScaling, int targetWidth, int targetHeight) {
@@ -88,11 +156,14 @@ public class ImageTransformer implements ImageSource, Serializable {
     }
 
     public BufferedImage getCachedImage() {
-        return cachedImage;
+        return cachedImage.peek();
     }
 
     public void invalidateCache() {
-        cachedImage = null;
+        cachedImage.clear();
+        synchronized (this) {
+            dirtyRegion = null;
+        }
     }
 
     @Override
@@ -102,9 +173,10 @@ public class ImageTransformer implements ImageSource, Serializable {
         node.addInt("target width", targetWidth);
         node.addInt("target height", targetHeight);
 
-        node.addBoolean("cached", cachedImage != null);
-        if (cachedImage != null) {
-            node.addString("cached image size", cachedImage.getWidth() + "x" + cachedImage.getHeight());
+        BufferedImage cached = cachedImage.peek();
+        node.addBoolean("cached", cached != null);
+        if (cached != null) {
+            node.addString("cached image size", cached.getWidth() + "x" + cached.getHeight());
         }
 
         node.add(DebugNodes.createTransformNode(transform, "transform"));
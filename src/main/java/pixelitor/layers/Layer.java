@@ -78,6 +78,9 @@ public abstract class Layer implements Serializable, Debuggable {
     protected LayerMask mask;
     private boolean maskEnabled = true;
 
+    // the result of painting this layer through its mask
+    private transient MaskedImageCache maskedImageCache;
+
     /**
      * Whether the edited image is the layer image or
      * the layer mask image.
@@ -475,6 +478,7 @@ public abstract class Layer implements Serializable, Debuggable {
 
         mask = new LayerMask(comp, bwMask, this, maskTx, maskTy);
         maskEnabled = true;
+        invalidateMaskedImage();
 
         if (hasUI()) {
             // in rare cases (like selection crop) this could be running
@@ -536,6 +540,7 @@ public abstract class Layer implements Serializable, Debuggable {
         assert mask.getComp() == comp;
 
         this.mask = mask;
+        invalidateMaskedImage();
         if (hasUI() && !ui.hasMaskIcon()) {
             ui.addMaskIcon();
         }
@@ -555,6 +560,7 @@ public abstract class Layer implements Serializable, Debuggable {
         View view = comp.getView();
         MaskViewMode oldMode = view.getMaskViewMode();
         mask = null;
+        invalidateMaskedImage();
 
         ui.removeMaskIcon();
         Layers.maskDeleted(this);
@@ -611,7 +617,7 @@ public abstract class Layer implements Serializable, Debuggable {
     }
 
     private PixelitorEdit modifyMaskToHide(Shape shape, boolean createEdit) {
-        BufferedImage maskImage = mask.getImage();
+        BufferedImage maskImage = mask.getImageForWriting();
         BufferedImage maskImageBackup = null;
         if (createEdit) {
             maskImageBackup = ImageUtils.copyImage(maskImage);
@@ -642,6 +648,7 @@ public abstract class Layer implements Serializable, Debuggable {
     public void setMaskEnabled(boolean maskEnabled, boolean addToHistory) {
         assert hasMask();
         this.maskEnabled = maskEnabled;
+        invalidateMaskedImage();
 
         maskingChanged();
         holder.update();
@@ -669,6 +676,8 @@ public abstract class Layer implements Serializable, Debuggable {
             newOwner.maskEnabled = maskEnabled;
             newOwner.maskEditing = maskEditing;
             mask = null;
+            invalidateMaskedImage();
+            newOwner.invalidateMaskedImage();
         }
 
         newOwner.ui = this.ui;
@@ -703,30 +712,102 @@ public abstract class Layer implements Serializable, Debuggable {
         return null;
     }
 
+    /**
+     * Returns true if this layer affects the composite image only by
+     * painting on the Graphics2D given to applyLayer, which means that
+     * its effect can be restricted to a region by clipping.
+     */
+    public boolean canBeCompositedInRegions() {
+        return !isAdjustment;
+    }
+
+    /**
+     * Returns true if different regions of this layer can be painted
+     * at the same time on different threads, assuming that one region
+     * was already painted (which initializes the lazy caches).
+     */
+    public boolean canBePaintedInParallel() {
+        return canBeCompositedInRegions();
+    }
+
     // used by the non-adjustment stuff
     // This method assumes that the composite of the graphics is already
     // set up according to the transparency and blending mode
     public abstract void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer);
 
     /**
-     * Returns the masked image for the non-adjustment case.
-     * The returned image is canvas-sized, and the masks and the
-     * translations are taken into account
+     * Paints this layer through its mask for the non-adjustment case.
+     * The masked image is canvas-sized, and the masks and the
+     * translations are taken into account.
      */
     private void paintLayerOnGraphicsWithMask(Graphics2D g, boolean firstVisibleLayer) {
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        var maskedImage = new BufferedImage(
-            comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB);
+        if (maskedImageCache == null) {
+            maskedImageCache = new MaskedImageCache();
+        }
+        BufferedImage maskedImage = maskedImageCache.getImage(this, firstVisibleLayer);
+        if (maskedImage != null) {
+            g.drawImage(maskedImage, 0, 0, null);
+        } else {
+            // too big to be cached
+            paintLayerOnGraphicsWithMaskInClip(g, firstVisibleLayer);
+        }
+    }
+
+    /**
+     * Paints this layer through its mask by creating
+     * a temporary image only for the clip region.
+     */
+    private void paintLayerOnGraphicsWithMaskInClip(Graphics2D g, boolean firstVisibleLayer) {
+        Rectangle bounds = comp.getCanvas().getBounds();
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            bounds = bounds.intersection(clip);
+        }
+        if (bounds.isEmpty()) {
+            return;
+        }
+
+        var maskedImage = new BufferedImage(bounds.width, bounds.height, TYPE_INT_ARGB);
         Graphics2D mig = maskedImage.createGraphics();
+        mig.translate(-bounds.x, -bounds.y);
         paintLayerOnGraphics(mig, firstVisibleLayer);
         mig.setComposite(DstIn);
         mig.drawImage(mask.getTransparencyImage(),
             mask.getTx(), mask.getTy(), null);
         mig.dispose();
 
-        // 2. paint the masked image onto the graphics
-        g.drawImage(maskedImage, 0, 0, null);
+        g.drawImage(maskedImage, bounds.x, bounds.y, null);
+    }
+
+    /**
+     * Signals that the cached masked image must be recalculated, because
+     * the layer's content or its mask has changed. It's called by the code
+     * that changes them, and not by the composition-level updates.
+     * If the layer doesn't use its mask anymore, then the memory is freed.
+     */
+    public void invalidateMaskedImage() {
+        if (maskedImageCache != null) {
+            if (usesMask()) {
+                maskedImageCache.invalidate();
+            } else {
+                maskedImageCache.release();
+                maskedImageCache = null;
+            }
+        }
+    }
+
+    boolean hasValidMaskedImage() {
+        return maskedImageCache != null && maskedImageCache.isValid();
+    }
+
+    /**
+     * Signals that the given image-space region of the
+     * layer or of its mask has changed.
+     */
+    protected void invalidateMaskedImage(Rectangle2D imRegion) {
+        if (maskedImageCache != null) {
+            maskedImageCache.invalidateRegion(imRegion.getBounds());
+        }
     }
 
     /**
@@ -1047,6 +1128,7 @@ public abstract class Layer implements Serializable, Debuggable {
     }
 
     public void update(Composition.UpdateActions actions) {
+        invalidateMaskedImage();
         holder.update(actions);
     }
 
@@ -1084,6 +1166,8 @@ public abstract class Layer implements Serializable, Debuggable {
             node.addString("has mask", "yes");
             node.addBoolean("mask enabled", isMaskEnabled());
             node.addBoolean("mask editing", isMaskEditing());
+            node.addBoolean("masked image cached",
+                maskedImageCache != null && maskedImageCache.isValid());
             node.add(getMask().createDebugNode());
         } else {
             node.addString("has mask", "no");
@@ -58,7 +58,7 @@ public class LayerGroup extends CompositeLayer {
     private transient boolean needsIconUpdate = false;
 
     // used only for isolated images
-    private transient BufferedImage cachedImage;
+    private transient CachedImage cachedImage = new CachedImage();
 
     private static int groupCounter = 0;
 
@@ -76,7 +76,7 @@ public class LayerGroup extends CompositeLayer {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
 
-        cachedImage = null;
+        cachedImage = new CachedImage();
         thumb = null;
         needsIconUpdate = false;
     }
@@ -129,6 +129,9 @@ public class LayerGroup extends CompositeLayer {
     @Override
     public BufferedImage applyLayer(Graphics2D g, BufferedImage imageSoFar, boolean firstVisibleLayer) {
         if (isPassThrough()) {
+            // keep the clipping, because the composite might be
+            // recalculated only in a region
+            Shape clip = g.getClip();
             for (Layer layer : layers) {
                 if (layer.isVisible()) {
                     BufferedImage result = layer.applyLayer(g, imageSoFar, firstVisibleLayer);
@@ -138,6 +141,7 @@ public class LayerGroup extends CompositeLayer {
                             g.dispose();
                         }
                         g = imageSoFar.createGraphics();
+                        g.setClip(clip);
                     }
                     firstVisibleLayer = false;
                 }
@@ -150,27 +154,52 @@ public class LayerGroup extends CompositeLayer {
         return imageSoFar;
     }
 
+    @Override
+    public boolean canBeCompositedInRegions() {
+        if (isPassThrough()) {
+            return ImageUtils.canBeCompositedInRegions(layers);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean canBePaintedInParallel() {
+        if (isPassThrough()) {
+            for (Layer layer : layers) {
+                if (layer.isVisible() && !layer.canBePaintedInParallel()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public void update(Composition.UpdateActions actions) {
         recalculateCachedImage();
+        invalidateMaskedImage();
         holder.update(actions);
     }
 
-    private void recalculateCachedImage() {
+    private BufferedImage recalculateCachedImage() {
         if (isPassThrough()) {
-            cachedImage = null;
-        } else {
-            cachedImage = ImageUtils.calculateCompositeImage(layers, comp.getCanvas());
-            if (needsIconUpdate) {
-                updateIconImage();
-                needsIconUpdate = false;
-            }
+            cachedImage.clear();
+            return null;
+        }
+        long start = System.nanoTime();
+        BufferedImage newImage = ImageUtils.calculateCompositeImage(layers, comp.getCanvas());
+        cachedImage.set(newImage, System.nanoTime() - start);
+        if (needsIconUpdate) {
+            updateIconImage();
+            needsIconUpdate = false;
         }
+        return newImage;
     }
 
     @Override
     public void invalidateImageCache() {
-        cachedImage = null;
+        cachedImage.clear();
+        invalidateMaskedImage();
         holder.invalidateImageCache();
     }
 
@@ -189,10 +218,12 @@ public class LayerGroup extends CompositeLayer {
     }
 
     private BufferedImage getCachedImage() {
-        if (cachedImage == null) {
-            recalculateCachedImage();
+        BufferedImage cached = cachedImage.get();
+        if (cached == null) {
+            // not yet calculated, invalidated or evicted
+            cached = recalculateCachedImage();
         }
-        return cachedImage;
+        return cached;
     }
 
     @Override
@@ -381,7 +412,7 @@ public class LayerGroup extends CompositeLayer {
 
     @Override
     public void smartObjectChanged(boolean linked) {
-        cachedImage = null;
+        cachedImage.clear();
         holder.smartObjectChanged(linked);
     }
 
@@ -410,7 +441,7 @@ public class LayerGroup extends CompositeLayer {
     @Override
     public void updateIconImage() {
         if (!isPassThrough()) {
-            if (cachedImage == null) {
+            if (cachedImage.isEmpty()) {
                 needsIconUpdate = true; // postpone
                 return;
             }
@@ -426,8 +457,9 @@ public class LayerGroup extends CompositeLayer {
                 thumb = ImageUtils.createCircleThumb(new Color(0, 138, 0));
             }
         } else {
-            if (cachedImage != null) {
-                thumb = createThumbnail(cachedImage, thumbSize, thumbCheckerBoardPainter);
+            BufferedImage cached = cachedImage.peek();
+            if (cached != null) {
+                thumb = createThumbnail(cached, thumbSize, thumbCheckerBoardPainter);
             } else {
                 // should not happen
                 thumb = ImageUtils.createCircleThumb(new Color(0, 0, 203));
@@ -595,7 +627,7 @@ public class LayerGroup extends CompositeLayer {
     public DebugNode createDebugNode(String key) {
         DebugNode node = super.createDebugNode(key);
 
-        node.addBoolean("has cached image", cachedImage != null);
+        node.addBoolean("has cached image", !cachedImage.isEmpty());
         node.addBoolean("has thumb", thumb != null);
         for (Layer layer : layers) {
             node.add(layer.createDebugNode());
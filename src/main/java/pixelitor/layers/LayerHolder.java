@@ -239,7 +239,7 @@ public interface LayerHolder extends Debuggable {
         int layerIndex = indexOf(layer);
         var bellowLayer = (ImageLayer) getLayer(layerIndex - 1);
 
-        var bellowImage = bellowLayer.getImage();
+        var bellowImage = bellowLayer.getImageForWriting();
         var maskViewModeBefore = getComp().getView().getMaskViewMode();
         var imageBefore = ImageUtils.copyImage(bellowImage);
 
@@ -24,7 +24,6 @@ import pixelitor.history.LinkLayerMaskEdit;
 import pixelitor.tools.Tools;
 import pixelitor.tools.util.PPoint;
 import pixelitor.tools.util.PRectangle;
-import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.AlphaComposite;
@@ -143,6 +142,15 @@ public class LayerMask extends ImageLayer {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
         }
+        contentChanged();
+    }
+
+    @Override
+    protected void contentChanged() {
+        // the owner is null while the mask is being constructed
+        if (owner != null) {
+            owner.invalidateMaskedImage();
+        }
     }
 
     /**
@@ -150,8 +158,7 @@ public class LayerMask extends ImageLayer {
      * to the given layer
      */
     public LayerMask duplicate(Layer owner, Composition newComp) {
-        BufferedImage maskImageCopy = ImageUtils.copyImage(image);
-        return new LayerMask(newComp, maskImageCopy, owner, getTx(), getTy());
+        return new LayerMask(newComp, shareImage(), owner, getTx(), getTy());
     }
 
     public boolean isLinked() {
@@ -247,6 +254,7 @@ public class LayerMask extends ImageLayer {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
         }
+        owner.invalidateMaskedImage();
         holder.update(actions);
     }
 
@@ -255,6 +263,7 @@ public class LayerMask extends ImageLayer {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
         }
+        owner.invalidateMaskedImage(Composition.calcRepaintRegion(start, end, thickness));
         comp.repaintRegion(start, end, thickness);
     }
 
@@ -263,6 +272,7 @@ public class LayerMask extends ImageLayer {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
         }
+        owner.invalidateMaskedImage(area.getIm());
         comp.repaintRegion(area);
     }
 
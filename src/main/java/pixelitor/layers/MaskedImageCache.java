@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.AlphaComposite.DstIn;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * The canvas-sized image of a layer painted through its mask.
+ *
+ * The cached image is recalculated only after the layer or the mask
+ * has changed, and after a local change only the changed region
+ * is repainted. The memory is managed by the {@link ImageCacheManager},
+ * which can evict the image if the budget is exceeded.
+ */
+final class MaskedImageCache {
+    private final CachedImage cachedImage = new CachedImage();
+    private boolean valid;
+    private Rectangle dirtyRegion;
+
+    // the settings used for the cached image
+    private boolean firstVisibleLayer;
+    private int layerTx;
+    private int layerTy;
+    private int maskTx;
+    private int maskTy;
+
+    /**
+     * Returns the up-to-date masked image of the given layer, or
+     * null if it's too big to be cached. The returned image must
+     * not be modified.
+     */
+    BufferedImage getImage(Layer layer, boolean firstVisibleLayer) {
+        int width = layer.getComp().getCanvasWidth();
+        int height = layer.getComp().getCanvasHeight();
+        long neededBytes = 4L * width * height;
+        if (neededBytes > ImageCacheManager.getBudgetBytes()) {
+            release();
+            return null;
+        }
+
+        BufferedImage image;
+        long start = System.nanoTime();
+        boolean newImage = false;
+        synchronized (this) {
+            image = cachedImage.get();
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                // the old image isn't flushed, because
+                // another thread might still paint it
+                image = new BufferedImage(width, height, TYPE_INT_ARGB);
+                valid = false;
+                newImage = true;
+            }
+
+            LayerMask mask = layer.getMask();
+            int newLayerTx = 0;
+            int newLayerTy = 0;
+            if (layer instanceof ContentLayer contentLayer) {
+                newLayerTx = contentLayer.getTx();
+                newLayerTy = contentLayer.getTy();
+            }
+            boolean settingsChanged = this.firstVisibleLayer != firstVisibleLayer
+                || layerTx != newLayerTx || layerTy != newLayerTy
+                || maskTx != mask.getTx() || maskTy != mask.getTy();
+
+            if (!valid || settingsChanged) {
+                this.firstVisibleLayer = firstVisibleLayer;
+                layerTx = newLayerTx;
+                layerTy = newLayerTy;
+                maskTx = mask.getTx();
+                maskTy = mask.getTy();
+
+                // a reused image has to be cleared
+                paint(image, layer, null, !newImage);
+            } else if (dirtyRegion != null) {
+                paint(image, layer, dirtyRegion, true);
+            }
+            valid = true;
+            dirtyRegion = null;
+        }
+        if (newImage) {
+            // not while holding the lock of this object,
+            // because other caches might be evicted
+            cachedImage.set(image, System.nanoTime() - start);
+        }
+
+        return image;
+    }
+
+    // paints the whole image if the region is null
+    private void paint(BufferedImage image, Layer layer, Rectangle region, boolean clear) {
+        Graphics2D g = image.createGraphics();
+        if (region != null) {
+            g.setClip(region);
+        }
+        if (clear) {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        layer.paintLayerOnGraphics(g, firstVisibleLayer);
+
+        LayerMask mask = layer.getMask();
+        g.setComposite(DstIn);
+        g.drawImage(mask.getTransparencyImage(), mask.getTx(), mask.getTy(), null);
+        g.dispose();
+    }
+
+    /**
+     * Marks the whole image as needing recalculation,
+     * but keeps the buffer for reuse.
+     */
+    synchronized void invalidate() {
+        valid = false;
+        dirtyRegion = null;
+    }
+
+    /**
+     * Marks the given canvas region as needing recalculation.
+     */
+    synchronized void invalidateRegion(Rectangle region) {
+        if (!valid || region.isEmpty()) {
+            return; // everything will be recalculated anyway
+        }
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(region);
+        } else {
+            dirtyRegion.add(region);
+        }
+    }
+
+    /**
+     * Frees the memory used by the cached image.
+     */
+    synchronized void release() {
+        cachedImage.clear();
+        valid = false;
+        dirtyRegion = null;
+    }
+
+    synchronized boolean isValid() {
+        return valid && dirtyRegion == null && !cachedImage.isEmpty();
+    }
+}
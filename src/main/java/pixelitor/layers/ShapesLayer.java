@@ -37,6 +37,8 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.util.concurrent.CompletableFuture;
 
@@ -55,7 +57,7 @@ public class ShapesLayer extends ContentLayer {
     // it from the styled shape is currently not possible.
     private TransformBox transformBox;
 
-    private transient BufferedImage cachedImage;
+    private transient ContentRasterCache rasterCache;
 
     public ShapesLayer(Composition comp, String name) {
         super(comp, name);
@@ -97,23 +99,25 @@ public class ShapesLayer extends ContentLayer {
 
     @Override
     public void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer) {
-        if (styledShape != null) {
-            // the custom blending modes don't work with gradients
-            boolean useCachedImage = g.getComposite().getClass() != AlphaComposite.class
-                && styledShape.hasBlendingIssue();
-            if (useCachedImage) {
-                if (cachedImage == null) {
-                    int width = comp.getCanvasWidth();
-                    int height = comp.getCanvasHeight();
-                    cachedImage = ImageUtils.createSysCompatibleImage(width, height);
-                    Graphics2D imgG = cachedImage.createGraphics();
-                    styledShape.paint(imgG);
-                    imgG.dispose();
-                }
-                g.drawImage(cachedImage, 0, 0, null);
-            } else {
-                styledShape.paint(g);
-            }
+        if (hasShape()) {
+            // The shape is painted only once into the cached image.
+            // This also solves the problem of the custom blending
+            // modes not working with the JDK gradients.
+            getRasterCache().paint(g, comp.getCanvas(), styledShape,
+                styledShape::getPaintedBounds, styledShape::paint);
+        }
+    }
+
+    private ContentRasterCache getRasterCache() {
+        if (rasterCache == null) {
+            rasterCache = new ContentRasterCache();
+        }
+        return rasterCache;
+    }
+
+    private void invalidateRasterCache() {
+        if (rasterCache != null) {
+            rasterCache.invalidate();
         }
     }
 
@@ -208,7 +212,17 @@ public class ShapesLayer extends ContentLayer {
     public void setStyledShape(StyledShape styledShape) {
         assert styledShape != null;
         this.styledShape = styledShape;
-        styledShape.setChangeListener(() -> cachedImage = null);
+        styledShape.setChangeListener(this::invalidateRasterCache);
+        invalidateRasterCache();
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        if (styledShape != null) {
+            styledShape.setChangeListener(this::invalidateRasterCache);
+        }
     }
 
     @Override
@@ -31,8 +31,10 @@ import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
 import javax.swing.*;
+import java.awt.AlphaComposite;
 import java.awt.Component;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -48,15 +50,21 @@ import java.util.stream.Stream;
  * inside the smart object. Additionally, smart filters also
  * cache their own output, so that if the filter settings are changed,
  * only the filters downstream from that filter will be rerun.
+ * If the smart object content changes only in a region, then the
+ * filters with a bounded footprint recalculate only that region.
  */
 public class SmartFilter extends AdjustmentLayer implements ImageSource {
     @Serial
     private static final long serialVersionUID = 1L;
 
     private ImageSource imageSource;
-    private transient BufferedImage cachedImage;
+    private transient CachedImage cachedImage = new CachedImage();
     private SmartObject smartObject;
 
+    // the region of the cached image that has to be recalculated,
+    // null if the cached image (if there is one) is up-to-date
+    private transient Rectangle dirtyRegion;
+
     // the smart filter that is applied after this one.
     private SmartFilter next;
 
@@ -77,13 +85,18 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         this.smartObject = orig.smartObject;
 
         holder = smartObject;
-        cachedImage = orig.cachedImage; // safe to share
+        cachedImage.shareFrom(orig.cachedImage); // safe to share
+        synchronized (orig) {
+            if (orig.dirtyRegion != null) {
+                dirtyRegion = new Rectangle(orig.dirtyRegion);
+            }
+        }
     }
 
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // defaults for transient fields
-        cachedImage = null;
+        cachedImage = new CachedImage();
 
         in.defaultReadObject();
 
@@ -140,18 +153,58 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
 
     @Override
     public BufferedImage applyOnImage(BufferedImage src) {
-        if (cachedImage != null) {
-            return cachedImage;
-        }
         assert src != null;
-        cachedImage = filter.transformImage(src);
-
-        // TODO this check should not be necessary
-        if (cachedImage == src) {
-            cachedImage = ImageUtils.copyImage(cachedImage);
+        Rectangle region = takeDirtyRegion();
+        if (region != null) {
+            BufferedImage oldImage = cachedImage.peek();
+            if (oldImage != null && oldImage.getWidth() == src.getWidth()
+                && oldImage.getHeight() == src.getHeight()) {
+                long start = System.nanoTime();
+                BufferedImage newImage = recalculateRegion(oldImage, src, region);
+                cachedImage.set(newImage, Math.max(cachedImage.getCostNanos(), System.nanoTime() - start));
+                return newImage;
+            }
         }
+        return cachedImage.get(() -> {
+            BufferedImage transformed = filter.transformImage(src);
 
-        return cachedImage;
+            // TODO this check should not be necessary
+            if (transformed == src) {
+                transformed = ImageUtils.copyImage(transformed);
+            }
+            return transformed;
+        });
+    }
+
+    /**
+     * Returns a copy of the old output in which the given region is
+     * recalculated from the new input. Only the region and the
+     * surrounding halo (the footprint) of the input are filtered.
+     */
+    private BufferedImage recalculateRegion(BufferedImage oldImage, BufferedImage src, Rectangle region) {
+        var imageBounds = new Rectangle(0, 0, src.getWidth(), src.getHeight());
+        Rectangle target = region.intersection(imageBounds);
+        if (target.isEmpty()) {
+            return oldImage;
+        }
+        int footprint = filter.getFootprintRadius();
+        Rectangle input = new Rectangle(target);
+        input.grow(footprint, footprint);
+        input = input.intersection(imageBounds);
+
+        BufferedImage filtered = filter.transformImage(ImageUtils.copySubImage(src, input));
+
+        // the old image might be shared, therefore it's not modified
+        BufferedImage newImage = ImageUtils.copyImage(oldImage);
+        Graphics2D g = newImage.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        int dx = target.x - input.x;
+        int dy = target.y - input.y;
+        g.drawImage(filtered,
+            target.x, target.y, target.x + target.width, target.y + target.height,
+            dx, dy, dx + target.width, dy + target.height, null);
+        g.dispose();
+        return newImage;
     }
 
     public ImageSource getImageSource() {
@@ -204,6 +257,52 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         }
     }
 
+    /**
+     * Recursively invalidates the given region (in the coordinates of the
+     * smart object) in this smart filter and in all smart filters after it.
+     * A null region means that the whole input has changed.
+     */
+    public void invalidateChain(Rectangle region) {
+        Rectangle nextRegion = invalidateRegion(region);
+        if (next != null) {
+            //noinspection TailRecursion
+            next.invalidateChain(nextRegion);
+        }
+    }
+
+    /**
+     * Invalidates the output that depends on the given input region,
+     * and returns the region of the output that has changed.
+     */
+    private Rectangle invalidateRegion(Rectangle region) {
+        int footprint = filter.getFootprintRadius();
+        if (region == null || footprint == Filter.UNBOUNDED_FOOTPRINT) {
+            invalidateCache();
+            return null;
+        }
+        if (region.isEmpty()) {
+            return region;
+        }
+        // the output changes within the footprint of the changed input,
+        // and the masking and blending don't extend the changed region
+        Rectangle changed = new Rectangle(region);
+        changed.grow(footprint, footprint);
+        synchronized (this) {
+            if (dirtyRegion == null) {
+                dirtyRegion = new Rectangle(changed);
+            } else {
+                dirtyRegion.add(changed);
+            }
+        }
+        return changed;
+    }
+
+    private synchronized Rectangle takeDirtyRegion() {
+        Rectangle region = dirtyRegion;
+        dirtyRegion = null;
+        return region;
+    }
+
     private Stream<SmartFilter> getChainStream() {
         return Stream.iterate(this, Objects::nonNull, SmartFilter::getNext);
     }
@@ -216,14 +315,14 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
     }
 
     private void invalidateCache() {
-        if (cachedImage != null) {
-            cachedImage.flush();
-            cachedImage = null;
+        cachedImage.clear();
+        synchronized (this) {
+            dirtyRegion = null;
         }
     }
 
     public boolean hasCachedImage() {
-        return cachedImage != null;
+        return !cachedImage.isEmpty();
     }
 
     @Override
@@ -356,7 +455,7 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
     }
 
     public BufferedImage getCachedImage() {
-        return cachedImage;
+        return cachedImage.peek();
     }
 
     @Override
@@ -391,7 +490,7 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         node.addString("imageSource class", imageSource.getClass().getSimpleName());
         node.add(imageSource.createDebugNode("imageSource"));
         node.addString("next", next == null ? "null" : next.toString());
-        node.addBoolean("cached", (cachedImage != null));
+        node.addBoolean("cached", !cachedImage.isEmpty());
 
         return node;
     }
@@ -96,7 +96,7 @@ public class SmartObject extends CompositeLayer {
     private transient boolean imageNeedsRefresh = false;
 
     // the cached image of this smart object
-    private transient BufferedImage image = null;
+    private transient CachedImage image = new CachedImage();
 
     // It's important to call updateIconImage() only when we are
     // sure that the smart object's image is up-to-date, because otherwise
@@ -161,7 +161,7 @@ public class SmartObject extends CompositeLayer {
         } else {
             setContent(orig.getContent());
         }
-        image = orig.image;
+        image.shareFrom(orig.image);
 
         for (SmartFilter origFilter : orig.filters) {
             SmartFilter copy = (SmartFilter) origFilter.copy(copyType, true, newComp);
@@ -183,6 +183,7 @@ public class SmartObject extends CompositeLayer {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
+        image = new CachedImage();
 
         if (!newVersion) {
             // if the pxc was saved with an old version,
@@ -300,14 +301,18 @@ public class SmartObject extends CompositeLayer {
         }
     }
 
-    private void recalculateImage() {
+    private BufferedImage recalculateImage() {
+        long start = System.nanoTime();
+        BufferedImage newImage;
         int numFilters = filters.size();
         if (numFilters > 0) {
-            image = filters.get(numFilters - 1).getImage();
+            newImage = filters.get(numFilters - 1).getImage();
         } else {
-            image = baseSource.getImage();
+            newImage = baseSource.getImage();
         }
+        image.set(newImage, System.nanoTime() - start);
         imageNeedsRefresh = false;
+        return newImage;
     }
 
     @Override
@@ -321,6 +326,7 @@ public class SmartObject extends CompositeLayer {
     @Override
     public void invalidateImageCache() {
         imageNeedsRefresh = true;
+        invalidateMaskedImage();
     }
 
     /**
@@ -335,13 +341,16 @@ public class SmartObject extends CompositeLayer {
             return;
         }
 
-        // invalidate everything because if the content reference
-        // didn't change, then setContent didn't do it
+        // invalidate the changed region because if the content
+        // reference didn't change, then setContent didn't do it
         iconImageNeedsRefresh = true;
         invalidateImageCache();
-        invalidateAllFilterCaches();
+        Rectangle region = content.getChangedRegion();
         if (imageTransformer != null) {
-            imageTransformer.invalidateCache();
+            region = imageTransformer.invalidateRegion(region);
+        }
+        if (!filters.isEmpty()) {
+            filters.get(0).invalidateChain(region);
         }
 
         holder.smartObjectChanged(isContentLinked());
@@ -355,14 +364,20 @@ public class SmartObject extends CompositeLayer {
 
     public BufferedImage getVisibleImage() {
         if (imageNeedsRefresh) {
-            recalculateImage();
+            BufferedImage newImage = recalculateImage();
 
             if (iconImageNeedsRefresh) {
                 updateIconImage();
                 iconImageNeedsRefresh = false;
             }
+            return newImage;
+        }
+        BufferedImage cached = image.get();
+        if (cached == null) {
+            // evicted by the image cache manager
+            cached = recalculateImage();
         }
-        return image;
+        return cached;
     }
 
     @Override
@@ -762,7 +777,7 @@ public class SmartObject extends CompositeLayer {
 
     @Override
     public void flip(Flip.Direction direction) {
-        AffineTransform flipTransform = direction.createImageTransform(image);
+        AffineTransform flipTransform = direction.createImageTransform(getVisibleImage());
         int targetWidth = comp.getCanvasWidth();
         int targetHeight = comp.getCanvasHeight();
         if (imageTransformer == null) {
@@ -782,7 +797,7 @@ public class SmartObject extends CompositeLayer {
 
     @Override
     public void rotate(QuadrantAngle angle) {
-        AffineTransform rotation = angle.createImageTransform(image);
+        AffineTransform rotation = angle.createImageTransform(getVisibleImage());
         if (contentTransform == null) {
             contentTransform = rotation;
         } else {
@@ -995,7 +1010,7 @@ public class SmartObject extends CompositeLayer {
     }
 
     private void debugImages() {
-        BufferedImage soImage = image;
+        BufferedImage soImage = getVisibleImage();
         BufferedImage contentImage = content.getCompositeImage();
 //        BufferedImage calcContentImage = content.calculateCompositeImage();
 
@@ -1110,7 +1125,8 @@ public class SmartObject extends CompositeLayer {
      */
     @Override
     public Rectangle getContentBounds(boolean includeTransparent) {
-        return new Rectangle(getTx(), getTy(), image.getWidth(), image.getHeight());
+        BufferedImage visibleImage = getVisibleImage();
+        return new Rectangle(getTx(), getTy(), visibleImage.getWidth(), visibleImage.getHeight());
     }
 
     @Override
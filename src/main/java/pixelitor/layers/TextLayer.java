@@ -44,6 +44,7 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serial;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import static org.jdesktop.swingx.painter.AbstractLayoutPainter.HorizontalAlignment.CENTER;
@@ -63,6 +64,7 @@ public class TextLayer extends ContentLayer implements DialogMenuOwner {
 
     private transient TransformedTextPainter painter;
     private TextSettings settings;
+    private transient ContentRasterCache rasterCache;
 
     public TextLayer(Composition comp) {
         this(comp, "", new TextSettings());
@@ -214,6 +216,31 @@ public class TextLayer extends ContentLayer implements DialogMenuOwner {
 
     @Override
     public void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer) {
+        // The text is painted only once into the cached image, which
+        // is also the reason why this layer can be painted in parallel:
+        // the painter (which recalculates its layout while painting)
+        // is used only while holding the lock of the cache.
+        if (rasterCache == null) {
+            rasterCache = new ContentRasterCache();
+        }
+        var contentKey = List.of(settings, settings.getColor(), getTx(), getTy());
+        rasterCache.paint(g, comp.getCanvas(), contentKey,
+            this::calcPaintedBounds, this::paintText);
+    }
+
+    private Rectangle calcPaintedBounds() {
+        painter.updateLayout(comp.getCanvasWidth(), comp.getCanvasHeight());
+        Rectangle bounds = new Rectangle(painter.getBoundingBox());
+
+        // the effects and the overhang of italic
+        // glyphs can be outside the layout box
+        int effectsWidth = (int) Math.ceil(settings.getEffects().getMaxEffectThickness());
+        int margin = effectsWidth + settings.getFont().getSize() / 2 + 2;
+        bounds.grow(margin, margin);
+        return bounds;
+    }
+
+    private void paintText(Graphics2D g) {
         painter.setFillPaint(settings.getColor());
         painter.paint(g, null, comp.getCanvasWidth(), comp.getCanvasHeight());
     }
@@ -254,6 +281,11 @@ public class TextLayer extends ContentLayer implements DialogMenuOwner {
 
     public void applySettings(TextSettings settings) {
         this.settings = settings;
+        if (rasterCache != null) {
+            // the settings object might be the same, but modified
+            rasterCache.invalidate();
+        }
+        invalidateMaskedImage();
 
         isAdjustment = settings.hasWatermark();
         settings.configurePainter(painter);
@@ -22,17 +22,23 @@ import pixelitor.selection.Selection;
 import pixelitor.tools.util.Drag;
 import pixelitor.utils.ImageUtils;
 
+import java.awt.AlphaComposite;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
 import java.util.Objects;
 
 /**
  * A temporary drawing layer for the tools that use blending modes.
  */
 public class TmpDrawingLayer {
+    // a canvas-sized image from a previous stroke, already cleared
+    private static SoftReference<BufferedImage> spareImageRef;
+
     private BufferedImage image;
     private final Graphics2D g;
     private final Composite composite;
@@ -41,6 +47,9 @@ public class TmpDrawingLayer {
     private int selStartX = 0;
     private int selStartY = 0;
 
+    // the canvas region changed by the tool, or null if it's not known
+    private Rectangle changedRegion;
+
     public TmpDrawingLayer(ImageLayer imageLayer, Composite composite, boolean softSelection) {
         this.composite = Objects.requireNonNull(composite);
 
@@ -50,7 +59,7 @@ public class TmpDrawingLayer {
             Shape selShape = sel.getShape();
             if (sel.isRectangular() || !softSelection) {
                 // hard selection clipping
-                image = comp.getCanvas().createTmpImage();
+                image = getCanvasSizedImage(comp);
                 g = image.createGraphics();
                 g.setClip(selShape);
                 smallImage = false;
@@ -68,7 +77,7 @@ public class TmpDrawingLayer {
             }
         } else {
             // no selection
-            image = comp.getCanvas().createTmpImage();
+            image = getCanvasSizedImage(comp);
             g = image.createGraphics();
             smallImage = false;
         }
@@ -90,9 +99,55 @@ public class TmpDrawingLayer {
         return image.getHeight();
     }
 
+    BufferedImage getImage() {
+        return image;
+    }
+
+    private static BufferedImage getCanvasSizedImage(Composition comp) {
+        if (spareImageRef != null) {
+            BufferedImage spare = spareImageRef.get();
+            spareImageRef = null;
+            if (spare != null && !comp.getCanvas().hasDifferentSizeThan(spare)) {
+                return spare;
+            }
+        }
+        return comp.getCanvas().createTmpImage();
+    }
+
+    /**
+     * Signals that the tool has changed the given canvas region.
+     * If it's called during the drawing, then only the changed
+     * region is merged into the layer at the end, therefore the
+     * tools must report every region they draw into.
+     */
+    public void regionChanged(Rectangle2D imRegion) {
+        if (smallImage) {
+            return;
+        }
+        // round outwards, and add a pixel for the antialiasing
+        Rectangle region = imRegion.getBounds();
+        region.grow(1, 1);
+        if (changedRegion == null) {
+            changedRegion = region;
+        } else {
+            changedRegion.add(region);
+        }
+    }
+
     public void dispose() {
         g.dispose();
-        image.flush();
+        if (!smallImage) {
+            // Clearing is cheaper than allocating a new canvas-sized
+            // image for the next stroke. The whole image is cleared,
+            // because a tool might have drawn outside the reported region.
+            Graphics2D clearG = image.createGraphics();
+            clearG.setComposite(AlphaComposite.Clear);
+            clearG.fillRect(0, 0, image.getWidth(), image.getHeight());
+            clearG.dispose();
+            spareImageRef = new SoftReference<>(image);
+        } else {
+            image.flush();
+        }
         image = null;
     }
 
@@ -100,7 +155,19 @@ public class TmpDrawingLayer {
         g.setComposite(composite);
 
         assert smallImage || (selStartX == 0 && selStartY == 0);
-        g.drawImage(image, tx + selStartX, ty + selStartY, null);
+        if (changedRegion == null) {
+            g.drawImage(image, tx + selStartX, ty + selStartY, null);
+        } else {
+            // the rest of the image is transparent
+            Rectangle r = changedRegion.intersection(
+                new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+            if (r.isEmpty()) {
+                return;
+            }
+            g.drawImage(image,
+                tx + r.x, ty + r.y, tx + r.x + r.width, ty + r.y + r.height,
+                r.x, r.y, r.x + r.width, r.y + r.height, null);
+        }
     }
 
     public Drag translateDrag(Drag drag) {
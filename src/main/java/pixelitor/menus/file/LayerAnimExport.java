@@ -50,15 +50,17 @@ public class LayerAnimExport {
             .title("Export Animated GIF")
             .content(p)
             .okText("Export")
-            .okAction(() -> export(comp, p.getDelayMillis(), p.isPingPong()))
+            .okAction(() -> export(comp, p.getDelayMillis(),
+                p.isPingPong(), p.useGlobalPalette()))
             .show();
     }
 
-    private static void export(Composition comp, int delayMillis, boolean pingPong) {
+    private static void export(Composition comp, int delayMillis,
+                               boolean pingPong, boolean globalPalette) {
         File file = FileChoosers.selectSaveFileForSpecificFormat(
             comp.getFileNameWithExt("gif"), gifFilter);
         if (file != null) {
-            new LayerAnimation(comp, delayMillis, pingPong)
+            new LayerAnimation(comp, delayMillis, pingPong, globalPalette)
                 .saveToFile(file);
             Messages.showFileSavedMessage(file);
         }
@@ -67,6 +69,7 @@ public class LayerAnimExport {
     static class ExportPanel extends JPanel {
         private final JTextField delayTF;
         private final JCheckBox pingPongCB;
+        private final JCheckBox globalPaletteCB;
 
         public ExportPanel(int nrLayers) {
             super(new VerticalLayout(10));
@@ -89,6 +92,10 @@ public class LayerAnimExport {
                 pingPongCB.setEnabled(false);
             }
             add(pingPongCB);
+
+            // smaller files, but fewer colors if the layers have different colors
+            globalPaletteCB = new JCheckBox("Same Color Palette for All Frames");
+            add(globalPaletteCB);
         }
 
         private int getDelayMillis() {
@@ -98,5 +105,9 @@ public class LayerAnimExport {
         private boolean isPingPong() {
             return pingPongCB.isSelected();
         }
+
+        private boolean useGlobalPalette() {
+            return globalPaletteCB.isSelected();
+        }
     }
 }
@@ -19,6 +19,7 @@ package pixelitor.menus.help;
 
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.utils.GridBagHelper;
+import pixelitor.layers.ImageCacheManager;
 import pixelitor.utils.MemoryInfo;
 
 import javax.swing.*;
@@ -54,5 +55,6 @@ class SystemInfoPanel extends JPanel {
         gbh.addTwoLabels("Used Memory:", mi.getUsedMemory());
         gbh.addTwoLabels("Free Memory:", mi.getFreeMemory());
         gbh.addTwoLabels("Max Memory:", mi.getMaxMemory());
+        gbh.addTwoLabels("Image Caches:", ImageCacheManager.getStats().toString());
     }
 }
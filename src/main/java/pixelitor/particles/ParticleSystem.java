@@ -19,6 +19,7 @@ package pixelitor.particles;
 
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -67,20 +68,23 @@ public class ParticleSystem<P extends Particle> {
         }
     }
 
-    private void iterate(int iterations, int start, int end) {
+    private void iterate(int iterations, int start, int end, ProgressTracker pt) {
         for (int i = 0; i < iterations; i++) {
+            if (pt.isCanceled()) {
+                return; // the waiting thread will throw the exception
+            }
             step(start, end);
         }
     }
 
-    public Future<?>[] iterate(int iterations, int groupCount) {
+    public Future<?>[] iterate(int iterations, int groupCount, ProgressTracker pt) {
         Future<?>[] futures = new Future[groupCount];
         int s = particles.size();
         int groupSize = (int) FastMath.ceil(s / (double) groupCount);
 
         for (int i = 0, k = 0; i < s; i += groupSize, k++) {
             int finalI = i;
-            futures[k] = ThreadPool.submit(() -> iterate(iterations, finalI, finalI + groupSize));
+            futures[k] = ThreadPool.submit(() -> iterate(iterations, finalI, finalI + groupSize, pt));
         }
 
         return futures;
@@ -43,6 +43,8 @@ import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.FlatteningPathIterator;
+import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
@@ -51,6 +53,7 @@ import static javax.swing.BorderFactory.createEmptyBorder;
 import static pixelitor.filters.gui.FilterSetting.EnabledReason.APP_LOGIC;
 import static pixelitor.gui.GUIText.CLOSE_DIALOG;
 import static pixelitor.gui.utils.SliderSpinner.TextPosition.WEST;
+import static pixelitor.tools.brushes.AffectedArea.TILE_SIZE;
 
 /**
  * Abstract base class for the tools working with {@link Brush} objects.
@@ -367,7 +370,9 @@ public abstract class AbstractBrushTool extends Tool {
         drawDestination.finishBrushStroke(dr);
 
 //        dr.getComp().update(HISTOGRAM);
-        dr.update();
+        // only the area touched by the brush has changed
+        Rectangle affectedRect = affectedArea.asRectangle(brush.getMaxEffectiveRadius());
+        dr.getComp().updateAfterLocalChange(affectedRect, dr::update);
 
         dr.updateIconImage();
     }
@@ -380,10 +385,11 @@ public abstract class AbstractBrushTool extends Tool {
         assert !affectedRect.isEmpty() : "brush radius = " + maxBrushRadius
             + ", affected area = " + affectedArea;
 
-        var imageEdit = PartialImageEdit.create(
-            affectedRect, originalImage, dr, false, getName());
+        boolean connect = hasBrushType() && getBrushType() == BrushType.CONNECT;
+        var imageEdit = createStrokeEdit(dr, originalImage,
+            affectedRect, maxBrushRadius, connect);
         if (imageEdit != null) {
-            if (hasBrushType() && getBrushType() == BrushType.CONNECT) {
+            if (connect) {
                 var comp = dr.getComp();
                 var connectEdit = new ConnectBrushHistory.Edit(comp);
                 History.add(new MultiEdit(imageEdit.getName(), comp, imageEdit, connectEdit));
@@ -393,6 +399,30 @@ public abstract class AbstractBrushTool extends Tool {
         }
     }
 
+    /**
+     * Creates the undo edit of a brush stroke. Only the tiles touched
+     * by the stroke are saved if that's much less than the bounding rectangle.
+     */
+    private PartialImageEdit createStrokeEdit(Drawable dr, BufferedImage originalImage,
+                                              Rectangle affectedRect, double maxBrushRadius,
+                                              boolean connect) {
+        // the connect brush draws lines to distant points, and if the
+        // lazy mouse isn't tracked by a symmetry brush, then the
+        // tracked points aren't the ones where the brush was drawn
+        boolean pathIsReliable = !connect && (addSymmetry || !lazyMouse);
+        if (pathIsReliable) {
+            List<Rectangle> tiles = affectedArea.asTiles(maxBrushRadius);
+            long tilesArea = (long) tiles.size() * TILE_SIZE * TILE_SIZE;
+            long rectArea = (long) affectedRect.width * affectedRect.height;
+            if (tilesArea < rectArea / 2) {
+                return PartialImageEdit.createForTiles(
+                    tiles, originalImage, dr, false, getName());
+            }
+        }
+        return PartialImageEdit.create(
+            affectedRect, originalImage, dr, false, getName());
+    }
+
     protected void prepareProgrammaticBrushStroke(Drawable dr, PPoint start) {
         drawDestination.prepareBrushStroke(dr);
         graphics = createGraphicsForNewBrushStroke(dr);
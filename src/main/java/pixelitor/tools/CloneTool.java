@@ -31,6 +31,7 @@ import pixelitor.tools.brushes.*;
 import pixelitor.tools.util.PMouseEvent;
 import pixelitor.tools.util.PPoint;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Mirror;
 import pixelitor.utils.debug.DebugNode;
@@ -227,7 +228,9 @@ public class CloneTool extends BlendingModeBrushTool {
         int dx = 0;
         int dy = 0;
         if (sampleAllLayers) {
-            sourceImage = comp.getCompositeImage();
+            // copied, because the composite image is updated
+            // in place while the cloned pixels are painted
+            sourceImage = ImageUtils.copyImage(comp.getCompositeImage());
         } else {
             Drawable dr = comp.getActiveDrawableOrThrow();
             sourceImage = dr.getImage();
@@ -59,7 +59,7 @@ public enum DrawDestination {
         @Override
         public Graphics2D createGraphics(Drawable dr, Composite composite) {
             // ignores the composite!
-            BufferedImage drawImage = dr.getCanvasSizedSubImage();
+            BufferedImage drawImage = dr.getCanvasSizedSubImageForWriting();
             return drawImage.createGraphics();
         }
 
@@ -119,7 +119,7 @@ public class PaintBucketTool extends Tool {
         } else if (thereIsSelection) {
             workingImage = ImageUtils.copyImage(image);
         } else {
-            workingImage = image;
+            workingImage = dr.getImageForWriting();
         }
 
         String fill = getSelectedFill();
@@ -156,7 +156,7 @@ public class PaintBucketTool extends Tool {
             }
 
             if (thereIsSelection) {
-                Graphics2D g = image.createGraphics();
+                Graphics2D g = dr.getImageForWriting().createGraphics();
 
                 // the selection is relative to the canvas,
                 // so go to the canvas start
@@ -21,17 +21,41 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Represents the area affected by a brush. Used for the undo.
+ *
+ * Besides the bounding box, it also remembers the path of each
+ * independent brush (there are several of them for symmetry brushes),
+ * so that the tiles touched by a thin stroke can be saved separately,
+ * instead of the whole bounding rectangle.
  */
 public class AffectedArea {
+    public static final int TILE_SIZE = 64;
+
+    // the distance from the center of a tile within which
+    // a path segment can touch some pixels of the tile
+    private static final double TILE_HALF_DIAGONAL = TILE_SIZE * Math.sqrt(2) / 2;
+
     // affected area coordinates (in image space)
     private double minX = Double.POSITIVE_INFINITY;
     private double minY = Double.POSITIVE_INFINITY;
     private double maxX = Double.NEGATIVE_INFINITY;
     private double maxY = Double.NEGATIVE_INFINITY;
 
+    // the segments of the brush paths, as (x1, y1, x2, y2) quadruples
+    private double[] segments = new double[64];
+    private int numSegmentCoords = 0;
+
+    // the last point of each independent brush path
+    private double[] lastX = new double[1];
+    private double[] lastY = new double[1];
+
     public AffectedArea() {
     }
 
@@ -48,14 +72,65 @@ public class AffectedArea {
         minY = y;
         maxX = x;
         maxY = y;
+
+        numSegmentCoords = 0;
+        startPathAt(p, 0);
+    }
+
+    /**
+     * Starts the path of another brush at the given position, without
+     * connecting it to the previous positions of the same brush.
+     */
+    public void startPathAt(PPoint p, int pathIndex) {
+        ensurePathCapacity(pathIndex);
+        double x = p.getImX();
+        double y = p.getImY();
+        lastX[pathIndex] = x;
+        lastY[pathIndex] = y;
+
+        updateBounds(x, y);
+        addSegment(x, y, x, y);
     }
 
     /**
      * Update the area with a brush position
      */
     public void updateWith(PPoint p) {
+        updateWith(p, 0);
+    }
+
+    /**
+     * Update the area with the position of the brush with the given index
+     */
+    public void updateWith(PPoint p, int pathIndex) {
+        ensurePathCapacity(pathIndex);
         double x = p.getImX();
         double y = p.getImY();
+        updateBounds(x, y);
+
+        addSegment(lastX[pathIndex], lastY[pathIndex], x, y);
+        lastX[pathIndex] = x;
+        lastY[pathIndex] = y;
+    }
+
+    private void ensurePathCapacity(int pathIndex) {
+        if (pathIndex >= lastX.length) {
+            lastX = Arrays.copyOf(lastX, pathIndex + 1);
+            lastY = Arrays.copyOf(lastY, pathIndex + 1);
+        }
+    }
+
+    private void addSegment(double x1, double y1, double x2, double y2) {
+        if (numSegmentCoords + 4 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[numSegmentCoords++] = x1;
+        segments[numSegmentCoords++] = y1;
+        segments[numSegmentCoords++] = x2;
+        segments[numSegmentCoords++] = y2;
+    }
+
+    private void updateBounds(double x, double y) {
         if (x > maxX) {
             maxX = x;
         }
@@ -86,6 +161,58 @@ public class AffectedArea {
             (int) saveWidth, (int) saveHeight);
     }
 
+    /**
+     * Returns the tiles (in image space, aligned to a grid with
+     * {@link #TILE_SIZE} spacing) that can be touched by a brush
+     * with the given radius along the tracked paths. The returned
+     * tiles cover everything covered by {@link #asRectangle(double)}
+     * that the brush could have touched.
+     */
+    public List<Rectangle> asTiles(double radius) {
+        Rectangle bounds = asRectangle(radius);
+        int firstTileX = Math.floorDiv(bounds.x, TILE_SIZE);
+        int firstTileY = Math.floorDiv(bounds.y, TILE_SIZE);
+        int lastTileX = Math.floorDiv(bounds.x + bounds.width, TILE_SIZE);
+        int lastTileY = Math.floorDiv(bounds.y + bounds.height, TILE_SIZE);
+        int numTilesX = lastTileX - firstTileX + 1;
+        int numTilesY = lastTileY - firstTileY + 1;
+
+        // the same margin as in asRectangle, and a tile is touched
+        // if a segment comes close enough to its center
+        double margin = radius + 2.0;
+        double maxDist = margin + TILE_HALF_DIAGONAL;
+
+        BitSet touched = new BitSet(numTilesX * numTilesY);
+        for (int i = 0; i < numSegmentCoords; i += 4) {
+            double x1 = segments[i];
+            double y1 = segments[i + 1];
+            double x2 = segments[i + 2];
+            double y2 = segments[i + 3];
+
+            int tx1 = Math.floorDiv((int) Math.floor(Math.min(x1, x2) - margin), TILE_SIZE);
+            int tx2 = Math.floorDiv((int) Math.ceil(Math.max(x1, x2) + margin), TILE_SIZE);
+            int ty1 = Math.floorDiv((int) Math.floor(Math.min(y1, y2) - margin), TILE_SIZE);
+            int ty2 = Math.floorDiv((int) Math.ceil(Math.max(y1, y2) + margin), TILE_SIZE);
+            for (int ty = Math.max(ty1, firstTileY); ty <= Math.min(ty2, lastTileY); ty++) {
+                double centerY = ty * TILE_SIZE + TILE_SIZE / 2.0;
+                for (int tx = Math.max(tx1, firstTileX); tx <= Math.min(tx2, lastTileX); tx++) {
+                    double centerX = tx * TILE_SIZE + TILE_SIZE / 2.0;
+                    if (Line2D.ptSegDist(x1, y1, x2, y2, centerX, centerY) <= maxDist) {
+                        touched.set((ty - firstTileY) * numTilesX + (tx - firstTileX));
+                    }
+                }
+            }
+        }
+
+        List<Rectangle> tiles = new ArrayList<>(touched.cardinality());
+        for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+            int tx = firstTileX + i % numTilesX;
+            int ty = firstTileY + i / numTilesX;
+            tiles.add(new Rectangle(tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE));
+        }
+        return tiles;
+    }
+
     public DebugNode createDebugNode() {
         var node = new DebugNode("affected area", this);
 
@@ -93,6 +220,7 @@ public class AffectedArea {
         node.addDouble("min y", minY);
         node.addDouble("max x", maxX);
         node.addDouble("max y", maxY);
+        node.addInt("segments", numSegmentCoords / 4);
 
         return node;
     }
@@ -17,13 +17,16 @@
 
 package pixelitor.tools.brushes;
 
+import pixelitor.gui.View;
 import pixelitor.layers.Drawable;
 import pixelitor.tools.util.PPoint;
+import pixelitor.tools.util.PRectangle;
 
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
@@ -77,9 +80,17 @@ public class ConnectBrush extends AbstractBrush {
         line.setLine(p.getImX(), p.getImY(), previous.getImX(), previous.getImY());
         targetG.draw(line);
 
-        ConnectBrushHistory.drawConnectingLines(targetG, settings, p, diamSq);
+        Rectangle2D linesBounds = ConnectBrushHistory.drawConnectingLines(targetG, settings, p, diamSq);
 
         repaintComp(p);
+        View view = dr.getComp().getView();
+        if (linesBounds != null && view != null) {
+            // the connecting lines aren't within the repainted brush region
+            double margin = lineWidth / 2.0 + 1;
+            linesBounds.setRect(linesBounds.getX() - margin, linesBounds.getY() - margin,
+                linesBounds.getWidth() + 2 * margin, linesBounds.getHeight() + 2 * margin);
+            dr.repaintRegion(PRectangle.fromIm(linesBounds, view));
+        }
         rememberPrevious(p);
     }
 
@@ -26,6 +26,7 @@ import javax.swing.undo.CannotUndoException;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
@@ -61,18 +62,24 @@ public class ConnectBrushHistory {
         numPoints++;
     }
 
-    public static void drawConnectingLines(Graphics2D targetG,
-                                           ConnectBrushSettings settings,
-                                           PPoint p, double diamSq) {
+    /**
+     * Draws lines to the nearby points of the previous strokes,
+     * and returns the image-space bounds of the drawn lines
+     * (without the stroke width), or null if nothing was drawn.
+     */
+    public static Rectangle2D drawConnectingLines(Graphics2D targetG,
+                                                  ConnectBrushSettings settings,
+                                                  PPoint p, double diamSq) {
         if (history.isEmpty()) {
             indexOfNextAdd = 0;
-            return;
+            return null;
         }
 
         HistoryPoint last = new HistoryPoint(p.getImX(), p.getImY());
         lastStroke.add(last);
         numPoints++;
 
+        Rectangle2D drawnBounds = null;
         if (numPoints > 2) {
             int currentColor = targetG.getColor().getRGB();
             int currentColorZeroAlpha = currentColor & 0x00_FF_FF_FF;
@@ -102,10 +109,17 @@ public class ConnectBrushHistory {
                             old.x + xOffset, old.y + yOffset);
 
                         targetG.draw(line);
+                        // the offsets can extend the lines beyond the brush diameter
+                        if (drawnBounds == null) {
+                            drawnBounds = line.getBounds2D();
+                        } else {
+                            drawnBounds.add(line.getBounds2D());
+                        }
                     }
                 }
             }
         }
+        return drawnBounds;
     }
 
     public static void clear() {
@@ -115,7 +115,7 @@ public class Gradient implements Serializable, Debuggable {
         Canvas canvas = comp.getCanvas();
         int width, height;
         if (dr instanceof LayerMask) {
-            BufferedImage subImage = dr.getCanvasSizedSubImage();
+            BufferedImage subImage = dr.getCanvasSizedSubImageForWriting();
             g = subImage.createGraphics();
             width = canvas.getWidth();
             height = canvas.getHeight();
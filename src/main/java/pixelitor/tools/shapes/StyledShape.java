@@ -98,9 +98,8 @@ public class StyledShape implements Transformable, Serializable, Cloneable {
     private Color fgColor;
     private Color bgColor;
 
-    // TODO this is a hack to enable a shapes layer to invalidate the image cache
-    //  when the styled shape changes. Instead of this, either the need for an
-    //  image cache should be eliminated or the image should be cached in this class.
+    // enables a shapes layer to invalidate its raster cache
+    // when the styled shape changes
     private transient Runnable changeListener;
 
     public StyledShape(ShapesTool tool) {
@@ -297,6 +296,7 @@ public class StyledShape implements Transformable, Serializable, Cloneable {
         shape = origShape;
 
         state = State.SHAPE_SET;
+        notifyChangeListener();
         assert checkInvariants();
     }
 
@@ -507,7 +507,7 @@ public class StyledShape implements Transformable, Serializable, Cloneable {
         int tx = -dr.getTx();
         int ty = -dr.getTy();
 
-        BufferedImage bi = dr.getImage();
+        BufferedImage bi = dr.getImageForWriting();
         Graphics2D g2 = bi.createGraphics();
         g2.translate(tx, ty);
 
@@ -619,6 +619,27 @@ public class StyledShape implements Transformable, Serializable, Cloneable {
         return shape.getBounds();
     }
 
+    /**
+     * Returns the bounds of the area affected by painting this
+     * object, including the stroke and the effects.
+     */
+    public Rectangle getPaintedBounds() {
+        Rectangle bounds;
+        if (strokePaint != NONE && stroke != null) {
+            bounds = stroke.createStrokedShape(shape).getBounds();
+            bounds.add(shape.getBounds());
+        } else {
+            bounds = shape.getBounds();
+        }
+        if (effects != null && effects.isNotEmpty()) {
+            int effectsWidth = (int) Math.ceil(effects.getMaxEffectThickness());
+            bounds.grow(effectsWidth, effectsWidth);
+        }
+        // for the antialiasing
+        bounds.grow(2, 2);
+        return bounds;
+    }
+
     public boolean hasBlendingIssue() {
         // for some reason the JDK built-in gradients
         // don't blend with the custom blending modes
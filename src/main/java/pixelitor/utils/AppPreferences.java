@@ -18,6 +18,7 @@
 package pixelitor.utils;
 
 import com.bric.util.JVM;
+import pixelitor.CompositingEngine;
 import pixelitor.GUIMode;
 import pixelitor.NewImage;
 import pixelitor.Pixelitor;
@@ -30,6 +31,8 @@ import pixelitor.gui.utils.Themes;
 import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
+import pixelitor.history.HistoryMemory;
+import pixelitor.layers.ImageCacheManager;
 import pixelitor.io.Dirs;
 import pixelitor.io.FileChoosers;
 import pixelitor.io.FileFormat;
@@ -90,12 +93,16 @@ public final class AppPreferences {
     private static final String LAST_SAVE_FORMAT_KEY = "last_save_fmt";
 
     private static final String UNDO_LEVELS_KEY = "undo_levels";
+    private static final String UNDO_MEMORY_KEY = "undo_memory";
+    private static final String UNDO_SPILL_KEY = "undo_spill";
+    private static final String IMAGE_CACHE_MEMORY_KEY = "image_cache_memory";
     private static final String THUMB_SIZE_KEY = "thumb_size";
     private static final String LAST_TOOL_KEY = "last_tool";
     private static final String THEME_KEY = "theme";
     private static final String LANG_KEY = "lang";
     private static final String MOUSE_ZOOM_KEY = "mouse_zoom";
     private static final String PAN_KEY = "pan";
+    private static final String COMPOSITING_KEY = "compositing";
 
     private static final String GUIDE_COLOR_KEY = "guide_color";
     private static final String GUIDE_STROKE_KEY = "guide_stroke";
@@ -344,6 +351,27 @@ public final class AppPreferences {
         mainNode.putInt(UNDO_LEVELS_KEY, History.getUndoLevels());
     }
 
+    public static int loadUndoMemoryMb() {
+        return mainNode.getInt(UNDO_MEMORY_KEY, HistoryMemory.calcDefaultBudgetMb());
+    }
+
+    public static boolean loadUndoSpill() {
+        return mainNode.getBoolean(UNDO_SPILL_KEY, false);
+    }
+
+    private static void saveUndoMemory() {
+        mainNode.putInt(UNDO_MEMORY_KEY, HistoryMemory.getBudgetMb());
+        mainNode.putBoolean(UNDO_SPILL_KEY, HistoryMemory.isSpillingToDisk());
+    }
+
+    public static int loadImageCacheMemoryMb() {
+        return mainNode.getInt(IMAGE_CACHE_MEMORY_KEY, ImageCacheManager.calcDefaultBudgetMb());
+    }
+
+    private static void saveImageCacheMemory() {
+        mainNode.putInt(IMAGE_CACHE_MEMORY_KEY, ImageCacheManager.getBudgetMb());
+    }
+
     public static int loadThumbSize() {
         return mainNode.getInt(THUMB_SIZE_KEY, LayerGUILayout.SMALL_THUMB_SIZE);
     }
@@ -403,6 +431,8 @@ public final class AppPreferences {
         saveFgBgColors();
         WorkSpace.saveVisibility();
         saveUndoLevels();
+        saveUndoMemory();
+        saveImageCacheMemory();
         saveThumbSize();
         TipsOfTheDay.saveNextTipNr();
         saveNewImageSize();
@@ -414,6 +444,7 @@ public final class AppPreferences {
         saveLanguage();
         saveMouseZoom();
         savePan();
+        saveCompositingEngine();
         saveMagickDir();
         saveFlags();
         saveExperimentalFeatures();
@@ -564,6 +595,14 @@ public final class AppPreferences {
         mainNode.put(PAN_KEY, PanMethod.CURRENT.saveCode());
     }
 
+    public static String loadCompositingEngine() {
+        return mainNode.get(COMPOSITING_KEY, CompositingEngine.SERIAL.saveCode());
+    }
+
+    private static void saveCompositingEngine() {
+        mainNode.put(COMPOSITING_KEY, CompositingEngine.CURRENT.saveCode());
+    }
+
     private static void loadMagickDir() {
         magickDirName = mainNode.get(MAGICK_DIR_KEY, "");
     }
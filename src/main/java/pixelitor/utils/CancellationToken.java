@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * Signals to a running computation that its result is no longer needed.
+ *
+ * A token is bound to the thread that runs the computation, and the
+ * {@link ProgressTracker}s created on that thread report its state,
+ * so that the filters can check it between rows or iterations
+ * without having an explicit reference to it.
+ */
+public final class CancellationToken {
+    private static final ThreadLocal<CancellationToken> current = new ThreadLocal<>();
+
+    private volatile boolean canceled = false;
+
+    /**
+     * Requests the cancellation of the computation. It can be called on any thread.
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Returns the token bound to the current thread, or null
+     * if the running computation can't be canceled.
+     */
+    public static CancellationToken current() {
+        return current.get();
+    }
+
+    /**
+     * Runs the given task on the current thread with the given token bound to it.
+     */
+    public static void runWith(CancellationToken token, Runnable task) {
+        CancellationToken prev = current.get();
+        current.set(token);
+        try {
+            task.run();
+        } finally {
+            current.set(prev);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.layers.Layer;
+
+import java.awt.Component;
+
+/**
+ * A non-GUI message handler, which prints the messages
+ * to the standard error stream. Used in headless mode.
+ */
+public class ConsoleMessageHandler implements MessageHandler {
+    @Override
+    public void showInStatusBar(String msg) {
+        // the status bar messages are not important enough
+    }
+
+    @Override
+    public ProgressHandler startProgress(String msg, int max) {
+        return ProgressHandler.EMPTY;
+    }
+
+    @Override
+    public void showInfo(String title, String msg, Component parent) {
+        print("Info", title, msg);
+    }
+
+    @Override
+    public void showWarning(String title, String msg, Component parent) {
+        print("Warning", title, msg);
+    }
+
+    @Override
+    public void showError(String title, String msg, Component parent) {
+        print("Error", title, msg);
+    }
+
+    @Override
+    public void showNotImageLayerError(Layer layer) {
+        print("Error", "Not an image layer", layer.getName());
+    }
+
+    @Override
+    public void showNotDrawableError(Layer layer) {
+        print("Error", "Not an image layer or mask", layer.getName());
+    }
+
+    @Override
+    public void showException(Throwable e) {
+        e.printStackTrace();
+    }
+
+    @Override
+    public void showException(Throwable e, Thread srcThread) {
+        System.err.println("Exception in the thread " + srcThread.getName());
+        e.printStackTrace();
+    }
+
+    @Override
+    public void showExceptionOnEDT(Throwable e) {
+        showException(e);
+    }
+
+    @Override
+    public boolean showYesNoQuestion(String title, String msg) {
+        // nobody can answer, therefore nothing optional is done
+        return false;
+    }
+
+    private static void print(String type, String title, String msg) {
+        // the messages can contain html formatting meant for the dialogs
+        String text = msg.replace("<br>", " ").replaceAll("<[^>]*>", "");
+        System.err.printf("%s: %s: %s%n", type, title, text);
+    }
+}
@@ -68,6 +68,11 @@ public class DebugProgressTracker implements ProgressTracker {
         log("addUnits " + units);
     }
 
+    @Override
+    public boolean isCanceled() {
+        return delegateTracker != null && delegateTracker.isCanceled();
+    }
+
     @Override
     public void finished() {
         if (delegateTracker != null) {
@@ -32,6 +32,7 @@ import pixelitor.filters.Invert;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.layers.Layer;
 import pixelitor.selection.Selection;
+import pixelitor.tools.Tool;
 import pixelitor.tools.Tools;
 import pixelitor.utils.debug.Debug;
 
@@ -70,11 +71,23 @@ public class ImageUtils {
     private static final double DEG_315_IN_RADIANS = Math.PI / 4;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
-    private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment
+    // the number of samples in each direction that are averaged for a thumb pixel
+    private static final int THUMB_SAMPLES = 4;
+
+    // above this scale factor the resampler is faster even when shrinking
+    private static final double MAX_MILD_DOWNSCALE = 0.85;
+
+    // null in headless mode (command-line batch processing),
+    // where the system-compatible images are simply ARGB images
+    private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment.isHeadless()
+        ? null
+        : GraphicsEnvironment
         .getLocalGraphicsEnvironment()
         .getDefaultScreenDevice()
         .getDefaultConfiguration();
-    private static final ColorModel defaultColorModel = graphicsConfig.getColorModel();
+    private static final ColorModel defaultColorModel = graphicsConfig == null
+        ? ColorModel.getRGBdefault()
+        : graphicsConfig.getColorModel();
 
     private ImageUtils() {
     }
@@ -95,8 +108,7 @@ public class ImageUtils {
             }
         }
 
-        BufferedImage output = graphicsConfig.createCompatibleImage(
-            input.getWidth(), input.getHeight(), TRANSLUCENT);
+        BufferedImage output = createSysCompatibleImage(input.getWidth(), input.getHeight());
         Graphics2D g = output.createGraphics();
         g.drawImage(input, 0, 0, null);
         g.dispose();
@@ -111,6 +123,9 @@ public class ImageUtils {
     public static BufferedImage createSysCompatibleImage(int width, int height) {
         assert width > 0 && height > 0;
 
+        if (graphicsConfig == null) {
+            return new BufferedImage(width, height, TYPE_INT_ARGB);
+        }
         return graphicsConfig.createCompatibleImage(width, height, TRANSLUCENT);
     }
 
@@ -143,14 +158,37 @@ public class ImageUtils {
     public static CompletableFuture<BufferedImage> resizeAsync(BufferedImage img,
                                                                int targetWidth,
                                                                int targetHeight) {
-        return CompletableFuture.supplyAsync(() ->
-            resize(img, targetWidth, targetHeight), onPool);
+        // doesn't block, because it's often called on a pool thread
+        if (isMildDownscale(img, targetWidth, targetHeight)) {
+            return CompletableFuture.supplyAsync(() ->
+                resizeWithGraphics(img, targetWidth, targetHeight), onPool);
+        }
+        return Resampler.resizeAsync(img, targetWidth, targetHeight, Resampler.DEFAULT_KERNEL);
     }
 
     public static BufferedImage resize(BufferedImage img, int targetWidth, int targetHeight) {
-        boolean progressiveBilinear = targetWidth < img.getWidth() / 2
-            || targetHeight < img.getHeight() / 2;
-        return getFasterScaledInstance(img, targetWidth, targetHeight, VALUE_INTERPOLATION_BICUBIC, progressiveBilinear);
+        if (isMildDownscale(img, targetWidth, targetHeight)) {
+            return resizeWithGraphics(img, targetWidth, targetHeight);
+        }
+        return Resampler.resize(img, targetWidth, targetHeight, Resampler.DEFAULT_KERNEL);
+    }
+
+    /**
+     * Returns true if the image is shrunk to between half and
+     * MAX_MILD_DOWNSCALE of its size in both directions. There a single
+     * bicubic Graphics2D pass, which reads only 4x4 source pixels for
+     * each target pixel, is faster than the resampler, which reads all
+     * of them (see ResamplerBenchmark).
+     */
+    private static boolean isMildDownscale(BufferedImage img, int targetWidth, int targetHeight) {
+        return targetWidth >= img.getWidth() / 2.0
+            && targetHeight >= img.getHeight() / 2.0
+            && targetWidth <= img.getWidth() * MAX_MILD_DOWNSCALE
+            && targetHeight <= img.getHeight() * MAX_MILD_DOWNSCALE;
+    }
+
+    private static BufferedImage resizeWithGraphics(BufferedImage img, int targetWidth, int targetHeight) {
+        return getFasterScaledInstance(img, targetWidth, targetHeight, VALUE_INTERPOLATION_BICUBIC, false);
     }
 
     // From the Filthy Rich Clients book
@@ -610,8 +648,20 @@ public class ImageUtils {
             painter.paint(g, null, thumbWidth, thumbHeight);
         }
 
-        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        g.drawImage(src, 0, 0, thumbWidth, thumbHeight, null);
+        // Averaging all pixels of a big image would be too slow, therefore it's
+        // first subsampled to a few times the thumb size, and then only
+        // these samples are averaged, which still avoids most aliasing.
+        int sampledWidth = Math.min(src.getWidth(), THUMB_SAMPLES * thumbWidth);
+        int sampledHeight = Math.min(src.getHeight(), THUMB_SAMPLES * thumbHeight);
+        BufferedImage sampled = src;
+        if (sampledWidth != src.getWidth() || sampledHeight != src.getHeight()) {
+            sampled = new BufferedImage(sampledWidth, sampledHeight, TYPE_INT_ARGB);
+            Graphics2D sg = sampled.createGraphics();
+            sg.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            sg.drawImage(src, 0, 0, sampledWidth, sampledHeight, null);
+            sg.dispose();
+        }
+        g.drawImage(Resampler.resize(sampled, thumbWidth, thumbHeight, Resampler.Kernel.BOX), 0, 0, null);
         g.dispose();
 
         return thumb;
@@ -1224,29 +1274,57 @@ public class ImageUtils {
     public static BufferedImage applyTransform(BufferedImage src, AffineTransform at, int targetWidth, int targetHeight) {
         assert targetWidth > 0 && targetHeight > 0 : "target = " + targetWidth + "x" + targetHeight;
         BufferedImage newImage = new BufferedImage(targetWidth, targetHeight, TYPE_INT_ARGB);
+        if (Resampler.canTransform(at)) {
+            Resampler.transform(src, at, newImage,
+                new Rectangle(targetWidth, targetHeight), Resampler.DEFAULT_KERNEL);
+            return newImage;
+        }
         Graphics2D g = newImage.createGraphics();
-        g.setTransform(at);
+        drawTransformed(g, src, at, targetWidth, targetHeight);
+        g.dispose();
+        return newImage;
+    }
+
+    /**
+     * Recalculates the given region of an image that was
+     * created by applyTransform from the given source.
+     */
+    public static void applyTransform(BufferedImage src, AffineTransform at,
+                                      BufferedImage dest, Rectangle region) {
+        if (Resampler.canTransform(at)) {
+            // calculates exactly the same pixels as the whole image
+            Resampler.transform(src, at, dest, region, Resampler.DEFAULT_KERNEL);
+            return;
+        }
+
+        // the interpolation is stepped from the top left corner of the
+        // clip, so the redrawn area must start there in order to get
+        // exactly the same rounding as in the original image
+        var rows = new Rectangle(0, 0, dest.getWidth(), region.y + region.height);
+        Graphics2D g = dest.createGraphics();
+        g.setClip(rows);
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(rows);
+        g.setComposite(AlphaComposite.SrcOver);
+        drawTransformed(g, src, at, dest.getWidth(), dest.getHeight());
+        g.dispose();
+    }
+
+    private static void drawTransformed(Graphics2D g, BufferedImage src, AffineTransform at,
+                                        int targetWidth, int targetHeight) {
+        g.transform(at);
         if (targetWidth > src.getWidth() || targetHeight > src.getHeight()) {
             g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
         } else {
             g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BICUBIC);
         }
         g.drawImage(src, 0, 0, null);
-        g.dispose();
-        return newImage;
     }
 
     public static BufferedImage calculateCompositeImage(List<Layer> layers, Canvas canvas) {
-        if (layers.size() == 1) { // shortcut
-            Layer layer = layers.get(0);
-            if (Tools.currentTool.isDirectDrawing() && layer.isVisible()) {
-                BufferedImage layerImg = layer.asImage(true, true);
-
-                // it can be null if there's a single adjustment layer
-                if (layerImg != null) {
-                    return layerImg;
-                }
-            }
+        BufferedImage singleLayerImg = getSingleLayerComposite(layers);
+        if (singleLayerImg != null) {
+            return singleLayerImg;
         }
 
         var compositeImg = new BufferedImage(
@@ -1273,6 +1351,68 @@ public class ImageUtils {
         return compositeImg;
     }
 
+    /**
+     * Returns the image of the only layer if it can be used directly
+     * as the composite image, or null otherwise. Such an image belongs
+     * to the layer, and therefore it must not be modified.
+     */
+    public static BufferedImage getSingleLayerComposite(List<Layer> layers) {
+        if (layers.size() == 1) { // shortcut
+            Layer layer = layers.get(0);
+            // there is no current tool in headless mode
+            Tool tool = Tools.currentTool;
+            if ((tool == null || tool.isDirectDrawing()) && layer.isVisible()) {
+                // it can be null if there's a single adjustment layer
+                return layer.asImage(true, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if all the visible layers affect the composite
+     * image only by painting on a Graphics2D, which means that the
+     * composite image can be recalculated in regions.
+     */
+    public static boolean canBeCompositedInRegions(List<Layer> layers) {
+        for (Layer layer : layers) {
+            if (layer.isVisible() && !layer.canBeCompositedInRegions()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recalculates only the given region of an existing composite image,
+     * the pixels outside the region are not touched.
+     * Assumes that {@link #canBeCompositedInRegions(List)} returns true.
+     */
+    public static void calculateCompositeRegion(List<Layer> layers,
+                                                BufferedImage compositeImg,
+                                                Rectangle region) {
+        Graphics2D g = compositeImg.createGraphics();
+        g.setClip(region);
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(region);
+
+        boolean firstVisibleLayer = true;
+        for (Layer layer : layers) {
+            if (layer.isVisible()) {
+                BufferedImage result = layer.applyLayer(g, compositeImg, firstVisibleLayer);
+                if (result != null) { // layer group
+                    assert result == compositeImg;
+                    g.dispose();
+                    g = compositeImg.createGraphics();
+                    g.setClip(region);
+                }
+                firstVisibleLayer = false;
+            }
+        }
+
+        g.dispose();
+    }
+
     public static BufferedImage createCircleThumb(Color color) {
         BufferedImage img = createSysCompatibleImage(thumbSize, thumbSize);
         Graphics2D g2 = img.createGraphics();
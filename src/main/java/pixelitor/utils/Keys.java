@@ -28,9 +28,11 @@ import static javax.swing.KeyStroke.getKeyStroke;
  * A convenience class for keeping track of keyboard shortcuts
  */
 public class Keys {
-    // Ctrl on Win/Linux, Command on Mac
-    private static final int CTRL
-        = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+    // Ctrl on Win/Linux, Command on Mac (the toolkit
+    // can't be asked in headless mode, where it doesn't matter)
+    private static final int CTRL = GraphicsEnvironment.isHeadless()
+        ? InputEvent.CTRL_DOWN_MASK
+        : Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
 
     private static final int ALT = InputEvent.ALT_DOWN_MASK;
     private static final int SHIFT = InputEvent.SHIFT_DOWN_MASK;
@@ -17,6 +17,8 @@
 
 package pixelitor.utils;
 
+import java.util.concurrent.CancellationException;
+
 /**
  * Tracks the progress of some operation.
  */
@@ -36,6 +38,34 @@ public interface ProgressTracker {
      */
     void finished();
 
+    /**
+     * Returns true if the tracked operation should stop as soon as possible
+     */
+    default boolean isCanceled() {
+        return false;
+    }
+
+    /**
+     * Like {@link #unitDone()}, but also stops the tracked operation if it was
+     * canceled. The sequential filters call it after each row or iteration.
+     */
+    default void unitDoneOrStop() {
+        unitDone();
+        checkCanceled();
+    }
+
+    /**
+     * Stops the tracked operation by throwing a {@link CancellationException}
+     * if it was canceled. It should be called between rows or iterations,
+     * on the thread that started the operation.
+     */
+    default void checkCanceled() {
+        if (isCanceled()) {
+            finished();
+            throw new CancellationException();
+        }
+    }
+
     /**
      * A "null object" tracker that does nothing and
      * also can be shared because it has no state
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static pixelitor.utils.Threads.onPool;
+
+/**
+ * Image resampling with separable filter kernels: the image is first
+ * resampled horizontally, then vertically, with weight tables that are
+ * calculated once for each column and row. Both passes process the
+ * rows in parallel. Unlike scaling with Graphics2D, the result doesn't
+ * depend on the Java2D pipeline, and the downscaling filters consider
+ * all source pixels. The colors are weighted by alpha (premultiplied).
+ */
+public class Resampler {
+    public static final Kernel DEFAULT_KERNEL = Kernel.MITCHELL;
+
+    // the number of chunks per core in the asynchronous version
+    private static final int CHUNKS_PER_CORE = 2;
+
+    private Resampler() {
+    }
+
+    /**
+     * The supported filter kernels.
+     */
+    public enum Kernel {
+        BOX("Box", 0.5) {
+            @Override
+            double weight(double x) {
+                return x >= -0.5 && x < 0.5 ? 1.0 : 0.0;
+            }
+        }, BILINEAR("Bilinear", 1.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                return x < 1.0 ? 1.0 - x : 0.0;
+            }
+        }, MITCHELL("Mitchell", 2.0) {
+            @Override
+            double weight(double x) {
+                // the Mitchell-Netravali filter with B = C = 1/3
+                final double b = 1.0 / 3.0;
+                final double c = 1.0 / 3.0;
+                x = Math.abs(x);
+                if (x < 1.0) {
+                    return ((12 - 9 * b - 6 * c) * x * x * x
+                        + (-18 + 12 * b + 6 * c) * x * x
+                        + (6 - 2 * b)) / 6.0;
+                }
+                if (x < 2.0) {
+                    return ((-b - 6 * c) * x * x * x
+                        + (6 * b + 30 * c) * x * x
+                        + (-12 * b - 48 * c) * x
+                        + (8 * b + 24 * c)) / 6.0;
+                }
+                return 0.0;
+            }
+        }, LANCZOS3("Lanczos3", 3.0) {
+            @Override
+            double weight(double x) {
+                if (x > -3.0 && x < 3.0) {
+                    return sinc(x) * sinc(x / 3.0);
+                }
+                return 0.0;
+            }
+        };
+
+        private final String displayName;
+        private final double radius;
+
+        Kernel(String displayName, double radius) {
+            this.displayName = displayName;
+            this.radius = radius;
+        }
+
+        abstract double weight(double x);
+
+        /**
+         * Returns the number of source pixels beyond a changed region
+         * that can influence the result at the given scaling.
+         */
+        public int calcSourceMargin(double scaling) {
+            return (int) Math.ceil(radius * Math.max(1.0, 1.0 / scaling)) + 1;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) {
+            return 1.0;
+        }
+        x *= Math.PI;
+        return Math.sin(x) / x;
+    }
+
+    /**
+     * Resizes the given image with the given kernel. The calling
+     * thread waits for the pool threads to process the rows.
+     */
+    public static BufferedImage resize(BufferedImage src, int targetWidth, int targetHeight, Kernel kernel) {
+        BufferedImage dest = createDestFor(src, targetWidth, targetHeight);
+        createResizePass(src, dest, kernel).run();
+        return dest;
+    }
+
+    /**
+     * Resizes the given image with the given kernel without blocking,
+     * so it can also be called from a pool thread.
+     */
+    public static CompletableFuture<BufferedImage> resizeAsync(BufferedImage src,
+                                                               int targetWidth, int targetHeight,
+                                                               Kernel kernel) {
+        BufferedImage dest = createDestFor(src, targetWidth, targetHeight);
+        return createResizePass(src, dest, kernel).runAsync().thenApply(v -> dest);
+    }
+
+    /**
+     * Returns true if {@link #transform} can be used for the given transform,
+     * that is, if it has only (positive) scaling and translation components.
+     */
+    public static boolean canTransform(AffineTransform at) {
+        return at.getShearX() == 0 && at.getShearY() == 0
+            && at.getScaleX() > 0 && at.getScaleY() > 0;
+    }
+
+    /**
+     * Calculates the given region of the given TYPE_INT_ARGB destination image as
+     * the source image transformed by the given scaling and translation transform.
+     * The destination pixels outside the transformed source become transparent.
+     */
+    public static void transform(BufferedImage src, AffineTransform at, BufferedImage dest,
+                                 Rectangle region, Kernel kernel) {
+        assert canTransform(at) : at;
+        assert dest.getType() == TYPE_INT_ARGB;
+
+        Rectangle destRegion = region.intersection(new Rectangle(dest.getWidth(), dest.getHeight()));
+        if (destRegion.isEmpty()) {
+            return;
+        }
+        var pass = new Pass(src, dest, destRegion,
+            new Weights(src.getWidth(), destRegion.x, destRegion.width, at.getScaleX(), at.getTranslateX(), kernel),
+            new Weights(src.getHeight(), destRegion.y, destRegion.height, at.getScaleY(), at.getTranslateY(), kernel));
+        pass.run();
+    }
+
+    private static Pass createResizePass(BufferedImage src, BufferedImage dest, Kernel kernel) {
+        int width = dest.getWidth();
+        int height = dest.getHeight();
+        double scaleX = width / (double) src.getWidth();
+        double scaleY = height / (double) src.getHeight();
+        return new Pass(src, dest, new Rectangle(width, height),
+            new Weights(src.getWidth(), 0, width, scaleX, 0, kernel),
+            new Weights(src.getHeight(), 0, height, scaleY, 0, kernel));
+    }
+
+    private static BufferedImage createDestFor(BufferedImage src, int width, int height) {
+        assert width > 0 && height > 0 : "target = " + width + "x" + height;
+        int type = src.getType();
+        if (type != TYPE_INT_ARGB && type != TYPE_INT_RGB
+            && type != TYPE_INT_ARGB_PRE && type != TYPE_BYTE_GRAY) {
+            type = TYPE_INT_ARGB;
+        }
+        return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * The source pixels and their weights that contribute
+     * to each destination pixel along one axis.
+     */
+    private static class Weights {
+        // the first source pixel for each destination pixel
+        private final int[] starts;
+
+        // the number of source pixels for each destination
+        // pixel, zero if it's outside the transformed source
+        private final int[] counts;
+
+        // the weights of the source pixels, stride floats for each destination pixel
+        private final float[] values;
+        private final int stride;
+
+        private Weights(int srcLength, int destStart, int destLength,
+                        double scale, double offset, Kernel kernel) {
+            starts = new int[destLength];
+            counts = new int[destLength];
+
+            double filterScale = Math.max(1.0, 1.0 / scale);
+            double support = kernel.radius * filterScale;
+            stride = (int) Math.ceil(2 * support) + 2;
+            values = new float[destLength * stride];
+
+            double[] tmp = new double[stride];
+            for (int i = 0; i < destLength; i++) {
+                // the source coordinate of the destination pixel's center
+                double u = (destStart + i + 0.5 - offset) / scale;
+                if (u < 0 || u >= srcLength) {
+                    continue; // the destination pixel is not covered
+                }
+                double center = u - 0.5;
+                int left = Math.max(0, (int) Math.ceil(center - support));
+                int right = Math.min(srcLength - 1, (int) Math.floor(center + support));
+
+                double sum = 0;
+                int count = right - left + 1;
+                for (int j = 0; j < count; j++) {
+                    double w = kernel.weight((left + j - center) / filterScale);
+                    tmp[j] = w;
+                    sum += w;
+                }
+                starts[i] = left;
+                if (sum == 0) {
+                    // can happen only at the edges, use the nearest pixel
+                    starts[i] = Math.min(srcLength - 1, Math.max(0, (int) Math.round(center)));
+                    counts[i] = 1;
+                    values[i * stride] = 1.0f;
+                    continue;
+                }
+                counts[i] = count;
+                for (int j = 0; j < count; j++) {
+                    values[i * stride + j] = (float) (tmp[j] / sum);
+                }
+            }
+        }
+
+        /**
+         * Returns the first source pixel used by any destination pixel.
+         */
+        private int getFirstSource() {
+            int first = Integer.MAX_VALUE;
+            for (int i = 0; i < starts.length; i++) {
+                if (counts[i] > 0) {
+                    first = Math.min(first, starts[i]);
+                }
+            }
+            return first == Integer.MAX_VALUE ? 0 : first;
+        }
+
+        /**
+         * Returns the last source pixel (exclusive) used by any destination pixel.
+         */
+        private int getEndSource() {
+            int end = 0;
+            for (int i = 0; i < starts.length; i++) {
+                end = Math.max(end, starts[i] + counts[i]);
+            }
+            return end;
+        }
+    }
+
+    /**
+     * A resampling from a source image to a region of a destination image.
+     */
+    private static class Pass {
+        private final BufferedImage src;
+        private final BufferedImage dest;
+        private final Rectangle destRegion;
+        private final Weights xWeights;
+        private final Weights yWeights;
+
+        // the source rows needed by the vertical pass
+        private final int firstSrcRow;
+        private final int numSrcRows;
+
+        // the result of the horizontal pass, premultiplied ARGB
+        private int[] tmp;
+
+        private Pass(BufferedImage src, BufferedImage dest, Rectangle destRegion,
+                     Weights xWeights, Weights yWeights) {
+            this.src = src;
+            this.dest = dest;
+            this.destRegion = destRegion;
+            this.xWeights = xWeights;
+            this.yWeights = yWeights;
+
+            firstSrcRow = yWeights.getFirstSource();
+            numSrcRows = Math.max(0, yWeights.getEndSource() - firstSrcRow);
+        }
+
+        private void run() {
+            tmp = new int[destRegion.width * numSrcRows];
+            ThreadPool.processRows(numSrcRows, src.getWidth(),
+                this::resampleRows, ProgressTracker.NULL_TRACKER);
+            ThreadPool.processRows(destRegion.height, destRegion.width * numSrcRows / Math.max(1, destRegion.height),
+                this::resampleColumns, ProgressTracker.NULL_TRACKER);
+            tmp = null;
+        }
+
+        private CompletableFuture<Void> runAsync() {
+            tmp = new int[destRegion.width * numSrcRows];
+            return inChunks(numSrcRows, this::resampleRows)
+                .thenCompose(v -> inChunks(destRegion.height, this::resampleColumns))
+                .thenRun(() -> tmp = null);
+        }
+
+        private static CompletableFuture<Void> inChunks(int numRows, ThreadPool.RowRangeTask task) {
+            int numChunks = Math.max(1, Math.min(numRows, ThreadPool.NUM_CORES * CHUNKS_PER_CORE));
+            List<CompletableFuture<Void>> chunks = new ArrayList<>(numChunks);
+            for (int i = 0; i < numChunks; i++) {
+                int start = (int) ((long) i * numRows / numChunks);
+                int end = (int) ((long) (i + 1) * numRows / numChunks);
+                chunks.add(CompletableFuture.runAsync(() -> task.processRows(start, end), onPool));
+            }
+            return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new));
+        }
+
+        /**
+         * The horizontal pass for the given range of the needed source rows.
+         */
+        private void resampleRows(int startRow, int endRow) {
+            int srcWidth = src.getWidth();
+            int destWidth = destRegion.width;
+            int[] row = new int[srcWidth];
+            float[] pa = new float[srcWidth];
+            float[] pr = new float[srcWidth];
+            float[] pg = new float[srcWidth];
+            float[] pb = new float[srcWidth];
+            boolean premultiplied = src.isAlphaPremultiplied();
+
+            int[] starts = xWeights.starts;
+            int[] counts = xWeights.counts;
+            float[] values = xWeights.values;
+            int stride = xWeights.stride;
+
+            for (int r = startRow; r < endRow; r++) {
+                readRow(firstSrcRow + r, row);
+                for (int x = 0; x < srcWidth; x++) {
+                    int p = row[x];
+                    float a = p >>> 24;
+                    float f = premultiplied ? 1.0f : a / 255.0f;
+                    pa[x] = a;
+                    pr[x] = ((p >> 16) & 0xFF) * f;
+                    pg[x] = ((p >> 8) & 0xFF) * f;
+                    pb[x] = (p & 0xFF) * f;
+                }
+
+                int offset = r * destWidth;
+                for (int i = 0; i < destWidth; i++) {
+                    int count = counts[i];
+                    if (count == 0) {
+                        tmp[offset + i] = 0;
+                        continue;
+                    }
+                    int start = starts[i];
+                    int w = i * stride;
+                    float a = 0, red = 0, green = 0, blue = 0;
+                    for (int j = 0; j < count; j++) {
+                        float weight = values[w + j];
+                        int s = start + j;
+                        a += weight * pa[s];
+                        red += weight * pr[s];
+                        green += weight * pg[s];
+                        blue += weight * pb[s];
+                    }
+                    tmp[offset + i] = packPremultiplied(a, red, green, blue);
+                }
+            }
+        }
+
+        /**
+         * The vertical pass for the given range of destination rows.
+         */
+        private void resampleColumns(int startRow, int endRow) {
+            int width = destRegion.width;
+            float[] accA = new float[width];
+            float[] accR = new float[width];
+            float[] accG = new float[width];
+            float[] accB = new float[width];
+            int[] out = new int[width];
+
+            int[] starts = yWeights.starts;
+            int[] counts = yWeights.counts;
+            float[] values = yWeights.values;
+            int stride = yWeights.stride;
+
+            for (int i = startRow; i < endRow; i++) {
+                Arrays.fill(accA, 0);
+                Arrays.fill(accR, 0);
+                Arrays.fill(accG, 0);
+                Arrays.fill(accB, 0);
+
+                int count = counts[i];
+                int start = starts[i] - firstSrcRow;
+                for (int j = 0; j < count; j++) {
+                    float weight = values[i * stride + j];
+                    int offset = (start + j) * width;
+                    for (int x = 0; x < width; x++) {
+                        int p = tmp[offset + x];
+                        accA[x] += weight * (p >>> 24);
+                        accR[x] += weight * ((p >> 16) & 0xFF);
+                        accG[x] += weight * ((p >> 8) & 0xFF);
+                        accB[x] += weight * (p & 0xFF);
+                    }
+                }
+
+                for (int x = 0; x < width; x++) {
+                    out[x] = count == 0 ? 0 : packPremultiplied(accA[x], accR[x], accG[x], accB[x]);
+                }
+                writeRow(destRegion.y + i, out);
+            }
+        }
+
+        private void readRow(int y, int[] row) {
+            int width = src.getWidth();
+            int type = src.getType();
+            if ((type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE) && !ImageUtils.isSubImage(src)) {
+                System.arraycopy(ImageUtils.getPixelArray(src), y * width, row, 0, width);
+            } else if (type == TYPE_INT_RGB && !ImageUtils.isSubImage(src)) {
+                int[] pixels = ImageUtils.getPixelArray(src);
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    row[x] = 0xFF_00_00_00 | pixels[offset + x];
+                }
+            } else if (type == TYPE_BYTE_GRAY) {
+                // getRGB would apply a gamma conversion to the gray values
+                src.getRaster().getSamples(0, y, width, 1, 0, row);
+                for (int x = 0; x < width; x++) {
+                    int gray = row[x];
+                    row[x] = 0xFF_00_00_00 | gray << 16 | gray << 8 | gray;
+                }
+            } else {
+                src.getRGB(0, y, width, 1, row, 0, width);
+            }
+        }
+
+        /**
+         * Writes a row of premultiplied pixels into the destination image.
+         */
+        private void writeRow(int y, int[] row) {
+            int width = row.length;
+            int type = dest.getType();
+            if (type == TYPE_BYTE_GRAY) {
+                WritableRaster raster = dest.getRaster();
+                int[] grays = new int[width];
+                for (int x = 0; x < width; x++) {
+                    grays[x] = (row[x] >> 8) & 0xFF;
+                }
+                raster.setSamples(destRegion.x, y, width, 1, 0, grays);
+                return;
+            }
+
+            int[] pixels = ImageUtils.getPixelArray(dest);
+            int offset = y * dest.getWidth() + destRegion.x;
+            if (type == TYPE_INT_ARGB_PRE) {
+                System.arraycopy(row, 0, pixels, offset, width);
+                return;
+            }
+            for (int x = 0; x < width; x++) {
+                pixels[offset + x] = unpremultiply(row[x]);
+            }
+        }
+    }
+
+    private static int packPremultiplied(float a, float r, float g, float b) {
+        int alpha = clamp(Math.round(a), 255);
+        if (alpha == 0) {
+            return 0;
+        }
+        // the negative lobes of some kernels can cause overshoots
+        return alpha << 24
+            | clamp(Math.round(r), alpha) << 16
+            | clamp(Math.round(g), alpha) << 8
+            | clamp(Math.round(b), alpha);
+    }
+
+    private static int unpremultiply(int p) {
+        int a = p >>> 24;
+        if (a == 0) {
+            return 0;
+        }
+        if (a == 255) {
+            return p;
+        }
+        int r = (((p >> 16) & 0xFF) * 255 + a / 2) / a;
+        int g = (((p >> 8) & 0xFF) * 255 + a / 2) / a;
+        int b = ((p & 0xFF) * 255 + a / 2) / a;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : Math.min(value, max);
+    }
+}
@@ -69,6 +69,11 @@ public class SubtaskProgressTracker implements ProgressTracker {
         superTask.unitsDone(doneUnits);
     }
 
+    @Override
+    public boolean isCanceled() {
+        return superTask.isCanceled();
+    }
+
     @Override
     public void finished() {
         // some fractional progress might be lost,
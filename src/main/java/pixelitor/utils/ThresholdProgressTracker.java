@@ -35,6 +35,9 @@ public abstract class ThresholdProgressTracker implements ProgressTracker {
     private boolean showingProgress = false;
     private final boolean runningOnEDT;
 
+    // null if the tracked operation can't be canceled
+    private final CancellationToken cancellationToken;
+
     // In this class this field is used only for debugging.
     // The status bar progress tracker uses it to label the progress bar.
     protected final String name;
@@ -44,6 +47,12 @@ public abstract class ThresholdProgressTracker implements ProgressTracker {
         this.name = name;
         startTime = System.currentTimeMillis();
         runningOnEDT = Threads.calledOnEDT();
+        cancellationToken = CancellationToken.current();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return cancellationToken != null && cancellationToken.isCanceled();
     }
 
     @Override
@@ -105,6 +105,18 @@ public final class Utils {
         return (int) (heapMaxSize / NUM_BYTES_IN_MEGABYTE);
     }
 
+    /**
+     * Returns the default memory budget of the undo history,
+     * and also of the image caches (the layer caches and the
+     * zoomed-out versions of the composite images).
+     * Together they get a third of the maximum heap, split equally, and
+     * the rest remains for the open images and the running filters.
+     */
+    public static int calcDefaultCacheBudgetMb() {
+        int cachesTotalMb = getMaxHeapMb() / 3;
+        return Math.max(64, cachesTotalMb / 2);
+    }
+
     public static int getUsedMemoryMb() {
         long usedMemory = Runtime.getRuntime().totalMemory();
         return (int) (usedMemory / NUM_BYTES_IN_MEGABYTE);
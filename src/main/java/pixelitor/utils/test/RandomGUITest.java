@@ -458,7 +458,7 @@ public class RandomGUITest {
         String filterName = filter.getName();
         log("filter: " + filterName);
 
-        long runCountBefore = Filter.runCount;
+        long runCountBefore = Filter.getRunCount();
 
         if (filter instanceof FilterWithGUI guiFilter) {
             guiFilter.randomize();
@@ -499,7 +499,7 @@ public class RandomGUITest {
                 throw e;
             }
         }
-        long runCountAfter = Filter.runCount;
+        long runCountAfter = Filter.getRunCount();
         if (runCountAfter != runCountBefore + 1) {
             throw new IllegalStateException(
                 "runCountBefore = " + runCountBefore
@@ -513,7 +513,7 @@ public class RandomGUITest {
             return;
         }
 
-        long runCountBefore = Filter.runCount;
+        long runCountBefore = Filter.getRunCount();
 
         ParametrizedFilter filter = getRandomTweenFilter();
         String filterName = filter.getName();
@@ -553,7 +553,7 @@ public class RandomGUITest {
 
         dr.endTweening();
 
-        long runCountAfter = Filter.runCount;
+        long runCountAfter = Filter.getRunCount();
         if (runCountAfter != runCountBefore + 1) {
             throw new IllegalStateException(
                 "runCountBefore = " + runCountBefore
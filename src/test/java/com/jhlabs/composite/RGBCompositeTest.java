@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.composite;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Composite;
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RGBCompositeTest {
+    static Stream<Composite> composites() {
+        return Stream.of(
+            new MultiplyComposite(1.0f),
+            new ScreenComposite(0.7f),
+            new OverlayComposite(1.0f),
+            new SoftLightComposite(0.5f));
+    }
+
+    @ParameterizedTest
+    @MethodSource("composites")
+    void parallelAndSerialComposeGiveIdenticalResults(Composite composite) throws Exception {
+        BufferedImage src = createNoiseImage(500, 400, 1);
+        BufferedImage dst = createNoiseImage(500, 400, 2);
+
+        // the rows are split between the threads
+        BufferedImage parallel = compose(composite, src, dst);
+        // the rows are composed by a single thread when called from the pool
+        BufferedImage serial = ThreadPool.submit2(() -> compose(composite, src, dst)).get();
+
+        assertThat(ImageUtils.getPixelArray(parallel))
+            .isEqualTo(ImageUtils.getPixelArray(serial));
+    }
+
+    private static BufferedImage compose(Composite composite, BufferedImage src, BufferedImage dst) {
+        BufferedImage out = new BufferedImage(dst.getWidth(), dst.getHeight(), TYPE_INT_ARGB);
+        CompositeContext context = composite.createContext(
+            src.getColorModel(), dst.getColorModel(), null);
+        context.compose(src.getRaster(), dst.getRaster(), out.getRaster());
+        context.dispose();
+        return out;
+    }
+
+    private static BufferedImage createNoiseImage(int width, int height, long seed) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(img);
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return img;
+    }
+}
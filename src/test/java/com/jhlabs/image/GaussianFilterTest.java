@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.TestHelper;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class GaussianFilterTest {
+    // the maximum difference of a channel value between the two modes
+    private static final int MAX_FAST_ERROR = 16;
+
+    // the maximum mean difference of the channel values
+    private static final double MAX_MEAN_FAST_ERROR = 2.0;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "1.5, 1, 1, 1",
+        "2.0, 1, 1, 2",
+        "2.5, 2, 2, 2",
+        "5.0, 4, 4, 5",
+        "10.0, 9, 9, 10",
+        "33.3, 32, 33, 33",
+    })
+    void calcBoxRadii(float sigma, int r1, int r2, int r3) {
+        assertThat(GaussianFilter.calcBoxRadii(sigma, 3)).containsExactly(r1, r2, r3);
+    }
+
+    @Test
+    void boxRadiiMatchTheVariance() {
+        for (float sigma = 1.0f; sigma < 70; sigma += 0.7f) {
+            int[] radii = GaussianFilter.calcBoxRadii(sigma, 3);
+            double variance = 0;
+            for (int r : radii) {
+                int boxWidth = 2 * r + 1;
+                variance += (boxWidth * boxWidth - 1) / 12.0;
+            }
+            // exchanging a box for the next odd width changes the
+            // variance by (4 * width + 4) / 12, and the closer one is chosen
+            double maxError = (2 * radii[2] + 2) / 6.0;
+            assertThat(variance).isCloseTo(sigma * sigma, offset(maxError));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"6", "20", "60"})
+    void fastIsCloseToExact(float radius) {
+        BufferedImage src = createTestImage();
+
+        BufferedImage exact = blur(src, radius, GaussianFilter.Mode.EXACT);
+        BufferedImage fast = blur(src, radius, GaussianFilter.Mode.FAST);
+
+        int[] exactPixels = ImageUtils.getPixelArray(exact);
+        int[] fastPixels = ImageUtils.getPixelArray(fast);
+        long sumDiff = 0;
+        int maxDiff = 0;
+        for (int i = 0; i < exactPixels.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int diff = Math.abs(((exactPixels[i] >>> shift) & 0xFF) - ((fastPixels[i] >>> shift) & 0xFF));
+                sumDiff += diff;
+                maxDiff = Math.max(maxDiff, diff);
+            }
+        }
+        double meanDiff = sumDiff / (4.0 * exactPixels.length);
+
+        assertThat(maxDiff).isLessThanOrEqualTo(MAX_FAST_ERROR);
+        assertThat(meanDiff).isLessThanOrEqualTo(MAX_MEAN_FAST_ERROR);
+    }
+
+    private static BufferedImage blur(BufferedImage src, float radius, GaussianFilter.Mode mode) {
+        GaussianFilter filter = new GaussianFilter(radius, "Gaussian Blur");
+        filter.setMode(mode);
+        return filter.filter(src, null);
+    }
+
+    // sharp edges in all directions, and some transparency
+    private static BufferedImage createTestImage() {
+        BufferedImage img = new BufferedImage(300, 200, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 300, 200);
+        g.setColor(Color.RED);
+        g.fillRect(20, 30, 100, 60);
+        g.setColor(new Color(0, 0, 255, 128));
+        g.fillOval(90, 60, 150, 120);
+        g.setColor(Color.BLACK);
+        g.fillRect(200, 0, 10, 200);
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.painter.effects;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DistanceFieldTest {
+    @Test
+    void distancesFromRectangle() {
+        var rect = new Rectangle(20, 30, 40, 25);
+        DistanceField field = DistanceField.calc(rect, 15);
+
+        Rectangle bounds = field.getBounds();
+        assertThat(bounds).isEqualTo(new Rectangle(5, 15, 70, 55));
+
+        for (int y = 0; y < bounds.height; y++) {
+            for (int x = 0; x < bounds.width; x++) {
+                // the distance of the pixel center from the outline
+                double px = bounds.x + x + 0.5;
+                double py = bounds.y + y + 0.5;
+                double expected = distanceFromOutline(rect, px, py);
+
+                float actual = field.getDistance(y * bounds.width + x);
+                assertThat((double) actual).isCloseTo(expected, within(0.5));
+                assertThat(field.getCoverage(x, y))
+                    .isEqualTo(rect.contains(px, py) ? 1.0f : 0.0f);
+            }
+        }
+    }
+
+    @Test
+    void distancesFromCircle() {
+        double radius = 30;
+        var circle = new Ellipse2D.Double(10.3, 10.7, 2 * radius, 2 * radius);
+        DistanceField field = DistanceField.calc(circle, 20);
+
+        Rectangle bounds = field.getBounds();
+        for (int y = 0; y < bounds.height; y++) {
+            for (int x = 0; x < bounds.width; x++) {
+                double px = bounds.x + x + 0.5;
+                double py = bounds.y + y + 0.5;
+                double fromCenter = Math.hypot(px - circle.getCenterX(), py - circle.getCenterY());
+                double expected = Math.abs(fromCenter - radius);
+
+                float actual = field.getDistance(y * bounds.width + x);
+                assertThat((double) actual).isCloseTo(expected, within(1.0));
+            }
+        }
+    }
+
+    @Test
+    void emptyShapeHasNoField() {
+        assertThat(DistanceField.calc(new Rectangle(), 10)).isNull();
+    }
+
+    private static double distanceFromOutline(Rectangle r, double x, double y) {
+        double dx = Math.max(Math.max(r.x - x, x - r.getMaxX()), 0);
+        double dy = Math.max(Math.max(r.y - y, y - r.getMaxY()), 0);
+        if (dx > 0 || dy > 0) {
+            return Math.hypot(dx, dy);
+        }
+        // inside: the distance from the nearest side
+        return Math.min(Math.min(x - r.x, r.getMaxX() - x),
+            Math.min(y - r.y, r.getMaxY() - y));
+    }
+}
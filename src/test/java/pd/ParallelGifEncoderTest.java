@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pd;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Parallel GIF encoder tests")
+class ParallelGifEncoderTest {
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    private static final int NUM_FRAMES = 6;
+
+    // the max difference of a color channel caused by the quantization,
+    // which is similar to the error of the AnimatedGifEncoder
+    private static final int TOLERANCE = 60;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void framesAreEncodedInOrder() throws IOException {
+        List<BufferedImage> frames = createFrames();
+        File file = encode(frames, 0);
+
+        checkDecodedFrames(file, frames);
+    }
+
+    @Test
+    void globalPalette() throws IOException {
+        List<BufferedImage> frames = createFrames();
+        File localPalettesFile = encode(frames, 0);
+        File globalPaletteFile = encode(frames, 3);
+
+        checkDecodedFrames(globalPaletteFile, frames);
+        assertThat(globalPaletteFile.length()).isLessThan(localPalettesFile.length());
+    }
+
+    @Test
+    void onlyTheChangesAreEncoded() throws IOException {
+        List<BufferedImage> frames = createFrames();
+        File file = encode(frames, 0);
+
+        File fullFramesFile = new File(tempDir, "full.gif");
+        AnimatedGifEncoder e = new AnimatedGifEncoder();
+        e.start(fullFramesFile);
+        frames.forEach(e::addFrame);
+        e.finish();
+
+        assertThat(file.length()).isLessThan(fullFramesFile.length());
+    }
+
+    @Test
+    void cancelDeletesTheFile() throws IOException {
+        File file = new File(tempDir, "cancelled.gif");
+        var encoder = new ParallelGifEncoder(file, 2);
+        for (BufferedImage frame : createFrames()) {
+            encoder.addFrame(frame);
+        }
+        encoder.cancel();
+
+        assertThat(file).doesNotExist();
+    }
+
+    private File encode(List<BufferedImage> frames, int numPaletteFrames) throws IOException {
+        File file = new File(tempDir, "anim_" + numPaletteFrames + ".gif");
+        // allow fewer frames in flight than the number of frames
+        var encoder = new ParallelGifEncoder(file, 2);
+        encoder.setDelay(100);
+        encoder.setGlobalPalette(numPaletteFrames);
+        for (BufferedImage frame : frames) {
+            encoder.addFrame(frame);
+        }
+        encoder.finish();
+        return file;
+    }
+
+    private static void checkDecodedFrames(File file, List<BufferedImage> frames) throws IOException {
+        GifDecoder.GifImage gif;
+        try (InputStream in = new FileInputStream(file)) {
+            gif = GifDecoder.read(in);
+        }
+        assertThat(gif.getFrameCount()).isEqualTo(frames.size());
+        assertThat(gif.getWidth()).isEqualTo(WIDTH);
+        assertThat(gif.getHeight()).isEqualTo(HEIGHT);
+
+        for (int i = 0; i < frames.size(); i++) {
+            BufferedImage expected = frames.get(i);
+            BufferedImage decoded = gif.getFrame(i);
+            for (int y = 0; y < HEIGHT; y += 3) {
+                for (int x = 0; x < WIDTH; x += 3) {
+                    assertSimilar(decoded.getRGB(x, y), expected.getRGB(x, y));
+                }
+            }
+
+            // the moving square is at its new position...
+            assertSimilar(decoded.getRGB(squareX(i) + 6, 26), Color.YELLOW.getRGB());
+            if (i > 0) {
+                // ...and not at the previous one
+                int prevX = squareX(i - 1) + 1;
+                assertThat(decoded.getRGB(prevX, 26) & 0xFF).isGreaterThan(64);
+            }
+        }
+    }
+
+    private static void assertSimilar(int rgb, int expectedRGB) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int channel = (rgb >> shift) & 0xFF;
+            int expectedChannel = (expectedRGB >> shift) & 0xFF;
+            assertThat(channel).isBetween(expectedChannel - TOLERANCE, expectedChannel + TOLERANCE);
+        }
+    }
+
+    /**
+     * Creates frames where a small square moves over a gradient background.
+     */
+    private static List<BufferedImage> createFrames() {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < NUM_FRAMES; i++) {
+            BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    frame.setRGB(x, y, new Color(x * 3, y * 4, 128).getRGB());
+                }
+            }
+            Graphics2D g = frame.createGraphics();
+            g.setColor(Color.YELLOW);
+            g.fillRect(squareX(i), 20, 12, 12);
+            g.dispose();
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static int squareX(int frameIndex) {
+        return 5 + frameIndex * 10;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.layers.ImageCacheManager.getUsedBytes;
+
+@DisplayName("CompositePyramid tests")
+class CompositePyramidTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void levelIndex() {
+        assertThat(CompositePyramid.calcLevelIndex(2.0, 1000, 1000)).isEqualTo(0);
+        assertThat(CompositePyramid.calcLevelIndex(0.7, 1000, 1000)).isEqualTo(0);
+        assertThat(CompositePyramid.calcLevelIndex(0.5, 1000, 1000)).isEqualTo(1);
+        assertThat(CompositePyramid.calcLevelIndex(0.3, 1000, 1000)).isEqualTo(1);
+        assertThat(CompositePyramid.calcLevelIndex(0.125, 1000, 1000)).isEqualTo(3);
+
+        // there are no levels smaller than 1x1
+        assertThat(CompositePyramid.calcLevelIndex(0.001, 4, 2)).isEqualTo(2);
+    }
+
+    @Test
+    void averageIsWeightedByAlpha() {
+        int red = 0xFF_FF_00_00;
+        int transparentBlue = 0x00_00_00_FF;
+        assertThat(CompositePyramid.average(red, red, red, red)).isEqualTo(red);
+        assertThat(CompositePyramid.average(red, transparentBlue, transparentBlue, transparentBlue))
+            .isEqualTo(0x40_FF_00_00);
+        assertThat(CompositePyramid.average(0, 0, 0, 0)).isEqualTo(0);
+    }
+
+    @Test
+    void paintsScaledDownAndUpdatesDirtyRegions() {
+        // larger than a tile, with odd dimensions
+        int width = 1001;
+        int height = 601;
+        BufferedImage composite = new BufferedImage(width, height, TYPE_INT_ARGB);
+        fill(composite, new Rectangle(0, 0, width, height), Color.RED);
+
+        CompositePyramid pyramid = new CompositePyramid(Runnable::run, Runnable::run);
+        BufferedImage view = paintUntilLevelsAreUsed(pyramid, composite, 0.25);
+        assertThat(pyramid.getNumLevels()).isEqualTo(2);
+        assertThat(view.getRGB(10, 10)).isEqualTo(Color.RED.getRGB());
+        assertThat(view.getRGB(200, 100)).isEqualTo(Color.RED.getRGB());
+
+        // a local change far from the origin
+        Rectangle changed = new Rectangle(800, 400, 100, 100);
+        fill(composite, changed, Color.BLUE);
+        pyramid.invalidateRegion(changed);
+        view = paintAtScale(pyramid, composite, 0.25);
+        assertThat(view.getRGB(212, 112)).isEqualTo(Color.BLUE.getRGB());
+        assertThat(view.getRGB(10, 10)).isEqualTo(Color.RED.getRGB());
+
+        // drawn from the regenerated levels
+        view = paintAtScale(pyramid, composite, 0.25);
+        assertThat(view.getRGB(212, 112)).isEqualTo(Color.BLUE.getRGB());
+        assertThat(view.getRGB(10, 10)).isEqualTo(Color.RED.getRGB());
+
+        // nothing is drawn outside the canvas
+        assertThat(view.getRGB(251, 151)).isEqualTo(0);
+    }
+
+    @Test
+    void levelsAreBuiltOnlyForUnchangedComposites() {
+        BufferedImage composite = new BufferedImage(600, 400, TYPE_INT_ARGB);
+        fill(composite, new Rectangle(0, 0, 600, 400), Color.RED);
+        CompositePyramid pyramid = new CompositePyramid(Runnable::run, Runnable::run);
+
+        // painted directly while the composite keeps changing
+        for (int i = 0; i < 2 * CompositePyramid.MIN_PAINTS_BEFORE_USE; i++) {
+            pyramid.invalidateAll();
+            BufferedImage view = paintAtScale(pyramid, composite, 0.5);
+            assertThat(view.getRGB(100, 100)).isEqualTo(Color.RED.getRGB());
+        }
+        assertThat(pyramid.getNumLevels()).isZero();
+
+        pyramid.invalidateAll();
+        paintUntilLevelsAreUsed(pyramid, composite, 0.5);
+        assertThat(pyramid.getNumLevels()).isEqualTo(1);
+    }
+
+    @Test
+    void levelsAreBuiltInTheBackground() {
+        BufferedImage composite = new BufferedImage(600, 400, TYPE_INT_ARGB);
+        fill(composite, new Rectangle(0, 0, 600, 400), Color.RED);
+        List<Runnable> updates = new ArrayList<>();
+        CompositePyramid pyramid = new CompositePyramid(updates::add, Runnable::run);
+
+        for (int i = 0; i < 2 * CompositePyramid.MIN_PAINTS_BEFORE_USE; i++) {
+            BufferedImage view = paintAtScale(pyramid, composite, 0.5);
+            assertThat(view.getRGB(100, 100)).isEqualTo(Color.RED.getRGB());
+        }
+        // the level is allocated and counted in the cache budget,
+        // but a single update is started instead of building it while painting
+        assertThat(pyramid.getNumLevels()).isEqualTo(1);
+        assertThat(getUsedBytes()).isGreaterThanOrEqualTo(300 * 200 * 4);
+        assertThat(updates).hasSize(1);
+        assertThat(pyramid.getNumDirtyTiles()).isEqualTo(2);
+
+        // a change during the update keeps the changed tile dirty
+        Rectangle changed = new Rectangle(0, 0, 100, 100);
+        fill(composite, changed, Color.BLUE);
+        pyramid.invalidateRegion(changed);
+        updates.remove(0).run();
+        assertThat(pyramid.getNumDirtyTiles()).isEqualTo(1);
+
+        BufferedImage view = paintAtScale(pyramid, composite, 0.5);
+        assertThat(view.getRGB(20, 20)).isEqualTo(Color.BLUE.getRGB());
+        assertThat(view.getRGB(200, 100)).isEqualTo(Color.RED.getRGB());
+        assertThat(updates).hasSize(1);
+        updates.remove(0).run();
+        assertThat(pyramid.getNumDirtyTiles()).isZero();
+
+        pyramid.release();
+    }
+
+    private static BufferedImage paintUntilLevelsAreUsed(CompositePyramid pyramid,
+                                                         BufferedImage composite, double scaling) {
+        for (int i = 0; i < CompositePyramid.MIN_PAINTS_BEFORE_USE; i++) {
+            assertThat(pyramid.getNumLevels()).isZero();
+            paintAtScale(pyramid, composite, scaling);
+        }
+        // the last paint regenerated the levels
+        assertThat(pyramid.getNumDirtyTiles()).isZero();
+        return paintAtScale(pyramid, composite, scaling);
+    }
+
+    private static BufferedImage paintAtScale(CompositePyramid pyramid,
+                                              BufferedImage composite, double scaling) {
+        BufferedImage view = new BufferedImage(300, 200, TYPE_INT_ARGB);
+        Graphics2D g = view.createGraphics();
+        g.scale(scaling, scaling);
+        pyramid.paint(g, composite, scaling, () -> {
+        });
+        g.dispose();
+        return view;
+    }
+
+    private static void fill(BufferedImage img, Rectangle rect, Color color) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fill(rect);
+        g.dispose();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@DisplayName("compositing engine tests")
+class CompositingEngineTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 700;
+
+    private Composition comp;
+    private List<Layer> layers;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createEmptyComp(WIDTH, HEIGHT, false);
+        layers = new ArrayList<>();
+        Random random = new Random(42);
+        BlendingMode[] modes = {BlendingMode.NORMAL, BlendingMode.MULTIPLY,
+            BlendingMode.SCREEN, BlendingMode.OVERLAY, BlendingMode.SOFT_LIGHT};
+        for (int i = 0; i < modes.length; i++) {
+            var layer = TestHelper.createImageLayer(comp,
+                createRandomImage(random), "layer " + (i + 1));
+            layer.setBlendingMode(modes[i]);
+            layer.setOpacity(0.5f + i * 0.1f);
+            layers.add(layer);
+        }
+    }
+
+    @Test
+    void parallelIsIdenticalToSerial() throws Exception {
+        BufferedImage serial = CompositingEngine.SERIAL.calcCompositeImage(layers, comp.getCanvas());
+
+        // the parallel engine runs its tasks only if it's called on the EDT
+        var parallel = new AtomicReference<BufferedImage>();
+        EventQueue.invokeAndWait(() -> parallel.set(
+            CompositingEngine.PARALLEL.calcCompositeImage(layers, comp.getCanvas())));
+
+        assertArrayEquals(ImageUtils.getPixelArray(serial),
+            ImageUtils.getPixelArray(parallel.get()));
+    }
+
+    @Test
+    void regionIsIdenticalToFull() {
+        BufferedImage full = CompositingEngine.SERIAL.calcCompositeImage(layers, comp.getCanvas());
+        BufferedImage regions = CompositingEngine.SERIAL.calcCompositeImage(layers, comp.getCanvas());
+
+        // change the pixels and recalculate them in a few regions
+        fill(regions, new Rectangle(0, 0, WIDTH, HEIGHT), Color.RED);
+        List<Rectangle> all = List.of(
+            new Rectangle(0, 0, WIDTH, 256),
+            new Rectangle(0, 256, 256, HEIGHT - 256),
+            new Rectangle(256, 256, WIDTH - 256, HEIGHT - 256));
+        CompositingEngine.SERIAL.calcCompositeRegions(layers, regions, all);
+
+        assertArrayEquals(ImageUtils.getPixelArray(full),
+            ImageUtils.getPixelArray(regions));
+    }
+
+    @Test
+    void dirtyTilesAreRecomposited() {
+        var cache = new TiledCompositeCache();
+        cache.getImage(layers, comp.getCanvas());
+
+        ImageLayer layer = (ImageLayer) layers.get(2);
+        Rectangle changed = new Rectangle(300, 300, 40, 40);
+        fill(layer.getImage(), changed, Color.BLUE);
+        cache.invalidateRegion(changed);
+        BufferedImage updated = cache.getImage(layers, comp.getCanvas());
+
+        BufferedImage expected = CompositingEngine.SERIAL.calcCompositeImage(layers, comp.getCanvas());
+        assertArrayEquals(ImageUtils.getPixelArray(expected),
+            ImageUtils.getPixelArray(updated));
+    }
+
+    @Test
+    void failedBandIsRethrownAndStaysDirty() throws Exception {
+        var cache = new TiledCompositeCache();
+        cache.getImage(layers, comp.getCanvas());
+
+        // a layer that can't be painted below the first tile row
+        var failingLayer = new ImageLayer(comp, createRandomImage(new Random(1)), "failing") {
+            @Override
+            public BufferedImage applyLayer(Graphics2D g, BufferedImage imageSoFar, boolean firstVisibleLayer) {
+                if (g.getClipBounds().y >= TiledCompositeCache.TILE_SIZE) {
+                    throw new IllegalStateException("failed band");
+                }
+                return super.applyLayer(g, imageSoFar, firstVisibleLayer);
+            }
+        };
+        layers.add(failingLayer);
+        cache.invalidateRegion(new Rectangle(0, 0, WIDTH, HEIGHT));
+        int numDirtyTiles = cache.getNumDirtyTiles();
+
+        var thrown = new AtomicReference<Throwable>();
+        CompositingEngine prevEngine = CompositingEngine.CURRENT;
+        CompositingEngine.changeTo(CompositingEngine.PARALLEL);
+        try {
+            EventQueue.invokeAndWait(() -> {
+                try {
+                    cache.getImage(layers, comp.getCanvas());
+                } catch (IllegalStateException e) {
+                    thrown.set(e);
+                }
+            });
+        } finally {
+            CompositingEngine.changeTo(prevEngine);
+        }
+
+        assertThat(thrown.get()).hasMessage("failed band");
+        assertThat(cache.isValid()).isFalse();
+        assertThat(cache.getNumDirtyTiles()).isEqualTo(numDirtyTiles);
+    }
+
+    private static void fill(BufferedImage img, Rectangle area, Color color) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fill(area);
+        g.dispose();
+    }
+
+    private static BufferedImage createRandomImage(Random random) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(img);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return img;
+    }
+}
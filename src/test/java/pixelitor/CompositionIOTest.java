@@ -18,18 +18,30 @@
 package pixelitor;
 
 import org.junit.jupiter.api.*;
+import pixelitor.io.BadPxcFormatException;
 import pixelitor.io.IO;
 import pixelitor.io.OpenRaster;
 import pixelitor.io.PXCFormat;
 import pixelitor.layers.*;
+import pixelitor.utils.ImageUtils;
 
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static pixelitor.assertions.PixelitorAssertions.assertThat;
 
 @DisplayName("Composition I/O tests")
@@ -154,6 +166,92 @@ class CompositionIOTest {
         }
     }
 
+    @Test
+    void readWriteVersion4PXC() throws Exception {
+        // large enough to be split into several chunks
+        Composition comp = createLargeCompWithMask();
+        ImageLayer layer = (ImageLayer) comp.getLayer(0);
+        int[] origPixels = ImageUtils.getPixelArray(layer.getImage());
+        byte[] origMaskPixels = getGrayPixels(layer.getMask().getImage());
+
+        File tmpFile = File.createTempFile("pix_tmp", ".pxc");
+        try {
+            PXCFormat.write(comp, tmpFile);
+            byte[] bytes = Files.readAllBytes(tmpFile.toPath());
+            assertThat(Arrays.copyOf(bytes, 3)).containsExactly(0xAB, 0xC4, 0x04);
+
+            Composition readComp = PXCFormat.read(tmpFile);
+            assertThat(readComp)
+                .numLayersIs(1)
+                .canvasSizeIs(1100, 1000)
+                .invariantsAreOK();
+            ImageLayer readLayer = (ImageLayer) readComp.getLayer(0);
+            assertThat(ImageUtils.getPixelArray(readLayer.getImage())).isEqualTo(origPixels);
+            assertThat(getGrayPixels(readLayer.getMask().getImage())).isEqualTo(origMaskPixels);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    @Test
+    void corruptVersion4PXCFailsCleanly() throws Exception {
+        File tmpFile = File.createTempFile("pix_tmp", ".pxc");
+        try {
+            PXCFormat.write(createLargeCompWithMask(), tmpFile);
+            byte[] bytes = Files.readAllBytes(tmpFile.toPath());
+            int tableOffset = (int) ByteBuffer.wrap(bytes).getLong(3);
+
+            // truncated in the middle of the compressed chunks
+            Files.write(tmpFile.toPath(), Arrays.copyOf(bytes, tableOffset / 2));
+            assertThrows(BadPxcFormatException.class, () -> PXCFormat.read(tmpFile));
+
+            // a chunk that can't be decompressed
+            byte[] corruptChunk = bytes.clone();
+            corruptChunk[11] = (byte) 0xFF;
+            corruptChunk[12] = (byte) 0xFF;
+            Files.write(tmpFile.toPath(), corruptChunk);
+            assertThrows(BadPxcFormatException.class, () -> PXCFormat.read(tmpFile));
+
+            // an image table with an invalid image size
+            byte[] corruptTable = bytes.clone();
+            ByteBuffer.wrap(corruptTable).putInt(tableOffset + 4, -1);
+            Files.write(tmpFile.toPath(), corruptTable);
+            assertThrows(BadPxcFormatException.class, () -> PXCFormat.read(tmpFile));
+
+            // an image table that claims more images than it contains
+            ByteBuffer.wrap(corruptTable).putInt(tableOffset, 1000);
+            Files.write(tmpFile.toPath(), corruptTable);
+            assertThrows(BadPxcFormatException.class, () -> PXCFormat.read(tmpFile));
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private static Composition createLargeCompWithMask() {
+        int width = 1100;
+        int height = 1000;
+        Composition comp = TestHelper.createEmptyComp(width, height, true);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(image);
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        ImageLayer layer = TestHelper.createImageLayer(comp, image, "layer");
+        comp.addLayerNoUI(layer);
+        layer.addMask(LayerMaskAddType.REVEAL_ALL);
+
+        Graphics2D g = layer.getMask().getImageForWriting().createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLACK, width, height, Color.WHITE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return comp;
+    }
+
+    private static byte[] getGrayPixels(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
     @Test
     void readPXCWithAllFeatures() {
         String fileName = "pxc_all_features.pxc";
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import com.jhlabs.image.GaussianFilter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+class ThreadPoolTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 10", "7, 1", "1000, 1000", "20000, 3", "33, 100000"})
+    void processRowsCoversEachRowOnce(int numRows, int rowLength) {
+        var processed = new AtomicIntegerArray(numRows);
+        var reportedUnits = new AtomicInteger();
+        var pt = new ProgressTracker() {
+            @Override
+            public void unitDone() {
+                reportedUnits.incrementAndGet();
+            }
+
+            @Override
+            public void unitsDone(int units) {
+                reportedUnits.addAndGet(units);
+            }
+
+            @Override
+            public void finished() {
+            }
+        };
+
+        ThreadPool.processRows(numRows, rowLength, (startRow, endRow) -> {
+            for (int row = startRow; row < endRow; row++) {
+                processed.incrementAndGet(row);
+            }
+        }, pt);
+
+        for (int row = 0; row < numRows; row++) {
+            assertThat(processed.get(row)).isEqualTo(1);
+        }
+        assertThat(reportedUnits.get()).isEqualTo(numRows);
+    }
+
+    @Test
+    void failedFirstChunkStopsTheOtherChunks() {
+        var running = new AtomicInteger();
+        var startedAfterFailure = new AtomicInteger();
+        var failed = new AtomicBoolean();
+
+        assertThatThrownBy(() -> ThreadPool.processRows(1000, 1000, (startRow, endRow) -> {
+            if (startRow == 0) {
+                failed.set(true);
+                throw new IllegalStateException("first chunk");
+            }
+            if (failed.get()) {
+                startedAfterFailure.incrementAndGet();
+            }
+            running.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        }, NULL_TRACKER)).hasMessage("first chunk");
+
+        // no chunk is still writing when the caller gets the exception
+        assertThat(running.get()).isZero();
+        // and the chunks that were waiting for a thread were skipped
+        assertThat(startedAfterFailure.get()).isLessThanOrEqualTo(ThreadPool.NUM_CORES);
+    }
+
+    @Test
+    void parallelAndSerialRowsGiveIdenticalResults() throws Exception {
+        BufferedImage src = createNoiseImage(600, 400);
+        GaussianFilter filter = new GaussianFilter(7, "Gaussian Blur");
+
+        // the rows are split between the threads
+        BufferedImage parallel = filter.filter(src, null);
+        // the rows are processed by a single thread when called from the pool
+        BufferedImage serial = ThreadPool.submit2(() -> filter.filter(src, null)).get();
+
+        assertThat(ImageUtils.getPixelArray(parallel))
+            .isEqualTo(ImageUtils.getPixelArray(serial));
+    }
+
+    @Test
+    void poolThreadsAreNotDetectedByName() throws Exception {
+        assertThat(ThreadPool.calledOnPoolThread()).isFalse();
+        assertThat(ThreadPool.submit2(ThreadPool::calledOnPoolThread).get()).isTrue();
+
+        var onLookalike = new AtomicBoolean(true);
+        Thread lookalike = new Thread(() ->
+            onLookalike.set(ThreadPool.calledOnPoolThread()), "pool-thread-1");
+        lookalike.start();
+        lookalike.join();
+        assertThat(onLookalike.get()).isFalse();
+    }
+
+    private static BufferedImage createNoiseImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(img);
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return img;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.TestHelper;
+import pixelitor.compactions.CompAction;
+import pixelitor.compactions.Flip;
+import pixelitor.io.FileFormat;
+import pixelitor.io.SaveSettings;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+@DisplayName("Batch pipeline tests")
+class BatchPipelineTest {
+    private static final File INPUT = new File("src/test/resources/png_test_input.png");
+
+    @TempDir
+    File outputDir;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void failuresDontStopTheOtherFiles() {
+        List<File> inputs = List.of(INPUT, new File(outputDir, "missing.png"), INPUT, INPUT);
+        AtomicInteger actionCounter = new AtomicInteger();
+        CompAction flip = new Flip(Flip.Direction.HORIZONTAL);
+        CompAction failsOnce = comp -> {
+            if (actionCounter.incrementAndGet() == 2) {
+                throw new IllegalStateException("test failure");
+            }
+            return flip.process(comp);
+        };
+        AtomicInteger numOutputs = new AtomicInteger();
+        var pipeline = new BatchPipeline(inputs,
+            file -> new SaveSettings(FileFormat.PNG,
+                new File(outputDir, numOutputs.incrementAndGet() + ".png")),
+            () -> failsOnce, 1, 1, 1, 1);
+        // the listener is called from the threads of the pipeline
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+        pipeline.setListener(p -> progress.add(p.getNumFinished()));
+
+        var result = pipeline.run();
+
+        assertThat(result.processed()).isEqualTo(2);
+        assertThat(result.skipped()).isZero();
+        assertThat(result.failed()).isEqualTo(2);
+        assertThat(result.failures()).hasSize(2)
+            .anyMatch(failure -> failure.contains("missing.png"))
+            .anyMatch(failure -> failure.contains("test failure"));
+        assertThat(progress).hasSize(4).endsWith(4);
+        assertThat(outputDir.list()).hasSize(2);
+    }
+
+    @Test
+    void errorsReleaseThePipeline() {
+        List<File> inputs = List.of(INPUT, INPUT, INPUT);
+        AtomicInteger actionCounter = new AtomicInteger();
+        CompAction flip = new Flip(Flip.Direction.HORIZONTAL);
+        CompAction failsWithError = comp -> {
+            if (actionCounter.incrementAndGet() == 1) {
+                throw new AssertionError("test error");
+            }
+            return flip.process(comp);
+        };
+        AtomicInteger numOutputs = new AtomicInteger();
+        // only one file is allowed in the pipeline, so a lost
+        // permit would block the decoder of the next file
+        var pipeline = new BatchPipeline(inputs,
+            file -> new SaveSettings(FileFormat.PNG,
+                new File(outputDir, numOutputs.incrementAndGet() + ".png")),
+            () -> failsWithError, 1, 1, 1, 1);
+
+        var result = assertTimeoutPreemptively(Duration.ofSeconds(30), pipeline::run);
+
+        assertThat(result.processed()).isEqualTo(2);
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(result.failures()).singleElement()
+            .matches(failure -> failure.contains("test error"));
+    }
+
+    @Test
+    void cancelStopsStartingNewFiles() {
+        List<File> inputs = List.of(INPUT, INPUT, INPUT);
+        AtomicInteger chooserCalls = new AtomicInteger();
+        BatchPipeline[] pipeline = new BatchPipeline[1];
+        pipeline[0] = BatchPipeline.create(inputs, file -> {
+            if (chooserCalls.incrementAndGet() == 2) {
+                pipeline[0].cancel();
+                return null;
+            }
+            return new SaveSettings(FileFormat.PNG, new File(outputDir, "out.png"));
+        }, () -> new Flip(Flip.Direction.VERTICAL), 2);
+
+        var result = pipeline[0].run();
+
+        assertThat(result).isEqualTo(new BatchPipeline.Result(1, 1, 0, List.of()));
+        assertThat(chooserCalls).hasValue(2);
+    }
+}
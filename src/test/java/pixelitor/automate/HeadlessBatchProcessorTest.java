@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.TestHelper;
+import pixelitor.compactions.Flip;
+import pixelitor.io.FileFormat;
+import pixelitor.io.IO;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Headless batch processing tests")
+class HeadlessBatchProcessorTest {
+    private static final String TEST_IMAGES_DIR = "src/test/resources/";
+
+    @TempDir
+    File outputDir;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void processesAllFiles() throws IOException {
+        List<File> inputs = List.of(
+            new File(TEST_IMAGES_DIR, "png_test_input.png"),
+            new File(TEST_IMAGES_DIR, "bmp_test_input.bmp"),
+            new File(TEST_IMAGES_DIR, "pxc_test_input.pxc"));
+
+        var result = createProcessor(inputs, false).run();
+
+        assertThat(result).isEqualTo(new BatchPipeline.Result(3, 0, 0, List.of()));
+        for (File input : inputs) {
+            BufferedImage orig = IO.loadCompSync(input).getCompositeImage();
+            String outName = input.getName().replaceAll("\\.[a-z]+$", ".png");
+            BufferedImage flipped = ImageIO.read(new File(outputDir, outName));
+
+            assertThat(flipped.getWidth()).isEqualTo(orig.getWidth());
+            assertThat(flipped.getHeight()).isEqualTo(orig.getHeight());
+            assertThat(flipped.getRGB(0, 0)).isEqualTo(orig.getRGB(orig.getWidth() - 1, 0));
+        }
+    }
+
+    @Test
+    void existingFilesAreSkipped() {
+        List<File> inputs = List.of(new File(TEST_IMAGES_DIR, "png_test_input.png"));
+
+        createProcessor(inputs, false).run();
+        var secondResult = createProcessor(inputs, false).run();
+        assertThat(secondResult.skipped()).isEqualTo(1);
+
+        var overwriteResult = createProcessor(inputs, true).run();
+        assertThat(overwriteResult.processed()).isEqualTo(1);
+    }
+
+    private HeadlessBatchProcessor createProcessor(List<File> inputs, boolean overwrite) {
+        return new HeadlessBatchProcessor(inputs, outputDir, FileFormat.PNG,
+            () -> new Flip(Flip.Direction.HORIZONTAL), 2, overwrite);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pixelitor.filters.animation;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.filters.BrightnessContrast;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.gui.utils.GUIUtils;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Tween render pipeline tests")
+class TweenRenderPipelineTest {
+    private static final int NUM_FRAMES = 5;
+
+    private Composition comp;
+    private ImageLayer layer;
+    private TweenAnimation animation;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createComp(1, false);
+        layer = (ImageLayer) comp.getActiveLayer();
+        Graphics2D g = layer.getImageForWriting().createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, comp.getCanvasWidth(), comp.getCanvasHeight());
+        g.dispose();
+
+        var filter = new BrightnessContrast();
+        RangeParam brightness = (RangeParam) filter.getParamSet().getParams().get(0);
+        animation = new TweenAnimation();
+        animation.setFilter(filter);
+        brightness.setValue(-50);
+        animation.rememberInitialState();
+        brightness.setValue(50);
+        animation.rememberFinalState();
+        animation.setInterpolation(TimeInterpolation.LINEAR);
+        animation.setNumFrames(NUM_FRAMES);
+    }
+
+    @Test
+    void framesAreWrittenInOrder() throws IOException {
+        List<BufferedImage> frames = render(false, 3);
+
+        assertThat(frames).hasSize(NUM_FRAMES);
+        for (int i = 1; i < NUM_FRAMES; i++) {
+            assertThat(brightnessOf(frames.get(i)))
+                .isGreaterThan(brightnessOf(frames.get(i - 1)));
+        }
+
+        // the original layer isn't affected
+        assertThat(layer.getImage().getRGB(0, 0)).isEqualTo(Color.GRAY.getRGB());
+    }
+
+    @Test
+    void pingPongReusesTheForwardFrames() throws IOException {
+        List<BufferedImage> frames = render(true, 2);
+
+        assertThat(frames).hasSize(2 * NUM_FRAMES - 2);
+        for (int i = 1; i < NUM_FRAMES - 1; i++) {
+            int backwardsIndex = 2 * (NUM_FRAMES - 1) - i;
+            assertThat(frames.get(backwardsIndex)).isSameAs(frames.get(i));
+        }
+    }
+
+    @Test
+    void cancelStopsTheRendering() throws IOException {
+        var writer = new FrameCollector();
+        var pipeline = createPipeline(false, 2);
+        boolean finished = pipeline.run(writer, progress -> {
+            if (progress > 0) {
+                pipeline.cancel();
+            }
+        });
+
+        assertThat(finished).isFalse();
+        assertThat(writer.frames).hasSizeLessThan(NUM_FRAMES);
+    }
+
+    private List<BufferedImage> render(boolean pingPong, int numThreads) throws IOException {
+        var writer = new FrameCollector();
+        boolean finished = createPipeline(pingPong, numThreads)
+            .run(writer, progress -> {
+            });
+        assertThat(finished).isTrue();
+        return writer.frames;
+    }
+
+    private TweenRenderPipeline createPipeline(boolean pingPong, int numThreads) {
+        animation.setPingPong(pingPong);
+        TweenRenderPipeline[] pipeline = new TweenRenderPipeline[1];
+        GUIUtils.invokeAndWait(() ->
+            pipeline[0] = new TweenRenderPipeline(animation, layer, numThreads));
+        return pipeline[0];
+    }
+
+    private static int brightnessOf(BufferedImage frame) {
+        return frame.getRGB(0, 0) & 0xFF;
+    }
+
+    private static class FrameCollector implements AnimationWriter {
+        private final List<BufferedImage> frames = new ArrayList<>();
+
+        @Override
+        public void addFrame(BufferedImage image) {
+            frames.add(image);
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+}
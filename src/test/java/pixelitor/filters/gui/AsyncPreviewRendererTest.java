@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.gui;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.layers.Drawable;
+
+import javax.swing.*;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pixelitor.FilterContext.PREVIEWING;
+
+@DisplayName("AsyncPreviewRenderer tests")
+class AsyncPreviewRendererTest {
+    private Drawable dr;
+    private TestFilter filter;
+    private JPanel busyCursorParent;
+
+    // the values of the renders that reached the filter
+    private static final List<Integer> renderedValues = new CopyOnWriteArrayList<>();
+    // the values of the results that were shown, and whether on the EDT
+    private final List<Integer> shownValues = new CopyOnWriteArrayList<>();
+    private final List<Boolean> shownOnEDT = new CopyOnWriteArrayList<>();
+
+    private static volatile CountDownLatch blockedRenderStarted;
+    private static volatile CountDownLatch blockedRenderReleased;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        renderedValues.clear();
+        blockedRenderStarted = new CountDownLatch(1);
+        blockedRenderReleased = new CountDownLatch(1);
+
+        dr = mock(Drawable.class);
+        when(dr.getFilterSourceImage()).thenReturn(new BufferedImage(10, 10, TYPE_INT_ARGB));
+        doAnswer(invocation -> {
+            BufferedImage result = invocation.getArgument(0);
+            shownValues.add(result.getRGB(0, 0) & 0xFF);
+            shownOnEDT.add(EventQueue.isDispatchThread());
+            return null;
+        }).when(dr).changePreviewImage(any(), anyString(), eq(PREVIEWING));
+
+        filter = new TestFilter();
+        busyCursorParent = new JPanel();
+    }
+
+    @AfterEach
+    void afterEachTest() throws Exception {
+        blockedRenderReleased.countDown();
+        onEDT(() -> AsyncPreviewRenderer.cancelPreview(dr));
+    }
+
+    @Test
+    void newerSettingsReplaceTheStaleRenders() throws Exception {
+        changeSettings(TestFilter.BLOCKING_VALUE);
+        assertThat(blockedRenderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // queued while the first render is running, and replaced before it starts
+        changeSettings(20);
+        changeSettings(30);
+
+        blockedRenderReleased.countDown();
+        verify(dr, timeout(5000)).changePreviewImage(any(), anyString(), eq(PREVIEWING));
+
+        // the replaced render didn't run, and the result of
+        // the running one (finished before the last one) was ignored
+        assertThat(renderedValues).containsExactly(TestFilter.BLOCKING_VALUE, 30);
+        assertThat(shownValues).containsExactly(30);
+        assertThat(shownOnEDT).containsExactly(true);
+    }
+
+    @Test
+    void canceledPreviewIgnoresTheRunningRender() throws Exception {
+        changeSettings(TestFilter.BLOCKING_VALUE);
+        assertThat(blockedRenderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        onEDT(() -> AsyncPreviewRenderer.cancelPreview(dr));
+        blockedRenderReleased.countDown();
+
+        verify(dr, after(300).never()).changePreviewImage(any(), anyString(), any());
+        assertThat(renderedValues).containsExactly(TestFilter.BLOCKING_VALUE);
+    }
+
+    private void changeSettings(int value) throws Exception {
+        onEDT(() -> {
+            filter.value.setValueNoTrigger(value);
+            AsyncPreviewRenderer.settingsChanged(dr, filter, false, busyCursorParent);
+        });
+    }
+
+    private static void onEDT(Runnable task) throws Exception {
+        EventQueue.invokeAndWait(task);
+    }
+
+    /**
+     * Fills the image with a gray value given by its setting, and
+     * blocks while rendering with a special value, until it's released.
+     */
+    public static class TestFilter extends ParametrizedFilter {
+        static final int BLOCKING_VALUE = 10;
+
+        private final RangeParam value = new RangeParam("Value", 0, 0, 255);
+
+        public TestFilter() {
+            super(false);
+
+            // the second param is needed for the preset support,
+            // without which the filter can't be rendered asynchronously
+            setParams(value, new RangeParam("Unused", 0, 0, 100));
+        }
+
+        @Override
+        public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+            int gray = value.getValue();
+            renderedValues.add(gray);
+            if (gray == BLOCKING_VALUE) {
+                blockedRenderStarted.countDown();
+                try {
+                    blockedRenderReleased.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int rgb = 0xFF_00_00_00 | gray << 16 | gray << 8 | gray;
+            for (int y = 0; y < dest.getHeight(); y++) {
+                for (int x = 0; x < dest.getWidth(); x++) {
+                    dest.setRGB(x, y, rgb);
+                }
+            }
+            return dest;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("CompositeHistograms tests")
+class CompositeHistogramsTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void localChangesAreCountedIncrementally() throws Exception {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        fill(image, new Rectangle(0, 0, WIDTH, HEIGHT), Color.RED);
+        CompositeHistograms histograms = new CompositeHistograms();
+
+        int[][] counts = calculateOnEDT(histograms, image);
+        assertThat(counts[0][255]).isEqualTo(WIDTH * HEIGHT);
+        assertThat(counts[1][0]).isEqualTo(WIDTH * HEIGHT);
+        assertThat(histograms.getNumDirtyTiles()).isZero();
+
+        Rectangle changed = new Rectangle(520, 10, 20, 10);
+        fill(image, changed, Color.BLUE);
+        onEDT(() -> histograms.invalidateRegion(changed));
+        // only one of the 3x2 tiles is recalculated
+        onEDT(() -> assertThat(histograms.getNumDirtyTiles()).isEqualTo(1));
+
+        counts = calculateOnEDT(histograms, image);
+        assertThat(counts[0][255]).isEqualTo(WIDTH * HEIGHT - 200);
+        assertThat(counts[0][0]).isEqualTo(200);
+        assertThat(counts[2][255]).isEqualTo(200);
+    }
+
+    @Test
+    void transparentPixelsAreIgnored() throws Exception {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        fill(image, new Rectangle(0, 0, 10, 10), Color.GREEN);
+
+        int[][] counts = calculateOnEDT(new CompositeHistograms(), image);
+        assertThat(counts[1][255]).isEqualTo(100);
+        assertThat(counts[1][0]).isEqualTo(0);
+    }
+
+    private static int[][] calculateOnEDT(CompositeHistograms histograms,
+                                          BufferedImage image) throws Exception {
+        CompletableFuture<int[][]>[] future = new CompletableFuture[1];
+        onEDT(() -> future[0] = histograms.calculate(image));
+        return future[0].get();
+    }
+
+    private static void onEDT(Runnable task) throws InterruptedException, InvocationTargetException {
+        EventQueue.invokeAndWait(task);
+    }
+
+    private static void fill(BufferedImage img, Rectangle rect, Color color) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fill(rect);
+        g.dispose();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageBackupTest {
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_INT_ARGB_PRE, TYPE_INT_RGB, TYPE_BYTE_GRAY})
+    void compressedAndSpilledBackupsAreRestored(int imageType) {
+        // not a multiple of the tile size
+        BufferedImage orig = new BufferedImage(150, 70, imageType);
+        var random = new Random(42);
+        for (int y = 0; y < orig.getHeight(); y++) {
+            for (int x = 0; x < orig.getWidth(); x++) {
+                orig.setRGB(x, y, x < 100 ? random.nextInt() : 0xFF_00_80_FF);
+            }
+        }
+        BufferedImage copy = new BufferedImage(orig.getColorModel(),
+            orig.copyData(null), orig.isAlphaPremultiplied(), null);
+
+        var backup = new ImageBackup(copy);
+        assertThat(backup.isRaw()).isTrue();
+
+        backup.compress();
+        assertThat(backup.isCompressed()).isTrue();
+        assertThat(backup.getCompressedBytes()).isLessThan(backup.getRawBytes());
+        assertSameImage(backup.getImage(), orig);
+
+        backup.spill();
+        assertThat(backup.isSpilled()).isTrue();
+        assertThat(backup.getCompressedBytes()).isZero();
+
+        BufferedImage restored = backup.take();
+        assertSameImage(restored, orig);
+        assertThat(backup.getImage()).isNull();
+    }
+
+    private static void assertSameImage(BufferedImage actual, BufferedImage expected) {
+        assertThat(actual.getType()).isEqualTo(expected.getType());
+        assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+        assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertThat(actual.getRGB(x, y)).isEqualTo(expected.getRGB(x, y));
+            }
+        }
+    }
+}
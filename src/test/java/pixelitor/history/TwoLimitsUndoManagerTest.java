@@ -22,8 +22,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pixelitor.TestHelper;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -102,6 +110,83 @@ class TwoLimitsUndoManagerTest {
 
     }
 
+    @Test
+    void trimmingForMemoryBudget() {
+        int prevBudget = HistoryMemory.getBudgetMb();
+        HistoryMemory.setBudgetMb(1);
+        try {
+            var manager = new TwoLimitsUndoManager(100, 100);
+            List<ImageBackup> backups = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                ImageBackup backup = createNoiseBackup(i);
+                backups.add(backup);
+                manager.addEdit(createMockEdit(backup));
+            }
+
+            // each raw backup is 256 kB, and the noise doesn't compress well
+            assertThat(manager.getHeavyEditsCount()).isBetween(1, 9);
+            assertThat(inMemoryBytes(backups)).isLessThanOrEqualTo(1024 * 1024);
+            // the newest edit is kept uncompressed
+            assertThat(backups.get(9).isRaw()).isTrue();
+        } finally {
+            HistoryMemory.setBudgetMb(prevBudget);
+        }
+    }
+
+    @Test
+    void spillingForMemoryBudget() {
+        int prevBudget = HistoryMemory.getBudgetMb();
+        HistoryMemory.setBudgetMb(1);
+        HistoryMemory.setSpillToDisk(true);
+        try {
+            var manager = new TwoLimitsUndoManager(100, 100);
+            List<ImageBackup> backups = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                ImageBackup backup = createNoiseBackup(i);
+                backups.add(backup);
+                manager.addEdit(createMockEdit(backup));
+            }
+
+            // nothing is trimmed, the old backups are moved to disk
+            assertThat(manager.getHeavyEditsCount()).isEqualTo(10);
+            assertThat(inMemoryBytes(backups)).isLessThanOrEqualTo(1024 * 1024);
+            assertThat(backups.get(0).isSpilled()).isTrue();
+
+            manager.discardAllEdits();
+        } finally {
+            HistoryMemory.setSpillToDisk(false);
+            HistoryMemory.setBudgetMb(prevBudget);
+        }
+    }
+
+    private static ImageBackup createNoiseBackup(int seed) {
+        BufferedImage img = new BufferedImage(256, 256, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        var random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return new ImageBackup(img);
+    }
+
+    private static long inMemoryBytes(List<ImageBackup> backups) {
+        long sum = 0;
+        for (ImageBackup backup : backups) {
+            sum += backup.isRaw() ? backup.getRawBytes() : backup.getCompressedBytes();
+        }
+        return sum;
+    }
+
+    // a heavy edit that disposes its backup when it's trimmed
+    private static PixelitorEdit createMockEdit(ImageBackup backup) {
+        PixelitorEdit edit = createMockEdit(true);
+        doAnswer(invocation -> {
+            backup.dispose();
+            return null;
+        }).when(edit).die();
+        return edit;
+    }
+
     private void fillUpUM(int he, int le) {
         for (int i = 0; i < he; i++) {
             undoManager.addEdit(createMockEdit(true));
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pd.GifDecoder;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.filters.Invert;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Layer animation tests")
+class LayerAnimationTest {
+    private static final Color[] LAYER_COLORS = {Color.RED, Color.GREEN, Color.BLUE};
+
+    private Composition comp;
+
+    @TempDir
+    File tempDir;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createComp(LAYER_COLORS.length, false);
+        for (int i = 0; i < LAYER_COLORS.length; i++) {
+            ImageLayer layer = (ImageLayer) comp.getLayer(i);
+            Graphics2D g = layer.getImageForWriting().createGraphics();
+            g.setColor(LAYER_COLORS[i]);
+            g.fillRect(0, 0, comp.getCanvasWidth(), comp.getCanvasHeight());
+            g.dispose();
+        }
+    }
+
+    @Test
+    void framesFollowTheLayers() {
+        var animation = new LayerAnimation(comp, 100, false, false);
+
+        assertThat(animation.getNumFrames()).isEqualTo(3);
+        assertThat(frameColors(animation)).containsExactly(
+            Color.RED.getRGB(), Color.GREEN.getRGB(), Color.BLUE.getRGB());
+    }
+
+    @Test
+    void pingPongRepeatsTheMiddleLayers() {
+        var animation = new LayerAnimation(comp, 100, true, false);
+
+        assertThat(animation.getNumFrames()).isEqualTo(4);
+        assertThat(frameColors(animation)).containsExactly(
+            Color.RED.getRGB(), Color.GREEN.getRGB(),
+            Color.BLUE.getRGB(), Color.GREEN.getRGB());
+    }
+
+    @Test
+    void adjustmentLayersAreSkipped() throws IOException {
+        comp.addLayerNoUI(TestHelper.createAdjustmentLayer(comp, "Invert", new Invert()));
+        var animation = new LayerAnimation(comp, 100, true, false);
+
+        assertThat(animation.getNumFrames()).isEqualTo(4);
+        assertThat(frameColors(animation)).containsExactly(
+            Color.RED.getRGB(), Color.GREEN.getRGB(),
+            Color.BLUE.getRGB(), Color.GREEN.getRGB());
+
+        File file = new File(tempDir, "adjusted.gif");
+        new LayerAnimation(comp, 100, true, true).export(file);
+        try (InputStream in = new FileInputStream(file)) {
+            assertThat(GifDecoder.read(in).getFrameCount()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void savedWithGlobalPalette() throws IOException {
+        File file = new File(tempDir, "anim.gif");
+        new LayerAnimation(comp, 100, true, true).export(file);
+
+        GifDecoder.GifImage gif;
+        try (InputStream in = new FileInputStream(file)) {
+            gif = GifDecoder.read(in);
+        }
+        assertThat(gif.getFrameCount()).isEqualTo(4);
+        // the palette is quantized, so the colors are only approximately the same
+        Color thirdFrameColor = new Color(gif.getFrame(2).getRGB(0, 0));
+        assertThat(thirdFrameColor.getBlue()).isGreaterThan(245);
+        assertThat(thirdFrameColor.getRed() + thirdFrameColor.getGreen()).isLessThan(10);
+    }
+
+    private static List<Integer> frameColors(LayerAnimation animation) {
+        List<Integer> colors = new ArrayList<>();
+        animation.frames().forEachRemaining(frame -> colors.add(frame.getRGB(0, 0)));
+        return colors;
+    }
+}
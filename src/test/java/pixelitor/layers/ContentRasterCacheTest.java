@@ -0,0 +1,263 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.jdesktop.swingx.painter.AbstractLayoutPainter.HorizontalAlignment;
+import org.jdesktop.swingx.painter.AbstractLayoutPainter.VerticalAlignment;
+import org.jdesktop.swingx.painter.effects.GlowPathEffect;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.Composition;
+import pixelitor.CopyType;
+import pixelitor.TestHelper;
+import pixelitor.filters.painters.AreaEffects;
+import pixelitor.filters.painters.TextSettings;
+import pixelitor.filters.painters.TransformedTextPainter;
+import pixelitor.gui.View;
+import pixelitor.tools.Tools;
+import pixelitor.tools.gui.ToolButton;
+import pixelitor.tools.shapes.ShapeType;
+import pixelitor.tools.shapes.StyledShape;
+import pixelitor.tools.util.Drag;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.Mockito.mock;
+import static pixelitor.utils.ImageUtils.getPixelArray;
+
+@DisplayName("content raster cache tests")
+class ContentRasterCacheTest {
+    // the maximal difference of a channel value between the cached and
+    // the direct painting: the cached layer is flattened before its
+    // blending mode and opacity are applied, which rounds differently
+    // at the antialiased edges
+    private static final int MAX_ROUNDING_ERROR = 2;
+
+    private Composition comp;
+
+    @BeforeAll
+    static void beforeAllTests() throws InvocationTargetException, InterruptedException {
+        TestHelper.setUnitTestingMode();
+        Tools.SHAPES.setButton(mock(ToolButton.class));
+        // the settings panel selects the foreground fill
+        TestHelper.initTool(Tools.SHAPES);
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createEmptyComp(120, 60, true);
+    }
+
+    @Test
+    void textChangeInvalidates() {
+        TextLayer layer = createTextLayer();
+        BufferedImage before = render(layer);
+
+        // the same settings object, modified
+        TextSettings settings = layer.getSettings();
+        settings.setText("Changed");
+        layer.applySettings(settings);
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void textColorChangeInvalidates() {
+        TextLayer layer = createTextLayer();
+        BufferedImage before = render(layer);
+
+        layer.getSettings().setColor(Color.BLUE);
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void textEffectsChangeInvalidates() {
+        TextLayer layer = createTextLayer();
+        BufferedImage before = render(layer);
+
+        AreaEffects effects = new AreaEffects();
+        GlowPathEffect glow = new GlowPathEffect(1.0f);
+        glow.setBrushColor(Color.GREEN);
+        effects.setGlow(glow);
+        TextSettings old = layer.getSettings();
+        layer.applySettings(new TextSettings(old.getText(), old.getFont(), old.getColor(),
+            effects, old.getHorizontalAlignment(), old.getVerticalAlignment(),
+            false, 0, null));
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void textTranslationInvalidates() {
+        TextLayer layer = createTextLayer();
+        BufferedImage before = render(layer);
+
+        layer.setTranslation(7, -5);
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void shapeTransformInvalidates() {
+        ShapesLayer layer = createShapesLayer();
+        BufferedImage before = render(layer);
+
+        layer.getStyledShape().imTransform(AffineTransform.getTranslateInstance(6, 3));
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void newShapeInvalidates() {
+        ShapesLayer layer = createShapesLayer();
+        BufferedImage before = render(layer);
+
+        Tools.SHAPES.setSelectedType(ShapeType.ELLIPSE);
+        StyledShape ellipse = new StyledShape(Tools.SHAPES);
+        Drag drag = new Drag(20, 10, 70, 40);
+        drag.calcCoCoords(comp.getView());
+        ellipse.updateFromDrag(drag, false, false);
+        layer.setStyledShape(ellipse);
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @Test
+    void shapeDragInvalidates() {
+        ShapesLayer layer = createShapesLayer();
+        BufferedImage before = render(layer);
+
+        // the listener is notified during the initial drag
+        Drag drag = new Drag(5, 5, 60, 30);
+        drag.calcCoCoords(comp.getView());
+        layer.getStyledShape().updateFromDrag(drag, false, false);
+
+        assertChangedAndUpToDate(before, render(layer), renderUncached(layer));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = BlendingMode.class, names = {"NORMAL", "MULTIPLY", "SCREEN", "DARKEN", "LIGHTEN"})
+    void cachedTextIsCloseToDirectPainting(BlendingMode mode) {
+        TextLayer layer = createTextLayer();
+        layer.setBlendingMode(mode);
+        layer.setOpacity(0.7f);
+        BufferedImage background = createBackground();
+
+        BufferedImage cached = ImageUtils.copyImage(background);
+        Graphics2D g = cached.createGraphics();
+        layer.applyLayer(g, cached, false);
+        g.dispose();
+
+        // paint the text directly with the layer composite, as without a cache
+        BufferedImage direct = ImageUtils.copyImage(background);
+        TransformedTextPainter painter = new TransformedTextPainter();
+        TextSettings settings = layer.getSettings();
+        settings.configurePainter(painter);
+        painter.setTranslation(layer.getTx(), layer.getTy());
+        painter.setFillPaint(settings.getColor());
+        Graphics2D directG = direct.createGraphics();
+        directG.setComposite(mode.getComposite(0.7f));
+        painter.paint(directG, null, comp.getCanvasWidth(), comp.getCanvasHeight());
+        directG.dispose();
+
+        int[] cachedPixels = getPixelArray(cached);
+        int[] directPixels = getPixelArray(direct);
+        int maxDiff = 0;
+        for (int i = 0; i < cachedPixels.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int diff = Math.abs(((cachedPixels[i] >>> shift) & 0xFF)
+                    - ((directPixels[i] >>> shift) & 0xFF));
+                maxDiff = Math.max(maxDiff, diff);
+            }
+        }
+        assertThat(maxDiff).isLessThanOrEqualTo(MAX_ROUNDING_ERROR);
+    }
+
+    private static void assertChangedAndUpToDate(BufferedImage before,
+                                                 BufferedImage after,
+                                                 BufferedImage expected) {
+        assertThat(getPixelArray(after)).isNotEqualTo(getPixelArray(before));
+        assertArrayEquals(getPixelArray(expected), getPixelArray(after));
+    }
+
+    private TextLayer createTextLayer() {
+        var settings = new TextSettings("Cache", new Font(Font.SANS_SERIF, Font.BOLD, 12),
+            Color.RED, new AreaEffects(),
+            HorizontalAlignment.CENTER, VerticalAlignment.CENTER,
+            false, 0, null);
+        var layer = new TextLayer(comp, "text", settings);
+        comp.addLayerNoUI(layer);
+        return layer;
+    }
+
+    private ShapesLayer createShapesLayer() {
+        ShapesLayer layer = TestHelper.createEmptyShapesLayer(comp, "shapes");
+        comp.addLayerNoUI(layer);
+        View view = comp.getView();
+        Tools.SHAPES.setSelectedType(ShapeType.RECTANGLE);
+
+        StyledShape styledShape = new StyledShape(Tools.SHAPES);
+        layer.setStyledShape(styledShape);
+        Drag drag = new Drag(10, 10, 50, 45);
+        drag.calcCoCoords(view);
+        styledShape.updateFromDrag(drag, false, false);
+        layer.setTransformBox(styledShape.createBox(view));
+        return layer;
+    }
+
+    // renders the layer through its raster cache
+    private BufferedImage render(Layer layer) {
+        BufferedImage img = new BufferedImage(comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB_PRE);
+        ImageUtils.calculateCompositeRegion(List.of(layer), img,
+            new Rectangle(0, 0, comp.getCanvasWidth(), comp.getCanvasHeight()));
+        return img;
+    }
+
+    // renders a copy of the layer, which starts with an empty cache
+    private BufferedImage renderUncached(Layer layer) {
+        Layer copy = layer.copy(CopyType.DUPLICATE_LAYER, false, comp);
+        return render(copy);
+    }
+
+    private BufferedImage createBackground() {
+        BufferedImage img = new BufferedImage(comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.YELLOW,
+            comp.getCanvasWidth(), comp.getCanvasHeight(), new Color(0, 80, 200)));
+        g.fillRect(0, 0, comp.getCanvasWidth(), comp.getCanvasHeight());
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ImageCacheManager tests")
+class ImageCacheManagerTest {
+    // a 512x512 ARGB image needs exactly 1 MB
+    private static final int SIZE = 512;
+
+    private int origBudgetMb;
+
+    @BeforeEach
+    void beforeEachTest() {
+        origBudgetMb = ImageCacheManager.getBudgetMb();
+
+        // evict the images cached by the previous tests
+        ImageCacheManager.setBudgetMb(0);
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        ImageCacheManager.setBudgetMb(origBudgetMb);
+    }
+
+    @Test
+    void cheapImagesAreEvictedFirst() {
+        ImageCacheManager.setBudgetMb(2);
+
+        var expensive = new CachedImage();
+        var cheap = new CachedImage();
+        expensive.set(createImage(), 1_000_000_000L);
+        cheap.set(createImage(), 1_000L);
+
+        var newest = new CachedImage();
+        newest.set(createImage(), 1_000L);
+
+        assertThat(cheap.isEmpty()).isTrue();
+        assertThat(expensive.isEmpty()).isFalse();
+        assertThat(newest.isEmpty()).isFalse();
+        assertThat(ImageCacheManager.getUsedBytes()).isLessThanOrEqualTo(2 * 1024 * 1024);
+    }
+
+    @Test
+    void sharedImagesAreCountedOnce() {
+        ImageCacheManager.setBudgetMb(2);
+
+        var first = new CachedImage();
+        first.set(createImage(), 1_000L);
+        var second = new CachedImage();
+        second.shareFrom(first);
+        var third = new CachedImage();
+        third.set(createImage(), 1_000L);
+
+        // two distinct images fit into the budget
+        assertThat(first.peek()).isSameAs(second.peek());
+        assertThat(first.isEmpty()).isFalse();
+        assertThat(third.isEmpty()).isFalse();
+    }
+
+    @Test
+    void evictedImagesAreRecalculated() {
+        ImageCacheManager.setBudgetMb(1);
+
+        var first = new CachedImage();
+        BufferedImage firstImage = first.get(ImageCacheManagerTest::createImage);
+        assertThat(first.get(ImageCacheManagerTest::createImage)).isSameAs(firstImage);
+
+        var second = new CachedImage();
+        second.get(ImageCacheManagerTest::createImage);
+        assertThat(first.isEmpty()).isTrue();
+
+        long missesBefore = ImageCacheManager.getStats().misses();
+        BufferedImage recalculated = first.get(ImageCacheManagerTest::createImage);
+        assertThat(recalculated).isNotNull().isNotSameAs(firstImage);
+        assertThat(ImageCacheManager.getStats().misses()).isGreaterThan(missesBefore);
+    }
+
+    private static BufferedImage createImage() {
+        return new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+    }
+}
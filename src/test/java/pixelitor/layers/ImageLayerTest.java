@@ -39,6 +39,7 @@ import java.util.Arrays;
 import java.util.Collection;
 
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -535,7 +536,7 @@ public class ImageLayerTest {
             .opacityIs(layer.getOpacity());
 
         BufferedImage image = layer.getImage();
-        BufferedImage duplicateImage = duplicate.getImage();
+        BufferedImage duplicateImage = duplicate.getImageForWriting();
         assertNotSame(duplicateImage, image);
         assertThat(image)
             .widthIs(duplicateImage.getWidth())
@@ -544,6 +545,51 @@ public class ImageLayerTest {
         iconUpdates.check(0, 0);
     }
 
+    @Test
+    public void copiesShareTheImageUntilModified() {
+        ImageLayer copy = (ImageLayer) layer.copy(CopyType.UNDO, true, comp);
+        assertThat(copy.isImageShared()).isTrue();
+        assertThat(layer.isImageShared()).isTrue();
+        if (withMask.isTrue()) {
+            assertThat(copy.getMask().isImageShared()).isTrue();
+        }
+
+        // reading the image and creating the icon don't copy it
+        BufferedImage origImage = layer.getImage();
+        assertSame(origImage, copy.getImage());
+        if (!withSelection.isTrue()) {
+            assertSame(origImage, copy.getFilterSourceImage());
+        }
+        copy.createIconThumbnail();
+        assertThat(copy.isImageShared()).isTrue();
+
+        int origRGB = origImage.getRGB(0, 0);
+        BufferedImage copyImage = copy.getImageForWriting();
+        assertNotSame(origImage, copyImage);
+        assertThat(copy.isImageShared()).isFalse();
+        copyImage.setRGB(0, 0, origRGB ^ 0xFF_FF_FF_FF);
+
+        // the copy was the only other user of the original image
+        assertThat(layer.isImageShared()).isFalse();
+        assertThat(layer.getImage().getRGB(0, 0)).isEqualTo(origRGB);
+        assertSame(origImage, layer.getImageForWriting());
+    }
+
+    @Test
+    public void theLastCopyStopsSharing() {
+        ImageLayer copy1 = (ImageLayer) layer.copy(CopyType.UNDO, true, comp);
+        ImageLayer copy2 = (ImageLayer) layer.copy(CopyType.UNDO, true, comp);
+
+        copy1.getImageForWriting();
+        assertThat(copy1.isImageShared()).isFalse();
+        assertThat(copy2.isImageShared()).isTrue();
+        assertThat(layer.isImageShared()).isTrue();
+
+        copy2.getImageForWriting();
+        assertThat(copy2.isImageShared()).isFalse();
+        assertThat(layer.isImageShared()).isFalse();
+    }
+
     @Test
     public void applyLayerMask() {
         if (withMask.isTrue()) {
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+
+import java.awt.Rectangle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("masked image cache tests")
+class MaskedImageCacheTest {
+    private Composition comp;
+    private ImageLayer layer;
+    private ImageLayer otherLayer;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createComp(2, true);
+        otherLayer = (ImageLayer) comp.getLayer(0);
+        layer = (ImageLayer) comp.getLayer(1);
+
+        recalculateComposite();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+        assertThat(otherLayer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void maskEditInvalidates() {
+        layer.getMask().getImageForWriting();
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+        assertThat(otherLayer.hasValidMaskedImage()).isTrue();
+
+        recalculateComposite();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void pixelEditInvalidates() {
+        layer.getImageForWriting();
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+        assertThat(otherLayer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void regionEditIsRepainted() {
+        layer.invalidateMaskedImage(new Rectangle(2, 2, 5, 5));
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+
+        recalculateComposite();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void translationInvalidates() {
+        layer.setTranslation(-2, -1);
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+        recalculateComposite();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+
+        layer.getMask().setTranslation(-1, 0);
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+        assertThat(otherLayer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void otherLayerUpdateDoesNotInvalidate() {
+        otherLayer.update();
+        assertThat(otherLayer.hasValidMaskedImage()).isFalse();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+
+        comp.update();
+        assertThat(layer.hasValidMaskedImage()).isTrue();
+    }
+
+    @Test
+    void disablingTheMaskReleasesTheCache() {
+        layer.setMaskEnabled(false, false);
+        assertThat(layer.hasValidMaskedImage()).isFalse();
+        assertThat(otherLayer.hasValidMaskedImage()).isTrue();
+    }
+
+    private void recalculateComposite() {
+        comp.invalidateImageCache();
+        comp.getCompositeImage();
+    }
+}
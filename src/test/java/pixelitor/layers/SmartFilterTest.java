@@ -17,14 +17,29 @@
 
 package pixelitor.layers;
 
+import com.jhlabs.image.GaussianFilter;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import pixelitor.Composition;
 import pixelitor.TestHelper;
 import pixelitor.filters.Filter;
+import pixelitor.filters.jhlabsproxies.JHGaussianBlur;
+import pixelitor.gui.GUIText;
 import pixelitor.history.History;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.MockFilter;
+import pixelitor.utils.debug.DebugNode;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
 import static pixelitor.assertions.PixelitorAssertions.assertThat;
 
@@ -165,6 +180,52 @@ class SmartFilterTest {
         assertThat(smartObject).hasNumSmartFilters(3);
     }
 
+    @Test
+    void invalidateRegionWithUnboundedFootprint() {
+        // the mock filters don't declare their footprint,
+        // so a local change invalidates the whole chain
+        first.invalidateChain(new Rectangle(0, 0, 1, 1));
+
+        checkCaches(false, false, false);
+    }
+
+    @ParameterizedTest
+    @EnumSource(GaussianFilter.Mode.class)
+    void regionalBlurMatchesFullBlur(GaussianFilter.Mode mode) {
+        var blur = new JHGaussianBlur();
+        blur.set(GUIText.RADIUS, "12");
+        blur.set("Mode", mode.toString());
+
+        BufferedImage[] input = {createNoiseImage(80, 60)};
+        var source = new ImageSource() {
+            @Override
+            public BufferedImage getImage() {
+                return input[0];
+            }
+
+            @Override
+            public DebugNode createDebugNode(String key) {
+                return new DebugNode(key, this);
+            }
+        };
+        var smartFilter = new SmartFilter(blur, source, smartObject);
+        smartFilter.getImage(); // cache the full result
+
+        // change a region of the input
+        Rectangle changed = new Rectangle(30, 20, 8, 6);
+        input[0] = ImageUtils.copyImage(input[0]);
+        Graphics2D g = input[0].createGraphics();
+        g.setColor(Color.RED);
+        g.fill(changed);
+        g.dispose();
+        smartFilter.invalidateChain(changed);
+
+        BufferedImage regional = smartFilter.getImage();
+        BufferedImage full = blur.transformImage(input[0]);
+
+        assertArrayEquals(ImageUtils.getPixelArray(full), ImageUtils.getPixelArray(regional));
+    }
+
     @Test
     void hideFirst() {
         first.setVisible(false, true, true);
@@ -562,6 +623,16 @@ class SmartFilterTest {
         forceRecalculatingImage();
     }
 
+    private static BufferedImage createNoiseImage(int width, int height) {
+        var img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(img);
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return img;
+    }
+
     private void forceRecalculatingImage() {
         smartObject.getVisibleImage();
     }
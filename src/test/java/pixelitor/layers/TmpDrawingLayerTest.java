@@ -0,0 +1,226 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.filters.gui.UserPreset;
+import pixelitor.gui.View;
+import pixelitor.tools.brushes.ConnectBrush;
+import pixelitor.tools.brushes.ConnectBrushSettings;
+import pixelitor.tools.util.PPoint;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@DisplayName("temporary drawing layer tests")
+class TmpDrawingLayerTest {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 400;
+
+    // two brush dabs, in canvas coordinates
+    private static final Rectangle DAB_1 = new Rectangle(40, 50, 60, 60);
+    private static final Rectangle DAB_2 = new Rectangle(300, 200, 80, 50);
+
+    private Composition comp;
+    private ImageLayer background;
+    private ImageLayer layer;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        comp = TestHelper.createEmptyComp(WIDTH, HEIGHT, false);
+        Random random = new Random(42);
+        background = TestHelper.createImageLayer(comp, createRandomImage(random), "background");
+        layer = TestHelper.createImageLayer(comp, createRandomImage(random), "layer");
+        layer.setBlendingMode(BlendingMode.MULTIPLY);
+    }
+
+    @Test
+    void mergingDownTheChangedRegion() {
+        Composite brushComposite = BlendingMode.SCREEN.getComposite(0.8f);
+        BufferedImage expected = ImageUtils.copyImage(layer.getImage());
+
+        TmpDrawingLayer tmpLayer = layer.createTmpDrawingLayer(brushComposite, false);
+        paintStroke(tmpLayer.getGraphics());
+        tmpLayer.regionChanged(DAB_1);
+        tmpLayer.regionChanged(DAB_2);
+        layer.mergeTmpDrawingLayerDown();
+
+        // the same stroke merged with the whole image, as before
+        BufferedImage fullTmpImage = comp.getCanvas().createTmpImage();
+        paintStroke(fullTmpImage.createGraphics());
+        Graphics2D g = expected.createGraphics();
+        g.setComposite(brushComposite);
+        g.drawImage(fullTmpImage, 0, 0, null);
+        g.dispose();
+
+        assertArrayEquals(ImageUtils.getPixelArray(expected),
+            ImageUtils.getPixelArray(layer.getImage()));
+    }
+
+    @Test
+    void paintingInRegionsDuringTheStroke() {
+        TmpDrawingLayer tmpLayer = layer.createTmpDrawingLayer(
+            BlendingMode.SCREEN.getComposite(1.0f), false);
+        paintStroke(tmpLayer.getGraphics());
+        tmpLayer.regionChanged(DAB_1);
+        tmpLayer.regionChanged(DAB_2);
+
+        List<Layer> layers = List.of(background, layer);
+
+        // the clip covers the whole canvas, so the whole layer is merged
+        BufferedImage full = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+        ImageUtils.calculateCompositeRegion(layers, full, new Rectangle(0, 0, WIDTH, HEIGHT));
+
+        // tile-sized regions, as during the recompositing of the dirty tiles
+        BufferedImage tiled = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE);
+        for (int y = 0; y < HEIGHT; y += 128) {
+            for (int x = 0; x < WIDTH; x += 128) {
+                ImageUtils.calculateCompositeRegion(layers, tiled, new Rectangle(x, y, 128, 128));
+            }
+        }
+
+        assertArrayEquals(ImageUtils.getPixelArray(full),
+            ImageUtils.getPixelArray(tiled));
+        layer.mergeTmpDrawingLayerDown();
+    }
+
+    @Test
+    void reusedSpareImageIsCleared() {
+        Composite normal = AlphaComposite.SrcOver;
+
+        TmpDrawingLayer firstTmpLayer = layer.createTmpDrawingLayer(normal, false);
+        BufferedImage firstImage = firstTmpLayer.getImage();
+        paintStroke(firstTmpLayer.getGraphics());
+        firstTmpLayer.regionChanged(DAB_1);
+        firstTmpLayer.regionChanged(DAB_2);
+        layer.mergeTmpDrawingLayerDown();
+
+        TmpDrawingLayer secondTmpLayer = layer.createTmpDrawingLayer(normal, false);
+        BufferedImage secondImage = secondTmpLayer.getImage();
+        Rectangle newDab = new Rectangle(200, 20, 30, 30);
+        Graphics2D g = secondTmpLayer.getGraphics();
+        g.setColor(Color.BLUE);
+        g.fill(newDab);
+        secondTmpLayer.regionChanged(newDab);
+
+        // the image of the first stroke is reused, but only the new dab is in it
+        assertThat(secondImage).isSameAs(firstImage);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int alpha = secondImage.getRGB(x, y) >>> 24;
+                if (newDab.contains(x, y)) {
+                    assertThat(alpha).isEqualTo(0xFF);
+                } else {
+                    assertThat(alpha).as("alpha at %d, %d", x, y).isZero();
+                }
+            }
+        }
+        layer.mergeTmpDrawingLayerDown();
+    }
+
+    @Test
+    void connectBrushStrokesInBlendingMode() {
+        View view = TestHelper.setupMockViewFor(comp);
+
+        // the fur style extends the connecting lines beyond the brush diameter
+        ConnectBrushSettings settings = new ConnectBrushSettings();
+        UserPreset preset = new UserPreset("fur");
+        preset.put("Length", "Fur");
+        preset.put("Line Density (%)", "100");
+        settings.loadStateFrom(preset);
+        ConnectBrush brush = new ConnectBrush(settings, 20);
+        ConnectBrush.deleteHistory();
+
+        // the lines of the second stroke connect to the points
+        // of the first one, outside the second stroke's dabs
+        Composite brushComposite = BlendingMode.SCREEN.getComposite(0.8f);
+        drawConnectStrokeAndCheckMerge(brush, view, brushComposite, 100);
+        drawConnectStrokeAndCheckMerge(brush, view, brushComposite, 135);
+
+        brush.dispose();
+    }
+
+    private void drawConnectStrokeAndCheckMerge(ConnectBrush brush, View view,
+                                                Composite brushComposite, int y) {
+        BufferedImage expected = ImageUtils.copyImage(layer.getImage());
+        TmpDrawingLayer tmpLayer = layer.createTmpDrawingLayer(brushComposite, false);
+
+        // nothing is left from the previous strokes
+        for (int pixel : ImageUtils.getPixelArray(tmpLayer.getImage())) {
+            assertThat(pixel >>> 24).isZero();
+        }
+
+        Graphics2D g = tmpLayer.getGraphics();
+        g.setColor(Color.RED);
+        brush.setTarget(layer, g);
+        brush.startAt(PPoint.lazyFromIm(100, y, view));
+        for (int x = 105; x <= 400; x += 5) {
+            brush.continueTo(PPoint.lazyFromIm(x, y, view));
+        }
+        brush.finishBrushStroke();
+
+        BufferedImage stroke = ImageUtils.copyImage(tmpLayer.getImage());
+        layer.mergeTmpDrawingLayerDown();
+
+        // the whole stroke is merged
+        Graphics2D expectedG = expected.createGraphics();
+        expectedG.setComposite(brushComposite);
+        expectedG.drawImage(stroke, 0, 0, null);
+        expectedG.dispose();
+        assertArrayEquals(ImageUtils.getPixelArray(expected),
+            ImageUtils.getPixelArray(layer.getImage()));
+    }
+
+    private static void paintStroke(Graphics2D g) {
+        g.setColor(new Color(255, 128, 0, 200));
+        g.fillOval(DAB_1.x, DAB_1.y, DAB_1.width, DAB_1.height);
+        g.setColor(Color.GREEN);
+        g.fillOval(DAB_2.x, DAB_2.y, DAB_2.width, DAB_2.height);
+    }
+
+    private static BufferedImage createRandomImage(Random random) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixelArray(img);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() | 0xFF_00_00_00;
+        }
+        return img;
+    }
+}
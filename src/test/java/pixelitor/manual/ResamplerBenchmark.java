@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Resampler;
+import pixelitor.utils.Resampler.Kernel;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+
+/**
+ * Compares the speed of the {@link Resampler} kernels with the
+ * Graphics2D-based resizing (progressive bicubic), which
+ * {@link ImageUtils#resize} still uses for mild downscales.
+ * The optional argument is an image file, otherwise a generated
+ * 6000x4000 image is used.
+ */
+public class ResamplerBenchmark {
+    private static final int NUM_RUNS = 5;
+
+    private ResamplerBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedImage src = args.length > 0
+            ? ImageUtils.toSysCompatibleImage(ImageIO.read(new File(args[0])))
+            : createTestImage(6000, 4000);
+        System.out.printf("source: %dx%d%n", src.getWidth(), src.getHeight());
+
+        int[][] targetSizes = {
+            {src.getWidth() / 8, src.getHeight() / 8},
+            {src.getWidth() * 2 / 3, src.getHeight() * 2 / 3},
+            {src.getWidth() * 9 / 10, src.getHeight() * 9 / 10},
+            {src.getWidth() * 3 / 2, src.getHeight() * 3 / 2}};
+
+        for (int[] size : targetSizes) {
+            int width = size[0];
+            int height = size[1];
+            System.out.printf("%ntarget: %dx%d%n", width, height);
+            measure("Graphics2D", () -> ImageUtils.getFasterScaledInstance(
+                src, width, height, VALUE_INTERPOLATION_BICUBIC,
+                width < src.getWidth() / 2 || height < src.getHeight() / 2));
+            for (Kernel kernel : Kernel.values()) {
+                measure(kernel.toString(), () -> Resampler.resize(src, width, height, kernel));
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void measure(String name, Supplier<BufferedImage> task) {
+        task.get(); // warm-up
+        double minSeconds = Double.MAX_VALUE;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            long startTime = System.nanoTime();
+            task.get();
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            minSeconds = Math.min(minSeconds, seconds);
+        }
+        System.out.printf("%-12s min = %.3f s%n", name, minSeconds);
+    }
+
+    private static BufferedImage createTestImage(int width, int height) {
+        BufferedImage img = ImageUtils.createSysCompatibleImage(width, height);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.WHITE);
+        for (int x = 0; x < width; x += 7) {
+            g.drawLine(x, 0, x, height);
+        }
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.jupiter.api.Test;
+import pixelitor.tools.util.PPoint;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AffectedAreaTest {
+    @Test
+    void diagonalStrokeTouchesFewTiles() {
+        var area = new AffectedArea();
+        area.initAt(point(10, 10));
+        area.updateWith(point(5000, 5000));
+
+        double radius = 10;
+        List<Rectangle> tiles = area.asTiles(radius);
+        Rectangle bounds = area.asRectangle(radius);
+
+        long tilesArea = (long) tiles.size() * AffectedArea.TILE_SIZE * AffectedArea.TILE_SIZE;
+        assertThat(tilesArea).isLessThan((long) bounds.width * bounds.height / 20);
+
+        // every pixel within the radius of the stroke is covered
+        for (int i = 0; i <= 5000; i += 7) {
+            for (int offset = -10; offset <= 10; offset++) {
+                int x = i + offset;
+                int y = i - offset;
+                if (bounds.contains(x, y)) {
+                    assertThat(tiles).anyMatch(tile -> tile.contains(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void symmetricPathsAreNotConnected() {
+        var area = new AffectedArea();
+        area.initAt(point(100, 100));
+        area.startPathAt(point(4900, 100), 1);
+        area.updateWith(point(110, 110), 0);
+        area.updateWith(point(4890, 110), 1);
+
+        // connecting the two paths would touch all the tiles in between
+        assertThat(area.asTiles(5)).hasSizeLessThan(10);
+    }
+
+    private static PPoint point(double x, double y) {
+        return new PPoint(x, y, x, y, null);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.Test;
+import pixelitor.ThreadPool;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CancellationTokenTest {
+    @Test
+    void trackerReportsTheTokenOfItsThread() {
+        var token = new CancellationToken();
+        var numRuns = new AtomicInteger();
+
+        CancellationToken.runWith(token, () -> {
+            var pt = new StatusBarProgressTracker("test", 10);
+            assertThat(pt.isCanceled()).isFalse();
+
+            token.cancel();
+            assertThat(pt.isCanceled()).isTrue();
+            assertThatThrownBy(pt::checkCanceled)
+                .isInstanceOf(CancellationException.class);
+            numRuns.incrementAndGet();
+        });
+        assertThat(numRuns.get()).isEqualTo(1);
+
+        // outside the scope of the token
+        assertThat(CancellationToken.current()).isNull();
+        assertThat(new StatusBarProgressTracker("test", 10).isCanceled()).isFalse();
+    }
+
+    @Test
+    void waitForSkipsTheRemainingTasks() {
+        var token = new CancellationToken();
+        var numRun = new AtomicInteger();
+        int numTasks = 1000;
+
+        CancellationToken.runWith(token, () -> {
+            var pt = new StatusBarProgressTracker("test", numTasks);
+            Future<?>[] futures = new Future<?>[numTasks];
+            for (int i = 0; i < numTasks; i++) {
+                futures[i] = ThreadPool.submit(() -> {
+                    if (numRun.incrementAndGet() == 10) {
+                        token.cancel();
+                    }
+                    sleep();
+                });
+            }
+
+            assertThatThrownBy(() -> ThreadPool.waitFor(futures, pt))
+                .isInstanceOf(CancellationException.class);
+        });
+
+        assertThat(numRun.get()).isLessThan(numTasks);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
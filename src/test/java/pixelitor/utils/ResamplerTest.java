@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.TestHelper;
+import pixelitor.utils.Resampler.Kernel;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Resampler tests")
+class ResamplerTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Kernel.class)
+    void uniformColorIsKept(Kernel kernel) {
+        BufferedImage src = createFilled(TYPE_INT_ARGB, 40, 30, new Color(10, 100, 200));
+
+        for (int[] size : new int[][]{{13, 7}, {40, 30}, {97, 61}}) {
+            BufferedImage dest = Resampler.resize(src, size[0], size[1], kernel);
+            assertThat(dest.getWidth()).isEqualTo(size[0]);
+            assertThat(dest.getHeight()).isEqualTo(size[1]);
+            assertThat(dest.getType()).isEqualTo(TYPE_INT_ARGB);
+            assertThat(dest.getRGB(0, 0)).isEqualTo(src.getRGB(0, 0));
+            assertThat(dest.getRGB(size[0] - 1, size[1] / 2)).isEqualTo(src.getRGB(0, 0));
+        }
+    }
+
+    @Test
+    void grayImagesStayGray() {
+        BufferedImage src = new BufferedImage(10, 10, TYPE_BYTE_GRAY);
+        src.getRaster().setSample(0, 0, 0, 200);
+        src.getRaster().setSample(1, 0, 0, 100);
+
+        BufferedImage dest = Resampler.resize(src, 5, 5, Kernel.BOX);
+
+        assertThat(dest.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(dest.getRaster().getSample(0, 0, 0)).isEqualTo(75);
+        assertThat(dest.getRaster().getSample(1, 0, 0)).isEqualTo(0);
+    }
+
+    @Test
+    void transparentColorsDontBleed() {
+        BufferedImage src = new BufferedImage(2, 1, TYPE_INT_ARGB);
+        src.setRGB(0, 0, 0xFF_FF_00_00);
+        src.setRGB(1, 0, 0x00_00_00_FF);
+
+        BufferedImage dest = Resampler.resize(src, 1, 1, Kernel.BOX);
+
+        assertThat(dest.getRGB(0, 0)).isEqualTo(0x80_FF_00_00);
+    }
+
+    @Test
+    void transformedRegionMatchesWholeImage() {
+        BufferedImage src = new BufferedImage(50, 40, TYPE_INT_ARGB);
+        Graphics2D g = src.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 50, 40, Color.BLUE));
+        g.fillRect(0, 0, 50, 40);
+        g.dispose();
+
+        var at = new AffineTransform(0.7, 0, 0, 0.6, 3.5, 2.25);
+        assertThat(Resampler.canTransform(at)).isTrue();
+        BufferedImage whole = new BufferedImage(45, 30, TYPE_INT_ARGB);
+        Resampler.transform(src, at, whole, new Rectangle(45, 30), Kernel.LANCZOS3);
+
+        BufferedImage partial = new BufferedImage(45, 30, TYPE_INT_ARGB);
+        Resampler.transform(src, at, partial, new Rectangle(10, 5, 12, 9), Kernel.LANCZOS3);
+
+        for (int y = 5; y < 14; y++) {
+            for (int x = 10; x < 22; x++) {
+                assertThat(partial.getRGB(x, y)).isEqualTo(whole.getRGB(x, y));
+            }
+        }
+        // outside the transformed source
+        assertThat(whole.getRGB(1, 1)).isEqualTo(0);
+        assertThat(whole.getRGB(44, 29)).isEqualTo(0);
+        assertThat(whole.getRGB(10, 10) >>> 24).isEqualTo(255);
+    }
+
+    @Test
+    void asyncResultIsTheSame() {
+        BufferedImage src = createFilled(TYPE_INT_ARGB, 300, 200, Color.ORANGE);
+        src.setRGB(150, 100, Color.BLACK.getRGB());
+
+        BufferedImage sync = Resampler.resize(src, 77, 55, Kernel.MITCHELL);
+        BufferedImage async = Resampler.resizeAsync(src, 77, 55, Kernel.MITCHELL).join();
+
+        assertThat(ImageUtils.getPixelArray(async)).isEqualTo(ImageUtils.getPixelArray(sync));
+    }
+
+    private static BufferedImage createFilled(int type, int width, int height, Color color) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return img;
+    }
+}